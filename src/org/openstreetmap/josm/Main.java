@@ -101,6 +101,7 @@ import org.openstreetmap.josm.gui.widgets.JMultilineLabel;
 import org.openstreetmap.josm.io.FileWatcher;
 import org.openstreetmap.josm.io.OnlineResource;
 import org.openstreetmap.josm.io.OsmApi;
+import org.openstreetmap.josm.io.OsmExporter;
 import org.openstreetmap.josm.plugins.PluginHandler;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.I18n;
@@ -1102,6 +1103,7 @@ public abstract class Main {
                 }
             }
             if (exit) {
+                OsmExporter.waitForBackgroundSaves();
                 System.exit(exitCode);
             }
             return true;
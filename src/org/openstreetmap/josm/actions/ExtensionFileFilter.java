@@ -54,6 +54,7 @@ public class ExtensionFileFilter extends FileFilter implements java.io.FileFilte
                 "org.openstreetmap.josm.io.NMEAImporter",
                 "org.openstreetmap.josm.io.NoteImporter",
                 "org.openstreetmap.josm.io.OsmBzip2Importer",
+                "org.openstreetmap.josm.io.PbfImporter",
                 "org.openstreetmap.josm.io.JpgImporter",
                 "org.openstreetmap.josm.io.WMSLayerImporter",
                 "org.openstreetmap.josm.io.AllFormatsImporter",
@@ -95,6 +96,7 @@ public class ExtensionFileFilter extends FileFilter implements java.io.FileFilte
                 "org.openstreetmap.josm.io.OsmExporter",
                 "org.openstreetmap.josm.io.OsmGzipExporter",
                 "org.openstreetmap.josm.io.OsmBzip2Exporter",
+                "org.openstreetmap.josm.io.PbfExporter",
                 "org.openstreetmap.josm.io.GeoJSONExporter",
                 "org.openstreetmap.josm.io.WMSLayerExporter",
                 "org.openstreetmap.josm.io.NoteExporter"
@@ -25,6 +25,7 @@ import org.openstreetmap.josm.data.Preferences.Setting;
 import org.openstreetmap.josm.data.Version;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.DatasetConsistencyTest;
+import org.openstreetmap.josm.data.osm.TagSetPool;
 import org.openstreetmap.josm.gui.ExtendedDialog;
 import org.openstreetmap.josm.gui.widgets.JosmTextArea;
 import org.openstreetmap.josm.plugins.PluginHandler;
@@ -80,6 +81,16 @@ public final class ShowStatusReportAction extends JosmAction {
         text.append(Runtime.getRuntime().freeMemory()/1024/1024);
         text.append(" MB allocated, but free)");
         text.append("\n");
+        text.append("Tag sharing: ");
+        text.append(TagSetPool.getTagSetCount());
+        text.append(" distinct tag sets, ");
+        text.append(Math.round(TagSetPool.getTagSetDeduplicationRatio() * 100));
+        text.append("% of tag sets and ");
+        text.append(Math.round(TagSetPool.getStringDeduplicationRatio() * 100));
+        text.append("% of tag strings shared (about ");
+        text.append(TagSetPool.getEstimatedSavedBytes()/1024/1024);
+        text.append(" MB saved)");
+        text.append("\n");
         text.append("Java version: " + System.getProperty("java.version") + ", " + System.getProperty("java.vendor") + ", " + System.getProperty("java.vm.name"));
         text.append("\n");
         if (Main.platform.getClass() == PlatformHookUnixoid.class) {
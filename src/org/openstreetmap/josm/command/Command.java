@@ -18,9 +18,7 @@ import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.PrimitiveData;
-import org.openstreetmap.josm.data.osm.Relation;
-import org.openstreetmap.josm.data.osm.Way;
-import org.openstreetmap.josm.data.osm.visitor.AbstractVisitor;
+import org.openstreetmap.josm.data.osm.PrimitiveState;
 import org.openstreetmap.josm.gui.ConditionalOptionPaneUtil;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
@@ -37,23 +35,6 @@ import org.openstreetmap.josm.tools.CheckParameterUtil;
  */
 public abstract class Command extends PseudoCommand {
 
-    private static final class CloneVisitor extends AbstractVisitor {
-        public final Map<OsmPrimitive, PrimitiveData> orig = new LinkedHashMap<>();
-
-        @Override
-        public void visit(Node n) {
-            orig.put(n, n.save());
-        }
-        @Override
-        public void visit(Way w) {
-            orig.put(w, w.save());
-        }
-        @Override
-        public void visit(Relation e) {
-            orig.put(e, e.save());
-        }
-    }
-
     /**
      * Small helper for holding the interesting part of the old data state of the objects.
      */
@@ -63,6 +44,9 @@ public abstract class Command extends PseudoCommand {
         final EastNorth eastNorth; // cached EastNorth to be used for applying exact displacement
         final boolean modified;
 
+        /** Estimated size of an {@code OldNodeState} with its coordinates, in bytes */
+        static final int ESTIMATED_SIZE = 112;
+
         /**
          * Constructs a new {@code OldNodeState} for the given node.
          * @param node The node whose state has to be remembered
@@ -74,8 +58,11 @@ public abstract class Command extends PseudoCommand {
         }
     }
 
-    /** the map of OsmPrimitives in the original state to OsmPrimitives in cloned state */
-    private Map<OsmPrimitive, PrimitiveData> cloneMap = new HashMap<>();
+    /** the map of OsmPrimitives to their original state */
+    private Map<OsmPrimitive, PrimitiveState> cloneMap = new HashMap<>();
+
+    /** the estimated memory held by this command, or -1 if not yet computed */
+    private long estimatedMemory = -1;
 
     /** the layer which this command is applied to */
     private final OsmDataLayer layer;
@@ -104,13 +91,14 @@ public abstract class Command extends PseudoCommand {
      * @return true
      */
     public boolean executeCommand() {
-        CloneVisitor visitor = new CloneVisitor();
         Collection<OsmPrimitive> all = new ArrayList<>();
         fillModifiedData(all, all, all);
+        Map<OsmPrimitive, PrimitiveState> orig = new LinkedHashMap<>();
         for (OsmPrimitive osm : all) {
-            osm.accept(visitor);
+            orig.put(osm, new PrimitiveState(osm));
         }
-        cloneMap = visitor.orig;
+        cloneMap = orig;
+        estimatedMemory = -1;
         return true;
     }
 
@@ -122,10 +110,10 @@ public abstract class Command extends PseudoCommand {
      * This implementation undoes all objects stored by a former call to executeCommand.
      */
     public void undoCommand() {
-        for (Entry<OsmPrimitive, PrimitiveData> e : cloneMap.entrySet()) {
+        for (Entry<OsmPrimitive, PrimitiveState> e : cloneMap.entrySet()) {
             OsmPrimitive primitive = e.getKey();
             if (primitive.getDataSet() != null) {
-                e.getKey().load(e.getValue());
+                e.getValue().restore(primitive);
             }
         }
     }
@@ -151,14 +139,42 @@ public abstract class Command extends PseudoCommand {
      * @return The original version of the requested object, if any
      */
     public PrimitiveData getOrig(OsmPrimitive osm) {
-        return cloneMap.get(osm);
+        PrimitiveState state = cloneMap.get(osm);
+        return state == null ? null : state.toData(osm);
+    }
+
+    /**
+     * Replies an estimate of the memory needed to keep this command in the undo list, in bytes.
+     * The estimate is computed on first call after the command has been executed.
+     * @return the estimated memory in bytes
+     * @see PrimitiveState#getEstimatedSize(OsmPrimitive)
+     */
+    public final long getEstimatedMemory() {
+        if (estimatedMemory < 0) {
+            estimatedMemory = estimateMemory();
+        }
+        return estimatedMemory;
+    }
+
+    /**
+     * Estimates the memory held by this command. Subclasses which keep their own undo information should add
+     * its size to the value replied by this implementation.
+     * @return the estimated memory in bytes
+     */
+    protected long estimateMemory() {
+        long size = 64;
+        for (Entry<OsmPrimitive, PrimitiveState> e : cloneMap.entrySet()) {
+            // map entry and state
+            size += 40 + e.getValue().getEstimatedSize(e.getKey());
+        }
+        return size;
     }
 
     /**
      * Replies the layer this command is (or was) applied to.
-     *
+     * @return the layer, can be null
      */
-    protected OsmDataLayer getLayer() {
+    public OsmDataLayer getLayer() {
         return layer;
     }
 
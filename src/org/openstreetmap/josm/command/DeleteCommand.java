@@ -27,7 +27,7 @@ import org.openstreetmap.josm.actions.SplitWayAction;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
-import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveState;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationToChildReference;
 import org.openstreetmap.josm.data.osm.Way;
@@ -50,7 +50,7 @@ public class DeleteCommand extends Command {
      * The primitives that get deleted.
      */
     private final Collection<? extends OsmPrimitive> toDelete;
-    private final Map<OsmPrimitive, PrimitiveData> clonedPrimitives = new HashMap<>();
+    private final Map<OsmPrimitive, PrimitiveState> clonedPrimitives = new HashMap<>();
 
     /**
      * Constructor. Deletes a collection of primitives in the current edit layer.
@@ -123,7 +123,7 @@ public class DeleteCommand extends Command {
         for (OsmPrimitive osm: toDelete) {
             if (osm.isDeleted())
                 throw new IllegalArgumentException(osm.toString() + " is already deleted");
-            clonedPrimitives.put(osm, osm.save());
+            clonedPrimitives.put(osm, new PrimitiveState(osm));
 
             if (osm instanceof Way) {
                 ((Way) osm).setNodes(null);
@@ -145,11 +145,20 @@ public class DeleteCommand extends Command {
             osm.setDeleted(false);
         }
 
-        for (Entry<OsmPrimitive, PrimitiveData> entry: clonedPrimitives.entrySet()) {
-            entry.getKey().load(entry.getValue());
+        for (Entry<OsmPrimitive, PrimitiveState> entry: clonedPrimitives.entrySet()) {
+            entry.getValue().restore(entry.getKey());
         }
     }
 
+    @Override
+    protected long estimateMemory() {
+        long size = super.estimateMemory();
+        for (Entry<OsmPrimitive, PrimitiveState> entry: clonedPrimitives.entrySet()) {
+            size += 40 + entry.getValue().getEstimatedSize(entry.getKey());
+        }
+        return size;
+    }
+
     @Override
     public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted,
             Collection<OsmPrimitive> added) {
@@ -201,6 +201,11 @@ public class MoveCommand extends Command {
         }
     }
 
+    @Override
+    protected long estimateMemory() {
+        return super.estimateMemory() + (long) oldState.size() * OldNodeState.ESTIMATED_SIZE;
+    }
+
     @Override
     public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted, Collection<OsmPrimitive> added) {
         for (OsmPrimitive osm : nodes) {
@@ -85,6 +85,15 @@ public class SequenceCommand extends Command {
         undoCommands(sequence.length-1);
     }
 
+    @Override
+    protected long estimateMemory() {
+        long size = super.estimateMemory();
+        for (Command c : sequence) {
+            size += c.getEstimatedMemory();
+        }
+        return size;
+    }
+
     @Override public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted, Collection<OsmPrimitive> added) {
         for (Command c : sequence) {
             c.fillModifiedData(modified, deleted, added);
@@ -98,6 +98,11 @@ public abstract class TransformNodesCommand extends Command {
         }
     }
 
+    @Override
+    protected long estimateMemory() {
+        return super.estimateMemory() + (long) oldStates.size() * OldNodeState.ESTIMATED_SIZE;
+    }
+
     @Override
     public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted, Collection<OsmPrimitive> added) {
     }
@@ -3,32 +3,50 @@ package org.openstreetmap.josm.data;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Deque;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.regex.Pattern;
 
+import javax.swing.JOptionPane;
+
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.actions.OpenFileAction.OpenFileTask;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.ChangesetIdChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter.Listener;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.gui.MapView;
@@ -36,9 +54,17 @@ import org.openstreetmap.josm.gui.MapView.LayerChangeListener;
 import org.openstreetmap.josm.gui.Notification;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.io.OsmExporter;
 import org.openstreetmap.josm.io.OsmImporter;
+import org.openstreetmap.josm.io.OsmImporter.OsmImporterData;
+import org.openstreetmap.josm.io.OsmSnapshotJournal;
+import org.openstreetmap.josm.io.OsmSnapshotReader;
+import org.openstreetmap.josm.io.OsmSnapshotWriter;
+import org.openstreetmap.josm.io.OsmWriter;
+import org.openstreetmap.josm.io.OsmWriterFactory;
 
 /**
  * Saves data layers periodically so they can be recovered in case of a crash.
@@ -55,6 +81,14 @@ import org.openstreetmap.josm.io.OsmImporter;
  *      open with another versions of JOSM or fix the problem manually.
  *
  *      The deleted layers dir keeps at most PROP_DELETED_LAYERS files.
+ *
+ * Next to each file, a binary snapshot of the layer is saved, from which the layer is recovered faster.
+ * As long as only a small part of a layer changes, the changes are appended to a journal next to the snapshot
+ * instead of saving the layer again. The layer is saved again (compacted) once the journal grows too large, so
+ * that the cost of an autosave depends on the number of changes rather than on the size of the layer.
+ * Until then, the file lacks the changes of the journal. When a layer is restored from the snapshot and the
+ * journal, they are saved to the file before it is moved to the deleted layers dir. If they cannot be restored,
+ * the user is warned that the changes are missing, and the snapshot and journal are kept next to the file.
  */
 public class AutosaveTask extends TimerTask implements LayerChangeListener, Listener {
 
@@ -69,16 +103,68 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
     public static final IntegerProperty PROP_INDEX_LIMIT = new IntegerProperty("autosave.index-limit", 1000);
     /** Defines if a notification should be displayed after each autosave */
     public static final BooleanProperty PROP_NOTIFICATION = new BooleanProperty("autosave.notification", false);
+    /** Defines if a binary snapshot is saved next to each file, from which the layer is recovered much faster */
+    public static final BooleanProperty PROP_SNAPSHOT = new BooleanProperty("autosave.snapshot", true);
+    /** Defines if changes are appended to a journal next to the snapshot instead of saving the whole layer */
+    public static final BooleanProperty PROP_JOURNAL = new BooleanProperty("autosave.journal", true);
+    /** Defines the number of journal entries after which the whole layer is saved again */
+    public static final IntegerProperty PROP_JOURNAL_MAX_ENTRIES = new IntegerProperty("autosave.journal.maxEntries", 24);
 
     private static class AutosaveLayerInfo {
         OsmDataLayer layer;
         String layerName;
         String layerFileName;
         final Deque<File> backupFiles = new LinkedList<>();
+        /** the journal of the last backup, {@code null} if changes cannot be appended */
+        OsmSnapshotJournal journal;
+        /** the size of the snapshot of the last backup */
+        long snapshotSize;
+        PropertyChangeListener uploadListener;
+    }
+
+    /**
+     * The primitives of a dataset changed since the last autosave.
+     */
+    private static class DatasetChanges {
+        final Set<OsmPrimitive> primitives = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        /** {@code true} if the changes are not known in detail, so that the whole layer has to be saved */
+        boolean full;
+
+        void add(AbstractDatasetChangedEvent event) {
+            if (full)
+                return;
+            if (event instanceof DataChangedEvent) {
+                List<AbstractDatasetChangedEvent> events = event instanceof CoalescedDataChangedEvent
+                        ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : ((DataChangedEvent) event).getEvents();
+                if (events == null) {
+                    full = true;
+                } else {
+                    for (AbstractDatasetChangedEvent e : events) {
+                        add(e);
+                    }
+                }
+            } else if (event instanceof ChangesetIdChangedEvent) {
+                // the primitives have been uploaded, which changes their ids and versions without further events
+                full = true;
+            } else {
+                if (event instanceof PrimitivesRemovedEvent) {
+                    for (OsmPrimitive osm : event.getPrimitives()) {
+                        if (osm.getDataSet() == event.getDataset() && !osm.isDeleted()) {
+                            // the primitive has been reindexed as its id changed
+                            full = true;
+                            return;
+                        }
+                    }
+                }
+                primitives.addAll(event.getPrimitives());
+            }
+        }
     }
 
     private final DataSetListenerAdapter datasetAdapter = new DataSetListenerAdapter(this);
-    private final Set<DataSet> changedDatasets = new HashSet<>();
+    private final Map<DataSet, DatasetChanges> changedDatasets = new HashMap<>();
+    /** guards {@link #changedDatasets}, which is updated by the dataset events while layers are saved */
+    private final Object changesLock = new Object();
     private final List<AutosaveLayerInfo> layersInfo = new ArrayList<>();
     private Timer timer;
     private final Object layersLock = new Object();
@@ -99,7 +185,8 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
                 return;
             }
 
-            for (File f: deletedLayersDir.listFiles()) {
+            // the snapshots and journals are deleted along with their files
+            for (File f: deletedLayersDir.listFiles(OsmImporter.FILE_FILTER)) {
                 deletedLayers.add(f); // FIXME: sort by mtime
             }
 
@@ -176,16 +263,42 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         }
     }
 
-    private void savelayer(AutosaveLayerInfo info) {
+    /**
+     * Saves the changes of a layer.
+     * @param info the layer
+     * @param closing {@code true} if the layer is closed, so that its last file has to contain all changes
+     */
+    private void savelayer(AutosaveLayerInfo info, boolean closing) {
         if (!info.layer.getName().equals(info.layerName)) {
             setLayerFileName(info);
             info.layerName = info.layer.getName();
         }
-        if (changedDatasets.remove(info.layer.data)) {
+        DatasetChanges changes;
+        synchronized (changesLock) {
+            changes = changedDatasets.remove(info.layer.data);
+        }
+        if (closing && info.journal != null && info.journal.getEntryCount() > 0) {
+            if (changes == null) {
+                changes = new DatasetChanges();
+            }
+            changes.full = true;
+        }
+        if (changes != null && !appendChanges(info, changes)) {
             File file = getNewLayerFile(info);
             if (file != null) {
                 info.backupFiles.add(file);
-                new OsmExporter().exportData(file, info.layer, true /* no backup with appended ~ */);
+                info.journal = null;
+                OsmExporter exporter = new OsmExporter();
+                // the file is moved or deleted right away when the layer is closed
+                exporter.setWriteInBackground(false);
+                exporter.exportData(file, info.layer, true /* no backup with appended ~ */);
+                if (PROP_SNAPSHOT.get()) {
+                    File snapshot = getSnapshotFile(file);
+                    if (saveSnapshot(info.layer, snapshot) && PROP_JOURNAL.get()) {
+                        info.journal = new OsmSnapshotJournal(getJournalFile(file));
+                        info.snapshotSize = snapshot.length();
+                    }
+                }
             }
         }
         while (info.backupFiles.size() > PROP_FILES_PER_LAYER.get()) {
@@ -194,18 +307,65 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
                 Main.warn(tr("Unable to delete old backup file {0}", oldFile.getAbsolutePath()));
             } else {
                 getPidFile(oldFile).delete();
+                getSnapshotFile(oldFile).delete();
+                getJournalFile(oldFile).delete();
             }
         }
     }
 
+    /**
+     * Appends the changes of a layer to the journal of its last backup, unless saving the whole layer again is
+     * due, because the changes are not known in detail or the journal has grown too large.
+     * @param info the layer
+     * @param changes the changes
+     * @return {@code true} if the changes have been appended
+     */
+    private static boolean appendChanges(AutosaveLayerInfo info, DatasetChanges changes) {
+        OsmSnapshotJournal journal = info.journal;
+        DataSet ds = info.layer.data;
+        if (journal == null || changes.full || journal.getEntryCount() >= PROP_JOURNAL_MAX_ENTRIES.get()
+                || journal.size() > info.snapshotSize / 2 || changes.primitives.size() > ds.allPrimitives().size() / 4)
+            return false;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ds.getReadLock().lock();
+        try (OsmSnapshotWriter writer = new OsmSnapshotWriter(out)) {
+            writer.writeChanges(ds, changes.primitives, info.layer.getConflicts());
+        } catch (IOException e) {
+            Main.warn(tr("Unable to save changes to journal {0}: {1}", journal.getFile().getAbsolutePath(), e.getMessage()));
+            return false;
+        } finally {
+            ds.getReadLock().unlock();
+        }
+        try {
+            journal.append(out.toByteArray());
+            return true;
+        } catch (IOException e) {
+            Main.warn(tr("Unable to save changes to journal {0}: {1}", journal.getFile().getAbsolutePath(), e.getMessage()));
+            return false;
+        }
+    }
+
+    private static boolean saveSnapshot(OsmDataLayer layer, File file) {
+        layer.data.getReadLock().lock();
+        try (OsmSnapshotWriter writer = new OsmSnapshotWriter(new FileOutputStream(file))) {
+            writer.write(layer.data, layer.getConflicts());
+            return true;
+        } catch (IOException e) {
+            Main.warn(tr("Unable to save snapshot {0}: {1}", file.getAbsolutePath(), e.getMessage()));
+            file.delete();
+            return false;
+        } finally {
+            layer.data.getReadLock().unlock();
+        }
+    }
+
     @Override
     public void run() {
         synchronized (layersLock) {
             try {
                 for (AutosaveLayerInfo info: layersInfo) {
-                    savelayer(info);
+                    savelayer(info, false);
                 }
-                changedDatasets.clear();
                 if (PROP_NOTIFICATION.get() && !layersInfo.isEmpty()) {
                     displayNotification();
                 }
@@ -233,11 +393,24 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         // Do nothing
     }
 
-    private void registerNewlayer(OsmDataLayer layer) {
+    private void registerNewlayer(final OsmDataLayer layer) {
         synchronized (layersLock) {
             layer.data.addDataSetListener(datasetAdapter);
             AutosaveLayerInfo info = new AutosaveLayerInfo();
             info.layer = layer;
+            info.uploadListener = new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    // the modified flags are reset after an upload without further events
+                    if (OsmDataLayer.REQUIRES_UPLOAD_TO_SERVER_PROP.equals(evt.getPropertyName())
+                            && Boolean.FALSE.equals(evt.getNewValue())) {
+                        synchronized (changesLock) {
+                            getChanges(layer.data).full = true;
+                        }
+                    }
+                }
+            };
+            layer.addPropertyChangeListener(info.uploadListener);
             layersInfo.add(info);
         }
     }
@@ -260,7 +433,8 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
                     AutosaveLayerInfo info = it.next();
                     if (info.layer == osmLayer) {
 
-                        savelayer(info);
+                        osmLayer.removePropertyChangeListener(info.uploadListener);
+                        savelayer(info, true);
                         File lastFile = info.backupFiles.pollLast();
                         if (lastFile != null) {
                             moveToDeletedLayersFolder(lastFile);
@@ -268,6 +442,8 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
                         for (File file: info.backupFiles) {
                             if (file.delete()) {
                                 getPidFile(file).delete();
+                                getSnapshotFile(file).delete();
+                                getJournalFile(file).delete();
                             }
                         }
 
@@ -280,13 +456,35 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
 
     @Override
     public void processDatasetEvent(AbstractDatasetChangedEvent event) {
-        changedDatasets.add(event.getDataset());
+        synchronized (changesLock) {
+            getChanges(event.getDataset()).add(event);
+        }
+    }
+
+    /**
+     * Replies the changes of a dataset since the last autosave. The caller has to hold {@link #changesLock}.
+     */
+    private DatasetChanges getChanges(DataSet ds) {
+        DatasetChanges changes = changedDatasets.get(ds);
+        if (changes == null) {
+            changes = new DatasetChanges();
+            changedDatasets.put(ds, changes);
+        }
+        return changes;
     }
 
     private final File getPidFile(File osmFile) {
         return new File(autosaveDir, osmFile.getName().replaceFirst("[.][^.]+$", ".pid"));
     }
 
+    private final File getSnapshotFile(File osmFile) {
+        return new File(autosaveDir, osmFile.getName().replaceFirst("[.][^.]+$", ".snapshot"));
+    }
+
+    private final File getJournalFile(File osmFile) {
+        return new File(autosaveDir, osmFile.getName().replaceFirst("[.][^.]+$", ".journal"));
+    }
+
     /**
      * Replies the list of .osm files still present in autosave dir, that are not currently managed by another instance of JOSM.
      * These files are hence unsaved layers from an old instance of JOSM that crashed and may be recovered by this instance.
@@ -335,30 +533,120 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
     }
 
     public void recoverUnsavedLayers() {
-        List<File> files = getUnsavedLayersFiles();
-        final OpenFileTask openFileTsk = new OpenFileTask(files, null, tr("Restoring files"));
-        Main.worker.submit(openFileTsk);
+        final List<File> files = getUnsavedLayersFiles();
         Main.worker.submit(new Runnable() {
             @Override
             public void run() {
-                for (File f: openFileTsk.getSuccessfullyOpenedFiles()) {
-                    moveToDeletedLayersFolder(f);
+                List<File> remaining = new ArrayList<>();
+                for (File f: files) {
+                    if (recoverFromSnapshot(f)) {
+                        moveToDeletedLayersFolder(f);
+                    } else {
+                        remaining.add(f);
+                    }
+                }
+                if (!remaining.isEmpty()) {
+                    OpenFileTask openFileTsk = new OpenFileTask(remaining, null, tr("Restoring files"));
+                    openFileTsk.run();
+                    for (File f: openFileTsk.getSuccessfullyOpenedFiles()) {
+                        moveToDeletedLayersFolder(f);
+                    }
                 }
             }
         });
     }
 
+    /**
+     * Restores a layer from the snapshot saved next to the file, if there is one which is up to date, and the
+     * changes of its journal.
+     * @param osmFile the file, from the autosave dir
+     * @return {@code true} if the layer has been restored
+     */
+    private boolean recoverFromSnapshot(File osmFile) {
+        File snapshot = getSnapshotFile(osmFile);
+        if (!snapshot.isFile() || snapshot.lastModified() < osmFile.lastModified())
+            return false;
+        OsmSnapshotJournal journal = new OsmSnapshotJournal(getJournalFile(osmFile));
+        try {
+            OsmSnapshotReader reader = OsmSnapshotReader.open(snapshot);
+            DataSet ds = reader.parse(NullProgressMonitor.INSTANCE);
+            List<ByteBuffer> entries = journal.read();
+            for (ByteBuffer changes : entries) {
+                reader.applyChanges(changes);
+            }
+            if (!entries.isEmpty()) {
+                // the file lacks the changes of the journal, it is kept in the deleted layers dir afterwards
+                compact(ds, osmFile);
+            }
+            OsmImporterData data = new OsmImporter().loadLayer(ds, osmFile, osmFile.getName());
+            data.getLayer().getConflicts().add(reader.getConflicts());
+            OsmImporter.addLayer(data);
+            return true;
+        } catch (IOException | IllegalDataException e) {
+            if (journal.size() == 0) {
+                Main.warn(tr("Unable to restore snapshot {0}, restoring {1} instead: {2}",
+                        snapshot.getAbsolutePath(), osmFile.getName(), e.getMessage()));
+                return false;
+            }
+            final String message = tr("<html>Unable to restore the snapshot {0} and its journal: {1}<br>"
+                    + "The changes saved to the journal since {2} are missing from the restored layer.<br>"
+                    + "The snapshot and the journal are kept next to {3}.</html>",
+                    snapshot.getName(), e.getMessage(), new Date(osmFile.lastModified()), osmFile.getName());
+            Main.error(message);
+            GuiHelper.runInEDT(new Runnable() {
+                @Override
+                public void run() {
+                    JOptionPane.showMessageDialog(Main.parent, message, tr("Warning"), JOptionPane.WARNING_MESSAGE);
+                }
+            });
+            return false;
+        }
+    }
+
+    /**
+     * Replaces a file by the data restored from its snapshot and journal, so that it contains the changes of the
+     * journal as well.
+     * @param ds the restored data
+     * @param osmFile the file
+     */
+    private static void compact(DataSet ds, File osmFile) {
+        File partFile = new File(osmFile.getPath() + ".part");
+        try {
+            try (OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(partFile), StandardCharsets.UTF_8)), false, ds.getVersion())) {
+                w.header(!ds.isUploadDiscouraged());
+                w.writeDataSources(ds);
+                w.writeContent(ds);
+                w.footer();
+            }
+            Files.move(partFile.toPath(), osmFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Main.warn(tr("Unable to save the changes of the journal to {0}: {1}", osmFile.getAbsolutePath(), e.getMessage()));
+            partFile.delete();
+        }
+    }
+
     /**
      * Move file to the deleted layers directory.
      * If moving does not work, it will try to delete the file directly.
      * Afterwards, if the number of deleted layers gets larger than PROP_DELETED_LAYERS,
      * some files in the deleted layers directory will be removed.
      *
+     * The snapshot and the journal of the file are moved along, as the file lacks the changes of the journal
+     * unless they could be restored.
+     *
      * @param f the file, usually from the autosave dir
      */
     private void moveToDeletedLayersFolder(File f) {
         File backupFile = new File(deletedLayersDir, f.getName());
         File pidFile = getPidFile(f);
+        for (File file : new File[] {getSnapshotFile(f), getJournalFile(f)}) {
+            File backup = new File(deletedLayersDir, file.getName());
+            backup.delete();
+            if (file.exists() && !file.renameTo(backup)) {
+                Main.warn(String.format("Could not move autosaved file %s to %s folder", file.getName(), deletedLayersDir.getName()));
+            }
+        }
 
         if (backupFile.exists()) {
             deletedLayers.remove(backupFile);
@@ -386,6 +674,8 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
             if (!next.delete()) {
                 Main.warn(String.format("Could not delete archived backup file %s", next));
             }
+            new File(deletedLayersDir, getSnapshotFile(next).getName()).delete();
+            new File(deletedLayersDir, getJournalFile(next).getName()).delete();
         }
     }
 
@@ -40,7 +40,7 @@ public class UndoRedoHandler implements MapView.LayerChangeListener {
      */
     public void addNoRedraw(final Command c) {
         CheckParameterUtil.ensureParameterNotNull(c, "c");
-        c.executeCommand();
+        execute(c);
         commands.add(c);
         // Limit the number of commands in the undo list.
         // Currently you have to undo the commands one by one. If
@@ -48,9 +48,48 @@ public class UndoRedoHandler implements MapView.LayerChangeListener {
         if (commands.size() > Main.pref.getInteger("undo.max", 1000)) {
             commands.removeFirst();
         }
+        // Limit the memory held by the undo list, but always keep the last command
+        long maxMemory = Main.pref.getInteger("undo.max-memory", 256) * 1024L * 1024L;
+        long memory = getEstimatedMemory();
+        while (memory > maxMemory && commands.size() > 1) {
+            memory -= commands.removeFirst().getEstimatedMemory();
+        }
         redoCommands.clear();
     }
 
+    /**
+     * Replies the estimated memory held by the commands of the undo list.
+     * @return the estimated memory in bytes
+     * @see Command#getEstimatedMemory()
+     */
+    public long getEstimatedMemory() {
+        long memory = 0;
+        for (Command c : commands) {
+            memory += c.getEstimatedMemory();
+        }
+        return memory;
+    }
+
+    /**
+     * Executes a command as one event batch of the dataset it is applied to, so that its events are delivered together
+     * after it has finished. The dataset is not locked in between, a command may show a dialog.
+     * @param c The command to execute
+     * @see DataSet#beginEventBatch()
+     */
+    private static void execute(Command c) {
+        DataSet ds = c.getLayer() == null ? null : c.getLayer().data;
+        if (ds != null) {
+            ds.beginEventBatch();
+        }
+        try {
+            c.executeCommand();
+        } finally {
+            if (ds != null) {
+                ds.endEventBatch();
+            }
+        }
+    }
+
     public void afterAdd() {
         fireCommandsChanged();
 
@@ -123,7 +162,7 @@ public class UndoRedoHandler implements MapView.LayerChangeListener {
         Collection<? extends OsmPrimitive> oldSelection = Main.main.getCurrentDataSet().getSelected();
         for (int i=0; i<num; ++i) {
             final Command c = redoCommands.removeFirst();
-            c.executeCommand();
+            execute(c);
             commands.add(c);
             if (redoCommands.isEmpty()) {
                 break;
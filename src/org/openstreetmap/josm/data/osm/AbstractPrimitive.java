@@ -455,7 +455,8 @@ public abstract class AbstractPrimitive implements IPrimitive {
 
     // Note that all methods that read keys first make local copy of keys array reference. This is to ensure thread safety - reading
     // doesn't have to be locked so it's possible that keys array will be modified. But all write methods make copy of keys array so
-    // the array itself will be never modified - only reference will be changed
+    // the array itself will be never modified - only reference will be changed. This also allows equal arrays to be shared
+    // between primitives: setKeys() interns the complete tag set in TagSetPool, while put() and remove() do not.
 
     /**
      * The key/value list for this primitive.
@@ -481,6 +482,20 @@ public abstract class AbstractPrimitive implements IPrimitive {
         return result;
     }
 
+    /**
+     * Calls the visitor for every key/value pair of this primitive. Unlike {@link #getKeys()}, no map is created.
+     *
+     * @param visitor the visitor
+     */
+    public void visitKeys(KeyValueVisitor visitor) {
+        String[] keys = this.keys;
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i += 2) {
+                visitor.visitKeyValue(this, keys[i], keys[i + 1]);
+            }
+        }
+    }
+
     /**
      * Sets the keys of this primitives to the key/value pairs in <code>keys</code>.
      * Old key/value pairs are removed.
@@ -502,7 +517,19 @@ public abstract class AbstractPrimitive implements IPrimitive {
             newKeys[index++] = entry.getKey();
             newKeys[index++] = entry.getValue();
         }
-        this.keys = newKeys;
+        this.keys = TagSetPool.intern(newKeys);
+        keysChangedImpl(originalKeys);
+    }
+
+    /**
+     * Sets the key/value array of this primitive, as replied by {@link TagSetPool#intern(String[])}.
+     * The array is shared, not copied.
+     *
+     * @param keys the key/value array. If null, removes all existing key/value pairs.
+     */
+    void setKeysArray(String[] keys) {
+        Map<String, String> originalKeys = getKeys();
+        this.keys = keys;
         keysChangedImpl(originalKeys);
     }
 
@@ -528,7 +555,10 @@ public abstract class AbstractPrimitive implements IPrimitive {
         } else {
             for (int i=0; i<keys.length;i+=2) {
                 if (keys[i].equals(key)) {
-                    keys[i+1] = value;  // This modifies the keys array but it doesn't make it invalidate for any time so its ok (see note no top)
+                    // copy the array, it may be shared with other primitives (see note on top)
+                    String[] newKeys = keys.clone();
+                    newKeys[i+1] = value;
+                    keys = newKeys;
                     keysChangedImpl(originalKeys);
                     return;
                 }
@@ -0,0 +1,602 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.visitor.PrimitiveVisitor;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Column oriented storage for a large number of nodes.
+ *
+ * Instead of one {@link Node} object per node (with its object header, primitive header, cached projected
+ * coordinates and mappaint fields), ids, versions, changeset ids, timestamps, flags and coordinates are kept
+ * in parallel primitive arrays. Nodes are materialized on demand, either as a lightweight {@link INode} view
+ * backed by the arrays ({@link #get(int)}) or as a full {@link Node} that can be added to a {@link DataSet}
+ * ({@link #toNode(int)}).
+ *
+ * A {@link DataSet} keeps its nodes as {@link Node} objects, as primitives are identified by their instance in
+ * ways, relations, the spatial index, the selection and the undo stack. The store is meant for bulk operations
+ * which do not need this identity, such as a copy of the nodes of a dataset which is written to a file while the
+ * dataset is edited, see {@link #addAll(Collection)}. The tag arrays are shared with the copied primitives, as
+ * these replace their arrays instead of changing them. The store is not thread safe.
+ *
+ * @see Node
+ * @see NodeData
+ */
+public class CompactNodeStore implements Iterable<INode> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Only the flags shared by all {@link AbstractPrimitive}s are stored, the remaining bits are
+     * recomputed (tagged, annotated, ...) or volatile (disabled, highlighted).
+     */
+    private static final int FLAG_MASK = AbstractPrimitive.FLAG_MODIFIED | AbstractPrimitive.FLAG_VISIBLE
+            | AbstractPrimitive.FLAG_DELETED | AbstractPrimitive.FLAG_INCOMPLETE;
+
+    private int size;
+    private long[] ids;
+    private int[] versions;
+    private int[] changesetIds;
+    private int[] timestamps;
+    private short[] flags;
+    private double[] lats;
+    private double[] lons;
+    private String[][] keys;
+    private User[] users;
+
+    /**
+     * Constructs a new, empty {@code CompactNodeStore}.
+     */
+    public CompactNodeStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@code CompactNodeStore} with the given initial capacity.
+     * @param capacity the number of nodes that can be stored before the arrays have to grow
+     */
+    public CompactNodeStore(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException(tr("Capacity >= 0 expected. Got {0}.", capacity));
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        versions = new int[capacity];
+        changesetIds = new int[capacity];
+        timestamps = new int[capacity];
+        flags = new short[capacity];
+        lats = new double[capacity];
+        lons = new double[capacity];
+        keys = new String[capacity][];
+        users = new User[capacity];
+    }
+
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        changesetIds = Arrays.copyOf(changesetIds, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+        lons = Arrays.copyOf(lons, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        users = Arrays.copyOf(users, capacity);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > ids.length) {
+            resize(Math.max(minCapacity, ids.length + (ids.length >> 1) + 1));
+        }
+    }
+
+    /**
+     * Shrinks the internal arrays to the number of stored nodes.
+     */
+    public void trimToSize() {
+        if (size < ids.length) {
+            resize(size);
+        }
+    }
+
+    /**
+     * Replies the number of stored nodes.
+     * @return the number of stored nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines if this store is empty.
+     * @return {@code true} if this store does not contain any node
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all nodes from this store. The capacity is kept.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(users, 0, size, null);
+        size = 0;
+    }
+
+    private int add(AbstractPrimitive p, double lat, double lon) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        ids[index] = p.id;
+        versions[index] = p.version;
+        changesetIds[index] = p.changesetId;
+        timestamps[index] = p.timestamp;
+        flags[index] = (short) (p.flags & FLAG_MASK);
+        lats[index] = lat;
+        lons[index] = lon;
+        // the tag arrays of primitives are replaced on change, so they can be shared
+        keys[index] = p.keys;
+        users[index] = p.user;
+        return index;
+    }
+
+    /**
+     * Appends a copy of the given node data.
+     * @param data the node data. Must not be null
+     * @return the index of the new entry
+     */
+    public int add(NodeData data) {
+        LatLon ll = data.getCoor();
+        return add(data, ll == null ? Double.NaN : ll.lat(), ll == null ? Double.NaN : ll.lon());
+    }
+
+    /**
+     * Appends a copy of the given node. The node is not modified.
+     * @param node the node. Must not be null
+     * @return the index of the new entry
+     */
+    public int add(Node node) {
+        LatLon ll = node.getCoor();
+        return add(node, ll == null ? Double.NaN : ll.lat(), ll == null ? Double.NaN : ll.lon());
+    }
+
+    /**
+     * Appends all given nodes.
+     * @param nodes the nodes to add
+     */
+    public void addAll(Collection<Node> nodes) {
+        ensureCapacity(size + nodes.size());
+        for (Node n : nodes) {
+            add(n);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * Replies the unique id of the node at the given index.
+     * @param index the index
+     * @return the unique id (negative for new nodes)
+     */
+    public long getUniqueId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Replies the latitude of the node at the given index.
+     * @param index the index
+     * @return the latitude, {@code NaN} if unknown
+     */
+    public double getLat(int index) {
+        checkIndex(index);
+        return lats[index];
+    }
+
+    /**
+     * Replies the longitude of the node at the given index.
+     * @param index the index
+     * @return the longitude, {@code NaN} if unknown
+     */
+    public double getLon(int index) {
+        checkIndex(index);
+        return lons[index];
+    }
+
+    /**
+     * Replies a lightweight view of the node at the given index. The view reads from and writes to this store,
+     * it does not copy any data. Views are cheap to create and do not have to be cached.
+     * @param index the index
+     * @return the node view
+     */
+    public INode get(int index) {
+        checkIndex(index);
+        return new NodeView(index);
+    }
+
+    /**
+     * Creates a new {@link Node} holding the data of the node at the given index. The node is not part of any dataset.
+     * New nodes (unique id &lt;= 0) get a fresh unique id, just like when they are read by {@code OsmReader}.
+     * @param index the index
+     * @return a new node
+     */
+    public Node toNode(int index) {
+        checkIndex(index);
+        long id = ids[index];
+        Node n = new Node(id > 0 ? id : 0, versions[index]);
+        short f = flags[index];
+        n.setVisible((f & AbstractPrimitive.FLAG_VISIBLE) != 0);
+        n.keys = keys[index];
+        n.keysChangedImpl(null);
+        n.timestamp = timestamps[index];
+        n.user = users[index];
+        n.setChangesetId(id > 0 ? changesetIds[index] : 0);
+        n.setDeleted((f & AbstractPrimitive.FLAG_DELETED) != 0);
+        n.setModified((f & AbstractPrimitive.FLAG_MODIFIED) != 0);
+        n.setIncomplete((f & AbstractPrimitive.FLAG_INCOMPLETE) != 0);
+        double lat = lats[index];
+        double lon = lons[index];
+        if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+            n.setCoor(new LatLon(lat, lon));
+        }
+        return n;
+    }
+
+    /**
+     * Materializes all stored nodes and adds them to the given dataset at once, see
+     * {@link DataSet#addPrimitives(Collection)}.
+     * @param ds the dataset
+     * @return the created nodes, in store order
+     */
+    public Node[] addTo(DataSet ds) {
+        Node[] result = new Node[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = toNode(i);
+        }
+        ds.addPrimitives(Arrays.asList(result));
+        return result;
+    }
+
+    /**
+     * Replies an estimate of the heap used by this store, in bytes. Shared strings, users and tag arrays are
+     * not counted.
+     * @return estimated number of bytes
+     */
+    public long estimateMemoryUsage() {
+        // 8 (id) + 4 (version) + 4 (changeset) + 4 (timestamp) + 2 (flags) + 2 * 8 (coordinates) + 2 * 4 (references)
+        return (long) ids.length * 46;
+    }
+
+    @Override
+    public Iterator<INode> iterator() {
+        return new Iterator<INode>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public INode next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return new NodeView(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * {@link INode} backed by one row of the store.
+     */
+    private final class NodeView implements INode {
+        private final int index;
+
+        NodeView(int index) {
+            this.index = index;
+        }
+
+        private boolean isFlagSet(int flag) {
+            return (flags[index] & flag) != 0;
+        }
+
+        private void updateFlag(int flag, boolean value) {
+            if (value) {
+                flags[index] |= flag;
+            } else {
+                flags[index] &= ~flag;
+            }
+        }
+
+        @Override
+        public long getUniqueId() {
+            return ids[index];
+        }
+
+        @Override
+        public OsmPrimitiveType getType() {
+            return OsmPrimitiveType.NODE;
+        }
+
+        @Override
+        public boolean isNew() {
+            return ids[index] <= 0;
+        }
+
+        @Override
+        public long getId() {
+            long id = ids[index];
+            return id >= 0 ? id : 0;
+        }
+
+        @Override
+        public PrimitiveId getPrimitiveId() {
+            return new SimplePrimitiveId(ids[index], OsmPrimitiveType.NODE);
+        }
+
+        @Override
+        public int getVersion() {
+            return versions[index];
+        }
+
+        @Override
+        public void setOsmId(long id, int version) {
+            if (id <= 0)
+                throw new IllegalArgumentException(tr("ID > 0 expected. Got {0}.", id));
+            if (version <= 0)
+                throw new IllegalArgumentException(tr("Version > 0 expected. Got {0}.", version));
+            ids[index] = id;
+            versions[index] = version;
+            updateFlag(AbstractPrimitive.FLAG_INCOMPLETE, false);
+        }
+
+        @Override
+        public boolean isModified() {
+            return isFlagSet(AbstractPrimitive.FLAG_MODIFIED);
+        }
+
+        @Override
+        public void setModified(boolean modified) {
+            updateFlag(AbstractPrimitive.FLAG_MODIFIED, modified);
+        }
+
+        @Override
+        public boolean isVisible() {
+            return isFlagSet(AbstractPrimitive.FLAG_VISIBLE);
+        }
+
+        @Override
+        public void setVisible(boolean visible) {
+            if (isNew() && !visible)
+                throw new IllegalStateException(tr("A primitive with ID = 0 cannot be invisible."));
+            updateFlag(AbstractPrimitive.FLAG_VISIBLE, visible);
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return isFlagSet(AbstractPrimitive.FLAG_DELETED);
+        }
+
+        @Override
+        public void setDeleted(boolean deleted) {
+            updateFlag(AbstractPrimitive.FLAG_DELETED, deleted);
+            setModified(deleted ^ !isVisible());
+        }
+
+        @Override
+        public boolean isIncomplete() {
+            return isFlagSet(AbstractPrimitive.FLAG_INCOMPLETE);
+        }
+
+        @Override
+        public boolean isNewOrUndeleted() {
+            return isNew() || (flags[index] & (AbstractPrimitive.FLAG_VISIBLE + AbstractPrimitive.FLAG_DELETED)) == 0;
+        }
+
+        @Override
+        public User getUser() {
+            return users[index];
+        }
+
+        @Override
+        public void setUser(User user) {
+            users[index] = user;
+        }
+
+        @Override
+        public Date getTimestamp() {
+            return new Date(timestamps[index] * 1000L);
+        }
+
+        @Override
+        public void setTimestamp(Date timestamp) {
+            timestamps[index] = (int) (timestamp.getTime() / 1000);
+        }
+
+        @Override
+        public boolean isTimestampEmpty() {
+            return timestamps[index] == 0;
+        }
+
+        @Override
+        public int getChangesetId() {
+            return changesetIds[index];
+        }
+
+        @Override
+        public void setChangesetId(int changesetId) {
+            if (changesetId < 0)
+                throw new IllegalArgumentException(tr("Changeset id >= 0 expected. Got {0}.", changesetId));
+            if (isNew() && changesetId > 0)
+                throw new IllegalStateException(tr("Cannot assign a changesetId > 0 to a new primitive. Value of changesetId is {0}", changesetId));
+            changesetIds[index] = changesetId;
+        }
+
+        @Override
+        public LatLon getCoor() {
+            double lat = lats[index];
+            double lon = lons[index];
+            return Double.isNaN(lat) || Double.isNaN(lon) ? null : new LatLon(lat, lon);
+        }
+
+        @Override
+        public void setCoor(LatLon coor) {
+            lats[index] = coor == null ? Double.NaN : coor.lat();
+            lons[index] = coor == null ? Double.NaN : coor.lon();
+        }
+
+        @Override
+        public EastNorth getEastNorth() {
+            LatLon ll = getCoor();
+            return ll == null ? null : Projections.project(ll);
+        }
+
+        @Override
+        public void setEastNorth(EastNorth eastNorth) {
+            setCoor(eastNorth == null ? null : Projections.inverseProject(eastNorth));
+        }
+
+        @Override
+        public Map<String, String> getKeys() {
+            Map<String, String> result = new HashMap<>();
+            String[] k = keys[index];
+            if (k != null) {
+                for (int i = 0; i < k.length; i += 2) {
+                    result.put(k[i], k[i + 1]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void setKeys(Map<String, String> map) {
+            if (map == null || map.isEmpty()) {
+                keys[index] = null;
+                return;
+            }
+            String[] k = new String[map.size() * 2];
+            int i = 0;
+            for (Entry<String, String> e : map.entrySet()) {
+                k[i++] = e.getKey();
+                k[i++] = e.getValue();
+            }
+            keys[index] = k;
+        }
+
+        @Override
+        public void put(String key, String value) {
+            if (key == null || Utils.strip(key).isEmpty())
+                return;
+            if (value == null) {
+                remove(key);
+                return;
+            }
+            String[] k = keys[index];
+            if (k == null) {
+                keys[index] = new String[] {key, value};
+                return;
+            }
+            for (int i = 0; i < k.length; i += 2) {
+                if (k[i].equals(key)) {
+                    // the array may be shared with a primitive
+                    String[] newKeys = k.clone();
+                    newKeys[i + 1] = value;
+                    keys[index] = newKeys;
+                    return;
+                }
+            }
+            String[] newKeys = Arrays.copyOf(k, k.length + 2);
+            newKeys[k.length] = key;
+            newKeys[k.length + 1] = value;
+            keys[index] = newKeys;
+        }
+
+        @Override
+        public String get(String key) {
+            String[] k = keys[index];
+            if (key == null || k == null)
+                return null;
+            for (int i = 0; i < k.length; i += 2) {
+                if (k[i].equals(key))
+                    return k[i + 1];
+            }
+            return null;
+        }
+
+        @Override
+        public void remove(String key) {
+            Map<String, String> map = getKeys();
+            if (map.remove(key) != null) {
+                setKeys(map);
+            }
+        }
+
+        @Override
+        public boolean hasKeys() {
+            return keys[index] != null;
+        }
+
+        @Override
+        public Collection<String> keySet() {
+            String[] k = keys[index];
+            if (k == null)
+                return Collections.emptySet();
+            Set<String> result = new HashSet<>(k.length / 2);
+            for (int i = 0; i < k.length; i += 2) {
+                result.add(k[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public void removeAll() {
+            keys[index] = null;
+        }
+
+        @Override
+        public String getName() {
+            return get("name");
+        }
+
+        @Override
+        public String getLocalName() {
+            return getName();
+        }
+
+        @Override
+        public void accept(PrimitiveVisitor visitor) {
+            visitor.visit(this);
+        }
+
+        @Override
+        public String toString() {
+            return "{Node id=" + ids[index] + " version=" + versions[index] + " lat=" + lats[index] + ",lon=" + lons[index] + "}";
+        }
+    }
+}
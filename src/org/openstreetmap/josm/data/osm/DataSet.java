@@ -10,6 +10,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -18,7 +19,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.openstreetmap.josm.Main;
@@ -31,6 +31,7 @@ import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
 import org.openstreetmap.josm.data.osm.event.ChangesetIdChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListener;
 import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
@@ -96,34 +97,42 @@ import org.openstreetmap.josm.tools.Utils;
 public final class DataSet implements Data, Cloneable, ProjectionChangeListener {
 
     /**
-     * Maximum number of events that can be fired between beginUpdate/endUpdate to be send as single events (ie without DatasetChangedEvent)
+     * Maximum number of events that can be fired between beginUpdate/endUpdate to be send as single events (ie without DatasetChangedEvent).
+     * More events are merged into a {@link CoalescedDataChangedEvent}.
      */
     private static final int MAX_SINGLE_EVENTS = 30;
 
     /**
-     * Maximum number of events to kept between beginUpdate/endUpdate. When more events are created, that simple DatasetChangedEvent is sent)
+     * Maximum number of merged events to keep between beginUpdate/endUpdate. When more events remain after merging,
+     * a simple DataChangedEvent is sent.
      */
-    private static final int MAX_EVENTS = 1000;
+    private static final int MAX_EVENTS = 100000;
+
 
     private final Storage<OsmPrimitive> allPrimitives = new Storage<>(new Storage.PrimitiveIdHash(), true);
-    private final Map<PrimitiveId, OsmPrimitive> primitivesMap = allPrimitives.foreignKey(new Storage.PrimitiveIdHash());
+    private final PrimitiveIdMap<OsmPrimitive> primitivesMap = new PrimitiveIdMap<>();
     private final CopyOnWriteArrayList<DataSetListener> listeners = new CopyOnWriteArrayList<>();
 
     // provide means to highlight map elements that are not osm primitives
     private Collection<WaySegment> highlightedVirtualNodes = new LinkedList<>();
     private Collection<WaySegment> highlightedWaySegments = new LinkedList<>();
+    private final Set<OsmPrimitive> highlightedPrimitives = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
 
     // Number of open calls to beginUpdate
     private int updateCount;
     // Events that occurred while dataset was locked but should be fired after write lock is released
-    private final List<AbstractDatasetChangedEvent> cachedEvents = new ArrayList<>();
+    private final EventQueue cachedEvents = new EventQueue();
+    // Events of the current thread between beginEventBatch and endEventBatch
+    private final ThreadLocal<EventQueue> batchedEvents = new ThreadLocal<>();
 
     private int highlightUpdateCount;
 
     private boolean uploadDiscouraged = false;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final Object selectionLock = new Object();
+    // the projected coordinates of the nodes for the recently used projections
+    private final ProjectedCoordinateCache projectedCoordinates = new ProjectedCoordinateCache(this);
 
     /**
      * Constructs a new {@code DataSet}.
@@ -191,6 +200,35 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
         return autocomplete;
     }
 
+    /**
+     * Spatial index of way segments, created on demand.
+     */
+    private WaySegmentIndex segmentIndex;
+
+    /**
+     * Returns the spatial index of the segments of all ways of this dataset. The index is shared by all callers,
+     * built when it is first searched and kept up to date afterwards.
+     * @return the segment index
+     */
+    public synchronized WaySegmentIndex getSegmentIndex() {
+        if (segmentIndex == null) {
+            segmentIndex = new WaySegmentIndex(this);
+            addDataSetListener(segmentIndex);
+        }
+        return segmentIndex;
+    }
+
+    /**
+     * Drops the segment index, so that it is neither kept up to date nor held in memory any longer.
+     * The next call of {@link #getSegmentIndex()} builds a new one.
+     */
+    public synchronized void releaseSegmentIndex() {
+        if (segmentIndex != null) {
+            removeDataSetListener(segmentIndex);
+            segmentIndex = null;
+        }
+    }
+
     /**
      * The API version that created this data set, if any.
      */
@@ -260,7 +298,17 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
      * All nodes goes here, even when included in other data (ways etc). This enables the instant
      * conversion of the whole DataSet by iterating over this data structure.
      */
-    private final QuadBuckets<Node> nodes = new QuadBuckets<>();
+    private final SpatialIndex<Node> nodes = createSpatialIndex();
+
+    /**
+     * Creates the spatial index for nodes or ways. The implementation is chosen by the preference
+     * {@code data.spatial-index}: {@code rtree} (default) or {@code quadbuckets}.
+     */
+    private static <T extends OsmPrimitive> SpatialIndex<T> createSpatialIndex() {
+        if (Main.pref != null && "quadbuckets".equals(Main.pref.get("data.spatial-index", "rtree")))
+            return new QuadBuckets<>();
+        return new RTree<>();
+    }
 
     private <T extends OsmPrimitive> Collection<T> getPrimitives(Predicate<OsmPrimitive> predicate) {
         return new SubclassFilteredCollection<>(allPrimitives, predicate);
@@ -306,7 +354,7 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
      *
      * The way nodes are stored only in the way list.
      */
-    private final QuadBuckets<Way> ways = new QuadBuckets<>();
+    private final SpatialIndex<Way> ways = createSpatialIndex();
 
     /**
      * Replies an unmodifiable collection of ways in this dataset
@@ -465,6 +513,7 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
             if (!success)
                 throw new RuntimeException("failed to add primitive: "+primitive);
             allPrimitives.add(primitive);
+            primitivesMap.put(primitive.getUniqueId(), primitive.getType(), primitive);
             primitive.setDataset(this);
             firePrimitivesAdded(Collections.singletonList(primitive), false);
         } finally {
@@ -472,6 +521,49 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
         }
     }
 
+    /**
+     * Adds many primitives to the dataset at once. Unlike calling {@link #addPrimitive(OsmPrimitive)}
+     * for each of them, the spatial index is built in one go and a single event is fired.
+     *
+     * @param primitives the primitives to add
+     */
+    public void addPrimitives(Collection<? extends OsmPrimitive> primitives) {
+        if (primitives.isEmpty())
+            return;
+        beginUpdate();
+        try {
+            // check the whole batch, including duplicates within it, before the dataset is changed
+            Set<PrimitiveId> ids = new HashSet<>();
+            for (OsmPrimitive primitive : primitives) {
+                if (getPrimitiveById(primitive) != null || !ids.add(new SimplePrimitiveId(primitive.getUniqueId(), primitive.getType())))
+                    throw new DataIntegrityProblemException(
+                            tr("Unable to add primitive {0} to the dataset because it is already included", primitive.toString()));
+            }
+            List<Node> newNodes = new ArrayList<>();
+            List<Way> newWays = new ArrayList<>();
+            for (OsmPrimitive primitive : primitives) {
+                primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reinexRelation to work properly)
+                if (primitive instanceof Node) {
+                    newNodes.add((Node) primitive);
+                } else if (primitive instanceof Way) {
+                    newWays.add((Way) primitive);
+                } else if (primitive instanceof Relation) {
+                    relations.add((Relation) primitive);
+                }
+                primitivesMap.put(primitive.getUniqueId(), primitive.getType(), primitive);
+                allPrimitives.add(primitive);
+            }
+            nodes.addAll(newNodes);
+            ways.addAll(newWays);
+            for (OsmPrimitive primitive : primitives) {
+                primitive.setDataset(this);
+            }
+            firePrimitivesAdded(primitives, false);
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * Removes a primitive from the dataset. This method only removes the
      * primitive form the respective collection of primitives managed
@@ -502,6 +594,8 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
                 selectionSnapshot = null;
             }
             allPrimitives.remove(primitive);
+            primitivesMap.remove(primitive);
+            highlightedPrimitives.remove(primitive);
             primitive.setDataset(null);
             firePrimitivesRemoved(Collections.singletonList(primitive), false);
         } finally {
@@ -584,6 +678,16 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
         return Collections.unmodifiableCollection(highlightedWaySegments);
     }
 
+    /**
+     * Returns an unmodifiable collection of the primitives of this dataset which are currently highlighted.
+     *
+     * @return unmodifiable collection of primitives
+     * @see OsmPrimitive#isHighlighted()
+     */
+    public Collection<OsmPrimitive> getHighlightedPrimitives() {
+        return Collections.unmodifiableCollection(highlightedPrimitives);
+    }
+
     /**
      * Replies an unmodifiable collection of primitives currently selected
      * in this dataset, except deleted ones. May be empty, but not null.
@@ -938,7 +1042,7 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
      * @exception NullPointerException thrown, if type is null
      */
     public OsmPrimitive getPrimitiveById(long id, OsmPrimitiveType type) {
-        return getPrimitiveById(new SimplePrimitiveId(id, type));
+        return primitivesMap.get(id, type);
     }
 
     /**
@@ -1150,26 +1254,9 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
         if (updateCount > 0) {
             updateCount--;
             if (updateCount == 0) {
-                List<AbstractDatasetChangedEvent> eventsCopy = new ArrayList<>(cachedEvents);
-                cachedEvents.clear();
+                EventQueue events = cachedEvents.copyAndClear();
                 lock.writeLock().unlock();
-
-                if (!eventsCopy.isEmpty()) {
-                    lock.readLock().lock();
-                    try {
-                        if (eventsCopy.size() < MAX_SINGLE_EVENTS) {
-                            for (AbstractDatasetChangedEvent event: eventsCopy) {
-                                fireEventToListeners(event);
-                            }
-                        } else if (eventsCopy.size() == MAX_EVENTS) {
-                            fireEventToListeners(new DataChangedEvent(this));
-                        } else {
-                            fireEventToListeners(new DataChangedEvent(this, eventsCopy));
-                        }
-                    } finally {
-                        lock.readLock().unlock();
-                    }
-                }
+                events.fire();
             } else {
                 lock.writeLock().unlock();
             }
@@ -1178,6 +1265,49 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
             throw new AssertionError("endUpdate called without beginUpdate");
     }
 
+    /**
+     * Collects the events of all changes the current thread makes until {@link #endEventBatch()}, and fires them
+     * together like {@link #beginUpdate()} does. Unlike an update, the dataset is not locked in between, so other
+     * threads can still read it while the current thread waits, for instance for a dialog. The events of other
+     * threads are fired as usual. Calls can be nested.
+     * <br>
+     * Typical usecase should look like this:
+     * <pre>
+     * ds.beginEventBatch();
+     * try {
+     *   ...
+     * } finally {
+     *   ds.endEventBatch();
+     * }
+     * </pre>
+     */
+    public void beginEventBatch() {
+        EventQueue events = batchedEvents.get();
+        if (events == null) {
+            events = new EventQueue();
+            batchedEvents.set(events);
+        }
+        events.batchCount++;
+    }
+
+    /**
+     * @see DataSet#beginEventBatch()
+     */
+    public void endEventBatch() {
+        EventQueue events = batchedEvents.get();
+        if (events == null)
+            throw new AssertionError("endEventBatch called without beginEventBatch");
+        if (--events.batchCount == 0) {
+            batchedEvents.remove();
+            if (lock.isWriteLockedByCurrentThread()) {
+                // still within an update, its end fires the events
+                cachedEvents.addAll(events);
+            } else {
+                events.fire();
+            }
+        }
+    }
+
     private void fireEventToListeners(AbstractDatasetChangedEvent event) {
         for (DataSetListener listener: listeners) {
             event.fire(listener);
@@ -1187,8 +1317,83 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
     private void fireEvent(AbstractDatasetChangedEvent event) {
         if (updateCount == 0)
             throw new AssertionError("dataset events can be fired only when dataset is locked");
-        if (cachedEvents.size() < MAX_EVENTS) {
-            cachedEvents.add(event);
+        EventQueue batch = batchedEvents.get();
+        (batch != null ? batch : cachedEvents).add(event);
+    }
+
+    /**
+     * The events to fire at the end of an update or of an event batch. Up to {@link #MAX_SINGLE_EVENTS} events are
+     * kept as they are, more are merged into a {@link CoalescedDataChangedEvent}.
+     */
+    private final class EventQueue {
+        private final List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        // merged events, used instead of events when there are too many of them
+        private CoalescedDataChangedEvent coalesced;
+        // number of open calls to beginEventBatch
+        private int batchCount;
+
+        void add(AbstractDatasetChangedEvent event) {
+            if (coalesced != null) {
+                coalesced.add(event);
+                if (coalesced.size() > MAX_EVENTS) {
+                    // drop the merged events, everything is considered changed
+                    coalesced.add(new DataChangedEvent(DataSet.this));
+                }
+            } else {
+                events.add(event);
+                if (events.size() >= MAX_SINGLE_EVENTS) {
+                    coalesced = new CoalescedDataChangedEvent(DataSet.this);
+                    for (AbstractDatasetChangedEvent e : events) {
+                        coalesced.add(e);
+                    }
+                    events.clear();
+                }
+            }
+        }
+
+        void addAll(EventQueue other) {
+            if (other.coalesced != null && other.coalesced.isEverythingChanged()) {
+                add(new DataChangedEvent(DataSet.this));
+            } else if (other.coalesced != null) {
+                for (AbstractDatasetChangedEvent e : other.coalesced.getCoalescedEvents()) {
+                    add(e);
+                }
+            } else {
+                for (AbstractDatasetChangedEvent e : other.events) {
+                    add(e);
+                }
+            }
+        }
+
+        EventQueue copyAndClear() {
+            EventQueue copy = new EventQueue();
+            copy.events.addAll(events);
+            copy.coalesced = coalesced;
+            events.clear();
+            coalesced = null;
+            return copy;
+        }
+
+        /**
+         * Fires the events to the listeners of the dataset, under the read lock.
+         */
+        void fire() {
+            if (coalesced == null && events.isEmpty())
+                return;
+            lock.readLock().lock();
+            try {
+                if (coalesced != null && coalesced.isEverythingChanged()) {
+                    fireEventToListeners(new DataChangedEvent(DataSet.this));
+                } else if (coalesced != null) {
+                    fireEventToListeners(coalesced);
+                } else {
+                    for (AbstractDatasetChangedEvent event: events) {
+                        fireEventToListeners(event);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
         }
     }
 
@@ -1205,18 +1410,21 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
     }
 
     void fireRelationMembersChanged(Relation r) {
+        BBox before = r.getBBox();
         reindexRelation(r);
-        fireEvent(new RelationMembersChangedEvent(this, r));
+        fireEvent(new RelationMembersChangedEvent(this, r, before));
     }
 
     void fireNodeMoved(Node node, LatLon newCoor, EastNorth eastNorth) {
+        LatLon before = node.getCoor();
         reindexNode(node, newCoor, eastNorth);
-        fireEvent(new NodeMovedEvent(this, node));
+        fireEvent(new NodeMovedEvent(this, node, before));
     }
 
     void fireWayNodesChanged(Way way) {
+        BBox before = way.getBBox();
         reindexWay(way);
-        fireEvent(new WayNodesChangedEvent(this, way));
+        fireEvent(new WayNodesChangedEvent(this, way, before));
     }
 
     void fireChangesetIdChanged(OsmPrimitive primitive, int oldChangesetId, int newChangesetId) {
@@ -1225,6 +1433,11 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
 
     void fireHighlightingChanged(OsmPrimitive primitive) {
         highlightUpdateCount++;
+        if (primitive.isHighlighted()) {
+            highlightedPrimitives.add(primitive);
+        } else {
+            highlightedPrimitives.remove(primitive);
+        }
     }
 
     /**
@@ -1270,6 +1483,8 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
                     selectedPrimitives.remove(primitive);
                     selectionSnapshot = null;
                     allPrimitives.remove(primitive);
+                    primitivesMap.remove(primitive);
+                    highlightedPrimitives.remove(primitive);
                     primitive.setDataset(null);
                     changed = true;
                     it.remove();
@@ -1298,6 +1513,8 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
             ways.clear();
             relations.clear();
             allPrimitives.clear();
+            primitivesMap.clear();
+            projectedCoordinates.clear();
         } finally {
             endUpdate();
         }
@@ -1347,7 +1564,12 @@ public final class DataSet implements Data, Cloneable, ProjectionChangeListener
     /* --------------------------------------------------------------------------------- */
     @Override
     public void projectionChanged(Projection oldValue, Projection newValue) {
-        invalidateEastNorthCache();
+        if (newValue == null) {
+            invalidateEastNorthCache();
+            return;
+        }
+        // project all nodes now rather than when the map is painted the next time
+        projectedCoordinates.projectionChanged(oldValue, newValue);
     }
 
     public ProjectionBounds getDataSourceBoundingBox() {
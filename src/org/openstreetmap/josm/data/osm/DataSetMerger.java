@@ -5,26 +5,91 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.conflict.Conflict;
 import org.openstreetmap.josm.data.conflict.ConflictCollection;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * A dataset merger which takes a target and a source dataset and merges the source data set
  * onto the target dataset.
  *
+ * Nodes and ways are merged in two phases: first, it is decided for each source primitive how it is merged.
+ * This only reads both datasets and is done by several threads for big datasets. Then the decisions are applied
+ * in the order of the source primitives, and new primitives are added to the target dataset at once.
+ * Relations can refer to each other, so they are merged one by one.
  */
 public class DataSetMerger {
 
+    /**
+     * The thread pool, created when a merge is decided for the first time. Without preferences, as in command line
+     * tools, the calling thread decides alone.
+     */
+    private static final class ThreadPoolHolder {
+        private static final Pair<Integer, ExecutorService> THREAD_POOL = Main.pref == null
+                ? new Pair<Integer, ExecutorService>(1, null)
+                : Utils.newThreadPool("datasetmerger.numberOfThreads");
+    }
+
+    /** Minimum number of primitives decided by one thread */
+    private static final int MIN_BUCKET_SIZE = 4096;
+
+    /**
+     * How a source primitive is merged onto the target dataset.
+     */
+    private enum Action {
+        /** keep the target primitive as it is */
+        KEEP,
+        /** merge the source primitive into the target primitive */
+        MERGE,
+        /** copy the technical attributes of a new source primitive onto a semantically equal new target primitive */
+        MERGE_TECHNICAL,
+        /** reset the modified flag of the target primitive, which is semantically equal to the source primitive */
+        RESET_MODIFIED,
+        /** mark the target primitive to be deleted */
+        DELETE,
+        /** add a conflict */
+        CONFLICT,
+        /** add a conflict and undelete the deleted target primitive */
+        UNDELETE_CONFLICT,
+        /** fail, the visible attributes of unmodified primitives with same version differ */
+        VISIBLE_CONFLICT,
+        /** ignore the deleted new source primitive */
+        IGNORE,
+        /** add a copy of the source primitive to the target dataset */
+        CREATE
+    }
+
+    /**
+     * The decision how to merge a source primitive.
+     */
+    private static final class Decision {
+        final OsmPrimitive source;
+        final OsmPrimitive target;
+        final Action action;
+
+        Decision(OsmPrimitive source, OsmPrimitive target, Action action) {
+            this.source = source;
+            this.target = target;
+            this.action = action;
+        }
+    }
+
     /** the collection of conflicts created during merging */
     private final ConflictCollection conflicts;
 
@@ -37,12 +102,15 @@ public class DataSetMerger {
      * A map of all primitives that got replaced with other primitives.
      * Key is the PrimitiveId in their dataset, the value is the PrimitiveId in my dataset
      */
-    private final Map<PrimitiveId, PrimitiveId> mergedMap;
+    private final PrimitiveIdMap<PrimitiveId> mergedMap;
     /** a set of primitive ids for which we have to fix references (to nodes and
      * to relation members) after the first phase of merging
      */
     private final Set<PrimitiveId> objectsWithChildrenToMerge;
     private final Set<OsmPrimitive> objectsToDelete;
+    /** the primitives of the conflicts added by this merger, to avoid linear searches in {@link #conflicts} */
+    private final Set<OsmPrimitive> myConflicts = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+    private final Set<OsmPrimitive> theirConflicts = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
 
     /**
      * constructor
@@ -58,7 +126,7 @@ public class DataSetMerger {
         this.targetDataSet = targetDataSet;
         this.sourceDataSet = sourceDataSet;
         conflicts = new ConflictCollection();
-        mergedMap = new HashMap<>();
+        mergedMap = new PrimitiveIdMap<>();
         objectsWithChildrenToMerge = new HashSet<>();
         objectsToDelete = new HashSet<>();
     }
@@ -78,14 +146,96 @@ public class DataSetMerger {
      * @param candidates a set of possible candidates for a new primitive
      */
     protected void mergePrimitive(OsmPrimitive source, Collection<? extends OsmPrimitive> candidates) {
+        OsmPrimitive created = apply(decide(source, candidates));
+        if (created != null) {
+            targetDataSet.addPrimitive(created);
+        }
+    }
+
+    /**
+     * Merges primitives of one type onto the target dataset. The decisions are made by several threads if there
+     * are many primitives. They do not depend on each other, as long as the primitives do not refer to each other.
+     *
+     * @param sources the primitives to merge
+     * @param candidates a set of possible candidates for new primitives
+     * @param progressMonitor The progress monitor, can be null
+     */
+    private void mergePrimitives(List<? extends OsmPrimitive> sources, List<? extends OsmPrimitive> candidates,
+            ProgressMonitor progressMonitor) {
+        List<OsmPrimitive> created = new ArrayList<>();
+        try {
+            for (Decision decision : decideAll(sources, candidates)) {
+                OsmPrimitive target = apply(decision);
+                if (target != null) {
+                    created.add(target);
+                }
+                if (progressMonitor != null) {
+                    progressMonitor.worked(1);
+                }
+            }
+        } finally {
+            targetDataSet.addPrimitives(created);
+        }
+    }
+
+    private List<Decision> decideAll(final List<? extends OsmPrimitive> sources,
+            final List<? extends OsmPrimitive> candidates) {
+        List<Decision> result = new ArrayList<>(sources.size());
+        // do not create the thread pool for small merges
+        final Pair<Integer, ExecutorService> pool = sources.size() <= MIN_BUCKET_SIZE
+                ? null : ThreadPoolHolder.THREAD_POOL;
+        final int bucketsize = pool == null ? MIN_BUCKET_SIZE : Math.max(MIN_BUCKET_SIZE, sources.size()/pool.a/3);
+        final int noBuckets = (sources.size() + bucketsize - 1) / bucketsize;
+        if (pool == null || pool.a == 1 || noBuckets <= 1) {
+            for (OsmPrimitive source : sources) {
+                result.add(decide(source, candidates));
+            }
+            return result;
+        }
+        List<Callable<List<Decision>>> tasks = new ArrayList<>(noBuckets);
+        for (int i=0; i<noBuckets; i++) {
+            final List<? extends OsmPrimitive> bucket =
+                    sources.subList(i*bucketsize, Math.min((i+1)*bucketsize, sources.size()));
+            tasks.add(new Callable<List<Decision>>() {
+                @Override
+                public List<Decision> call() {
+                    List<Decision> decisions = new ArrayList<>(bucket.size());
+                    for (OsmPrimitive source : bucket) {
+                        decisions.add(decide(source, candidates));
+                    }
+                    return decisions;
+                }
+            });
+        }
+        try {
+            for (Future<List<Decision>> future : pool.b.invokeAll(tasks)) {
+                result.addAll(future.get());
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Decides how to merge a source primitive. Does not modify any dataset, so it is safe to call this method from
+     * several threads while the target dataset is locked by the calling thread.
+     *
+     * @param source the primitive to merge
+     * @param candidates a set of possible candidates for a new primitive
+     * @return the decision
+     */
+    private Decision decide(OsmPrimitive source, Collection<? extends OsmPrimitive> candidates) {
         if (!source.isNew() ) {
             // try to merge onto a matching primitive with the same defined id
             //
-            if (mergeById(source))
-                return;
+            OsmPrimitive target = targetDataSet.getPrimitiveById(source.getId(), source.getType());
+            if (target != null)
+                return new Decision(source, target, decideById(source, target));
         } else {
             // ignore deleted primitives from source
-            if (source.isDeleted()) return;
+            if (source.isDeleted())
+                return new Decision(source, null, Action.IGNORE);
 
             // try to merge onto a primitive  which has no id assigned
             // yet but which is equal in its semantic attributes
@@ -94,37 +244,80 @@ public class DataSetMerger {
                 if (!target.isNew() || target.isDeleted()) {
                     continue;
                 }
-                if (target.hasEqualSemanticAttributes(source)) {
-                    mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
-                    // copy the technical attributes from other version
-                    target.setVisible(source.isVisible());
-                    target.setUser(source.getUser());
-                    target.setTimestamp(source.getTimestamp());
-                    target.setModified(source.isModified());
-                    objectsWithChildrenToMerge.add(source.getPrimitiveId());
-                    return;
-                }
+                if (target.hasEqualSemanticAttributes(source))
+                    return new Decision(source, target, Action.MERGE_TECHNICAL);
             }
         }
 
         // If we get here we didn't find a suitable primitive in
         // the target dataset. Create a clone and add it to the target dataset.
         //
-        OsmPrimitive target = null;
-        switch(source.getType()) {
-        case NODE: target = source.isNew() ? new Node() : new Node(source.getId()); break;
-        case WAY: target = source.isNew() ? new Way() : new Way(source.getId()); break;
-        case RELATION: target = source.isNew() ? new Relation() : new Relation(source.getId()); break;
-        default: throw new AssertionError();
+        return new Decision(source, null, Action.CREATE);
+    }
+
+    /**
+     * Applies a decision to the target dataset.
+     * @param decision the decision
+     * @return the primitive to add to the target dataset, or {@code null}
+     */
+    private OsmPrimitive apply(Decision decision) {
+        OsmPrimitive source = decision.source;
+        OsmPrimitive target = decision.target;
+        if (target != null) {
+            // found a corresponding target, remember it
+            mergedMap.put(source.getUniqueId(), source.getType(), target.getPrimitiveId());
+        }
+        switch (decision.action) {
+        case KEEP:
+        case IGNORE:
+            break;
+        case MERGE:
+            target.mergeFrom(source);
+            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            break;
+        case MERGE_TECHNICAL:
+            // copy the technical attributes from other version
+            target.setVisible(source.isVisible());
+            target.setUser(source.getUser());
+            target.setTimestamp(source.getTimestamp());
+            target.setModified(source.isModified());
+            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            break;
+        case RESET_MODIFIED:
+            target.setModified(false);
+            break;
+        case DELETE:
+            objectsToDelete.add(target);
+            break;
+        case CONFLICT:
+            addConflict(target, source);
+            break;
+        case UNDELETE_CONFLICT:
+            addConflict(new Conflict<>(target, source, true));
+            target.setDeleted(false);
+            break;
+        case VISIBLE_CONFLICT:
+            throw new DataIntegrityProblemException(tr("Conflict in ''visible'' attribute for object of type {0} with id {1}",
+                    target.getType(), target.getId()));
+        case CREATE:
+            switch(source.getType()) {
+            case NODE: target = source.isNew() ? new Node() : new Node(source.getId()); break;
+            case WAY: target = source.isNew() ? new Way() : new Way(source.getId()); break;
+            case RELATION: target = source.isNew() ? new Relation() : new Relation(source.getId()); break;
+            default: throw new AssertionError();
+            }
+            target.mergeFrom(source);
+            mergedMap.put(source.getUniqueId(), source.getType(), target.getPrimitiveId());
+            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return target;
+        default:
+            throw new AssertionError();
         }
-        target.mergeFrom(source);
-        targetDataSet.addPrimitive(target);
-        mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
-        objectsWithChildrenToMerge.add(source.getPrimitiveId());
+        return null;
     }
 
     protected OsmPrimitive getMergeTarget(OsmPrimitive mergeSource) throws IllegalStateException {
-        PrimitiveId targetId = mergedMap.get(mergeSource.getPrimitiveId());
+        PrimitiveId targetId = mergedMap.get(mergeSource.getUniqueId(), mergeSource.getType());
         if (targetId == null)
             return null;
         return targetDataSet.getPrimitiveById(targetId);
@@ -133,6 +326,8 @@ public class DataSetMerger {
     protected void addConflict(Conflict<?> c) {
         c.setMergedMap(mergedMap);
         conflicts.add(c);
+        myConflicts.add(c.getMy());
+        theirConflicts.add(c.getTheir());
     }
 
     protected void addConflict(OsmPrimitive my, OsmPrimitive their) {
@@ -151,13 +346,13 @@ public class DataSetMerger {
      */
     public void fixReferences() {
         for (Way w : sourceDataSet.getWays()) {
-            if (!conflicts.hasConflictForTheir(w) && objectsWithChildrenToMerge.contains(w.getPrimitiveId())) {
+            if (!theirConflicts.contains(w) && objectsWithChildrenToMerge.contains(w.getPrimitiveId())) {
                 mergeNodeList(w);
                 fixIncomplete(w);
             }
         }
         for (Relation r : sourceDataSet.getRelations()) {
-            if (!conflicts.hasConflictForTheir(r) && objectsWithChildrenToMerge.contains(r.getPrimitiveId())) {
+            if (!theirConflicts.contains(r) && objectsWithChildrenToMerge.contains(r.getPrimitiveId())) {
                 mergeRelationMembers(r);
             }
         }
@@ -242,7 +437,7 @@ public class DataSetMerger {
             Node targetNode = (Node)getMergeTarget(sourceNode);
             if (targetNode != null) {
                 newNodes.add(targetNode);
-                if (targetNode.isDeleted() && !conflicts.hasConflictForMy(targetNode)) {
+                if (targetNode.isDeleted() && !myConflicts.contains(targetNode)) {
                     addConflict(new Conflict<OsmPrimitive>(targetNode, sourceNode, true));
                     targetNode.setDeleted(false);
                 }
@@ -270,7 +465,7 @@ public class DataSetMerger {
                 throw new IllegalStateException(tr("Missing merge target of type {0} with id {1}", sourceMember.getType(), sourceMember.getUniqueId()));
             RelationMember newMember = new RelationMember(sourceMember.getRole(), targetMember);
             newMembers.add(newMember);
-            if (targetMember.isDeleted() && !conflicts.hasConflictForMy(targetMember)) {
+            if (targetMember.isDeleted() && !myConflicts.contains(targetMember)) {
                 addConflict(new Conflict<>(targetMember, sourceMember.getMember(), true));
                 targetMember.setDeleted(false);
             }
@@ -279,102 +474,86 @@ public class DataSetMerger {
     }
 
     /**
-     * Tries to merge a primitive <code>source</code> into an existing primitive with the same id.
+     * Decides how to merge a primitive <code>source</code> into an existing primitive with the same id.
      *
      * @param source  the source primitive which is to be merged into a target primitive
-     * @return true, if this method was able to merge <code>source</code> into a target object; false, otherwise
+     * @param target  the target primitive with the same id
+     * @return the action to apply
      */
-    private boolean mergeById(OsmPrimitive source) {
-        OsmPrimitive target = targetDataSet.getPrimitiveById(source.getId(), source.getType());
-        // merge other into an existing primitive with the same id, if possible
-        //
-        if (target == null)
-            return false;
-        // found a corresponding target, remember it
-        mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
-
+    private Action decideById(OsmPrimitive source, OsmPrimitive target) {
         if (target.getVersion() > source.getVersion())
             // target.version > source.version => keep target version
-            return true;
+            return Action.KEEP;
 
         if (target.isIncomplete() && !source.isIncomplete()) {
             // target is incomplete, source completes it
             // => merge source into target
             //
-            target.mergeFrom(source);
-            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return Action.MERGE;
         } else if (!target.isIncomplete() && source.isIncomplete()) {
             // target is complete and source is incomplete
             // => keep target, it has more information already
             //
+            return Action.KEEP;
         } else if (target.isIncomplete() && source.isIncomplete()) {
             // target and source are incomplete. Doesn't matter which one to
             // take. We take target.
             //
+            return Action.KEEP;
         } else if (!target.isModified() && !source.isModified() && target.isVisible() != source.isVisible() && target.getVersion() == source.getVersion())
             // Same version, but different "visible" attribute and neither of them are modified.
             // It indicates a serious problem in datasets.
             // For example, datasets can be fetched from different OSM servers or badly hand-modified.
             // We shouldn't merge that datasets.
-            throw new DataIntegrityProblemException(tr("Conflict in ''visible'' attribute for object of type {0} with id {1}",
-                    target.getType(), target.getId()));
+            return Action.VISIBLE_CONFLICT;
         else if (target.isDeleted() && ! source.isDeleted() && target.getVersion() == source.getVersion()) {
             // same version, but target is deleted. Assume target takes precedence
             // otherwise too many conflicts when refreshing from the server
             // but, if source has a referrer that is not in the target dataset there is a conflict
             // If target dataset refers to the deleted primitive, conflict will be added in fixReferences method
             for (OsmPrimitive referrer: source.getReferrers()) {
-                if (targetDataSet.getPrimitiveById(referrer.getPrimitiveId()) == null) {
-                    addConflict(new Conflict<>(target, source, true));
-                    target.setDeleted(false);
-                    break;
-                }
+                if (targetDataSet.getPrimitiveById(referrer.getPrimitiveId()) == null)
+                    return Action.UNDELETE_CONFLICT;
             }
+            return Action.KEEP;
         } else if (! target.isModified() && source.isDeleted()) {
             // target not modified. We can assume that source is the most recent version,
             // so mark it to be deleted.
             //
-            objectsToDelete.add(target);
+            return Action.DELETE;
         } else if (! target.isModified() && source.isModified()) {
             // target not modified. We can assume that source is the most recent version.
             // clone it into target.
-            target.mergeFrom(source);
-            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return Action.MERGE;
         } else if (! target.isModified() && !source.isModified() && target.getVersion() == source.getVersion()) {
             // both not modified. Merge nevertheless.
             // This helps when updating "empty" relations, see #4295
-            target.mergeFrom(source);
-            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return Action.MERGE;
         } else if (! target.isModified() && !source.isModified() && target.getVersion() < source.getVersion()) {
             // my not modified but other is newer. clone other onto mine.
             //
-            target.mergeFrom(source);
-            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return Action.MERGE;
         } else if (target.isModified() && ! source.isModified() && target.getVersion() == source.getVersion()) {
             // target is same as source but target is modified
             // => keep target and reset modified flag if target and source are semantically equal
-            if (target.hasEqualSemanticAttributes(source)) {
-                target.setModified(false);
-            }
+            return target.hasEqualSemanticAttributes(source) ? Action.RESET_MODIFIED : Action.KEEP;
         } else if (source.isDeleted() != target.isDeleted()) {
             // target is modified and deleted state differs.
             // this have to be resolved manually.
             //
-            addConflict(target,source);
+            return Action.CONFLICT;
         } else if (! target.hasEqualSemanticAttributes(source)) {
             // target is modified and is not semantically equal with source. Can't automatically
             // resolve the differences
             // =>  create a conflict
-            addConflict(target,source);
+            return Action.CONFLICT;
         } else {
             // clone from other. mergeFrom will mainly copy
             // technical attributes like timestamp or user information. Semantic
             // attributes should already be equal if we get here.
             //
-            target.mergeFrom(source);
-            objectsWithChildrenToMerge.add(source.getPrimitiveId());
+            return Action.MERGE;
         }
-        return true;
     }
 
     /**
@@ -402,30 +581,15 @@ public class DataSetMerger {
         }
         targetDataSet.beginUpdate();
         try {
-            List<? extends OsmPrimitive> candidates = new ArrayList<>(targetDataSet.getNodes());
-            for (Node node: sourceDataSet.getNodes()) {
-                mergePrimitive(node, candidates);
-                if (progressMonitor != null) {
-                    progressMonitor.worked(1);
-                }
-            }
-            candidates.clear();
-            candidates = new ArrayList<>(targetDataSet.getWays());
-            for (Way way: sourceDataSet.getWays()) {
-                mergePrimitive(way, candidates);
-                if (progressMonitor != null) {
-                    progressMonitor.worked(1);
-                }
-            }
-            candidates.clear();
-            candidates = new ArrayList<>(targetDataSet.getRelations());
+            mergePrimitives(new ArrayList<>(sourceDataSet.getNodes()), new ArrayList<>(targetDataSet.getNodes()), progressMonitor);
+            mergePrimitives(new ArrayList<>(sourceDataSet.getWays()), new ArrayList<>(targetDataSet.getWays()), progressMonitor);
+            List<? extends OsmPrimitive> candidates = new ArrayList<>(targetDataSet.getRelations());
             for (Relation relation: sourceDataSet.getRelations()) {
                 mergePrimitive(relation, candidates);
                 if (progressMonitor != null) {
                     progressMonitor.worked(1);
                 }
             }
-            candidates.clear();
             fixReferences();
         } finally {
             targetDataSet.endUpdate();
@@ -0,0 +1,16 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+/**
+ * Visitor for the key/value pairs of a primitive, see {@link AbstractPrimitive#visitKeys(KeyValueVisitor)}.
+ */
+public interface KeyValueVisitor {
+
+    /**
+     * Visits one key/value pair of a primitive.
+     * @param primitive the primitive
+     * @param key the key
+     * @param value the value
+     */
+    void visitKeyValue(AbstractPrimitive primitive, String key, String value);
+}
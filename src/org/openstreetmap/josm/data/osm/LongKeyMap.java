@@ -0,0 +1,308 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from primitive {@code long} keys to objects, using open addressing with linear probing.
+ *
+ * In contrast to {@code HashMap<Long, V>} neither the keys nor map entries are boxed, so lookups do not allocate
+ * and the memory per entry is only one slot in each of two arrays. Null values are not supported.
+ *
+ * @param <V> type of values
+ * @see PrimitiveIdMap
+ */
+public class LongKeyMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private transient int modCount;
+
+    /**
+     * Constructs a new {@code LongKeyMap}.
+     */
+    public LongKeyMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new {@code LongKeyMap} which can hold the given number of entries without resizing.
+     * @param expectedSize the expected number of entries
+     */
+    public LongKeyMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity - (capacity >> 2) <= expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Replies the value for the given key.
+     * @param key the key
+     * @return the value, or {@code null} if there is no value for this key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = indexOf(key);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    /**
+     * Determines if there is a value for the given key.
+     * @param key the key
+     * @return {@code true} if there is a value for this key
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Associates the value with the given key.
+     * @param key the key
+     * @param value the value, must not be null
+     * @return the previous value for this key, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new NullPointerException("value");
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        modCount++;
+        if (size >= values.length - (values.length >> 2)) {
+            resize(values.length << 1);
+        }
+        return null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j]);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Removes the value for the given key.
+     * @param key the key
+     * @return the removed value, or {@code null} if there was no value for this key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V old = (V) values[i];
+        // backward shift deletion, keeps probe sequences intact without tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Replies the number of entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines if this map is empty.
+     * @return {@code true} if there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        allocate(DEFAULT_CAPACITY);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Replies all keys of this map, in no particular order.
+     * @return a new array containing the keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replies an unmodifiable view of the values of this map.
+     * @return the values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<V>() {
+                    private final Cursor<V> cursor = cursor();
+                    private boolean advanced;
+                    private boolean hasNext;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!advanced) {
+                            hasNext = cursor.next();
+                            advanced = true;
+                        }
+                        return hasNext;
+                    }
+
+                    @Override
+                    public V next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        advanced = false;
+                        return cursor.value();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Replies a cursor over the entries of this map, which allows to iterate over keys and values without allocation.
+     * @return a new cursor, positioned before the first entry
+     */
+    public Cursor<V> cursor() {
+        return new Cursor<>(this);
+    }
+
+    /**
+     * Iterates over the entries of a {@link LongKeyMap}. Usage:
+     * <pre>
+     * LongKeyMap.Cursor&lt;V&gt; c = map.cursor();
+     * while (c.next()) {
+     *     use(c.key(), c.value());
+     * }
+     * </pre>
+     * @param <V> type of values
+     */
+    public static final class Cursor<V> {
+        private final LongKeyMap<V> map;
+        private final int expectedModCount;
+        private int index = -1;
+
+        private Cursor(LongKeyMap<V> map) {
+            this.map = map;
+            this.expectedModCount = map.modCount;
+        }
+
+        /**
+         * Moves to the next entry.
+         * @return {@code true} if there is one, {@code false} if all entries have been visited
+         */
+        public boolean next() {
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Object[] values = map.values;
+            do {
+                index++;
+            } while (index < values.length && values[index] == null);
+            return index < values.length;
+        }
+
+        /**
+         * Replies the key of the current entry.
+         * @return the key
+         */
+        public long key() {
+            return map.keys[index];
+        }
+
+        /**
+         * Replies the value of the current entry.
+         * @return the value
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) map.values[index];
+        }
+    }
+}
@@ -343,6 +343,33 @@ public final class Node extends OsmPrimitive implements INode {
         this.north = Double.NaN;
     }
 
+    /**
+     * Stores the coordinates of this node and the cached projected coordinates as lat, lon, east and north.
+     * To be used only by {@link ProjectedCoordinateCache}.
+     * @param coords the array to store the coordinates in
+     * @param offset the index of the lat coordinate
+     */
+    void saveEastNorth(double[] coords, int offset) {
+        coords[offset] = lat;
+        coords[offset + 1] = lon;
+        coords[offset + 2] = east;
+        coords[offset + 3] = north;
+    }
+
+    /**
+     * Sets the cached projected coordinates stored as by {@link #saveEastNorth}, if the node did not move since and
+     * its projected coordinates have not been cached in the meantime.
+     * To be used only by {@link ProjectedCoordinateCache}.
+     * @param coords the array the coordinates are stored in
+     * @param offset the index of the lat coordinate
+     */
+    void restoreEastNorth(double[] coords, int offset) {
+        if (coords[offset] != lat || coords[offset + 1] != lon || !Double.isNaN(east) || !Double.isNaN(north))
+            return;
+        this.east = coords[offset + 2];
+        this.north = coords[offset + 3];
+    }
+
     @Override
     public boolean concernsArea() {
         // A node cannot be an area
@@ -594,11 +594,12 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
      * @return {@code true} if this primitive is a member of a selected relation, {@code false} otherwise
      */
     public boolean isMemberOfSelected() {
+        Object referrers = this.referrers;
         if (referrers == null)
             return false;
         if (referrers instanceof OsmPrimitive)
             return referrers instanceof Relation && ((OsmPrimitive) referrers).isSelected();
-        for (OsmPrimitive ref : (OsmPrimitive[]) referrers) {
+        for (OsmPrimitive ref : referrerArray(referrers)) {
             if (ref instanceof Relation && ref.isSelected())
                 return true;
         }
@@ -611,13 +612,14 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
      * @since 7621
      */
     public boolean isOuterMemberOfSelected() {
+        Object referrers = this.referrers;
         if (referrers == null)
             return false;
         if (referrers instanceof OsmPrimitive) {
             return isOuterMemberOfMultipolygon((OsmPrimitive) referrers);
         }
-        for (OsmPrimitive ref : (OsmPrimitive[]) referrers) {
-            if (isOuterMemberOfMultipolygon(ref))
+        for (OsmPrimitive ref : referrerArray(referrers)) {
+            if (ref != null && isOuterMemberOfMultipolygon(ref))
                 return true;
         }
         return false;
@@ -952,8 +954,27 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
      * Referrers
      ------------*/
 
+    /**
+     * Maximum number of referrers kept in a plain array. Above, a {@link ReferrerSet} is used, so that
+     * adding and removing referrers of heavily shared primitives does not copy all of them every time.
+     */
+    private static final int MAX_REFERRER_ARRAY_SIZE = 16;
+
+    /**
+     * The referrers: null, a single {@link OsmPrimitive}, an {@code OsmPrimitive[]} of up to
+     * {@link #MAX_REFERRER_ARRAY_SIZE} elements or a {@link ReferrerSet}.
+     */
     private Object referrers;
 
+    /**
+     * Replies the referrers as array, if there is more than one. The array must not be modified.
+     * @param referrers the referrers field
+     * @return the referrer array, a copy if the referrers are kept in a {@link ReferrerSet}
+     */
+    private static OsmPrimitive[] referrerArray(Object referrers) {
+        return referrers instanceof ReferrerSet ? ((ReferrerSet) referrers).toArray() : (OsmPrimitive[]) referrers;
+    }
+
     /**
      * Add new referrer. If referrer is already included then no action is taken
      * @param referrer The referrer to add
@@ -965,12 +986,51 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
             if (referrers != referrer) {
                 referrers = new OsmPrimitive[] { (OsmPrimitive)referrers, referrer };
             }
-        } else {
-            for (OsmPrimitive primitive:(OsmPrimitive[])referrers) {
+        } else if (referrers instanceof OsmPrimitive[]) {
+            OsmPrimitive[] orig = (OsmPrimitive[])referrers;
+            for (OsmPrimitive primitive:orig) {
                 if (primitive == referrer)
                     return;
             }
-            referrers = Utils.addInArrayCopy((OsmPrimitive[])referrers, referrer);
+            if (orig.length < MAX_REFERRER_ARRAY_SIZE) {
+                referrers = Utils.addInArrayCopy(orig, referrer);
+            } else {
+                ReferrerSet set = new ReferrerSet(orig, orig.length + 1);
+                set.add(referrer);
+                referrers = set;
+            }
+        } else {
+            ((ReferrerSet) referrers).add(referrer);
+        }
+    }
+
+    /**
+     * Add many new referrers at once. Referrers which are already included are skipped.
+     *
+     * Unlike calling {@link #addReferrer(OsmPrimitive)} for each of them, the referrers are put into a
+     * {@link ReferrerSet} at once if there are too many for an array.
+     * @param newReferrers The referrers to add
+     */
+    protected void addReferrers(Collection<? extends OsmPrimitive> newReferrers) {
+        OsmPrimitive[] orig;
+        if (referrers == null) {
+            orig = new OsmPrimitive[0];
+        } else if (referrers instanceof OsmPrimitive) {
+            orig = new OsmPrimitive[] { (OsmPrimitive) referrers };
+        } else if (referrers instanceof OsmPrimitive[]) {
+            orig = (OsmPrimitive[]) referrers;
+        } else {
+            ((ReferrerSet) referrers).addAll(newReferrers);
+            return;
+        }
+        if (orig.length + newReferrers.size() <= MAX_REFERRER_ARRAY_SIZE) {
+            for (OsmPrimitive referrer : newReferrers) {
+                addReferrer(referrer);
+            }
+        } else {
+            ReferrerSet set = new ReferrerSet(orig, orig.length + newReferrers.size());
+            set.addAll(newReferrers);
+            referrers = set;
         }
     }
 
@@ -1003,6 +1063,12 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
                 System.arraycopy(orig, idx+1, smaller, idx, smaller.length-idx);
                 referrers = smaller;
             }
+        } else if (referrers instanceof ReferrerSet) {
+            ReferrerSet set = (ReferrerSet) referrers;
+            // shrink only well below the threshold, so that alternating adds and removes do not convert every time
+            if (set.remove(referrer) && set.size() <= MAX_REFERRER_ARRAY_SIZE / 2) {
+                referrers = set.toArray();
+            }
         }
     }
 
@@ -1037,8 +1103,8 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
                     result.add(ref);
                 }
             } else {
-                for (OsmPrimitive o:(OsmPrimitive[])referrers) {
-                    if (dataSet == o.dataSet) {
+                for (OsmPrimitive o:referrerArray(referrers)) {
+                    if (o != null && dataSet == o.dataSet) {
                         result.add(o);
                     }
                 }
@@ -1058,17 +1124,18 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
      */
     public void visitReferrers(Visitor visitor){
         if (visitor == null) return;
-        if (this.referrers == null)
+        Object referrers = this.referrers;
+        if (referrers == null)
             return;
-        else if (this.referrers instanceof OsmPrimitive) {
-            OsmPrimitive ref = (OsmPrimitive) this.referrers;
+        else if (referrers instanceof OsmPrimitive) {
+            OsmPrimitive ref = (OsmPrimitive) referrers;
             if (ref.dataSet == dataSet) {
                 ref.accept(visitor);
             }
-        } else if (this.referrers instanceof OsmPrimitive[]) {
-            OsmPrimitive[] refs = (OsmPrimitive[]) this.referrers;
+        } else {
+            OsmPrimitive[] refs = referrerArray(referrers);
             for (OsmPrimitive ref: refs) {
-                if (ref.dataSet == dataSet) {
+                if (ref != null && ref.dataSet == dataSet) {
                     ref.accept(visitor);
                 }
             }
@@ -1089,8 +1156,8 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
             return n<=1 && referrers instanceof Way && ((OsmPrimitive)referrers).dataSet == dataSet;
         else {
             int counter=0;
-            for (OsmPrimitive o : (OsmPrimitive[])referrers) {
-                if (dataSet == o.dataSet && o instanceof Way) {
+            for (OsmPrimitive o : referrerArray(referrers)) {
+                if (o != null && dataSet == o.dataSet && o instanceof Way) {
                     if (++counter >= n)
                         return true;
                 }
@@ -1166,7 +1233,8 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Comparab
         // We cannot directly use Arrays.equals(keys, other.keys) as keys is not ordered by key
         // but we can at least check if both arrays are null or of the same size before creating
         // and comparing the key maps (costly operation, see #7159)
-        return (keys == null && other.keys == null)
+        // Arrays shared through TagSetPool are identical
+        return keys == other.keys
                 || (keys != null && other.keys != null && keys.length == other.keys.length
                         && (keys.length == 0 || getInterestingTags().equals(other.getInterestingTags())));
     }
@@ -0,0 +1,191 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map from {@link PrimitiveId}s to objects, backed by one {@link LongKeyMap} per primitive type.
+ *
+ * Use {@link #get(long, OsmPrimitiveType)} to look up values without creating a {@link PrimitiveId} first.
+ * Null keys and values are not supported.
+ *
+ * @param <V> type of values
+ */
+public class PrimitiveIdMap<V> extends AbstractMap<PrimitiveId, V> {
+
+    private static final OsmPrimitiveType[] TYPES = {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+
+    private final LongKeyMap<V> nodes = new LongKeyMap<>();
+    private final LongKeyMap<V> ways = new LongKeyMap<>();
+    private final LongKeyMap<V> relations = new LongKeyMap<>();
+
+    /**
+     * Replies the map holding the values of the given primitive type, keyed by unique id.
+     * @param type the primitive type
+     * @return the map for this type
+     */
+    public LongKeyMap<V> getMap(OsmPrimitiveType type) {
+        LongKeyMap<V> map = mapFor(type);
+        if (map == null)
+            throw new IllegalArgumentException(type.toString());
+        return map;
+    }
+
+    private LongKeyMap<V> mapFor(OsmPrimitiveType type) {
+        switch (type) {
+        case NODE:
+            return nodes;
+        case WAY:
+            return ways;
+        case RELATION:
+            return relations;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Replies the value for the given unique id and primitive type.
+     * @param uniqueId the unique id
+     * @param type the primitive type
+     * @return the value, or {@code null}
+     */
+    public V get(long uniqueId, OsmPrimitiveType type) {
+        LongKeyMap<V> map = mapFor(type);
+        return map != null ? map.get(uniqueId) : null;
+    }
+
+    /**
+     * Associates the value with the given unique id and primitive type.
+     * @param uniqueId the unique id
+     * @param type the primitive type
+     * @param value the value, must not be null
+     * @return the previous value, or {@code null}
+     */
+    public V put(long uniqueId, OsmPrimitiveType type, V value) {
+        return getMap(type).put(uniqueId, value);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof PrimitiveId))
+            return null;
+        PrimitiveId id = (PrimitiveId) key;
+        return get(id.getUniqueId(), id.getType());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(PrimitiveId key, V value) {
+        return put(key.getUniqueId(), key.getType(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof PrimitiveId))
+            return null;
+        PrimitiveId id = (PrimitiveId) key;
+        LongKeyMap<V> map = mapFor(id.getType());
+        return map != null ? map.remove(id.getUniqueId()) : null;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size() + ways.size() + relations.size();
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        ways.clear();
+        relations.clear();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new EntryIterator<V>() {
+                    @Override
+                    protected V current() {
+                        return cursor.value();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PrimitiveIdMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<PrimitiveId, V>> entrySet() {
+        return new AbstractSet<Map.Entry<PrimitiveId, V>>() {
+            @Override
+            public Iterator<Map.Entry<PrimitiveId, V>> iterator() {
+                return new EntryIterator<Map.Entry<PrimitiveId, V>>() {
+                    @Override
+                    protected Map.Entry<PrimitiveId, V> current() {
+                        return new SimpleImmutableEntry<PrimitiveId, V>(
+                                new SimplePrimitiveId(cursor.key(), TYPES[type]), cursor.value());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PrimitiveIdMap.this.size();
+            }
+        };
+    }
+
+    private abstract class EntryIterator<E> implements Iterator<E> {
+        protected int type;
+        protected LongKeyMap.Cursor<V> cursor = nodes.cursor();
+        private boolean advanced;
+        private boolean hasNext;
+
+        protected abstract E current();
+
+        @Override
+        public boolean hasNext() {
+            if (!advanced) {
+                hasNext = cursor.next();
+                while (!hasNext && type < TYPES.length - 1) {
+                    type++;
+                    cursor = getMap(TYPES[type]).cursor();
+                    hasNext = cursor.next();
+                }
+                advanced = true;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            advanced = false;
+            return current();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Remembers the state of a primitive so that it can be restored later, for instance when a command is undone.
+ *
+ * Unlike {@link PrimitiveData} returned by {@link OsmPrimitive#save()}, this class does not copy the tags, way nodes
+ * or relation members. It shares the arrays of the primitive, which are never modified in place but replaced on
+ * every change. So the state of an unchanged primitive costs a few references, and the arrays of a changed
+ * primitive are only kept once, by the state which needs them.
+ * {@link #restore(OsmPrimitive)} only writes the fields which differ from the current state of the primitive.
+ */
+public final class PrimitiveState {
+
+    private final String[] keys;
+    private final int timestamp;
+    private final User user;
+    private final int changesetId;
+    private final int version;
+    private final boolean deleted;
+    private final boolean visible;
+    private final boolean modified;
+    private final boolean incomplete;
+    /** the coordinates of a node */
+    private final LatLon coor;
+    /** the nodes of a way */
+    private final Node[] nodes;
+    /** the members of a relation */
+    private final RelationMember[] members;
+
+    /**
+     * Constructs a new {@code PrimitiveState} holding the current state of the given primitive.
+     * @param primitive the primitive
+     */
+    public PrimitiveState(OsmPrimitive primitive) {
+        keys = primitive.keys;
+        timestamp = primitive.timestamp;
+        user = primitive.user;
+        changesetId = primitive.changesetId;
+        version = primitive.version;
+        deleted = primitive.isDeleted();
+        visible = primitive.isVisible();
+        modified = primitive.isModified();
+        incomplete = primitive.isIncomplete();
+        coor = primitive instanceof Node && !incomplete ? ((Node) primitive).getCoor() : null;
+        nodes = primitive instanceof Way ? ((Way) primitive).getNodesArray() : null;
+        members = primitive instanceof Relation ? ((Relation) primitive).getMembersArray() : null;
+    }
+
+    /**
+     * Restores the remembered state of the given primitive. Fields that have not been changed are left untouched,
+     * so that no events are fired for them.
+     * @param primitive the primitive this state has been created for
+     */
+    public void restore(OsmPrimitive primitive) {
+        boolean locked = primitive.writeLock();
+        try {
+            if (primitive.keys != keys) {
+                primitive.setKeysArray(keys);
+            }
+            if (primitive.timestamp != timestamp) {
+                primitive.setTimestamp(new Date(timestamp * 1000L));
+            }
+            primitive.user = user;
+            primitive.setChangesetId(changesetId);
+            if (primitive.isDeleted() != deleted) {
+                primitive.setDeleted(deleted);
+            }
+            if (primitive.isVisible() != visible) {
+                primitive.setVisible(visible);
+            }
+            primitive.setModified(modified);
+            primitive.setIncomplete(incomplete);
+            primitive.version = version;
+            if (primitive instanceof Node) {
+                Node node = (Node) primitive;
+                LatLon current = incomplete ? null : node.getCoor();
+                if (current == null ? coor != null : !current.equals(coor)) {
+                    node.setCoor(coor);
+                }
+            } else if (primitive instanceof Way) {
+                Way way = (Way) primitive;
+                if (way.getNodesArray() != nodes) {
+                    for (Node node : nodes) {
+                        if (node.getDataSet() != primitive.getDataSet())
+                            throw new AssertionError("Data consistency problem - way with missing node detected");
+                    }
+                    way.setNodes(Arrays.asList(nodes));
+                }
+            } else if (primitive instanceof Relation) {
+                Relation relation = (Relation) primitive;
+                if (relation.getMembersArray() != members) {
+                    for (RelationMember member : members) {
+                        if (member.getMember().getDataSet() != primitive.getDataSet())
+                            throw new AssertionError("Data consistency problem - relation with missing member detected");
+                    }
+                    relation.setMembers(Arrays.asList(members));
+                }
+            }
+        } finally {
+            primitive.writeUnlock(locked);
+        }
+    }
+
+    /**
+     * Replies the remembered state as {@link PrimitiveData}.
+     * @param primitive the primitive this state has been created for
+     * @return the remembered state of {@code primitive}
+     */
+    public PrimitiveData toData(OsmPrimitive primitive) {
+        PrimitiveData data = primitive.save();
+        data.keys = keys;
+        data.timestamp = timestamp;
+        data.setUser(user);
+        data.setChangesetId(changesetId);
+        data.setVersion(version);
+        data.setDeleted(deleted);
+        data.setVisible(visible);
+        data.setModified(modified);
+        data.setIncomplete(incomplete);
+        if (data instanceof NodeData) {
+            ((NodeData) data).setCoor(coor);
+        } else if (data instanceof WayData) {
+            Long[] ids = new Long[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                ids[i] = nodes[i].getUniqueId();
+            }
+            ((WayData) data).setNodes(Arrays.asList(ids));
+        } else if (data instanceof RelationData) {
+            RelationMemberData[] memberData = new RelationMemberData[members.length];
+            for (int i = 0; i < members.length; i++) {
+                memberData[i] = new RelationMemberData(members[i].getRole(), members[i].getMember());
+            }
+            ((RelationData) data).setMembers(Arrays.asList(memberData));
+        }
+        return data;
+    }
+
+    /**
+     * Replies an estimate of the number of bytes held by this state. Arrays which are shared with the current state
+     * of the primitive are not counted, as they are not kept alive by this state.
+     * @param primitive the primitive this state has been created for
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedSize(OsmPrimitive primitive) {
+        long size = 56;
+        if (coor != null) {
+            size += 32;
+        }
+        if (keys != null && keys != primitive.keys) {
+            size += 16 + 4 * keys.length;
+            for (String s : keys) {
+                size += 40 + 2 * s.length();
+            }
+        }
+        if (nodes != null && nodes != ((Way) primitive).getNodesArray()) {
+            size += 16 + 4 * nodes.length;
+        }
+        if (members != null && members != ((Relation) primitive).getMembersArray()) {
+            size += 16 + 28 * members.length;
+        }
+        return size;
+    }
+}
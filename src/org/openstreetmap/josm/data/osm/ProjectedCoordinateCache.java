@@ -0,0 +1,226 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Projected coordinates of the nodes of a dataset for the recently used projections.
+ *
+ * When the projection changes, the east/north coordinates cached by the nodes are saved for the old projection,
+ * and all nodes are projected at once by several threads, instead of one by one when the map is painted the next
+ * time. The projection runs on copies of the coordinates, without holding the lock of the dataset. When switching back to a recently used projection, the saved coordinates of the nodes which did not move
+ * in the meantime are restored without projecting them again.
+ */
+final class ProjectedCoordinateCache {
+
+    /** Minimum number of nodes projected by one thread */
+    private static final int MIN_CHUNK_SIZE = 4096;
+    /** Number of values saved per node: lat, lon, east and north */
+    private static final int STRIDE = 4;
+
+    /**
+     * The thread pool, created when many nodes are projected for the first time.
+     */
+    private static final class ThreadPoolHolder {
+        private static final Pair<Integer, ExecutorService> THREAD_POOL = Main.pref == null
+                ? new Pair<Integer, ExecutorService>(1, null)
+                : Utils.newThreadPool("projection.reprojection.numberOfThreads");
+    }
+
+    /**
+     * The coordinates of the nodes of the dataset at the time a projection was left. The nodes are kept by their
+     * unique id, so that the snapshot does not keep nodes which have been removed from the dataset since.
+     */
+    private static final class Snapshot {
+        private final long[] ids;
+        private final double[] coords;
+
+        Snapshot(Collection<Node> nodes) {
+            this.ids = new long[nodes.size()];
+            this.coords = new double[ids.length * STRIDE];
+            int i = 0;
+            for (Node n : nodes) {
+                ids[i] = n.getUniqueId();
+                n.saveEastNorth(coords, i * STRIDE);
+                i++;
+            }
+        }
+    }
+
+    private final DataSet data;
+    /** the snapshots by projection code, the least recently left projection first */
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+
+    ProjectedCoordinateCache(DataSet data) {
+        this.data = data;
+    }
+
+    /**
+     * Replies the number of projections whose coordinates are kept, besides the current one.
+     * @return the number of projections
+     */
+    private static int getMaxSize() {
+        return Main.pref == null ? 1 : Main.pref.getInteger("projection.reprojection.cache-size", 1);
+    }
+
+    /**
+     * Saves the projected coordinates of the nodes for the old projection and projects the nodes with the new one.
+     *
+     * The dataset is locked only to copy and invalidate the coordinates of the nodes, and again to set the projected
+     * ones. The nodes are projected in between, so that the dataset can be read and changed meanwhile. Nodes whose
+     * coordinates are needed before are projected on demand, nodes moved in the meantime keep the coordinates
+     * projected on demand.
+     * @param oldValue the old projection, can be {@code null}
+     * @param newValue the new projection
+     * @return the number of nodes which have been projected, the coordinates of the others are restored
+     */
+    int projectionChanged(Projection oldValue, Projection newValue) {
+        Snapshot saved = snapshots.remove(newValue.toCode());
+        List<Node> nodes;
+        Snapshot current;
+        Node[] savedNodes = null;
+        data.beginUpdate();
+        try {
+            nodes = new ArrayList<>(data.getNodes());
+            current = new Snapshot(nodes);
+            for (Node n : nodes) {
+                n.invalidateEastNorthCache();
+            }
+            if (saved != null) {
+                // the node could have been removed from the dataset in the meantime
+                savedNodes = new Node[saved.ids.length];
+                for (int i = 0; i < savedNodes.length; i++) {
+                    savedNodes[i] = (Node) data.getPrimitiveById(saved.ids[i], OsmPrimitiveType.NODE);
+                }
+            }
+        } finally {
+            data.endUpdate();
+        }
+
+        int maxSize = getMaxSize();
+        if (oldValue != null && maxSize > 0) {
+            snapshots.remove(oldValue.toCode());
+            snapshots.put(oldValue.toCode(), current);
+            for (Iterator<String> it = snapshots.keySet().iterator(); snapshots.size() > maxSize;) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        double[] coords = new double[current.coords.length];
+        for (int i = 0; i < coords.length; i += STRIDE) {
+            coords[i] = current.coords[i];
+            coords[i + 1] = current.coords[i + 1];
+            coords[i + 2] = Double.NaN;
+            coords[i + 3] = Double.NaN;
+        }
+        if (saved != null) {
+            restore(nodes, coords, saved, savedNodes);
+        }
+        // the restored nodes are skipped
+        int projected = project(coords, newValue);
+
+        data.beginUpdate();
+        try {
+            for (int i = 0; i < nodes.size(); i++) {
+                nodes.get(i).restoreEastNorth(coords, i * STRIDE);
+            }
+        } finally {
+            data.endUpdate();
+        }
+        return projected;
+    }
+
+    /**
+     * Copies the saved projected coordinates of the nodes which did not move since the snapshot has been taken.
+     */
+    private static void restore(List<Node> nodes, double[] coords, Snapshot saved, Node[] savedNodes) {
+        Map<Node, Integer> indexes = new IdentityHashMap<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            indexes.put(nodes.get(i), i);
+        }
+        for (int i = 0; i < savedNodes.length; i++) {
+            Integer index = savedNodes[i] == null ? null : indexes.get(savedNodes[i]);
+            if (index == null)
+                continue;
+            int from = i * STRIDE;
+            int to = index * STRIDE;
+            if (coords[to] == saved.coords[from] && coords[to + 1] == saved.coords[from + 1]) {
+                coords[to + 2] = saved.coords[from + 2];
+                coords[to + 3] = saved.coords[from + 3];
+            }
+        }
+    }
+
+    /**
+     * Forgets the saved coordinates of all projections.
+     */
+    void clear() {
+        snapshots.clear();
+    }
+
+    private static int project(final double[] coords, final Projection projection) {
+        final int size = coords.length / STRIDE;
+        if (size <= MIN_CHUNK_SIZE)
+            return project(coords, projection, 0, size);
+        final Pair<Integer, ExecutorService> pool = ThreadPoolHolder.THREAD_POOL;
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, size / pool.a / 3);
+        final int noChunks = (size + chunkSize - 1) / chunkSize;
+        if (pool.a == 1 || noChunks <= 1)
+            return project(coords, projection, 0, size);
+        List<Callable<Integer>> tasks = new ArrayList<>(noChunks);
+        for (int i = 0; i < noChunks; i++) {
+            final int from = i * chunkSize;
+            final int to = Math.min(size, from + chunkSize);
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return project(coords, projection, from, to);
+                }
+            });
+        }
+        int projected = 0;
+        try {
+            for (Future<Integer> future : pool.b.invokeAll(tasks)) {
+                projected += future.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+        return projected;
+    }
+
+    /**
+     * Projects the coordinates of the nodes {@code from} (inclusive) to {@code to} (exclusive) which are known and
+     * have not been restored.
+     */
+    private static int project(double[] coords, Projection projection, int from, int to) {
+        int projected = 0;
+        for (int i = from * STRIDE; i < to * STRIDE; i += STRIDE) {
+            if (Double.isNaN(coords[i]) || Double.isNaN(coords[i + 1]) || !Double.isNaN(coords[i + 2]))
+                continue;
+            EastNorth en = projection.latlon2eastNorth(new LatLon(coords[i], coords[i + 1]));
+            coords[i + 2] = en.east();
+            coords[i + 3] = en.north();
+            projected++;
+        }
+        return projected;
+    }
+}
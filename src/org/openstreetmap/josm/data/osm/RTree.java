@@ -0,0 +1,617 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * R-tree spatial index for primitives.
+ *
+ * When many primitives are added at once (see {@link #addAll(Collection)}), the tree is built with the
+ * Sort-Tile-Recursive algorithm, which produces a packed and balanced tree in O(n log n). Afterwards
+ * primitives are inserted and removed one by one, nodes are split along their longer axis on overflow.
+ *
+ * Tree nodes are copied on write once they are shared with a {@link #snapshot()}, so taking a snapshot is O(1)
+ * and a snapshot never changes, no matter how the tree is modified afterwards.
+ *
+ * Note: bbox of primitives added to the tree has to stay the same. In case of coordinate change, primitive must
+ * be removed and readded.
+ *
+ * This class is not thread safe. Snapshots can be read by any number of threads.
+ *
+ * @param <T> type of primitives
+ */
+public class RTree<T extends OsmPrimitive> extends AbstractCollection<T> implements SpatialIndex<T> {
+
+    /**
+     * Maximum number of entries per tree node.
+     */
+    public static final int NODE_CAPACITY = 16;
+
+    /**
+     * Tree node. Stores its children (primitives for leaves, tree nodes otherwise) along with their bounds.
+     */
+    private static final class RNode {
+        private final boolean leaf;
+        // the node may only be modified by a tree whose epoch is the same, otherwise it is shared with a snapshot
+        private final int epoch;
+        private int count;
+        // one additional slot to hold the overflowing entry until the node is split
+        private final Object[] children = new Object[NODE_CAPACITY + 1];
+        // xmin, ymin, xmax, ymax of each child
+        private final double[] bounds = new double[4 * (NODE_CAPACITY + 1)];
+
+        RNode(boolean leaf, int epoch) {
+            this.leaf = leaf;
+            this.epoch = epoch;
+        }
+
+        RNode(RNode copy, int epoch) {
+            this(copy.leaf, epoch);
+            this.count = copy.count;
+            System.arraycopy(copy.children, 0, children, 0, count);
+            System.arraycopy(copy.bounds, 0, bounds, 0, 4 * count);
+        }
+
+        void append(Object child, double x0, double y0, double x1, double y1) {
+            int j = 4 * count;
+            bounds[j] = x0;
+            bounds[j + 1] = y0;
+            bounds[j + 2] = x1;
+            bounds[j + 3] = y1;
+            children[count++] = child;
+        }
+
+        void append(Entry e) {
+            append(e.child, e.x0, e.y0, e.x1, e.y1);
+        }
+
+        void removeAt(int i) {
+            count--;
+            System.arraycopy(children, i + 1, children, i, count - i);
+            System.arraycopy(bounds, 4 * (i + 1), bounds, 4 * i, 4 * (count - i));
+            children[count] = null;
+        }
+
+        void extend(int i, double x0, double y0, double x1, double y1) {
+            int j = 4 * i;
+            bounds[j] = Math.min(bounds[j], x0);
+            bounds[j + 1] = Math.min(bounds[j + 1], y0);
+            bounds[j + 2] = Math.max(bounds[j + 2], x1);
+            bounds[j + 3] = Math.max(bounds[j + 3], y1);
+        }
+
+        /**
+         * Sets the bounds of child {@code i} to the union of the bounds of the entries of {@code child}.
+         */
+        void updateBounds(int i, RNode child) {
+            double[] b = new double[4];
+            child.union(b);
+            System.arraycopy(b, 0, bounds, 4 * i, 4);
+        }
+
+        void union(double[] result) {
+            double x0 = Double.POSITIVE_INFINITY;
+            double y0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY;
+            double y1 = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < 4 * count; j += 4) {
+                x0 = Math.min(x0, bounds[j]);
+                y0 = Math.min(y0, bounds[j + 1]);
+                x1 = Math.max(x1, bounds[j + 2]);
+                y1 = Math.max(y1, bounds[j + 3]);
+            }
+            result[0] = x0;
+            result[1] = y0;
+            result[2] = x1;
+            result[3] = y1;
+        }
+
+        Entry entry(int i) {
+            int j = 4 * i;
+            return new Entry(children[i], bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3]);
+        }
+    }
+
+    /**
+     * Child together with its bounds, used while building and splitting nodes.
+     */
+    private static final class Entry {
+        private final Object child;
+        private final double x0, y0, x1, y1;
+
+        Entry(Object child, double x0, double y0, double x1, double y1) {
+            this.child = child;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        Entry(RNode node) {
+            double[] b = new double[4];
+            node.union(b);
+            this.child = node;
+            this.x0 = b[0];
+            this.y0 = b[1];
+            this.x1 = b[2];
+            this.y1 = b[3];
+        }
+
+        double centerX() {
+            return x0 + x1;
+        }
+
+        double centerY() {
+            return y0 + y1;
+        }
+    }
+
+    private static final Comparator<Entry> X_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Double.compare(a.centerX(), b.centerX());
+        }
+    };
+
+    private static final Comparator<Entry> Y_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Double.compare(a.centerY(), b.centerY());
+        }
+    };
+
+    private final boolean readOnly;
+    private RNode root;
+    private int size;
+    private int epoch;
+
+    /**
+     * Constructs a new empty {@code RTree}.
+     */
+    public RTree() {
+        readOnly = false;
+        clear();
+    }
+
+    /**
+     * Constructs a new {@code RTree} containing the given primitives. The tree is bulk-loaded.
+     * @param objects the primitives to add
+     */
+    public RTree(Collection<? extends T> objects) {
+        this();
+        addAll(objects);
+    }
+
+    private RTree(RNode root, int size) {
+        this.readOnly = true;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Replies an unmodifiable view of the current content of this tree. Later modifications of this tree
+     * do not affect the snapshot, which can thus be searched and iterated without any locking.
+     * @return a read-only snapshot of this tree
+     */
+    public RTree<T> snapshot() {
+        if (readOnly)
+            return this;
+        RTree<T> result = new RTree<>(root, size);
+        // all existing nodes are shared now
+        epoch++;
+        return result;
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("RTree snapshots are read-only");
+    }
+
+    private RNode writable(RNode node) {
+        return node.epoch == epoch ? node : new RNode(node, epoch);
+    }
+
+    @Override
+    public final void clear() {
+        checkWritable();
+        root = new RNode(true, epoch);
+        size = 0;
+    }
+
+    private static Entry entry(OsmPrimitive o) {
+        if (o instanceof Node) {
+            // avoids creating a BBox, node without coords -> bbox[0,0,0,0]
+            LatLon c = ((Node) o).getCoor();
+            double x = c == null ? 0 : c.lon();
+            double y = c == null ? 0 : c.lat();
+            return new Entry(o, x, y, x, y);
+        }
+        BBox b = o.getBBox();
+        return new Entry(o, b.getTopLeftLon(), b.getBottomRightLat(), b.getBottomRightLon(), b.getTopLeftLat());
+    }
+
+    @Override
+    public boolean add(T o) {
+        checkWritable();
+        Entry e = entry(o);
+        root = writable(root);
+        RNode sibling = insert(root, e);
+        if (sibling != null) {
+            RNode newRoot = new RNode(false, epoch);
+            newRoot.append(new Entry(root));
+            newRoot.append(new Entry(sibling));
+            root = newRoot;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all given primitives. If at least as many primitives are added as the tree already contains,
+     * the whole tree is rebuilt with the Sort-Tile-Recursive algorithm, otherwise they are inserted one by one.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> objects) {
+        checkWritable();
+        if (objects.isEmpty())
+            return false;
+        if (objects.size() < size) {
+            for (T o : objects) {
+                add(o);
+            }
+            return true;
+        }
+        List<Entry> entries = new ArrayList<>(size + objects.size());
+        for (T o : this) {
+            entries.add(entry(o));
+        }
+        for (T o : objects) {
+            entries.add(entry(o));
+        }
+        bulkLoad(entries);
+        return true;
+    }
+
+    private void bulkLoad(List<Entry> entries) {
+        int total = entries.size();
+        List<RNode> level = pack(entries, true);
+        while (level.size() > 1) {
+            List<Entry> upper = new ArrayList<>(level.size());
+            for (RNode n : level) {
+                upper.add(new Entry(n));
+            }
+            level = pack(upper, false);
+        }
+        root = level.isEmpty() ? new RNode(true, epoch) : level.get(0);
+        size = total;
+    }
+
+    /**
+     * Sort-Tile-Recursive packing of one tree level: sorts the entries into vertical slices by x and
+     * fills the nodes of each slice in y order.
+     */
+    private List<RNode> pack(List<Entry> entries, boolean leaf) {
+        int n = entries.size();
+        int nodeCount = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * NODE_CAPACITY;
+        Entry[] unsorted = entries.toArray(new Entry[n]);
+        Entry[] sorted = new Entry[n];
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = sortKey(unsorted[i].centerX(), i);
+        }
+        sort(keys, 0, n, unsorted, sorted);
+        List<RNode> result = new ArrayList<>(nodeCount);
+        for (int start = 0; start < n; start += sliceSize) {
+            int end = Math.min(n, start + sliceSize);
+            for (int i = start; i < end; i++) {
+                keys[i] = sortKey(sorted[i].centerY(), i);
+                unsorted[i] = sorted[i];
+            }
+            sort(keys, start, end, unsorted, sorted);
+            RNode node = null;
+            for (int i = start; i < end; i++) {
+                if (node == null || node.count == NODE_CAPACITY) {
+                    node = new RNode(leaf, epoch);
+                    result.add(node);
+                }
+                node.append(sorted[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Combines a coordinate (sum of min and max, so between -360 and 360) quantized to 31 bits with the index
+     * of the entry. Sorting these longs is a lot faster than sorting the entries with a comparator and the
+     * precision of about 2 cm is more than enough to build the tiles.
+     */
+    private static long sortKey(double center, int index) {
+        double scaled = (center + 360) * (Integer.MAX_VALUE / 720.0);
+        long quantized = scaled <= 0 ? 0 : scaled >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) scaled;
+        return (quantized << 32) | index;
+    }
+
+    private static void sort(long[] keys, int start, int end, Entry[] from, Entry[] to) {
+        Arrays.sort(keys, start, end);
+        for (int i = start; i < end; i++) {
+            to[i] = from[(int) keys[i]];
+        }
+    }
+
+    private static double area(double x0, double y0, double x1, double y1) {
+        return x0 > x1 || y0 > y1 ? 0 : (x1 - x0) * (y1 - y0);
+    }
+
+    private static int chooseSubtree(RNode node, Entry e) {
+        int best = 0;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+        double[] b = node.bounds;
+        for (int i = 0; i < node.count; i++) {
+            int j = 4 * i;
+            double a = area(b[j], b[j + 1], b[j + 2], b[j + 3]);
+            double enlargement = area(Math.min(b[j], e.x0), Math.min(b[j + 1], e.y0),
+                    Math.max(b[j + 2], e.x1), Math.max(b[j + 3], e.y1)) - a;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && a < bestArea)) {
+                best = i;
+                bestEnlargement = enlargement;
+                bestArea = a;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Inserts the entry below the given writable node.
+     * @return the new sibling of {@code node} if it had to be split, null otherwise
+     */
+    private RNode insert(RNode node, Entry e) {
+        if (node.leaf) {
+            node.append(e);
+        } else {
+            int i = chooseSubtree(node, e);
+            RNode child = writable((RNode) node.children[i]);
+            node.children[i] = child;
+            node.extend(i, e.x0, e.y0, e.x1, e.y1);
+            RNode sibling = insert(child, e);
+            if (sibling != null) {
+                node.updateBounds(i, child);
+                node.append(new Entry(sibling));
+            }
+        }
+        return node.count > NODE_CAPACITY ? split(node) : null;
+    }
+
+    /**
+     * Splits an overflowing node in two halves along the axis in which the centers of its entries are spread most.
+     * @return the new node holding the second half
+     */
+    private RNode split(RNode node) {
+        Entry[] entries = new Entry[node.count];
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < entries.length; i++) {
+            Entry e = node.entry(i);
+            entries[i] = e;
+            minX = Math.min(minX, e.centerX());
+            maxX = Math.max(maxX, e.centerX());
+            minY = Math.min(minY, e.centerY());
+            maxY = Math.max(maxY, e.centerY());
+        }
+        Arrays.sort(entries, maxX - minX >= maxY - minY ? X_ORDER : Y_ORDER);
+        RNode sibling = new RNode(node.leaf, epoch);
+        node.count = 0;
+        Arrays.fill(node.children, null);
+        int half = entries.length / 2;
+        for (int i = 0; i < entries.length; i++) {
+            (i < half ? node : sibling).append(entries[i]);
+        }
+        return sibling;
+    }
+
+    private static boolean contains(double[] b, int j, Entry e) {
+        return b[j] <= e.x0 && b[j + 1] <= e.y0 && b[j + 2] >= e.x1 && b[j + 3] >= e.y1;
+    }
+
+    /**
+     * Searches the leaf containing {@code o}.
+     * @return the index of {@code o} in the leaf {@code path[depth]}, or -1. {@code indices} is filled with
+     * the index of each node of the path in its parent
+     */
+    private static int findPath(RNode node, Object o, Entry e, RNode[] path, int[] indices, int depth) {
+        path[depth] = node;
+        for (int i = 0; i < node.count; i++) {
+            if (!contains(node.bounds, 4 * i, e)) {
+                continue;
+            }
+            if (node.leaf) {
+                if (node.children[i].equals(o))
+                    return i;
+            } else {
+                int found = findPath((RNode) node.children[i], o, e, path, indices, depth + 1);
+                if (found >= 0) {
+                    indices[depth] = i;
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes entry {@code index} of the leaf at the end of {@code path}. The nodes on the path are replaced
+     * by writable copies if necessary, {@code path} is updated accordingly.
+     * @param condense if true, empty nodes are removed from the tree, otherwise the tree structure stays the same
+     */
+    private void removeAt(RNode[] path, int[] indices, int leafDepth, int index, boolean condense) {
+        for (int d = 0; d <= leafDepth; d++) {
+            RNode node = writable(path[d]);
+            if (d == 0) {
+                root = node;
+            } else {
+                path[d - 1].children[indices[d - 1]] = node;
+            }
+            path[d] = node;
+        }
+        path[leafDepth].removeAt(index);
+        for (int d = leafDepth - 1; d >= 0; d--) {
+            RNode child = path[d + 1];
+            if (condense && child.count == 0) {
+                path[d].removeAt(indices[d]);
+            } else {
+                path[d].updateBounds(indices[d], child);
+            }
+        }
+        size--;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        checkWritable();
+        if (!(o instanceof OsmPrimitive))
+            return false;
+        int height = getHeight();
+        RNode[] path = new RNode[height];
+        int[] indices = new int[height];
+        int index = findPath(root, o, entry((OsmPrimitive) o), path, indices, 0);
+        if (index < 0)
+            return false;
+        removeAt(path, indices, height - 1, index, true);
+        if (size == 0) {
+            // drops empty leaves left behind by the iterator
+            clear();
+        }
+        while (!root.leaf && root.count == 1) {
+            root = (RNode) root.children[0];
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof OsmPrimitive && contains(root, o, entry((OsmPrimitive) o));
+    }
+
+    private static boolean contains(RNode node, Object o, Entry e) {
+        for (int i = 0; i < node.count; i++) {
+            if (contains(node.bounds, 4 * i, e)
+                    && (node.leaf ? node.children[i].equals(o) : contains((RNode) node.children[i], o, e)))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<T> search(BBox bbox) {
+        List<T> result = new ArrayList<>();
+        search(root, bbox.getTopLeftLon(), bbox.getBottomRightLat(), bbox.getBottomRightLon(), bbox.getTopLeftLat(), result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void search(RNode node, double x0, double y0, double x1, double y1, List<T> result) {
+        double[] b = node.bounds;
+        for (int i = 0; i < node.count; i++) {
+            int j = 4 * i;
+            if (b[j] > x1 || b[j + 2] < x0 || b[j + 1] > y1 || b[j + 3] < y0) {
+                continue;
+            }
+            if (node.leaf) {
+                result.add((T) node.children[i]);
+            } else {
+                search((RNode) node.children[i], x0, y0, x1, y1, result);
+            }
+        }
+    }
+
+    /**
+     * Replies the height of the tree, mainly for diagnostic purposes.
+     * @return the number of levels, 1 for a tree consisting of the root leaf only
+     */
+    public int getHeight() {
+        int height = 1;
+        for (RNode n = root; !n.leaf; n = (RNode) n.children[0]) {
+            height++;
+        }
+        return height;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new RTreeIterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Depth first iterator over the leaves. Removing a primitive keeps empty nodes in the tree, so the
+     * position of the iterator stays valid.
+     */
+    private class RTreeIterator implements Iterator<T> {
+        // path[0] is the root, path[depth] the current node
+        private final RNode[] path;
+        // index of the child visited in each node of the path, for the leaf the index of the next primitive
+        private final int[] indices;
+        private int depth;
+        private boolean removable;
+
+        RTreeIterator() {
+            int height = getHeight();
+            path = new RNode[height];
+            indices = new int[height];
+            path[0] = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                RNode node = path[depth];
+                if (indices[depth] < node.count) {
+                    if (node.leaf)
+                        return true;
+                    depth++;
+                    path[depth] = (RNode) node.children[indices[depth - 1]];
+                    indices[depth] = 0;
+                } else if (depth == 0) {
+                    return false;
+                } else {
+                    depth--;
+                    indices[depth]++;
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            removable = true;
+            return (T) path[depth].children[indices[depth]++];
+        }
+
+        @Override
+        public void remove() {
+            checkWritable();
+            if (!removable)
+                throw new IllegalStateException();
+            indices[depth]--;
+            removeAt(path, indices, depth, indices[depth], false);
+            removable = false;
+        }
+    }
+}
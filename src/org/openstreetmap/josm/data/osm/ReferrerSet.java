@@ -0,0 +1,141 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Collection;
+
+/**
+ * Identity hash set of the referrers of a primitive which is referred by many other primitives,
+ * like a junction node or a way which is a member of many relations.
+ *
+ * Unlike the plain referrer array, adding and removing a referrer does not copy the whole set.
+ * The elements are kept in an open addressing table, which is changed in place. All methods are synchronized,
+ * so that readers which do not hold the dataset lock, like the map renderer, always see a consistent set.
+ * They iterate over a copy made by {@link #toArray()}.
+ *
+ * @see OsmPrimitive#getReferrers()
+ */
+final class ReferrerSet {
+
+    private OsmPrimitive[] table;
+    private int size;
+
+    ReferrerSet(OsmPrimitive[] referrers, int expectedSize) {
+        table = new OsmPrimitive[capacityFor(Math.max(referrers.length, expectedSize))];
+        for (OsmPrimitive referrer : referrers) {
+            add(referrer);
+        }
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = 16;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int slot(OsmPrimitive referrer, int mask) {
+        int h = System.identityHashCode(referrer);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized boolean contains(OsmPrimitive referrer) {
+        OsmPrimitive[] t = table;
+        int mask = t.length - 1;
+        for (int i = slot(referrer, mask); t[i] != null; i = (i + 1) & mask) {
+            if (t[i] == referrer)
+                return true;
+        }
+        return false;
+    }
+
+    synchronized boolean add(OsmPrimitive referrer) {
+        OsmPrimitive[] t = table;
+        int mask = t.length - 1;
+        int i = slot(referrer, mask);
+        while (t[i] != null) {
+            if (t[i] == referrer)
+                return false;
+            i = (i + 1) & mask;
+        }
+        if ((size + 1) * 2 > t.length) {
+            resize(t.length * 2);
+            return add(referrer);
+        }
+        t[i] = referrer;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds many referrers, growing the table at most once.
+     * @param referrers the referrers to add
+     */
+    synchronized void addAll(Collection<? extends OsmPrimitive> referrers) {
+        int capacity = capacityFor(size + referrers.size());
+        if (capacity > table.length) {
+            resize(capacity);
+        }
+        for (OsmPrimitive referrer : referrers) {
+            add(referrer);
+        }
+    }
+
+    private void resize(int capacity) {
+        OsmPrimitive[] old = table;
+        OsmPrimitive[] t = new OsmPrimitive[capacity];
+        int mask = capacity - 1;
+        for (OsmPrimitive referrer : old) {
+            if (referrer != null) {
+                int i = slot(referrer, mask);
+                while (t[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                t[i] = referrer;
+            }
+        }
+        table = t;
+    }
+
+    synchronized boolean remove(OsmPrimitive referrer) {
+        OsmPrimitive[] t = table;
+        int mask = t.length - 1;
+        int i = slot(referrer, mask);
+        while (t[i] != referrer) {
+            if (t[i] == null)
+                return false;
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion, keeps probe sequences intact without tombstones
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (t[j] == null) {
+                break;
+            }
+            int home = slot(t[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                t[i] = t[j];
+                i = j;
+            }
+        }
+        t[i] = null;
+        size--;
+        return true;
+    }
+
+    synchronized OsmPrimitive[] toArray() {
+        OsmPrimitive[] result = new OsmPrimitive[size];
+        int n = 0;
+        for (OsmPrimitive referrer : table) {
+            if (referrer != null) {
+                result[n++] = referrer;
+            }
+        }
+        return result;
+    }
+}
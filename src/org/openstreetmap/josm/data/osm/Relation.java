@@ -37,6 +37,14 @@ public final class Relation extends OsmPrimitive implements IRelation {
         return new CopyList<>(members);
     }
 
+    /**
+     * Replies the internal member array. It must not be modified, changes replace the whole array.
+     * @return the member array
+     */
+    RelationMember[] getMembersArray() {
+        return members;
+    }
+
     /**
      *
      * @param members Can be null, in that case all members are removed
@@ -116,7 +124,10 @@ public final class Relation extends OsmPrimitive implements IRelation {
         boolean locked = writeLock();
         try {
             RelationMember originalMember = members[index];
-            members[index] = member;
+            // copy the array, it may be shared by a PrimitiveState
+            RelationMember[] newMembers = members.clone();
+            newMembers[index] = member;
+            members = newMembers;
             if (originalMember.getMember() != member.getMember()) {
                 member.getMember().addReferrer(this);
                 member.getMember().clearCachedStyle();
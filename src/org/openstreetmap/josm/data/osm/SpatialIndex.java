@@ -0,0 +1,34 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A collection of primitives which can be searched by bounding box.
+ *
+ * Note: bbox of primitives added to a spatial index has to stay the same. In case of coordinate change, primitive must
+ * be removed and readded.
+ *
+ * @param <T> type of primitives
+ * @see QuadBuckets
+ * @see RTree
+ */
+public interface SpatialIndex<T extends OsmPrimitive> extends Collection<T> {
+
+    /**
+     * Searches for primitives whose bounding box intersects the given one.
+     * @param bbox the bounding box
+     * @return list of primitives in the given bbox. Can be empty but not null
+     */
+    List<T> search(BBox bbox);
+
+    /**
+     * Adds all given primitives. Implementations may build their structure in one go instead of
+     * inserting the primitives one by one, so prefer this method when adding many primitives.
+     * @param objects the primitives to add
+     * @return true if this collection changed
+     */
+    @Override
+    boolean addAll(Collection<? extends T> objects);
+}
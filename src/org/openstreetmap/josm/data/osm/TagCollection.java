@@ -72,8 +72,8 @@ public class TagCollection implements Iterable<Tag> {
         TagCollection ret = new TagCollection();
         if (tags == null) return ret;
         for (Entry<String,String> entry: tags.entrySet()) {
-            String key = entry.getKey() == null? "" : entry.getKey();
-            String value = entry.getValue() == null ? "" : entry.getValue();
+            String key = entry.getKey() == null? "" : TagSetPool.internString(entry.getKey());
+            String value = entry.getValue() == null ? "" : TagSetPool.internString(entry.getValue());
             ret.add(new Tag(key,value));
         }
         return ret;
@@ -0,0 +1,261 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Global pool of canonical tag sets and tag strings.
+ *
+ * Many primitives carry exactly the same tags (think of millions of {@code building=yes}). As the key/value
+ * arrays of {@link AbstractPrimitive} are never modified once they are assigned (copy-on-write), identical
+ * arrays can be shared between all primitives. The same applies to the key and value strings read from files.
+ *
+ * The pool only holds weak references: tag sets and strings which are not used by any primitive anymore
+ * are garbage collected as usual.
+ *
+ * Tag sets are compared regardless of the order of their key/value pairs. They are interned once they are
+ * complete, see {@link AbstractPrimitive#setKeys(java.util.Map)}, not for every single tag which is added.
+ */
+public final class TagSetPool {
+
+    private static final WeakPool<String[]> tagSets = new WeakPool<>(new Hash<String[], String[]>() {
+        @Override
+        public int getHashCode(String[] k) {
+            // sum of the hashes of the pairs, which does not depend on their order
+            int h = 0;
+            for (int i = 0; i < k.length; i += 2) {
+                h += 31 * k[i].hashCode() + k[i + 1].hashCode();
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(String[] k, String[] t) {
+            if (k.length != t.length)
+                return false;
+            // keys are unique within a tag set, so each pair of k must be found in t
+            outer: for (int i = 0; i < k.length; i += 2) {
+                for (int j = 0; j < t.length; j += 2) {
+                    if (k[i].equals(t[j])) {
+                        if (!k[i + 1].equals(t[j + 1]))
+                            return false;
+                        continue outer;
+                    }
+                }
+                return false;
+            }
+            return true;
+        }
+    });
+
+    private static final WeakPool<String> strings = new WeakPool<>(new Hash<String, String>() {
+        @Override
+        public int getHashCode(String k) {
+            return k.hashCode();
+        }
+
+        @Override
+        public boolean equals(String k, String t) {
+            return k.equals(t);
+        }
+    });
+
+    private static long tagSetRequests;
+    private static long tagSetHits;
+    private static long tagSetSavedBytes;
+    private static long stringRequests;
+    private static long stringHits;
+    private static long stringSavedBytes;
+
+    private TagSetPool() {
+        // Hide default constructor for utils classes
+    }
+
+    /**
+     * Replies the canonical instance of the given key/value array. The array must not be modified afterwards.
+     * @param keys alternating keys and values, with unique keys, can be null
+     * @return the shared array with the same pairs as {@code keys} in any order, or {@code keys} itself if it is
+     * the first of its kind
+     */
+    public static String[] intern(String[] keys) {
+        if (keys == null)
+            return null;
+        synchronized (tagSets) {
+            tagSetRequests++;
+            String[] result = tagSets.intern(keys);
+            if (result != keys) {
+                tagSetHits++;
+                // array header and one reference per key and value
+                tagSetSavedBytes += 16 + 4L * keys.length;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Replies the canonical instance of the given key or value string.
+     * @param s the string, can be null
+     * @return the shared string equal to {@code s}, or {@code s} itself if it is the first of its kind
+     */
+    public static String internString(String s) {
+        if (s == null)
+            return null;
+        synchronized (strings) {
+            stringRequests++;
+            String result = strings.intern(s);
+            if (result != s) {
+                stringHits++;
+                // string object and its char array
+                stringSavedBytes += 40 + 2L * s.length();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Replies the number of distinct tag sets currently alive in the pool.
+     * @return the number of distinct tag sets
+     */
+    public static int getTagSetCount() {
+        synchronized (tagSets) {
+            return tagSets.size();
+        }
+    }
+
+    /**
+     * Replies the fraction of tag set lookups which were answered by an already shared array.
+     * @return deduplication ratio between 0 and 1
+     */
+    public static double getTagSetDeduplicationRatio() {
+        synchronized (tagSets) {
+            return tagSetRequests == 0 ? 0 : (double) tagSetHits / tagSetRequests;
+        }
+    }
+
+    /**
+     * Replies the fraction of string lookups which were answered by an already shared string.
+     * @return deduplication ratio between 0 and 1
+     */
+    public static double getStringDeduplicationRatio() {
+        synchronized (strings) {
+            return stringRequests == 0 ? 0 : (double) stringHits / stringRequests;
+        }
+    }
+
+    /**
+     * Replies an estimate of the heap saved by sharing tag sets and strings since the application started.
+     * Objects which have been garbage collected in the meantime are counted as well.
+     * @return estimated number of bytes saved
+     */
+    public static long getEstimatedSavedBytes() {
+        long result;
+        synchronized (tagSets) {
+            result = tagSetSavedBytes;
+        }
+        synchronized (strings) {
+            result += stringSavedBytes;
+        }
+        return result;
+    }
+
+    /**
+     * Minimal weak hash set which replies the already contained equivalent instance.
+     * Unlike {@link Storage}, entries do not prevent garbage collection.
+     * @param <T> type of pooled objects
+     */
+    private static final class WeakPool<T> {
+
+        private static final int INITIAL_CAPACITY = 1 << 10;
+
+        private final Hash<T, T> hash;
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+        private Entry<T>[] table;
+        private int size;
+
+        WeakPool(Hash<T, T> hash) {
+            this.hash = hash;
+            this.table = newTable(INITIAL_CAPACITY);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Entry<T>[] newTable(int capacity) {
+            return new Entry[capacity];
+        }
+
+        private static int indexFor(int h, int length) {
+            h ^= (h >>> 20) ^ (h >>> 12);
+            h ^= (h >>> 7) ^ (h >>> 4);
+            return h & (length - 1);
+        }
+
+        int size() {
+            expungeStaleEntries();
+            return size;
+        }
+
+        T intern(T t) {
+            expungeStaleEntries();
+            int h = hash.getHashCode(t);
+            int idx = indexFor(h, table.length);
+            for (Entry<T> e = table[idx]; e != null; e = e.next) {
+                if (e.hash == h) {
+                    T candidate = e.get();
+                    if (candidate != null && hash.equals(candidate, t))
+                        return candidate;
+                }
+            }
+            table[idx] = new Entry<>(t, h, queue, table[idx]);
+            if (++size > table.length * 3 / 4) {
+                resize();
+            }
+            return t;
+        }
+
+        private void resize() {
+            Entry<T>[] newTable = newTable(table.length * 2);
+            for (Entry<T> e : table) {
+                while (e != null) {
+                    Entry<T> next = e.next;
+                    int idx = indexFor(e.hash, newTable.length);
+                    e.next = newTable[idx];
+                    newTable[idx] = e;
+                    e = next;
+                }
+            }
+            table = newTable;
+        }
+
+        private void expungeStaleEntries() {
+            Reference<? extends T> ref;
+            while ((ref = queue.poll()) != null) {
+                Entry<?> stale = (Entry<?>) ref;
+                int idx = indexFor(stale.hash, table.length);
+                Entry<T> prev = null;
+                for (Entry<T> e = table[idx]; e != null; prev = e, e = e.next) {
+                    if (e == stale) {
+                        if (prev == null) {
+                            table[idx] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        size--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private static final class Entry<T> extends WeakReference<T> {
+            private final int hash;
+            private Entry<T> next;
+
+            Entry(T referent, int hash, ReferenceQueue<T> queue, Entry<T> next) {
+                super(referent, queue);
+                this.hash = hash;
+                this.next = next;
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +34,7 @@ public final class Way extends OsmPrimitive implements IWay {
      */
     private Node[] nodes = new Node[0];
     private BBox bbox;
+    private volatile Object renderingCache;
 
     /**
      *
@@ -45,6 +47,14 @@ public final class Way extends OsmPrimitive implements IWay {
         return new CopyList<>(nodes);
     }
 
+    /**
+     * Replies the internal node array. It must not be modified, changes replace the whole array.
+     * @return the node array
+     */
+    Node[] getNodesArray() {
+        return nodes;
+    }
+
     /**
      * Set new list of nodes to way. This method is preferred to multiple calls to addNode/removeNode
      * and similar methods because nodes are internally saved as array which means lower memory overhead
@@ -77,6 +87,59 @@ public final class Way extends OsmPrimitive implements IWay {
         }
     }
 
+    /**
+     * Sets the nodes of many ways, like {@link #setNodes(List)} for each of them. Readers use this to wire up the
+     * parsed ways: the ways are registered as referrers of a node shared by many of them in one step.
+     * @param ways the ways. They must not be part of a dataset yet
+     * @param nodes the new nodes of each way, in the order of {@code ways}. An element can be null, in that
+     * case all nodes of the way are removed
+     * @throws IllegalArgumentException if the lists differ in size or a way is part of a dataset
+     */
+    @SuppressWarnings("unchecked")
+    public static void setNodes(List<Way> ways, List<List<Node>> nodes) {
+        if (ways.size() != nodes.size())
+            throw new IllegalArgumentException("Got " + nodes.size() + " node lists for " + ways.size() + " ways");
+        // the ways referring to each node: a single way or a list of ways
+        Map<Node, Object> referrers = new IdentityHashMap<>();
+        for (int i = 0; i < ways.size(); i++) {
+            Way w = ways.get(i);
+            if (w.getDataSet() != null)
+                throw new IllegalArgumentException("Way " + w.getUniqueId() + " is part of a dataset");
+            for (Node node : w.nodes) {
+                node.removeReferrer(w);
+                node.clearCachedStyle();
+            }
+            List<Node> wayNodes = nodes.get(i);
+            w.nodes = wayNodes == null ? new Node[0] : wayNodes.toArray(new Node[wayNodes.size()]);
+            for (Node node : w.nodes) {
+                Object r = referrers.get(node);
+                if (r == null) {
+                    referrers.put(node, w);
+                } else if (r instanceof Way) {
+                    if (r != w) {
+                        List<Way> list = new ArrayList<>(4);
+                        list.add((Way) r);
+                        list.add(w);
+                        referrers.put(node, list);
+                    }
+                } else {
+                    ((List<Way>) r).add(w);
+                }
+            }
+            w.clearCachedStyle();
+            w.fireNodesChanged();
+        }
+        for (Map.Entry<Node, Object> e : referrers.entrySet()) {
+            Node node = e.getKey();
+            if (e.getValue() instanceof Way) {
+                node.addReferrer((Way) e.getValue());
+            } else {
+                node.addReferrers((List<Way>) e.getValue());
+            }
+            node.clearCachedStyle();
+        }
+    }
+
     /**
      * Prevent directly following identical nodes in ways.
      */
@@ -611,6 +674,7 @@ public final class Way extends OsmPrimitive implements IWay {
     }
 
     private void fireNodesChanged() {
+        renderingCache = null;
         checkNodes();
         if (getDataSet() != null) {
             getDataSet().fireWayNodesChanged(this);
@@ -636,6 +700,24 @@ public final class Way extends OsmPrimitive implements IWay {
     @Override
     public void updatePosition() {
         bbox = new BBox(this);
+        renderingCache = null;
+    }
+
+    /**
+     * Replies the data cached by the renderer for this way, e.g. its simplified geometries.
+     * @return the cached data, {@code null} if none has been stored since the way changed
+     */
+    public Object getRenderingCache() {
+        return renderingCache;
+    }
+
+    /**
+     * Sets the data cached by the renderer for this way. It is cleared when the nodes of the way change
+     * or one of its nodes is moved.
+     * @param renderingCache the data to cache, opaque to the way
+     */
+    public void setRenderingCache(Object renderingCache) {
+        this.renderingCache = renderingCache;
     }
 
     /**
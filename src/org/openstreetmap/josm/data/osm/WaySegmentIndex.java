@@ -0,0 +1,310 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+
+/**
+ * Spatial index of the segments of ways, so that geometry checks do not need to build their own grid.
+ *
+ * Segments are stored in a hierarchical grid: each segment is put into the finest level where its bounding box
+ * covers at most 2x2 cells, so that long segments do not fill thousands of cells. An index obtained by
+ * {@link DataSet#getSegmentIndex()} contains the segments of all non-deleted ways of the dataset and is kept up
+ * to date through {@link DataSetListener} events; it is only built when first searched.
+ * An index created by the default constructor only contains the ways added to it.
+ *
+ * @see DataSet#getSegmentIndex()
+ */
+public class WaySegmentIndex implements DataSetListener {
+
+    /** Cell size of the finest level in degrees, about 200 m */
+    private static final double CELL_SIZE = 0.002;
+    /** Factor between cell sizes of consecutive levels */
+    private static final int LEVEL_FACTOR = 4;
+    /** Number of levels, cells of the coarsest level are larger than the world */
+    private static final int LEVELS = 9;
+
+    private final DataSet dataSet;
+    private final LongKeyMap<List<WaySegment>> cells = new LongKeyMap<>();
+    private final Map<Way, long[]> wayCells = new IdentityHashMap<>();
+    private final int[] levelCounts = new int[LEVELS];
+    private boolean valid;
+
+    /**
+     * Constructs a new, empty {@code WaySegmentIndex}. Ways have to be added with {@link #addWay(Way)}.
+     */
+    public WaySegmentIndex() {
+        this(null);
+    }
+
+    WaySegmentIndex(DataSet dataSet) {
+        this.dataSet = dataSet;
+        this.valid = dataSet == null;
+    }
+
+    private static double cellSize(int level) {
+        double size = CELL_SIZE;
+        for (int i = 0; i < level; i++) {
+            size *= LEVEL_FACTOR;
+        }
+        return size;
+    }
+
+    private static long key(int level, long x, long y) {
+        return ((long) level << 58) | ((x & 0x1FFFFFFFL) << 29) | (y & 0x1FFFFFFFL);
+    }
+
+    private static int level(double lonMin, double latMin, double lonMax, double latMax) {
+        double size = CELL_SIZE;
+        for (int level = 0; level < LEVELS - 1; level++) {
+            if (Math.floor(lonMax / size) - Math.floor(lonMin / size) <= 1
+                    && Math.floor(latMax / size) - Math.floor(latMin / size) <= 1)
+                return level;
+            size *= LEVEL_FACTOR;
+        }
+        return LEVELS - 1;
+    }
+
+    /**
+     * Adds the segments of a way to this index. Segments with nodes without coordinates are skipped.
+     * @param w the way
+     */
+    public synchronized void addWay(Way w) {
+        removeWay(w);
+        int nodesCount = w.getNodesCount();
+        if (nodesCount < 2)
+            return;
+        long[] keys = new long[nodesCount * 4];
+        int n = 0;
+        for (int i = 0; i < nodesCount - 1; i++) {
+            LatLon a = w.getNode(i).getCoor();
+            LatLon b = w.getNode(i + 1).getCoor();
+            if (a == null || b == null) {
+                continue;
+            }
+            double lonMin = Math.min(a.lon(), b.lon());
+            double lonMax = Math.max(a.lon(), b.lon());
+            double latMin = Math.min(a.lat(), b.lat());
+            double latMax = Math.max(a.lat(), b.lat());
+            int level = level(lonMin, latMin, lonMax, latMax);
+            double size = cellSize(level);
+            WaySegment segment = new WaySegment(w, i);
+            for (long x = (long) Math.floor(lonMin / size); x <= (long) Math.floor(lonMax / size); x++) {
+                for (long y = (long) Math.floor(latMin / size); y <= (long) Math.floor(latMax / size); y++) {
+                    long key = key(level, x, y);
+                    List<WaySegment> list = cells.get(key);
+                    if (list == null) {
+                        list = new ArrayList<>(4);
+                        cells.put(key, list);
+                    }
+                    list.add(segment);
+                    levelCounts[level]++;
+                    if (n == keys.length) {
+                        keys = Arrays.copyOf(keys, n * 2);
+                    }
+                    keys[n++] = key;
+                }
+            }
+        }
+        if (n > 0) {
+            wayCells.put(w, Arrays.copyOf(keys, n));
+        }
+    }
+
+    /**
+     * Removes the segments of a way from this index.
+     * @param w the way
+     */
+    public synchronized void removeWay(Way w) {
+        long[] keys = wayCells.remove(w);
+        if (keys == null)
+            return;
+        for (long key : keys) {
+            List<WaySegment> list = cells.get(key);
+            if (list == null) {
+                continue;
+            }
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).way == w) {
+                    list.remove(i);
+                    levelCounts[(int) (key >>> 58)]--;
+                }
+            }
+            if (list.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Searches for segments whose bounding box intersects the given one.
+     * @param bbox the bounding box
+     * @return the segments, can be empty but not null
+     */
+    public List<WaySegment> search(BBox bbox) {
+        return search(bbox.getTopLeftLon(), bbox.getBottomRightLat(), bbox.getBottomRightLon(), bbox.getTopLeftLat());
+    }
+
+    /**
+     * Searches for segments whose bounding box intersects the bounding box of the given segment.
+     * This replies all segments which can possibly intersect {@code segment}, including itself.
+     * @param segment the segment
+     * @return the segments, can be empty but not null
+     */
+    public List<WaySegment> search(WaySegment segment) {
+        LatLon a = segment.getFirstNode().getCoor();
+        LatLon b = segment.getSecondNode().getCoor();
+        if (a == null || b == null)
+            return new ArrayList<>();
+        return search(Math.min(a.lon(), b.lon()), Math.min(a.lat(), b.lat()),
+                Math.max(a.lon(), b.lon()), Math.max(a.lat(), b.lat()));
+    }
+
+    private List<WaySegment> search(double lonMin, double latMin, double lonMax, double latMax) {
+        if (dataSet == null)
+            return searchInGrid(lonMin, latMin, lonMax, latMax);
+        // acquire the read lock before the monitor, like the event dispatching in DataSet.endUpdate() does
+        dataSet.getReadLock().lock();
+        try {
+            return searchInGrid(lonMin, latMin, lonMax, latMax);
+        } finally {
+            dataSet.getReadLock().unlock();
+        }
+    }
+
+    private synchronized List<WaySegment> searchInGrid(double lonMin, double latMin, double lonMax, double latMax) {
+        if (!valid) {
+            rebuild();
+        }
+        Set<WaySegment> result = new HashSet<>();
+        BBox bbox = new BBox(lonMin, latMin, lonMax, latMax);
+        double size = CELL_SIZE;
+        for (int level = 0; level < LEVELS; level++, size *= LEVEL_FACTOR) {
+            if (levelCounts[level] == 0) {
+                continue;
+            }
+            long x0 = (long) Math.floor(lonMin / size);
+            long x1 = (long) Math.floor(lonMax / size);
+            long y0 = (long) Math.floor(latMin / size);
+            long y1 = (long) Math.floor(latMax / size);
+            for (long x = x0; x <= x1; x++) {
+                for (long y = y0; y <= y1; y++) {
+                    List<WaySegment> list = cells.get(key(level, x, y));
+                    if (list != null) {
+                        for (WaySegment segment : list) {
+                            if (intersects(segment, bbox)) {
+                                result.add(segment);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static boolean intersects(WaySegment segment, BBox bbox) {
+        LatLon a = segment.getFirstNode().getCoor();
+        LatLon b = segment.getSecondNode().getCoor();
+        return a != null && b != null && bbox.intersects(new BBox(a, b));
+    }
+
+    private void rebuild() {
+        cells.clear();
+        wayCells.clear();
+        Arrays.fill(levelCounts, 0);
+        for (Way w : dataSet.getWays()) {
+            if (!w.isDeleted()) {
+                addWay(w);
+            }
+        }
+        valid = true;
+    }
+
+    private synchronized void invalidate() {
+        if (dataSet != null) {
+            valid = false;
+            cells.clear();
+            wayCells.clear();
+            Arrays.fill(levelCounts, 0);
+        }
+    }
+
+    private synchronized void update(Collection<? extends OsmPrimitive> primitives) {
+        if (!valid)
+            return;
+        for (OsmPrimitive p : primitives) {
+            if (p instanceof Way) {
+                if (p.isDeleted() || p.getDataSet() != dataSet) {
+                    removeWay((Way) p);
+                } else {
+                    addWay((Way) p);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        update(event.getPrimitives());
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        update(event.getPrimitives());
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        update(event.getNode().getReferrers());
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        update(event.getPrimitives());
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        List<AbstractDatasetChangedEvent> events = event.getEvents();
+        if (events == null) {
+            invalidate();
+        } else {
+            for (AbstractDatasetChangedEvent e : events) {
+                e.fire(this);
+            }
+        }
+    }
+}
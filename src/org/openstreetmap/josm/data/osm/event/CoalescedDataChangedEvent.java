@@ -0,0 +1,246 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * A {@link DataChangedEvent} which merges many events of one dataset into a compact change set.
+ *
+ * Events which change a single primitive ({@link NodeMovedEvent}, {@link TagsChangedEvent},
+ * {@link WayNodesChangedEvent} and {@link RelationMembersChangedEvent}) are only kept once per primitive, at the
+ * position of their last occurrence, so that they still follow the events they depend on (e.g. a way node change
+ * follows the addition of the node). The kept events hold the state before the first change, i.e. the keys of
+ * a {@code TagsChangedEvent} and the old coordinates and bounding boxes of the other events. All other events are
+ * kept in order.
+ *
+ * For compatibility with listeners which only know {@link DataChangedEvent}, {@link #getEvents()} replies
+ * {@code null}, i.e. "everything changed", if more than {@link #MAX_LISTED_EVENTS} events remain after merging.
+ * Listeners can use {@link #getCoalescedEvents()} and the typed accessors to handle big changes incrementally.
+ *
+ * @see DataSet#beginUpdate()
+ * @see DatasetEventManager.FireMode#IN_EDT_COALESCED
+ */
+public class CoalescedDataChangedEvent extends DataChangedEvent {
+
+    /**
+     * Maximum number of merged events replied by {@link #getEvents()}.
+     */
+    public static final int MAX_LISTED_EVENTS = 1000;
+
+    /** The merged events in order, keyed by {@link PrimitiveKey} for events of a single primitive */
+    private final Map<Object, AbstractDatasetChangedEvent> events = new LinkedHashMap<>();
+    private List<AbstractDatasetChangedEvent> eventList;
+    private final Set<Node> movedNodes = newIdentitySet();
+    private final Map<OsmPrimitive, Map<String, String>> originalKeys = new IdentityHashMap<>();
+    private final Set<Way> changedWays = newIdentitySet();
+    private final Set<Relation> changedRelations = newIdentitySet();
+    private boolean everythingChanged;
+
+    /**
+     * Constructs a new, empty {@code CoalescedDataChangedEvent}.
+     * @param dataSet the dataset the merged events belong to
+     */
+    public CoalescedDataChangedEvent(DataSet dataSet) {
+        super(dataSet);
+    }
+
+    private static <T> Set<T> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    }
+
+    /**
+     * Merges an event into this change set.
+     * @param event the event, must belong to the dataset of this event
+     */
+    public void add(AbstractDatasetChangedEvent event) {
+        if (everythingChanged)
+            return;
+        eventList = null;
+        switch (event.getType()) {
+        case NODE_MOVED:
+            NodeMovedEvent moveEvent = (NodeMovedEvent) event;
+            Node node = moveEvent.getNode();
+            movedNodes.add(node);
+            NodeMovedEvent firstMove = (NodeMovedEvent) removeEvent(node, event.getType());
+            if (firstMove != null) {
+                moveEvent = new NodeMovedEvent(getDataset(), node, firstMove.getOldCoor());
+            }
+            addEvent(node, moveEvent);
+            break;
+        case TAGS_CHANGED:
+            TagsChangedEvent tagsEvent = (TagsChangedEvent) event;
+            OsmPrimitive primitive = tagsEvent.getPrimitive();
+            TagsChangedEvent firstTagsChange = (TagsChangedEvent) removeEvent(primitive, event.getType());
+            if (firstTagsChange != null) {
+                tagsEvent = new TagsChangedEvent(getDataset(), primitive, firstTagsChange.getOriginalKeys());
+            } else {
+                originalKeys.put(primitive, tagsEvent.getOriginalKeys());
+            }
+            addEvent(primitive, tagsEvent);
+            break;
+        case WAY_NODES_CHANGED:
+            WayNodesChangedEvent wayEvent = (WayNodesChangedEvent) event;
+            Way way = wayEvent.getChangedWay();
+            changedWays.add(way);
+            WayNodesChangedEvent firstWayChange = (WayNodesChangedEvent) removeEvent(way, event.getType());
+            if (firstWayChange != null) {
+                wayEvent = new WayNodesChangedEvent(getDataset(), way, firstWayChange.getOldBBox());
+            }
+            addEvent(way, wayEvent);
+            break;
+        case RELATION_MEMBERS_CHANGED:
+            RelationMembersChangedEvent relationEvent = (RelationMembersChangedEvent) event;
+            Relation relation = relationEvent.getRelation();
+            changedRelations.add(relation);
+            RelationMembersChangedEvent firstRelationChange =
+                    (RelationMembersChangedEvent) removeEvent(relation, event.getType());
+            if (firstRelationChange != null) {
+                relationEvent = new RelationMembersChangedEvent(getDataset(), relation, firstRelationChange.getOldBBox());
+            }
+            addEvent(relation, relationEvent);
+            break;
+        case DATA_CHANGED:
+            List<AbstractDatasetChangedEvent> nested = event instanceof CoalescedDataChangedEvent
+                    ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : ((DataChangedEvent) event).getEvents();
+            if (nested == null) {
+                everythingChanged = true;
+                events.clear();
+                movedNodes.clear();
+                originalKeys.clear();
+                changedWays.clear();
+                changedRelations.clear();
+            } else {
+                for (AbstractDatasetChangedEvent e : nested) {
+                    add(e);
+                }
+            }
+            break;
+        default:
+            events.put(new Object(), event);
+        }
+    }
+
+    /**
+     * Removes the merged event of the given type for the given primitive.
+     * @return the removed event, {@code null} if there is none
+     */
+    private AbstractDatasetChangedEvent removeEvent(OsmPrimitive primitive, DatasetEventType type) {
+        return events.remove(new PrimitiveKey(type, primitive));
+    }
+
+    /**
+     * Appends the merged event for a single primitive.
+     */
+    private void addEvent(OsmPrimitive primitive, AbstractDatasetChangedEvent event) {
+        events.put(new PrimitiveKey(event.getType(), primitive), event);
+    }
+
+    /**
+     * Replies the merged events, or {@code null} if there are more than {@link #MAX_LISTED_EVENTS} of them or if
+     * the whole dataset changed.
+     */
+    @Override
+    public List<AbstractDatasetChangedEvent> getEvents() {
+        return events.size() > MAX_LISTED_EVENTS ? null : getCoalescedEvents();
+    }
+
+    /**
+     * Replies all merged events, regardless of their number.
+     * @return the merged events, or {@code null} if the whole dataset changed
+     */
+    public List<AbstractDatasetChangedEvent> getCoalescedEvents() {
+        if (everythingChanged)
+            return null;
+        if (eventList == null) {
+            eventList = Collections.unmodifiableList(new ArrayList<>(events.values()));
+        }
+        return eventList;
+    }
+
+    /**
+     * Determines if the merged events contained a {@link DataChangedEvent} without details, so that the whole
+     * dataset has to be considered changed. The typed accessors reply empty sets in this case.
+     * @return {@code true} if the whole dataset changed
+     */
+    public boolean isEverythingChanged() {
+        return everythingChanged;
+    }
+
+    /**
+     * Replies the nodes which have been moved.
+     * @return the moved nodes
+     */
+    public Set<Node> getMovedNodes() {
+        return Collections.unmodifiableSet(movedNodes);
+    }
+
+    /**
+     * Replies the primitives whose tags have been changed, with the tags they had before the first change.
+     * @return the keys before the first change, by primitive
+     */
+    public Map<OsmPrimitive, Map<String, String>> getOriginalKeys() {
+        return Collections.unmodifiableMap(originalKeys);
+    }
+
+    /**
+     * Replies the ways whose node lists have been changed.
+     * @return the changed ways
+     */
+    public Set<Way> getChangedWays() {
+        return Collections.unmodifiableSet(changedWays);
+    }
+
+    /**
+     * Replies the relations whose members have been changed.
+     * @return the changed relations
+     */
+    public Set<Relation> getChangedRelations() {
+        return Collections.unmodifiableSet(changedRelations);
+    }
+
+    /**
+     * Replies the number of merged events.
+     * @return the number of merged events, 0 if the whole dataset changed
+     */
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * Identifies the event of a given type for a single primitive.
+     */
+    private static final class PrimitiveKey {
+        private final DatasetEventType type;
+        private final OsmPrimitive primitive;
+
+        PrimitiveKey(DatasetEventType type, OsmPrimitive primitive) {
+            this.type = type;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + System.identityHashCode(primitive);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PrimitiveKey))
+                return false;
+            PrimitiveKey other = (PrimitiveKey) obj;
+            return type == other.type && primitive == other.primitive;
+        }
+    }
+}
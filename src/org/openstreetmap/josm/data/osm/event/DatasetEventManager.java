@@ -41,15 +41,20 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
          * Fire in event dispatch thread. If more than one event arrived when event queue is checked, merged them to
          * one event
          */
-        IN_EDT_CONSOLIDATED}
+        IN_EDT_CONSOLIDATED,
+        /**
+         * Fire in event dispatch thread. If more than one event arrived when event queue is checked, merge them to
+         * one {@link CoalescedDataChangedEvent}, which keeps only one event per changed primitive
+         */
+        IN_EDT_COALESCED}
 
     private static class ListenerInfo {
         final DataSetListener listener;
-        final boolean consolidate;
+        final FireMode fireMode;
 
-        public ListenerInfo(DataSetListener listener, boolean consolidate) {
+        public ListenerInfo(DataSetListener listener, FireMode fireMode) {
             this.listener = listener;
-            this.consolidate = consolidate;
+            this.fireMode = fireMode;
         }
 
         @Override
@@ -82,20 +87,20 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
     /**
      * Register listener, that will receive events from currently active dataset
      * @param listener the listener to be registered
-     * @param fireMode If {@link FireMode#IN_EDT} or {@link FireMode#IN_EDT_CONSOLIDATED},
-     * listener will be notified in event dispatch thread instead of thread that caused
-     * the dataset change
+     * @param fireMode If {@link FireMode#IN_EDT}, {@link FireMode#IN_EDT_CONSOLIDATED} or
+     * {@link FireMode#IN_EDT_COALESCED}, listener will be notified in event dispatch thread instead of thread
+     * that caused the dataset change
      */
     public void addDatasetListener(DataSetListener listener, FireMode fireMode) {
-        if (fireMode == FireMode.IN_EDT || fireMode == FireMode.IN_EDT_CONSOLIDATED) {
-            inEDTListeners.addIfAbsent(new ListenerInfo(listener, fireMode == FireMode.IN_EDT_CONSOLIDATED));
+        if (fireMode == FireMode.IMMEDIATELY) {
+            normalListeners.addIfAbsent(new ListenerInfo(listener, fireMode));
         } else {
-            normalListeners.addIfAbsent(new ListenerInfo(listener, false));
+            inEDTListeners.addIfAbsent(new ListenerInfo(listener, fireMode));
         }
     }
 
     public void removeDatasetListener(DataSetListener listener) {
-        ListenerInfo searchListener = new ListenerInfo(listener, false);
+        ListenerInfo searchListener = new ListenerInfo(listener, null);
         inEDTListeners.remove(searchListener);
         normalListeners.remove(searchListener);
     }
@@ -114,17 +119,9 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
         }
     }
 
-    private void fireEvents(List<ListenerInfo> listeners, AbstractDatasetChangedEvent event) {
-        for (ListenerInfo listener: listeners) {
-            if (!listener.consolidate) {
-                event.fire(listener.listener);
-            }
-        }
-    }
-
-    private void fireConsolidatedEvents(List<ListenerInfo> listeners, AbstractDatasetChangedEvent event) {
+    private void fireEvents(List<ListenerInfo> listeners, AbstractDatasetChangedEvent event, FireMode fireMode) {
         for (ListenerInfo listener: listeners) {
-            if (listener.consolidate) {
+            if (listener.fireMode == fireMode) {
                 event.fire(listener.listener);
             }
         }
@@ -132,7 +129,7 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
 
     @Override
     public void processDatasetEvent(AbstractDatasetChangedEvent event) {
-        fireEvents(normalListeners, event);
+        fireEvents(normalListeners, event, FireMode.IMMEDIATELY);
         eventsInEDT.add(event);
         SwingUtilities.invokeLater(edtRunnable);
     }
@@ -146,19 +143,27 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
 
                 DataSet dataSet = null;
                 AbstractDatasetChangedEvent consolidatedEvent = null;
+                CoalescedDataChangedEvent coalescedEvent = null;
                 AbstractDatasetChangedEvent event = null;
 
                 while ((event = eventsInEDT.poll()) != null) {
-                    fireEvents(inEDTListeners, event);
+                    fireEvents(inEDTListeners, event, FireMode.IN_EDT);
 
                     // DataSet changed - fire consolidated event early
                     if (consolidatedEvent != null && dataSet != event.getDataset()) {
-                        fireConsolidatedEvents(inEDTListeners, consolidatedEvent);
+                        fireEvents(inEDTListeners, consolidatedEvent, FireMode.IN_EDT_CONSOLIDATED);
+                        fireEvents(inEDTListeners, coalescedEvent, FireMode.IN_EDT_COALESCED);
                         consolidatedEvent = null;
                     }
 
                     dataSet = event.getDataset();
 
+                    // Build coalesced event
+                    if (consolidatedEvent == null) {
+                        coalescedEvent = new CoalescedDataChangedEvent(dataSet);
+                    }
+                    coalescedEvent.add(event);
+
                     // Build consolidated event
                     if (event instanceof DataChangedEvent) {
                         // DataChangeEvent can contains other events, so it gets special handling
@@ -167,7 +172,7 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
                             consolidatedEvent = dataEvent; // Dataset was completely changed, we can ignore older events
                         } else {
                             if (consolidatedEvent == null) {
-                                consolidatedEvent = new DataChangedEvent(dataSet, dataEvent.getEvents());
+                                consolidatedEvent = new DataChangedEvent(dataSet, new ArrayList<>(dataEvent.getEvents()));
                             } else if (consolidatedEvent instanceof DataChangedEvent) {
                                 List<AbstractDatasetChangedEvent> evts = ((DataChangedEvent) consolidatedEvent).getEvents();
                                 if (evts != null) {
@@ -175,7 +180,7 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
                                 }
                             } else {
                                 AbstractDatasetChangedEvent oldConsolidateEvent = consolidatedEvent;
-                                consolidatedEvent = new DataChangedEvent(dataSet, dataEvent.getEvents());
+                                consolidatedEvent = new DataChangedEvent(dataSet, new ArrayList<>(dataEvent.getEvents()));
                                 ((DataChangedEvent) consolidatedEvent).getEvents().add(oldConsolidateEvent);
                             }
                         }
@@ -196,7 +201,8 @@ public class DatasetEventManager implements MapView.EditLayerChangeListener, Lis
                 }
 
                 // Fire consolidated event
-                fireConsolidatedEvents(inEDTListeners, consolidatedEvent);
+                fireEvents(inEDTListeners, consolidatedEvent, FireMode.IN_EDT_CONSOLIDATED);
+                fireEvents(inEDTListeners, coalescedEvent, FireMode.IN_EDT_COALESCED);
             }
         }
     };
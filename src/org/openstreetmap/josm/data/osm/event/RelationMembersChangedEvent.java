@@ -4,6 +4,7 @@ package org.openstreetmap.josm.data.osm.event;
 import java.util.Collections;
 import java.util.List;
 
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
@@ -11,10 +12,22 @@ import org.openstreetmap.josm.data.osm.Relation;
 public class RelationMembersChangedEvent extends AbstractDatasetChangedEvent {
 
     private final Relation relation;
+    private final BBox oldBBox;
 
     public RelationMembersChangedEvent(DataSet dataSet, Relation relation) {
+        this(dataSet, relation, null);
+    }
+
+    /**
+     * Constructs a new {@code RelationMembersChangedEvent}.
+     * @param dataSet the dataset
+     * @param relation the changed relation
+     * @param oldBBox the bounding box of the relation before its members were changed, can be {@code null}
+     */
+    public RelationMembersChangedEvent(DataSet dataSet, Relation relation, BBox oldBBox) {
         super(dataSet);
         this.relation = relation;
+        this.oldBBox = oldBBox;
     }
 
     @Override
@@ -26,6 +39,14 @@ public class RelationMembersChangedEvent extends AbstractDatasetChangedEvent {
         return relation;
     }
 
+    /**
+     * Replies the bounding box of the relation before its members were changed.
+     * @return the old bounding box, {@code null} if unknown
+     */
+    public BBox getOldBBox() {
+        return oldBBox;
+    }
+
     @Override
     public List<? extends OsmPrimitive> getPrimitives() {
         return Collections.singletonList(relation);
@@ -7,6 +7,7 @@ import java.awt.Point;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.util.Iterator;
+import java.util.List;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.BBox;
@@ -52,6 +53,9 @@ public abstract class AbstractMapRenderer implements Rendering {
     /** Preference: minimum space (displayed way length) to display segment numbers */
     protected int segmentNumberSpace;
 
+    /** Preference: render simplified ways at low zoom levels, see {@link WayLevelOfDetail} */
+    protected boolean simplifyWays;
+
     /**
      * <p>Creates an abstract paint visitor</p>
      *
@@ -169,9 +173,21 @@ public abstract class AbstractMapRenderer implements Rendering {
         this.virtualNodeSize = virtual ? Main.pref.getInteger("mappaint.node.virtual-size", 8) / 2 : 0;
         this.virtualNodeSpace = Main.pref.getInteger("mappaint.node.virtual-space", 70);
         this.segmentNumberSpace = Main.pref.getInteger("mappaint.segmentnumber.space", 40);
+        this.simplifyWays = WayLevelOfDetail.PROP_ENABLED.get();
         getColors();
     }
 
+    /**
+     * Replies the nodes to draw for a way. At low zoom levels, nodes are left out which do not change the
+     * rendered line.
+     *
+     * @param w The way.
+     * @return the nodes of the way, possibly simplified for the current scale
+     */
+    protected List<Node> getRenderedNodes(Way w) {
+        return simplifyWays ? WayLevelOfDetail.getNodes(w, nc.getScale()) : w.getNodes();
+    }
+
     /**
      * Checks if a way segemnt is large enough for additional information display.
      *
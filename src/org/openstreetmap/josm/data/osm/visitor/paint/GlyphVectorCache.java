@@ -0,0 +1,185 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.text.Bidi;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the shaped glyph vectors of labels, keyed by text, font and font render context.
+ *
+ * Laying out the glyphs of a label is one of the most expensive steps of painting the map, and usually the same
+ * labels are painted again in every frame. Glyph vectors are mutable and not thread safe, so every thread has its
+ * own cache of the least recently used {@link #MAX_SIZE} labels. Users may transform the glyphs of a cached vector,
+ * but have to reset the transforms before the vector is used again, and must not pass it to other threads.
+ */
+public final class GlyphVectorCache {
+
+    /**
+     * The maximum number of labels cached per thread.
+     */
+    public static final int MAX_SIZE = 5000;
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private static final ThreadLocal<Map<Key, ShapedText>> CACHE = new ThreadLocal<Map<Key, ShapedText>>() {
+        @Override
+        protected Map<Key, ShapedText> initialValue() {
+            return new LinkedHashMap<Key, ShapedText>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, ShapedText> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+        }
+    };
+
+    private GlyphVectorCache() {
+        // Hide default constructor for utils classes
+    }
+
+    private static final class Key {
+        private final String text;
+        private final Font font;
+        private final FontRenderContext frc;
+        private final int hash;
+
+        Key(String text, Font font, FontRenderContext frc) {
+            this.text = text;
+            this.font = font;
+            this.frc = frc;
+            this.hash = (31 * text.hashCode() + font.hashCode()) * 31 + frc.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hash == other.hash && text.equals(other.text) && font.equals(other.font) && frc.equals(other.frc);
+        }
+    }
+
+    /**
+     * The shaped glyphs of a label and their metrics.
+     */
+    public static final class ShapedText {
+        private final GlyphVector glyphs;
+        private final boolean bidi;
+        private final Rectangle2D bounds;
+        private Rectangle2D[] glyphBounds;
+
+        private ShapedText(String text, Font font, FontRenderContext frc) {
+            char[] chars = text.toCharArray();
+            int dirFlag = Bidi.DIRECTION_LEFT_TO_RIGHT;
+            bidi = Bidi.requiresBidi(chars, 0, chars.length);
+            if (bidi) {
+                Bidi bd = new Bidi(text, Bidi.DIRECTION_DEFAULT_LEFT_TO_RIGHT);
+                if (bd.isRightToLeft()) {
+                    dirFlag = Bidi.DIRECTION_RIGHT_TO_LEFT;
+                }
+            }
+            // only works for text that is completely left-to-right or completely
+            // right-to-left, not bi-directional text
+            glyphs = font.layoutGlyphVector(frc, chars, 0, chars.length, dirFlag);
+            bounds = glyphs.getLogicalBounds();
+        }
+
+        /**
+         * Replies the glyphs, laid out in one direction.
+         * @return the glyph vector
+         */
+        public GlyphVector getGlyphs() {
+            return glyphs;
+        }
+
+        /**
+         * Determines if the text needs the bidirectional algorithm, so the glyphs are only correct if the whole
+         * text is written in one direction.
+         * @return {@code true} if the text contains right-to-left characters
+         */
+        public boolean isBidi() {
+            return bidi;
+        }
+
+        /**
+         * Replies the logical bounds of the text, relative to the start of its baseline.
+         * @return the logical bounds, must not be modified
+         */
+        public Rectangle2D getBounds() {
+            return bounds;
+        }
+
+        /**
+         * Replies the logical bounds of one glyph, without glyph transforms.
+         * @param i the index of the glyph
+         * @return the logical bounds of the glyph, must not be modified
+         */
+        public Rectangle2D getGlyphBounds(int i) {
+            if (glyphBounds == null) {
+                glyphBounds = new Rectangle2D[glyphs.getNumGlyphs()];
+                for (int j = 0; j < glyphBounds.length; j++) {
+                    glyphBounds[j] = glyphs.getGlyphLogicalBounds(j).getBounds2D();
+                }
+            }
+            return glyphBounds[i];
+        }
+    }
+
+    /**
+     * Replies the shaped glyphs of a text, from the cache of the current thread.
+     * @param text the text
+     * @param font the font
+     * @param frc the font render context of the graphics to paint on
+     * @return the shaped text
+     */
+    public static ShapedText get(String text, Font font, FontRenderContext frc) {
+        Map<Key, ShapedText> cache = CACHE.get();
+        Key key = new Key(text, font, frc);
+        ShapedText shaped = cache.get(key);
+        if (shaped == null) {
+            MISSES.incrementAndGet();
+            shaped = new ShapedText(text, font, frc);
+            cache.put(key, shaped);
+        } else {
+            HITS.incrementAndGet();
+        }
+        return shaped;
+    }
+
+    /**
+     * Removes all labels from the cache of the current thread.
+     */
+    public static void clear() {
+        CACHE.get().clear();
+    }
+
+    /**
+     * Replies the number of lookups answered by the caches of all threads.
+     * @return the number of cache hits
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Replies the number of labels shaped because they were not cached.
+     * @return the number of cache misses
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+}
@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.LongKeyMap;
+
+/**
+ * Screen space index of the rectangles occupied by labels, to avoid overlapping labels.
+ *
+ * The screen is divided into square cells of {@link #CELL_SIZE} pixels. Each cell lists the occupied rectangles
+ * which intersect it, so a test only compares the rectangles in the cells covered by the new label.
+ */
+public class LabelCollisionGrid {
+
+    /**
+     * The width and height of a cell in pixels.
+     */
+    public static final int CELL_SIZE = 64;
+
+    private final LongKeyMap<List<Rectangle2D>> cells = new LongKeyMap<>();
+    private int size;
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Determines if a rectangle does not overlap any occupied rectangle.
+     * @param r the rectangle in screen coordinates
+     * @return {@code true} if the rectangle is free
+     */
+    public boolean isFree(Rectangle2D r) {
+        for (int column = cell(r.getMinX()), maxColumn = cell(r.getMaxX()); column <= maxColumn; column++) {
+            for (int row = cell(r.getMinY()), maxRow = cell(r.getMaxY()); row <= maxRow; row++) {
+                List<Rectangle2D> occupied = cells.get(key(column, row));
+                if (occupied != null) {
+                    for (Rectangle2D o : occupied) {
+                        if (o.intersects(r))
+                            return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if none of the rectangles overlaps an occupied rectangle.
+     * @param rectangles the rectangles in screen coordinates
+     * @return {@code true} if all rectangles are free
+     */
+    public boolean isFree(List<? extends Rectangle2D> rectangles) {
+        for (Rectangle2D r : rectangles) {
+            if (!isFree(r))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks a rectangle as occupied.
+     * @param r the rectangle in screen coordinates
+     */
+    public void add(Rectangle2D r) {
+        for (int column = cell(r.getMinX()), maxColumn = cell(r.getMaxX()); column <= maxColumn; column++) {
+            for (int row = cell(r.getMinY()), maxRow = cell(r.getMaxY()); row <= maxRow; row++) {
+                long key = key(column, row);
+                List<Rectangle2D> occupied = cells.get(key);
+                if (occupied == null) {
+                    occupied = new ArrayList<>(4);
+                    cells.put(key, occupied);
+                }
+                occupied.add(r);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Marks several rectangles as occupied.
+     * @param rectangles the rectangles in screen coordinates
+     */
+    public void add(List<? extends Rectangle2D> rectangles) {
+        for (Rectangle2D r : rectangles) {
+            add(r);
+        }
+    }
+
+    /**
+     * Replies the number of occupied rectangles.
+     * @return the number of rectangles added since the grid was created or cleared
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all occupied rectangles.
+     */
+    public void clear() {
+        cells.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,405 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WaySegment;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Cache of rendered tiles of a dataset.
+ *
+ * The map is divided into tiles of {@link #TILE_SIZE} pixels, aligned to a grid in projected coordinates at the
+ * current scale. Each tile is rendered once by the active map renderer into an image, the images of the visible
+ * tiles are composed when the map view is painted. Panning thus only renders the tiles which become visible.
+ * The least recently used tiles are dropped when there are more than {@link #PROP_MAX_TILES}.
+ *
+ * Changes of the dataset, the selection and the highlighting only invalidate the tiles around the bounding boxes
+ * of the changed primitives. All tiles are invalidated if the projection changes or {@link #invalidateAll()} is called.
+ *
+ * Primitives are rendered into every tile they are closer to than a margin, so that icons and labels are not cut at
+ * the tile border. Labels of ways are placed for each tile separately though, so they may be repeated.
+ */
+public class RenderedTileCache {
+
+    /**
+     * Preference to render data layers in cached tiles.
+     */
+    public static final BooleanProperty PROP_ENABLED = new BooleanProperty("mappaint.tile-cache", false);
+
+    /**
+     * Preference for the maximum number of cached tiles per layer.
+     */
+    public static final IntegerProperty PROP_MAX_TILES = new IntegerProperty("mappaint.tile-cache.max-tiles", 128);
+
+    /**
+     * The width and height of a tile in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /** distance in pixels around a tile in which primitives are rendered, too */
+    private static final int MARGIN = 128;
+    /** number of changed regions above which all tiles are invalidated */
+    private static final int MAX_DIRTY_REGIONS = 1000;
+
+    private final DataSet data;
+    private final NavigatableComponent tileView = new NavigatableComponent();
+    private final Map<TileKey, BufferedImage> tiles = new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+            return size() > maxTiles;
+        }
+    };
+    private int maxTiles;
+
+    /** changed regions reported by dataset events, guarded by {@code this} */
+    private final List<ProjectionBounds> dirtyRegions = new ArrayList<>();
+    private boolean allDirty;
+
+    private boolean lastInactive;
+    private boolean lastVirtual;
+    private Projection lastProjection;
+    private Collection<OsmPrimitive> lastSelection = Collections.emptyList();
+    private Set<OsmPrimitive> lastHighlighted = Collections.emptySet();
+    private int lastHighlightUpdateCount;
+    private Collection<WaySegment> lastHighlightedWaySegments = Collections.emptyList();
+    private Collection<WaySegment> lastHighlightedVirtualNodes = Collections.emptyList();
+
+    /**
+     * Constructs a new {@code RenderedTileCache}.
+     * @param data the dataset to render
+     */
+    public RenderedTileCache(DataSet data) {
+        this.data = data;
+        tileView.setSize(TILE_SIZE, TILE_SIZE);
+    }
+
+    /**
+     * Paints the dataset by composing cached tiles. Missing tiles are rendered.
+     * @param g the graphics to paint to
+     * @param nc the map viewport
+     * @param inactive if {@code true}, the data is rendered as inactive
+     * @param virtual if {@code true}, virtual nodes are rendered
+     * @return {@code true} if the data has been painted, {@code false} if the current view cannot be composed of
+     * tiles (e.g. at the border of the world) and the dataset has to be rendered directly
+     */
+    public boolean paint(Graphics2D g, NavigatableComponent nc, boolean inactive, boolean virtual) {
+        double scale = nc.getScale();
+        if (inactive != lastInactive || virtual != lastVirtual || Main.getProjection() != lastProjection) {
+            lastInactive = inactive;
+            lastVirtual = virtual;
+            lastProjection = Main.getProjection();
+            tiles.clear();
+        }
+        invalidateSelectionAndHighlighting();
+        removeDirtyTiles();
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, nc.getWidth(), nc.getHeight());
+        }
+        EastNorth center = nc.getCenter();
+        long originX = Math.round(center.east() / scale - nc.getWidth() / 2.0);
+        long originY = Math.round(-center.north() / scale - nc.getHeight() / 2.0);
+        long minX = floorDiv(originX + clip.x);
+        long maxX = floorDiv(originX + clip.x + clip.width - 1);
+        long minY = floorDiv(originY + clip.y);
+        long maxY = floorDiv(originY + clip.y + clip.height - 1);
+        maxTiles = (int) Math.max(PROP_MAX_TILES.get(), 2 * (maxX - minX + 1) * (maxY - minY + 1));
+
+        // render all missing tiles before painting anything, so that the caller can fall back to direct rendering
+        Map<TileKey, BufferedImage> visible = new LinkedHashMap<>();
+        for (long y = minY; y <= maxY; y++) {
+            for (long x = minX; x <= maxX; x++) {
+                TileKey key = new TileKey(scale, x, y);
+                BufferedImage image = tiles.get(key);
+                if (image == null) {
+                    image = renderTile(key, inactive, virtual);
+                    if (image == null)
+                        return false;
+                }
+                visible.put(key, image);
+            }
+        }
+        for (Map.Entry<TileKey, BufferedImage> e : visible.entrySet()) {
+            TileKey key = e.getKey();
+            tiles.put(key, e.getValue());
+            g.drawImage(e.getValue(), (int) (key.x * TILE_SIZE - originX), (int) (key.y * TILE_SIZE - originY), null);
+        }
+        return true;
+    }
+
+    private static long floorDiv(long pixel) {
+        return (long) Math.floor((double) pixel / TILE_SIZE);
+    }
+
+    private BufferedImage renderTile(TileKey key, boolean inactive, boolean virtual) {
+        EastNorth center = new EastNorth((key.x * TILE_SIZE + TILE_SIZE / 2.0) * key.scale,
+                -(key.y * TILE_SIZE + TILE_SIZE / 2.0) * key.scale);
+        tileView.zoomTo(center, key.scale, true);
+        if (!center.equals(tileView.getCenter()) || tileView.getScale() != key.scale)
+            return null;
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            Rendering painter = MapRendererFactory.getInstance().createActiveRenderer(g, tileView, inactive);
+            painter.render(data, virtual, tileView.getLatLonBounds(
+                    new Rectangle(-MARGIN, -MARGIN, TILE_SIZE + 2 * MARGIN, TILE_SIZE + 2 * MARGIN)));
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Invalidates the tiles around the primitives which have been changed by a dataset event.
+     * This method may be called from any thread.
+     * @param event the dataset event
+     */
+    public void invalidate(AbstractDatasetChangedEvent event) {
+        switch (event.getType()) {
+        case DATA_CHANGED:
+            List<AbstractDatasetChangedEvent> events = event instanceof CoalescedDataChangedEvent
+                    ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : ((DataChangedEvent) event).getEvents();
+            if (events == null) {
+                invalidateAll();
+            } else {
+                for (AbstractDatasetChangedEvent e : events) {
+                    invalidate(e);
+                }
+            }
+            return;
+        case CHANGESET_ID_CHANGED:
+            return;
+        case NODE_MOVED:
+            NodeMovedEvent moveEvent = (NodeMovedEvent) event;
+            LatLon oldCoor = moveEvent.getOldCoor();
+            if (oldCoor != null) {
+                invalidate(new BBox(oldCoor, oldCoor));
+                invalidateReferrers(moveEvent.getNode(), oldCoor);
+            }
+            break;
+        case WAY_NODES_CHANGED:
+            invalidate(((WayNodesChangedEvent) event).getOldBBox());
+            break;
+        case RELATION_MEMBERS_CHANGED:
+            invalidate(((RelationMembersChangedEvent) event).getOldBBox());
+            break;
+        default:
+            break;
+        }
+        for (OsmPrimitive p : event.getPrimitives()) {
+            invalidate(p, true);
+        }
+    }
+
+    /**
+     * Invalidates all tiles, e.g. because the paint preferences or the styles changed.
+     * This method may be called from any thread.
+     */
+    public synchronized void invalidateAll() {
+        allDirty = true;
+        dirtyRegions.clear();
+    }
+
+    private void invalidate(OsmPrimitive p, boolean referrers) {
+        if (p instanceof Node && !((Node) p).isLatLonKnown())
+            return;
+        invalidate(p.getBBox());
+        if (referrers) {
+            // the rendering of ways depends on their nodes, the areas of multipolygons on their members
+            for (OsmPrimitive referrer : p.getReferrers()) {
+                if (referrer instanceof Way) {
+                    invalidate(referrer, true);
+                } else if (((Relation) referrer).isMultipolygon()) {
+                    invalidate(referrer, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates the old extent of the ways and multipolygons referring to a moved node. They have already been
+     * reindexed, but as only the node has changed, their old extent is within the current one extended by the old
+     * position of the node.
+     */
+    private void invalidateReferrers(OsmPrimitive p, LatLon oldCoor) {
+        for (OsmPrimitive referrer : p.getReferrers()) {
+            if (referrer instanceof Way) {
+                invalidateExtended(referrer, oldCoor);
+                invalidateReferrers(referrer, oldCoor);
+            } else if (((Relation) referrer).isMultipolygon()) {
+                invalidateExtended(referrer, oldCoor);
+            }
+        }
+    }
+
+    private void invalidateExtended(OsmPrimitive p, LatLon coor) {
+        BBox bbox = new BBox(p.getBBox());
+        bbox.add(coor);
+        invalidate(bbox);
+    }
+
+    private void invalidate(BBox bbox) {
+        if (bbox == null)
+            return;
+        Projection projection = Main.getProjection();
+        ProjectionBounds bounds = new ProjectionBounds(projection.latlon2eastNorth(bbox.getTopLeft()));
+        bounds.extend(projection.latlon2eastNorth(bbox.getBottomRight()));
+        synchronized (this) {
+            if (allDirty)
+                return;
+            if (dirtyRegions.size() >= MAX_DIRTY_REGIONS) {
+                invalidateAll();
+            } else {
+                dirtyRegions.add(bounds);
+            }
+        }
+    }
+
+    private void invalidateSelectionAndHighlighting() {
+        Collection<OsmPrimitive> selection = data.getAllSelected();
+        if (selection != lastSelection) {
+            invalidateDifference(lastSelection, selection);
+            lastSelection = selection;
+        }
+        if (data.getHighlightUpdateCount() != lastHighlightUpdateCount) {
+            lastHighlightUpdateCount = data.getHighlightUpdateCount();
+            Set<OsmPrimitive> highlighted = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+            highlighted.addAll(data.getHighlightedPrimitives());
+            invalidateDifference(lastHighlighted, highlighted);
+            lastHighlighted = highlighted;
+            Collection<WaySegment> waySegments = new ArrayList<>(data.getHighlightedWaySegments());
+            invalidateSegments(lastHighlightedWaySegments, waySegments);
+            lastHighlightedWaySegments = waySegments;
+            Collection<WaySegment> virtualNodes = new ArrayList<>(data.getHighlightedVirtualNodes());
+            invalidateSegments(lastHighlightedVirtualNodes, virtualNodes);
+            lastHighlightedVirtualNodes = virtualNodes;
+        }
+    }
+
+    private void invalidateDifference(Collection<OsmPrimitive> before, Collection<OsmPrimitive> after) {
+        Set<OsmPrimitive> beforeSet = Collections.newSetFromMap(new IdentityHashMap<OsmPrimitive, Boolean>());
+        beforeSet.addAll(before);
+        for (OsmPrimitive p : after) {
+            if (!beforeSet.remove(p)) {
+                invalidate(p, false);
+            }
+        }
+        for (OsmPrimitive p : beforeSet) {
+            invalidate(p, false);
+        }
+    }
+
+    private void invalidateSegments(Collection<WaySegment> before, Collection<WaySegment> after) {
+        if (before.equals(after))
+            return;
+        for (Collection<WaySegment> segments : Arrays.asList(before, after)) {
+            for (WaySegment ws : segments) {
+                if (ws.lowerIndex + 1 < ws.way.getNodesCount()) {
+                    Node n1 = ws.getFirstNode();
+                    Node n2 = ws.getSecondNode();
+                    if (n1.isLatLonKnown() && n2.isLatLonKnown()) {
+                        invalidate(new BBox(n1.getCoor(), n2.getCoor()));
+                        continue;
+                    }
+                }
+                invalidate(ws.way.getBBox());
+            }
+        }
+    }
+
+    private void removeDirtyTiles() {
+        List<ProjectionBounds> regions;
+        synchronized (this) {
+            if (allDirty) {
+                allDirty = false;
+                dirtyRegions.clear();
+                tiles.clear();
+                return;
+            }
+            if (dirtyRegions.isEmpty())
+                return;
+            regions = new ArrayList<>(dirtyRegions);
+            dirtyRegions.clear();
+        }
+        for (Iterator<TileKey> it = tiles.keySet().iterator(); it.hasNext();) {
+            ProjectionBounds tileBounds = it.next().getBounds();
+            for (ProjectionBounds region : regions) {
+                if (tileBounds.intersects(region)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Identifies a tile by the scale and its position in the grid of tiles.
+     */
+    private static final class TileKey {
+        private final double scale;
+        private final long x;
+        private final long y;
+
+        TileKey(double scale, long x, long y) {
+            this.scale = scale;
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * Replies the projected bounds of the area rendered into this tile, including the margin.
+         */
+        ProjectionBounds getBounds() {
+            return new ProjectionBounds(
+                    (x * TILE_SIZE - MARGIN) * scale, -((y + 1) * TILE_SIZE + MARGIN) * scale,
+                    ((x + 1) * TILE_SIZE + MARGIN) * scale, -(y * TILE_SIZE - MARGIN) * scale);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(scale);
+            return (int) (bits ^ (bits >>> 32)) * 31 * 31 + (int) (x ^ (x >>> 32)) * 31 + (int) (y ^ (y >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey))
+                return false;
+            TileKey other = (TileKey) obj;
+            return x == other.x && y == other.y && Double.compare(scale, other.scale) == 0;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
@@ -25,15 +24,15 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.text.Bidi;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -55,9 +54,11 @@ import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WaySegment;
 import org.openstreetmap.josm.data.osm.visitor.Visitor;
+import org.openstreetmap.josm.data.osm.visitor.paint.GlyphVectorCache.ShapedText;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.Multipolygon;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.Multipolygon.PolyData;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.NavigatableComponent;
 import org.openstreetmap.josm.gui.mappaint.AreaElemStyle;
 import org.openstreetmap.josm.gui.mappaint.BoxTextElemStyle;
@@ -65,6 +66,7 @@ import org.openstreetmap.josm.gui.mappaint.BoxTextElemStyle.HorizontalTextAlignm
 import org.openstreetmap.josm.gui.mappaint.BoxTextElemStyle.VerticalTextAlignment;
 import org.openstreetmap.josm.gui.mappaint.ElemStyle;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
+import org.openstreetmap.josm.gui.mappaint.LineElemStyle;
 import org.openstreetmap.josm.gui.mappaint.MapImage;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
 import org.openstreetmap.josm.gui.mappaint.NodeElemStyle;
@@ -88,6 +90,28 @@ public class StyledMapRenderer extends AbstractMapRenderer {
     private static final Pair<Integer, ExecutorService> THREAD_POOL =
             Utils.newThreadPool("mappaint.StyledMapRenderer.style_creation.numberOfThreads");
 
+    /**
+     * Preference to paint the map in horizontal bands using several threads, see {@link BandWorker}.
+     */
+    public static final BooleanProperty PROP_PARALLEL_PAINTING =
+            new BooleanProperty("mappaint.StyledMapRenderer.parallel-painting", false);
+
+    /**
+     * Preference to place labels after painting the map, such that they do not overlap, see {@link Label}.
+     */
+    public static final BooleanProperty PROP_LABEL_COLLISION =
+            new BooleanProperty("mappaint.label.collision-detection", false);
+
+    private static final Pair<Integer, ExecutorService> PAINT_THREAD_POOL =
+            Utils.newThreadPool("mappaint.StyledMapRenderer.painting.numberOfThreads");
+
+    /** distance in pixels up to which icons and labels may extend beyond their primitive */
+    private static final int BAND_MARGIN = 128;
+    /** distance in pixels up to which direction arrows, highlighting and order numbers may extend beyond a line */
+    private static final int DECORATION_MARGIN = 32;
+    /** minimum height of a band in pixels */
+    private static final int MIN_BAND_HEIGHT = 64;
+
     /**
      * Iterates over a list of Way Nodes and returns screen coordinates that
      * represent a line that is shifted by a certain offset perpendicular
@@ -238,7 +262,99 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
-    private static Map<Font,Boolean> IS_GLYPH_VECTOR_DOUBLE_TRANSLATION_BUG = new HashMap<>();
+    /**
+     * A label which is placed after all primitives have been painted, if {@link #PROP_LABEL_COLLISION} is enabled.
+     *
+     * Labels are placed in order of priority and skipped if they would overlap a label placed before. The labels
+     * of the primitives painted on top of the others, i.e. with the higher z-index, have the higher priority.
+     * Labels only keep the text, the font is shaped again by the thread placing them, see {@link GlyphVectorCache}.
+     */
+    private abstract static class Label implements Comparable<Label> {
+        /** the index of the style record in paint order */
+        final int record;
+        /** the index of the label among the labels of the style record */
+        final int sequence;
+        final String name;
+        final TextElement text;
+        final boolean disabled;
+
+        Label(int record, int sequence, String name, TextElement text, boolean disabled) {
+            this.record = record;
+            this.sequence = sequence;
+            this.name = name;
+            this.text = text;
+            this.disabled = disabled;
+        }
+
+        @Override
+        public int compareTo(Label other) {
+            int d = Integer.compare(other.record, this.record);
+            if (d != 0)
+                return d;
+            return Integer.compare(this.sequence, other.sequence);
+        }
+
+        /**
+         * Paints the label if there is free space for it.
+         * @param painter the renderer to paint on
+         * @param grid the space occupied by the labels placed before, the space of this label is added to it
+         */
+        abstract void place(StyledMapRenderer painter, LabelCollisionGrid grid);
+    }
+
+    /**
+     * A horizontal label with alternative positions, which are tried in turn.
+     */
+    private static class StraightLabel extends Label {
+        /** the bounds of the label at each position */
+        final List<Rectangle2D> boxes;
+        /** the start of the baseline at each position */
+        final List<Point> origins;
+
+        StraightLabel(int record, int sequence, String name, TextElement text, boolean disabled,
+                List<Rectangle2D> boxes, List<Point> origins) {
+            super(record, sequence, name, text, disabled);
+            this.boxes = boxes;
+            this.origins = origins;
+        }
+
+        @Override
+        void place(StyledMapRenderer painter, LabelCollisionGrid grid) {
+            for (int i = 0; i < boxes.size(); i++) {
+                if (grid.isFree(boxes.get(i))) {
+                    grid.add(boxes.get(i));
+                    Point origin = origins.get(i);
+                    painter.displayText(name, origin.x, origin.y, disabled, text);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A label following a way, with one transform and bounding box per glyph.
+     */
+    private static class PathLabel extends Label {
+        final AffineTransform[] transforms;
+        final List<Rectangle2D> boxes;
+
+        PathLabel(int record, int sequence, String name, TextElement text, boolean disabled,
+                AffineTransform[] transforms, List<Rectangle2D> boxes) {
+            super(record, sequence, name, text, disabled);
+            this.transforms = transforms;
+            this.boxes = boxes;
+        }
+
+        @Override
+        void place(StyledMapRenderer painter, LabelCollisionGrid grid) {
+            if (grid.isFree(boxes)) {
+                grid.add(boxes);
+                painter.displayGlyphs(name, transforms, disabled, text);
+            }
+        }
+    }
+
+    private static Map<Font,Boolean> IS_GLYPH_VECTOR_DOUBLE_TRANSLATION_BUG = new ConcurrentHashMap<>();
 
     /**
      * Check, if this System has the GlyphVector double translation bug.
@@ -321,6 +437,23 @@ public class StyledMapRenderer extends AbstractMapRenderer {
 
     private boolean leftHandTraffic;
 
+    private ExecutorService paintExecutor;
+    private int paintBands;
+
+    private ElemStyles styles = MapPaintStyles.getStyles();
+
+    /** the labels to place after painting, or {@code null} to paint labels immediately */
+    private List<Label> labels;
+    /** the index of the style record being painted, see {@link Label} */
+    private int recordIndex;
+    /** the number of labels created for the style record being painted */
+    private int labelSequence;
+
+    /** if this renderer paints a band of the map, see {@link BandWorker} */
+    private boolean isBand;
+    /** the clip bounds of the whole map, if this renderer paints a band of it */
+    private Rectangle mapClipBounds;
+
     /**
      * Constructs a new {@code StyledMapRenderer}.
      *
@@ -433,6 +566,49 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
+    /**
+     * Displays horizontal text using its cached glyphs, see {@link GlyphVectorCache}.
+     *
+     * @param s text to display
+     * @param x X position of the start of the baseline
+     * @param y Y position of the start of the baseline
+     * @param disabled {@code true} if element is disabled (filtered out)
+     * @param text text style to use
+     */
+    private void displayText(String s, int x, int y, boolean disabled, TextElement text) {
+        ShapedText shaped = GlyphVectorCache.get(s, text.font, g.getFontRenderContext());
+        Font defaultFont = g.getFont();
+        // the cached glyphs are laid out in one direction only, leave bidirectional text to the graphics
+        displayText(shaped.isBidi() ? null : shaped.getGlyphs(), s, x, y, disabled, text);
+        g.setFont(defaultFont);
+    }
+
+    /**
+     * Displays text with transformed glyphs using its cached glyphs, see {@link GlyphVectorCache}.
+     *
+     * @param s text to display
+     * @param transforms the transform of each glyph, or {@code null} to leave a glyph at its position
+     * @param disabled {@code true} if element is disabled (filtered out)
+     * @param text text style to use
+     */
+    private void displayGlyphs(String s, AffineTransform[] transforms, boolean disabled, TextElement text) {
+        GlyphVector gv = GlyphVectorCache.get(s, text.font, g.getFontRenderContext()).getGlyphs();
+        int n = Math.min(gv.getNumGlyphs(), transforms.length);
+        try {
+            for (int i = 0; i < n; i++) {
+                if (transforms[i] != null) {
+                    gv.setGlyphTransform(i, transforms[i]);
+                }
+            }
+            displayText(gv, null, 0, 0, disabled, text);
+        } finally {
+            // the glyphs are cached and reused for the next label with this text
+            for (int i = 0; i < n; i++) {
+                gv.setGlyphTransform(i, null);
+            }
+        }
+    }
+
     protected void drawArea(OsmPrimitive osm, Path2D.Double path, Color color, MapImage fillImage, boolean disabled, TextElement text) {
 
         Shape area = path.createTransformedShape(nc.getAffineTransform());
@@ -468,8 +644,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             if (name == null) return;
 
             Rectangle pb = area.getBounds();
-            FontMetrics fontMetrics = g.getFontMetrics(orderFont); // if slow, use cache
-            Rectangle2D nb = fontMetrics.getStringBounds(name, g); // if slow, approximate by strlen()*maxcharbounds(font)
+            Rectangle2D nb = GlyphVectorCache.get(name, text.font, g.getFontRenderContext()).getBounds();
 
             // Using the Centroid is Nicer for buildings like: +--------+
             // but this needs to be fast.  As most houses are  |   42   |
@@ -483,52 +658,54 @@ public class StyledMapRenderer extends AbstractMapRenderer {
                 final double w = pb.width  - nb.getWidth();
                 final double h = pb.height - nb.getHeight();
 
+                final int x1 = pb.x + (int)(  w/4.0);
                 final int x2 = pb.x + (int)(w/2.0);
+                final int x3 = pb.x + (int)(3*w/4.0);
+                final int y1 = pb.y + (int)(  h/4.0);
                 final int y2 = pb.y + (int)(h/2.0);
+                final int y3 = pb.y + (int)(3*h/4.0);
 
                 final int nbw = (int) nb.getWidth();
                 final int nbh = (int) nb.getHeight();
 
-                Rectangle centeredNBounds = new Rectangle(x2, y2, nbw, nbh);
-
-                // slower check to see if label is displayed inside primitive shape
-                boolean labelOK = area.contains(centeredNBounds);
-                if (!labelOK) {
-                    // if center position (C) is not inside osm shape, try naively some other positions as follows:
-                    final int x1 = pb.x + (int)(  w/4.0);
-                    final int x3 = pb.x + (int)(3*w/4.0);
-                    final int y1 = pb.y + (int)(  h/4.0);
-                    final int y3 = pb.y + (int)(3*h/4.0);
-                    // +-----------+
-                    // |  5  1  6  |
-                    // |  4  C  2  |
-                    // |  8  3  7  |
-                    // +-----------+
-                    Rectangle[] candidates = new Rectangle[] {
-                            new Rectangle(x2, y1, nbw, nbh),
-                            new Rectangle(x3, y2, nbw, nbh),
-                            new Rectangle(x2, y3, nbw, nbh),
-                            new Rectangle(x1, y2, nbw, nbh),
-                            new Rectangle(x1, y1, nbw, nbh),
-                            new Rectangle(x3, y1, nbw, nbh),
-                            new Rectangle(x3, y3, nbw, nbh),
-                            new Rectangle(x1, y3, nbw, nbh)
-                    };
-                    // Dumb algorithm to find a better placement. We could surely find a smarter one but it should
-                    // solve most of building issues with only few calculations (8 at most)
-                    for (int i = 0; i < candidates.length && !labelOK; i++) {
-                        centeredNBounds = candidates[i];
-                        labelOK = area.contains(centeredNBounds);
+                // if center position (C) is not inside osm shape, try naively some other positions as follows:
+                // +-----------+
+                // |  5  1  6  |
+                // |  4  C  2  |
+                // |  8  3  7  |
+                // +-----------+
+                Rectangle[] candidates = new Rectangle[] {
+                        new Rectangle(x2, y2, nbw, nbh),
+                        new Rectangle(x2, y1, nbw, nbh),
+                        new Rectangle(x3, y2, nbw, nbh),
+                        new Rectangle(x2, y3, nbw, nbh),
+                        new Rectangle(x1, y2, nbw, nbh),
+                        new Rectangle(x1, y1, nbw, nbh),
+                        new Rectangle(x3, y1, nbw, nbh),
+                        new Rectangle(x3, y3, nbw, nbh),
+                        new Rectangle(x1, y3, nbw, nbh)
+                };
+                // Dumb algorithm to find a better placement. We could surely find a smarter one but it should
+                // solve most of building issues with only few calculations (9 at most).
+                // If labels are placed later, all positions inside the shape are kept to avoid other labels.
+                int capacity = labels == null ? 1 : candidates.length;
+                List<Rectangle2D> boxes = new ArrayList<>(capacity);
+                List<Point> origins = new ArrayList<>(capacity);
+                for (int i = 0; i < candidates.length && (labels != null || boxes.isEmpty()); i++) {
+                    if (area.contains(candidates[i])) {
+                        boxes.add(candidates[i]);
+                        origins.add(new Point((int)(candidates[i].getMinX() - nb.getMinX()),
+                                (int)(candidates[i].getMinY() - nb.getMinY())));
                     }
                 }
-                if (labelOK) {
-                    Font defaultFont = g.getFont();
-                    int x = (int)(centeredNBounds.getMinX() - nb.getMinX());
-                    int y = (int)(centeredNBounds.getMinY() - nb.getMinY());
-                    displayText(null, name, x, y, osm.isDisabled(), text);
-                    g.setFont(defaultFont);
-                } else if (Main.isDebugEnabled()) {
-                    Main.debug("Couldn't find a correct label placement for "+osm+" / "+name);
+                if (boxes.isEmpty()) {
+                    if (Main.isDebugEnabled()) {
+                        Main.debug("Couldn't find a correct label placement for "+osm+" / "+name);
+                    }
+                } else if (labels != null) {
+                    labels.add(new StraightLabel(recordIndex, labelSequence++, name, text, osm.isDisabled(), boxes, origins));
+                } else {
+                    displayText(name, origins.get(0).x, origins.get(0).y, osm.isDisabled(), text);
                 }
             }
         }
@@ -538,11 +715,10 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         Multipolygon multipolygon = MultipolygonCache.getInstance().get(nc, r);
         if (!r.isDisabled() && !multipolygon.getOuterWays().isEmpty()) {
             for (PolyData pd : multipolygon.getCombinedPolygons()) {
-                Path2D.Double p = pd.get();
-                if (!isAreaVisible(p)) {
+                if (!isAreaVisible(pd.getBounds())) {
                     continue;
                 }
-                drawArea(r, p,
+                drawArea(r, pd.get(),
                         pd.selected ? paintSettings.getRelationSelectedColor(color.getAlpha()) : color,
                                 fillImage, disabled, text);
             }
@@ -562,8 +738,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         String s = text.labelCompositionStrategy.compose(n);
         if (s == null) return;
 
-        Font defaultFont = g.getFont();
-        g.setFont(text.font);
+        Rectangle2D bounds = GlyphVectorCache.get(s, text.font, g.getFontRenderContext()).getBounds();
 
         int x = p.x + text.xOffset;
         int y = p.y + text.yOffset;
@@ -582,8 +757,6 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         if (bs.hAlign == HorizontalTextAlignment.RIGHT) {
             x += box.x + box.width + 2;
         } else {
-            FontRenderContext frc = g.getFontRenderContext();
-            Rectangle2D bounds = text.font.getStringBounds(s, frc);
             int textWidth = (int) bounds.getWidth();
             if (bs.hAlign == HorizontalTextAlignment.CENTER) {
                 x -= textWidth / 2;
@@ -607,8 +780,14 @@ public class StyledMapRenderer extends AbstractMapRenderer {
                 y += box.y + box.height + metrics.getAscent() + 2;
             } else throw new AssertionError();
         }
-        displayText(null, s, x, y, n.isDisabled(), text);
-        g.setFont(defaultFont);
+        if (labels != null) {
+            Rectangle2D labelBox = new Rectangle2D.Double(x + bounds.getX(), y + bounds.getY(),
+                    bounds.getWidth(), bounds.getHeight());
+            labels.add(new StraightLabel(recordIndex, labelSequence++, s, text, n.isDisabled(),
+                    Collections.singletonList(labelBox), Collections.singletonList(new Point(x, y))));
+        } else {
+            displayText(s, x, y, n.isDisabled(), text);
+        }
     }
 
     /**
@@ -651,7 +830,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
                 throw new AssertionError();
         }
 
-        OffsetIterator it = new OffsetIterator(way.getNodes(), offset);
+        OffsetIterator it = new OffsetIterator(getRenderedNodes(way), offset);
         while (it.hasNext()) {
             Point thisP = it.next();
 
@@ -1075,10 +1254,10 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         if (name == null || name.isEmpty())
             return;
 
-        FontMetrics fontMetrics = g.getFontMetrics(text.font);
-        Rectangle2D rec = fontMetrics.getStringBounds(name, g);
+        ShapedText shaped = GlyphVectorCache.get(name, text.font, g.getFontRenderContext());
+        Rectangle2D rec = shaped.getBounds();
 
-        Rectangle bounds = g.getClipBounds();
+        Rectangle bounds = getClipBounds();
 
         Polygon poly = new Polygon();
         Point lastPoint = null;
@@ -1204,21 +1383,10 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             tStart = t2;
         }
 
-        FontRenderContext frc = g.getFontRenderContext();
-        char[] chars = name.toCharArray();
-        int dirFlag = Bidi.DIRECTION_LEFT_TO_RIGHT;
-        if (Bidi.requiresBidi(chars, 0, chars.length)) {
-            Bidi bd = new Bidi(name, Bidi.DIRECTION_DEFAULT_LEFT_TO_RIGHT);
-            if (bd.isRightToLeft()) {
-                dirFlag = Bidi.DIRECTION_RIGHT_TO_LEFT;
-            }
-        }
-        // only works for text that is completely left-to-right or completely
-        // right-to-left, not bi-directional text
-        GlyphVector gv = text.font.layoutGlyphVector(frc, chars, 0, chars.length, dirFlag);
-
-        for (int i=0; i<gv.getNumGlyphs(); ++i) {
-            Rectangle2D rect = gv.getGlyphLogicalBounds(i).getBounds2D();
+        AffineTransform[] transforms = new AffineTransform[shaped.getGlyphs().getNumGlyphs()];
+        List<Rectangle2D> boxes = labels == null ? null : new ArrayList<Rectangle2D>(transforms.length);
+        for (int i=0; i<transforms.length; ++i) {
+            Rectangle2D rect = shaped.getGlyphBounds(i);
             double t = tStart + offsetSign * (rect.getX() + rect.getWidth()/2) / pathLength;
             double[] p = pointAt(t, poly, pathLength);
             if (p != null) {
@@ -1226,16 +1394,27 @@ public class StyledMapRenderer extends AbstractMapRenderer {
                 trfm.rotate(p[2]+angleOffset);
                 double off = -rect.getY() - rect.getHeight()/2 + text.yOffset;
                 trfm.translate(-rect.getWidth()/2, off);
+                if (boxes != null) {
+                    AffineTransform box = AffineTransform.getTranslateInstance(p[0], p[1]);
+                    box.rotate(p[2]+angleOffset);
+                    box.translate(-rect.getWidth()/2, off);
+                    boxes.add(box.createTransformedShape(
+                            new Rectangle2D.Double(0, rect.getY(), rect.getWidth(), rect.getHeight())).getBounds2D());
+                }
                 if (isGlyphVectorDoubleTranslationBug(text.font)) {
                     // scale the translation components by one half
                     AffineTransform tmp = AffineTransform.getTranslateInstance(-0.5 * trfm.getTranslateX(), -0.5 * trfm.getTranslateY());
                     tmp.concatenate(trfm);
                     trfm = tmp;
                 }
-                gv.setGlyphTransform(i, trfm);
+                transforms[i] = trfm;
             }
         }
-        displayText(gv, null, 0, 0, way.isDisabled(), text);
+        if (labels != null) {
+            labels.add(new PathLabel(recordIndex, labelSequence++, name, text, way.isDisabled(), transforms, boxes));
+        } else {
+            displayGlyphs(name, transforms, way.isDisabled(), text);
+        }
     }
 
     /**
@@ -1254,7 +1433,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         GeneralPath orientationArrows = showOrientation ? new GeneralPath() : null;
         GeneralPath onewayArrows = showOneway ? new GeneralPath() : null;
         GeneralPath onewayArrowsCasing = showOneway ? new GeneralPath() : null;
-        Rectangle bounds = g.getClipBounds();
+        Rectangle bounds = getClipBounds();
         if (bounds != null) {
             // avoid arrow heads at the border
             bounds.grow(100, 100);
@@ -1263,7 +1442,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         double wayLength = 0;
         Point lastPoint = null;
         boolean initialMoveToNeeded = true;
-        List<Node> wayNodes = way.getNodes();
+        List<Node> wayNodes = getRenderedNodes(way);
         if (wayNodes.size() < 2) return;
 
         // only highlight the segment if the way itself is not highlighted
@@ -1408,7 +1587,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
     private Path2D.Double getPath(Way w) {
         Path2D.Double path = new Path2D.Double();
         boolean initial = true;
-        for (Node n : w.getNodes()) {
+        for (Node n : getRenderedNodes(w)) {
             EastNorth p = n.getEastNorth();
             if (p != null) {
                 if (initial) {
@@ -1422,8 +1601,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         return path;
     }
 
-    private boolean isAreaVisible(Path2D.Double area) {
-        Rectangle2D bounds = area.getBounds2D();
+    private boolean isAreaVisible(Rectangle2D bounds) {
         if (bounds.isEmpty()) return false;
         Point2D p = nc.getPoint2D(new EastNorth(bounds.getX(), bounds.getY()));
         if (p.getX() > nc.getWidth()) return false;
@@ -1476,7 +1654,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         private final int to;
         private final List<StyleRecord> output;
 
-        private final ElemStyles styles = MapPaintStyles.getStyles();
+        private final ElemStyles styles = StyledMapRenderer.this.styles;
 
         private final boolean drawArea = circum <= Main.pref.getInteger("mappaint.fillareas", 10000000);
         private final boolean drawMultipolygon = drawArea && Main.pref.getBoolean("mappaint.multipolygon", true);
@@ -1561,15 +1739,22 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             throw new UnsupportedOperationException();
         }
 
+        private StyleList getStyles(OsmPrimitive osm) {
+            // the primitive may be rendered by several renderers at once, e.g. tiles of a map image
+            synchronized (osm) {
+                return styles.get(osm, circum, nc);
+            }
+        }
+
         public void add(Node osm, int flags) {
-            StyleList sl = styles.get(osm, circum, nc);
+            StyleList sl = getStyles(osm);
             for (ElemStyle s : sl) {
                 output.add(new StyleRecord(s, osm, flags));
             }
         }
 
         public void add(Relation osm, int flags) {
-            StyleList sl = styles.get(osm, circum, nc);
+            StyleList sl = getStyles(osm);
             for (ElemStyle s : sl) {
                 if (drawMultipolygon && drawArea && s instanceof AreaElemStyle && (flags & FLAG_DISABLED) == 0) {
                     output.add(new StyleRecord(s, osm, flags));
@@ -1580,7 +1765,7 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
 
         public void add(Way osm, int flags) {
-            StyleList sl = styles.get(osm, circum, nc);
+            StyleList sl = getStyles(osm);
             for (ElemStyle s : sl) {
                 if (!(drawArea && (flags & FLAG_DISABLED) == 0) && s instanceof AreaElemStyle) {
                     continue;
@@ -1590,6 +1775,225 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
+    /**
+     * Replies the clip bounds of the map. Labels are placed and lines are clipped with respect to them, so the
+     * result must not depend on the band painted by this renderer.
+     * @return the clip bounds of the map, or {@code null}
+     */
+    private Rectangle getClipBounds() {
+        if (!isBand)
+            return g.getClipBounds();
+        return mapClipBounds == null ? null : new Rectangle(mapClipBounds);
+    }
+
+    private void paintRecord(StyleRecord r, int index) {
+        recordIndex = index;
+        labelSequence = 0;
+        r.style.paintPrimitive(
+                r.osm,
+                paintSettings,
+                this,
+                (r.flags & FLAG_SELECTED) != 0,
+                (r.flags & FLAG_OUTERMEMBER_OF_SELECTED) != 0,
+                (r.flags & FLAG_MEMBER_OF_SELECTED) != 0
+        );
+    }
+
+    /**
+     * Sets the styles used to render the map instead of the styles of the map paint preferences.
+     * @param styles the styles
+     */
+    public void setStyles(ElemStyles styles) {
+        this.styles = styles;
+    }
+
+    /**
+     * Sets the executor and the number of bands used to paint the map in parallel, see {@link BandWorker}.
+     * Overrides {@link #PROP_PARALLEL_PAINTING}.
+     * @param executor the executor running the bands, or {@code null} to use the preferences
+     * @param bands the number of horizontal bands
+     */
+    void setParallelPainting(ExecutorService executor, int bands) {
+        this.paintExecutor = executor;
+        this.paintBands = bands;
+    }
+
+    /**
+     * Paints the style records, which are sorted in paint order, into a horizontal band of the map.
+     *
+     * Each band has its own offscreen image and renderer. It paints all records which may reach into the band
+     * in the same order as the sequential renderer, clipped to the band, so the composed bands look exactly like
+     * the map painted at once. Labels are placed with respect to the clip of the whole map, so labels crossing
+     * the border of two bands are painted in one piece. Icons and labels must not extend more than
+     * {@link #BAND_MARGIN} pixels beyond their primitive.
+     */
+    private class BandWorker implements Callable<BufferedImage> {
+
+        private final StyledMapRenderer painter;
+        private final BufferedImage image;
+        private final List<StyleRecord> records;
+        private final float[] minY;
+        private final float[] maxY;
+        private final Rectangle band;
+
+        BandWorker(StyledMapRenderer painter, BufferedImage image, List<StyleRecord> records, float[] minY, float[] maxY,
+                Rectangle band) {
+            this.painter = painter;
+            this.image = image;
+            this.records = records;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.band = band;
+        }
+
+        @Override
+        public BufferedImage call() {
+            float top = band.y;
+            float bottom = band.y + band.height;
+            try {
+                for (int i = 0; i < records.size(); i++) {
+                    if (minY[i] <= bottom && maxY[i] >= top) {
+                        painter.paintRecord(records.get(i), i);
+                    }
+                }
+            } finally {
+                painter.g.dispose();
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Paints the style records in parallel horizontal bands and composes them, see {@link BandWorker}.
+     * @param records the style records, sorted in paint order
+     * @param renderVirtualNodes see {@link #render}
+     * @param executor the executor running the bands
+     * @param bands the number of bands
+     * @return {@code false} if the records have to be painted sequentially, because the graphics context is
+     * transformed or the area to paint is too small to be split
+     */
+    private boolean paintInBands(List<StyleRecord> records, boolean renderVirtualNodes, ExecutorService executor,
+            int bands) {
+        AffineTransform transform = g.getTransform();
+        if (transform.getType() != AffineTransform.TYPE_IDENTITY
+                && (transform.getType() != AffineTransform.TYPE_TRANSLATION
+                || transform.getTranslateX() != Math.rint(transform.getTranslateX())
+                || transform.getTranslateY() != Math.rint(transform.getTranslateY())))
+            // the bands would be scaled or shifted off the pixel grid
+            return false;
+        Rectangle area = new Rectangle(0, 0, nc.getWidth(), nc.getHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        int bandHeight = Math.max(MIN_BAND_HEIGHT, (area.height + bands - 1) / Math.max(1, bands));
+        if (area.isEmpty() || bandHeight >= area.height)
+            return false;
+
+        float[] minY = new float[records.size()];
+        float[] maxY = new float[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            setVerticalExtent(records.get(i), minY, maxY, i);
+        }
+
+        List<BandWorker> workers = new ArrayList<>();
+        for (int y = area.y; y < area.y + area.height; y += bandHeight) {
+            Rectangle rect = new Rectangle(area.x, y, area.width, Math.min(bandHeight, area.y + area.height - y));
+            BufferedImage image = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D bandGraphics = image.createGraphics();
+            bandGraphics.setRenderingHints(g.getRenderingHints());
+            bandGraphics.setFont(g.getFont());
+            bandGraphics.translate(-rect.x, -rect.y);
+            bandGraphics.clipRect(rect.x, rect.y, rect.width, rect.height);
+            StyledMapRenderer painter = new StyledMapRenderer(bandGraphics, nc, isInactiveMode);
+            painter.getSettings(renderVirtualNodes);
+            painter.highlightWaySegments = highlightWaySegments;
+            painter.styles = styles;
+            painter.isBand = true;
+            painter.mapClipBounds = clip;
+            painter.labels = labels == null ? null : new ArrayList<Label>();
+            workers.add(new BandWorker(painter, image, records, minY, maxY, rect));
+        }
+        try {
+            List<Future<BufferedImage>> futures = executor.invokeAll(workers);
+            for (int i = 0; i < workers.size(); i++) {
+                Rectangle rect = workers.get(i).band;
+                g.drawImage(futures.get(i).get(), rect.x, rect.y, null);
+                if (labels != null) {
+                    labels.addAll(workers.get(i).painter.labels);
+                }
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+        return true;
+    }
+
+    /**
+     * Stores the range of screen y coordinates which may be painted for a style record. Relations other than
+     * multipolygons may cover everything.
+     */
+    private void setVerticalExtent(StyleRecord r, float[] minY, float[] maxY, int i) {
+        OsmPrimitive osm = r.osm;
+        double minNorth = Double.POSITIVE_INFINITY;
+        double maxNorth = Double.NEGATIVE_INFINITY;
+        if (osm instanceof Node) {
+            EastNorth en = ((Node) osm).getEastNorth();
+            if (en != null) {
+                minNorth = maxNorth = en.north();
+            }
+        } else if (osm instanceof Way) {
+            for (Node n : getRenderedNodes((Way) osm)) {
+                EastNorth en = n.getEastNorth();
+                if (en != null) {
+                    minNorth = Math.min(minNorth, en.north());
+                    maxNorth = Math.max(maxNorth, en.north());
+                }
+            }
+        } else if (osm instanceof Relation && r.style instanceof AreaElemStyle) {
+            // build the multipolygons before painting the bands, so the bands do not wait for each other
+            Multipolygon multipolygon = MultipolygonCache.getInstance().get(nc, (Relation) osm);
+            for (PolyData pd : multipolygon.getCombinedPolygons()) {
+                Rectangle2D bounds = pd.getBounds();
+                if (!bounds.isEmpty()) {
+                    minNorth = Math.min(minNorth, bounds.getMinY());
+                    maxNorth = Math.max(maxNorth, bounds.getMaxY());
+                }
+            }
+        }
+        if (minNorth > maxNorth) {
+            minY[i] = Float.NEGATIVE_INFINITY;
+            maxY[i] = Float.POSITIVE_INFINITY;
+        } else {
+            float margin = BAND_MARGIN;
+            if (r.style instanceof LineElemStyle) {
+                margin = ((LineElemStyle) r.style).getMaxExtent(circum, paintSettings) + DECORATION_MARGIN;
+            } else if (r.style instanceof AreaElemStyle && ((AreaElemStyle) r.style).text == null) {
+                margin = DECORATION_MARGIN;
+            }
+            // the y axis of the screen points to the south
+            minY[i] = (float) Math.floor(nc.getPoint2D(new EastNorth(0, maxNorth)).getY()) - margin;
+            maxY[i] = (float) Math.ceil(nc.getPoint2D(new EastNorth(0, minNorth)).getY()) + margin;
+        }
+    }
+
+    /**
+     * Paints the labels collected while painting the map, in order of priority and without overlaps.
+     */
+    private void placeLabels() {
+        Collections.sort(labels);
+        LabelCollisionGrid grid = new LabelCollisionGrid();
+        Label previous = null;
+        for (Label label : labels) {
+            // bands painting the same style record create the same labels
+            if (previous == null || previous.compareTo(label) != 0) {
+                label.place(this, grid);
+            }
+            previous = label;
+        }
+        labels = null;
+    }
+
     private class ConcurrentTasksHelper {
 
         private final List<StyleRecord> allStyleElems;
@@ -1675,15 +2079,20 @@ public class StyledMapRenderer extends AbstractMapRenderer {
 
             Collections.sort(allStyleElems); // TODO: try parallel sort when switching to Java 8
 
-            for (StyleRecord r : allStyleElems) {
-                r.style.paintPrimitive(
-                        r.osm,
-                        paintSettings,
-                        StyledMapRenderer.this,
-                        (r.flags & FLAG_SELECTED) != 0,
-                        (r.flags & FLAG_OUTERMEMBER_OF_SELECTED) != 0,
-                        (r.flags & FLAG_MEMBER_OF_SELECTED) != 0
-                );
+            ExecutorService executor = paintExecutor;
+            int bands = paintBands;
+            if (executor == null && PAINT_THREAD_POOL.b != null && PROP_PARALLEL_PAINTING.get()) {
+                executor = PAINT_THREAD_POOL.b;
+                bands = PAINT_THREAD_POOL.a;
+            }
+            labels = PROP_LABEL_COLLISION.get() ? new ArrayList<Label>() : null;
+            if (executor == null || !paintInBands(allStyleElems, renderVirtualNodes, executor, bands)) {
+                for (int i = 0; i < allStyleElems.size(); i++) {
+                    paintRecord(allStyleElems.get(i), i);
+                }
+            }
+            if (labels != null) {
+                placeLabels();
             }
 
             if (Main.isTraceEnabled()) {
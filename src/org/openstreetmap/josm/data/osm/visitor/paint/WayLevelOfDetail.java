@@ -0,0 +1,161 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.projection.Projection;
+
+/**
+ * Simplified geometries of a way for rendering at low zoom levels.
+ *
+ * When zoomed out, many nodes of a way fall onto the same pixel and drawing all of them is wasted time. For each
+ * level of detail, the nodes of a way are reduced with the Douglas-Peucker algorithm to those which deviate more
+ * than a tolerance from the simplified line. The tolerances are powers of 4 in projected units. A renderer uses
+ * the largest tolerance below {@link #MAX_ERROR} pixels, so the simplified way cannot be told apart from the
+ * original one.
+ *
+ * The levels are computed lazily and kept in the way, see {@link Way#getRenderingCache()}. They are dropped when
+ * the nodes of the way change or one of its nodes is moved.
+ */
+public final class WayLevelOfDetail {
+
+    /**
+     * Preference to render simplified ways at low zoom levels.
+     */
+    public static final BooleanProperty PROP_ENABLED = new BooleanProperty("mappaint.simplify-ways", true);
+
+    /** maximum distance in pixels between the simplified and the original way */
+    private static final double MAX_ERROR = 0.5;
+    /** ways with less nodes are not simplified */
+    private static final int MIN_NODES = 4;
+    /** maximum number of levels kept per way */
+    private static final int MAX_LEVELS = 4;
+    private static final double LOG_4 = Math.log(4);
+
+    private final Projection projection;
+    private final int[] levels;
+    /** the simplified nodes for each level, {@code null} if no node could be removed */
+    private final Node[][] nodes;
+
+    private WayLevelOfDetail(Projection projection, int[] levels, Node[][] nodes) {
+        this.projection = projection;
+        this.levels = levels;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Replies the nodes of a way, simplified for the given scale.
+     * @param w the way
+     * @param scale the scale in projected units per pixel, see {@link org.openstreetmap.josm.gui.NavigatableComponent#getScale()}
+     * @return the nodes to render, which differ less than half a pixel from the way
+     */
+    public static List<Node> getNodes(Way w, double scale) {
+        if (w.getNodesCount() < MIN_NODES || !(scale > 0))
+            return w.getNodes();
+        int level = (int) Math.floor(Math.log(MAX_ERROR * scale) / LOG_4);
+        Projection projection = Main.getProjection();
+        Object cached = w.getRenderingCache();
+        WayLevelOfDetail lod = cached instanceof WayLevelOfDetail ? (WayLevelOfDetail) cached : null;
+        if (lod != null && lod.projection == projection) {
+            for (int i = 0; i < lod.levels.length; i++) {
+                if (lod.levels[i] == level)
+                    return lod.nodes[i] == null ? w.getNodes() : Arrays.asList(lod.nodes[i]);
+            }
+        } else {
+            lod = new WayLevelOfDetail(projection, new int[0], new Node[0][]);
+        }
+
+        Node[] original = w.getNodes().toArray(new Node[w.getNodesCount()]);
+        Node[] simplified = simplify(original, Math.pow(4, level));
+        if (simplified.length == original.length) {
+            simplified = null;
+        }
+        // keep the most recently computed levels
+        int from = Math.max(0, lod.levels.length + 1 - MAX_LEVELS);
+        int n = lod.levels.length - from;
+        int[] levels = Arrays.copyOfRange(lod.levels, from, from + n + 1);
+        Node[][] nodes = Arrays.copyOfRange(lod.nodes, from, from + n + 1);
+        levels[n] = level;
+        nodes[n] = simplified;
+        w.setRenderingCache(new WayLevelOfDetail(projection, levels, nodes));
+        return simplified == null ? Arrays.asList(original) : Arrays.asList(simplified);
+    }
+
+    /**
+     * Simplifies a line with the Douglas-Peucker algorithm.
+     * @param nodes the nodes of the line
+     * @param tolerance the maximum distance of a removed node from the simplified line, in projected units
+     * @return the kept nodes, {@code nodes} itself if the coordinates of a node are unknown
+     */
+    static Node[] simplify(Node[] nodes, double tolerance) {
+        int n = nodes.length;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            EastNorth en = nodes[i].getEastNorth();
+            if (en == null)
+                return nodes;
+            x[i] = en.east();
+            y[i] = en.north();
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = 2;
+        double tolerance2 = tolerance * tolerance;
+        // pairs of first and last index of the sections which still have to be simplified
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            int farthest = -1;
+            double max = tolerance2;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        Node[] result = new Node[kept];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                result[j++] = nodes[i];
+            }
+        }
+        return result;
+    }
+
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / length2;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
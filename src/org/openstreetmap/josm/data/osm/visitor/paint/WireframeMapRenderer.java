@@ -313,7 +313,8 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Visitor
             wayColor = dfltWayColor;
         }
 
-        Iterator<Node> it = w.getNodes().iterator();
+        // order numbers refer to the segments of the original way
+        Iterator<Node> it = (showOrderNumber && !isInactiveMode ? w.getNodes() : getRenderedNodes(w)).iterator();
         if (it.hasNext()) {
             Point lastP = nc.getPoint(it.next());
             for (int orderNumber = 1; it.hasNext(); orderNumber++) {
@@ -365,7 +366,7 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Visitor
                 GeneralPath path = new GeneralPath();
 
                 boolean first = true;
-                for (Node n : m.getWay().getNodes()) {
+                for (Node n : getRenderedNodes(m.getWay())) {
                     if (!n.isDrawable()) {
                         continue;
                     }
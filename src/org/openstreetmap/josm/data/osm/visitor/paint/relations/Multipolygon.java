@@ -19,6 +19,7 @@ import org.openstreetmap.josm.data.Preferences.PreferenceChangedListener;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
@@ -187,6 +188,13 @@ public class Multipolygon {
         }
     }
 
+    /**
+     * A ring of a multipolygon, together with its inner rings if it is an outer ring of {@link #getCombinedPolygons}.
+     *
+     * The projected path and the bounds of each ring are kept separately, so that a change of a member way only
+     * rebuilds the rings containing the way. The path including the inner rings is assembled from the ring paths
+     * when it is needed the next time.
+     */
     public static class PolyData {
         public enum Intersection {INSIDE, OUTSIDE, CROSSING}
 
@@ -196,6 +204,11 @@ public class Multipolygon {
         private final Collection<Long> wayIds;
         private final List<Node> nodes;
         private final List<PolyData> inners;
+        /** the projected nodes of this ring only, replaced as a whole when the ring changes */
+        private Path2D.Double ring;
+        private Rectangle2D ringBounds;
+        /** if {@link #poly} and {@link #bounds} have to be assembled from the rings */
+        private boolean dirty;
 
         public PolyData(Way closedWay) {
             this(closedWay.getNodes(), closedWay.isSelected(), Collections.singleton(closedWay.getUniqueId()));
@@ -212,39 +225,45 @@ public class Multipolygon {
             this.inners = new ArrayList<>();
             this.poly = new Path2D.Double();
             this.poly.setWindingRule(Path2D.WIND_EVEN_ODD);
-            buildPoly();
+            buildRing();
         }
 
-        private void buildPoly() {
+        private void buildRing() {
+            Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD, nodes.size() + 1);
             boolean initial = true;
             for (Node n : nodes) {
                 EastNorth p = n.getEastNorth();
                 if (p != null) {
                     if (initial) {
-                        poly.moveTo(p.getX(), p.getY());
+                        path.moveTo(p.getX(), p.getY());
                         initial = false;
                     } else {
-                        poly.lineTo(p.getX(), p.getY());
+                        path.lineTo(p.getX(), p.getY());
                     }
                 }
             }
             if (!initial) { // fix #7593
-                poly.closePath();
-            }
-            for (PolyData inner : inners) {
-                appendInner(inner.poly);
+                path.closePath();
             }
+            ring = path;
+            ringBounds = path.getBounds2D();
+            dirty = true;
         }
 
         public PolyData(PolyData copy) {
             this.selected = copy.selected;
-            this.poly = (Double) copy.poly.clone();
+            this.poly = (Double) copy.get().clone();
+            this.bounds = copy.getBounds();
             this.wayIds = Collections.unmodifiableCollection(copy.wayIds);
             this.nodes = new ArrayList<>(copy.nodes);
             this.inners = new ArrayList<>(copy.inners);
+            // the ring paths are never modified, only replaced
+            this.ring = copy.ring;
+            this.ringBounds = copy.ringBounds;
         }
 
         public Intersection contains(Path2D.Double p) {
+            Path2D.Double path = get();
             int contains = 0;
             int total = 0;
             double[] coords = new double[6];
@@ -252,7 +271,7 @@ public class Multipolygon {
                 switch (it.currentSegment(coords)) {
                     case PathIterator.SEG_MOVETO:
                     case PathIterator.SEG_LINETO:
-                        if (poly.contains(coords[0], coords[1])) {
+                        if (path.contains(coords[0], coords[1])) {
                             contains++;
                         }
                         total++;
@@ -263,23 +282,37 @@ public class Multipolygon {
             return Intersection.CROSSING;
         }
 
-        public void addInner(PolyData inner) {
+        public synchronized void addInner(PolyData inner) {
             inners.add(inner);
-            appendInner(inner.poly);
-        }
-
-        private void appendInner(Path2D.Double inner) {
-            poly.append(inner.getPathIterator(null), false);
-        }
-
-        public Path2D.Double get() {
+            dirty = true;
+        }
+
+        /**
+         * Replies the projected path of this ring and its inner rings.
+         * @return the projected path of this polygon
+         */
+        public synchronized Path2D.Double get() {
+            if (dirty) {
+                poly.reset();
+                poly.append(ring, false);
+                bounds = (Rectangle2D) ringBounds.clone();
+                for (PolyData inner : inners) {
+                    poly.append(inner.ring, false);
+                    if (!inner.ringBounds.isEmpty()) {
+                        bounds.add(inner.ringBounds);
+                    }
+                }
+                dirty = false;
+            }
             return poly;
         }
 
-        public Rectangle2D getBounds() {
-            if (bounds == null) {
-                bounds = poly.getBounds2D();
-            }
+        /**
+         * Replies the bounds of this ring and its inner rings, in east/north coordinates.
+         * @return the bounds of this polygon
+         */
+        public synchronized Rectangle2D getBounds() {
+            get();
             return bounds;
         }
 
@@ -313,42 +346,62 @@ public class Multipolygon {
                         nodes.addAll(joinWays(waysToJoin).iterator().next().getNodes());
                     }
                 }
-                resetPoly();
+                buildRing();
             }
         }
 
-        private void resetPoly() {
-            poly.reset();
-            buildPoly();
-            bounds = null;
+        private boolean containsWayOf(Node n) {
+            for (OsmPrimitive ref : n.getReferrers()) {
+                if (ref instanceof Way && wayIds.contains(ref.getUniqueId()))
+                    return true;
+            }
+            return false;
         }
 
-        public void nodeMoved(NodeMovedEvent event) {
+        /**
+         * Rebuilds the rings containing a moved node.
+         * @param event the event
+         * @return the number of rebuilt rings
+         */
+        public synchronized int nodeMoved(NodeMovedEvent event) {
             final Node n = event.getNode();
-            boolean innerChanged = false;
+            int rebuilt = 0;
             for (PolyData inner : inners) {
-                if (inner.nodes.contains(n)) {
-                    inner.resetPoly();
-                    innerChanged = true;
+                if (inner.containsWayOf(n)) {
+                    inner.buildRing();
+                    rebuilt++;
                 }
             }
-            if (nodes.contains(n) || innerChanged) {
-                resetPoly();
+            if (containsWayOf(n)) {
+                buildRing();
+                rebuilt++;
+            } else if (rebuilt > 0) {
+                dirty = true;
             }
+            return rebuilt;
         }
 
-        public void wayNodesChanged(WayNodesChangedEvent event) {
+        /**
+         * Joins and rebuilds the rings containing a changed way again.
+         * @param event the event
+         * @return the number of rebuilt rings
+         */
+        public synchronized int wayNodesChanged(WayNodesChangedEvent event) {
             final Long wayId = event.getChangedWay().getUniqueId();
-            boolean innerChanged = false;
+            int rebuilt = 0;
             for (PolyData inner : inners) {
                 if (inner.wayIds.contains(wayId)) {
                     inner.resetNodes(event.getDataset());
-                    innerChanged = true;
+                    rebuilt++;
                 }
             }
-            if (wayIds.contains(wayId) || innerChanged) {
+            if (wayIds.contains(wayId)) {
                 resetNodes(event.getDataset());
+                rebuilt++;
+            } else if (rebuilt > 0) {
+                dirty = true;
             }
+            return rebuilt;
         }
     }
 
@@ -535,8 +588,8 @@ public class Multipolygon {
 
         PolyData result = null;
         for (PolyData combined : outerPolygons) {
-            if (combined.contains(inner.poly) != Intersection.OUTSIDE) {
-                if (result == null || result.contains(combined.poly) == Intersection.INSIDE) {
+            if (combined.contains(inner.get()) != Intersection.OUTSIDE) {
+                if (result == null || result.contains(combined.get()) == Intersection.INSIDE) {
                     result = combined;
                 }
             }
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.SelectionChangedListener;
@@ -16,6 +17,7 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListener;
 import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
@@ -35,6 +37,7 @@ import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 
 /**
  * A memory cache for {@link Multipolygon} objects.
+ * The cache is thread safe, so several map renderers may use it at once.
  * @since 4623
  */
 public final class MultipolygonCache implements DataSetListener, LayerChangeListener, ProjectionChangeListener, SelectionChangedListener {
@@ -45,6 +48,9 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
 
     private final Collection<PolyData> selectedPolyData;
 
+    private final AtomicLong multipolygonsBuilt = new AtomicLong();
+    private final AtomicLong ringsRebuilt = new AtomicLong();
+
     private MultipolygonCache() {
         this.cache = new HashMap<>();
         this.selectedPolyData = new ArrayList<>();
@@ -78,7 +84,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
      * @param forceRefresh if {@code true}, a new object will be created even of present in cache
      * @return A multipolygon object for the given relation, or {@code null}
      */
-    public final Multipolygon get(NavigatableComponent nc, Relation r, boolean forceRefresh) {
+    public final synchronized Multipolygon get(NavigatableComponent nc, Relation r, boolean forceRefresh) {
         Multipolygon multipolygon = null;
         if (nc != null && r != null) {
             Map<DataSet, Map<Relation, Multipolygon>> map1 = cache.get(nc);
@@ -92,6 +98,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
             multipolygon = map2.get(r);
             if (multipolygon == null || forceRefresh) {
                 map2.put(r, multipolygon = new Multipolygon(r));
+                multipolygonsBuilt.incrementAndGet();
                 for (PolyData pd : multipolygon.getCombinedPolygons()) {
                     if (pd.selected) {
                         selectedPolyData.add(pd);
@@ -102,11 +109,27 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
         return multipolygon;
     }
 
+    /**
+     * Replies the number of multipolygons built from scratch since the start, for statistics.
+     * @return the number of built multipolygons
+     */
+    public long getMultipolygonsBuilt() {
+        return multipolygonsBuilt.get();
+    }
+
+    /**
+     * Replies the number of rings rebuilt since the start because a member way changed, for statistics.
+     * @return the number of rebuilt rings
+     */
+    public long getRingsRebuilt() {
+        return ringsRebuilt.get();
+    }
+
     /**
      * Clears the cache for the given navigatable component.
      * @param nc the navigatable component
      */
-    public final void clear(NavigatableComponent nc) {
+    public final synchronized void clear(NavigatableComponent nc) {
         Map<DataSet, Map<Relation, Multipolygon>> map = cache.remove(nc);
         if (map != null) {
             map.clear();
@@ -118,7 +141,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
      * Clears the cache for the given dataset.
      * @param ds the data set
      */
-    public final void clear(DataSet ds) {
+    public final synchronized void clear(DataSet ds) {
         for (Map<DataSet, Map<Relation, Multipolygon>> map1 : cache.values()) {
             Map<Relation, Multipolygon> map2 = map1.remove(ds);
             if (map2 != null) {
@@ -131,7 +154,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
     /**
      * Clears the whole cache.
      */
-    public final void clear() {
+    public final synchronized void clear() {
         cache.clear();
     }
 
@@ -150,7 +173,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
         return p instanceof Relation && ((Relation) p).isMultipolygon();
     }
 
-    private final void updateMultipolygonsReferringTo(AbstractDatasetChangedEvent event) {
+    private final synchronized void updateMultipolygonsReferringTo(AbstractDatasetChangedEvent event) {
         updateMultipolygonsReferringTo(event, event.getPrimitives(), event.getDataset());
     }
 
@@ -207,9 +230,9 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
             if (m != null) {
                 for (PolyData pd : m.getCombinedPolygons()) {
                     if (event instanceof NodeMovedEvent) {
-                        pd.nodeMoved((NodeMovedEvent) event);
+                        ringsRebuilt.addAndGet(pd.nodeMoved((NodeMovedEvent) event));
                     } else if (event instanceof WayNodesChangedEvent) {
-                        pd.wayNodesChanged((WayNodesChangedEvent)event);
+                        ringsRebuilt.addAndGet(pd.wayNodesChanged((WayNodesChangedEvent) event));
                     }
                 }
             }
@@ -262,7 +285,16 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
     }
 
     @Override
-    public void dataChanged(DataChangedEvent event) {
+    public synchronized void dataChanged(DataChangedEvent event) {
+        List<AbstractDatasetChangedEvent> events = event instanceof CoalescedDataChangedEvent
+                ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : null;
+        if (events != null) {
+            // only rebuild the rings affected by the merged events
+            for (AbstractDatasetChangedEvent e : events) {
+                e.fire(this);
+            }
+            return;
+        }
         // Do not call updateMultipolygonsReferringTo as getPrimitives()
         // can return all the data set primitives for this event
         Collection<Map<Relation, Multipolygon>> maps = null;
@@ -306,7 +338,7 @@ public final class MultipolygonCache implements DataSetListener, LayerChangeList
     }
 
     @Override
-    public void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
+    public synchronized void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
 
         for (Iterator<PolyData> it = selectedPolyData.iterator(); it.hasNext();) {
             it.next().selected = false;
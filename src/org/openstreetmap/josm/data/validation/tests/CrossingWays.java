@@ -3,7 +3,6 @@ package org.openstreetmap.josm.data.validation.tests;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -15,15 +14,16 @@ import java.util.Set;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WaySegment;
-import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.osm.WaySegmentIndex;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
-import org.openstreetmap.josm.data.validation.util.ValUtil;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 
 /**
@@ -38,8 +38,12 @@ public abstract class CrossingWays extends Test {
     private static final String RAILWAY = "railway";
     private static final String WATERWAY = "waterway";
 
-    /** All way segments, grouped by cells */
-    private Map<Point2D,List<WaySegment>> cellSegments;
+    /** The already visited ways, only segments of these ways are checked against */
+    private Set<Way> visitedWays;
+    /** Segments of visited ways which do not belong to a dataset */
+    private WaySegmentIndex localSegments;
+    /** The datasets whose segment index is used, released at the end of the test */
+    private Set<DataSet> indexedDataSets;
     /** The already detected errors */
     private Set<WaySegment> errorSegments;
     /** The already detected ways in error */
@@ -186,7 +190,9 @@ public abstract class CrossingWays extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        cellSegments = new HashMap<>(1000);
+        visitedWays = new HashSet<>();
+        localSegments = new WaySegmentIndex();
+        indexedDataSets = new HashSet<>();
         errorSegments = new HashSet<>();
         seenWays = new HashMap<>(50);
     }
@@ -194,7 +200,12 @@ public abstract class CrossingWays extends Test {
     @Override
     public void endTest() {
         super.endTest();
-        cellSegments = null;
+        for (DataSet ds : indexedDataSets) {
+            ds.releaseSegmentIndex();
+        }
+        visitedWays = null;
+        localSegments = null;
+        indexedDataSets = null;
         errorSegments = null;
         seenWays = null;
     }
@@ -225,6 +236,14 @@ public abstract class CrossingWays extends Test {
 
     @Override
     public void visit(Way w) {
+        WaySegmentIndex index;
+        if (w.getDataSet() != null) {
+            index = w.getDataSet().getSegmentIndex();
+            indexedDataSets.add(w.getDataSet());
+        } else {
+            index = localSegments;
+            index.addWay(w);
+        }
 
         int nodesSize = w.getNodesCount();
         for (int i = 0; i < nodesSize - 1; i++) {
@@ -235,59 +254,69 @@ public abstract class CrossingWays extends Test {
                 Main.warn("Crossing ways test skipped "+es1);
                 continue;
             }
-            for (List<WaySegment> segments : getSegments(en1, en2)) {
-                for (WaySegment es2 : segments) {
-                    List<Way> prims;
-                    List<WaySegment> highlight;
-
-                    if (errorSegments.contains(es1) && errorSegments.contains(es2)
-                            || !es1.intersects(es2)
-                            || ignoreWaySegmentCombination(es1.way, es2.way)) {
-                        continue;
-                    }
-
-                    prims = Arrays.asList(es1.way, es2.way);
-                    if ((highlight = seenWays.get(prims)) == null) {
-                        highlight = new ArrayList<>();
-                        highlight.add(es1);
-                        highlight.add(es2);
-
-                        final String message = createMessage(es1.way, es2.way);
-                        errors.add(new TestError(this, Severity.WARNING,
-                                message,
-                                CROSSING_WAYS,
-                                prims,
-                                highlight));
-                        seenWays.put(prims, highlight);
-                    } else {
-                        highlight.add(es1);
-                        highlight.add(es2);
-                    }
+            for (WaySegment es2 : index.search(es1)) {
+                // only check against segments which have been visited before
+                if (es2.way == w ? es2.lowerIndex >= i : !visitedWays.contains(es2.way)) {
+                    continue;
+                }
+                List<Way> prims;
+                List<WaySegment> highlight;
+
+                if (errorSegments.contains(es1) && errorSegments.contains(es2)
+                        || !es1.intersects(es2)
+                        || ignoreWaySegmentCombination(es1.way, es2.way)) {
+                    continue;
+                }
+
+                prims = Arrays.asList(es1.way, es2.way);
+                if ((highlight = seenWays.get(prims)) == null) {
+                    highlight = new ArrayList<>();
+                    highlight.add(es1);
+                    highlight.add(es2);
+
+                    final String message = createMessage(es1.way, es2.way);
+                    errors.add(new TestError(this, Severity.WARNING,
+                            message,
+                            CROSSING_WAYS,
+                            prims,
+                            highlight));
+                    seenWays.put(prims, highlight);
+                } else {
+                    highlight.add(es1);
+                    highlight.add(es2);
                 }
-                segments.add(es1);
             }
         }
+        visitedWays.add(w);
     }
 
     /**
-     * Returns all the cells this segment crosses.  Each cell contains the list
-     * of segments already processed
+     * Returns the segments already processed which may cross the segment between the given points.
      *
      * @param n1 The first EastNorth
      * @param n2 The second EastNorth
-     * @return A list with all the cells the segment crosses
+     * @return A list with one list of the segments already processed whose bounding box intersects the one of
+     * the given segment
+     * @deprecated The segments are no longer grouped by cells, use {@link WaySegmentIndex#search(BBox)}
      */
+    @Deprecated
     public List<List<WaySegment>> getSegments(EastNorth n1, EastNorth n2) {
-
-        List<List<WaySegment>> cells = new ArrayList<>();
-        for (Point2D cell : ValUtil.getSegmentCells(n1, n2, OsmValidator.griddetail)) {
-            List<WaySegment> segments = cellSegments.get(cell);
-            if (segments == null) {
-                segments = new ArrayList<>();
-                cellSegments.put(cell, segments);
+        BBox bbox = new BBox(Main.getProjection().eastNorth2latlon(n1), Main.getProjection().eastNorth2latlon(n2));
+        List<WaySegment> segments = new ArrayList<>();
+        List<WaySegmentIndex> indexes = new ArrayList<>();
+        indexes.add(localSegments);
+        for (DataSet ds : indexedDataSets) {
+            indexes.add(ds.getSegmentIndex());
+        }
+        for (WaySegmentIndex index : indexes) {
+            for (WaySegment es : index.search(bbox)) {
+                if (visitedWays.contains(es.way)) {
+                    segments.add(es);
+                }
             }
-            cells.add(segments);
         }
+        List<List<WaySegment>> cells = new ArrayList<>();
+        cells.add(segments);
         return cells;
     }
 }
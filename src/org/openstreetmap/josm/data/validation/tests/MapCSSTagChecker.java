@@ -48,6 +48,7 @@ import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule.Declaration;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource.MapCSSRuleIndex;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.AbstractSelector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
@@ -142,6 +143,21 @@ public class MapCSSTagChecker extends Test.TagTest {
 
     final MultiMap<String, TagCheck> checks = new MultiMap<>();
 
+    /**
+     * One selector of a check, as rule of the index of all checks.
+     */
+    private static final class IndexedSelector extends MapCSSRule {
+        private final TagCheck check;
+
+        IndexedSelector(Selector selector, TagCheck check) {
+            super(selector, check.rule.declaration);
+            this.check = check;
+        }
+    }
+
+    /** the selectors of all {@link #checks} indexed by their tags, created on demand */
+    private MapCSSRuleIndex index;
+
     static class TagCheck implements Predicate<OsmPrimitive> {
         protected final GroupedMapCSSRule rule;
         protected final List<PrimitiveToTag> change = new ArrayList<>();
@@ -593,10 +609,38 @@ public class MapCSSTagChecker extends Test.TagTest {
      * @return all errors for the given primitive, with or without those of "info" severity
      */
     public synchronized Collection<TestError> getErrorsForPrimitive(OsmPrimitive p, boolean includeOtherSeverity) {
-        return getErrorsForPrimitive(p, includeOtherSeverity, checks.values());
+        if (index == null) {
+            // the index is private, so it does not need the lock of the style sources
+            index = new MapCSSRuleIndex();
+            for (Set<TagCheck> schecks : checks.values()) {
+                for (TagCheck check : schecks) {
+                    for (Selector selector : check.rule.selectors) {
+                        index.add(new IndexedSelector(selector, check));
+                    }
+                }
+            }
+            index.initIndex();
+        }
+        final List<TestError> r = new ArrayList<>();
+        final Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, null);
+        // the candidates are in the order of the checks and their selectors, only the first matching selector counts
+        TagCheck matched = null;
+        for (Iterator<MapCSSRule> it = index.getRuleCandidates(p); it.hasNext();) {
+            final IndexedSelector candidate = (IndexedSelector) it.next();
+            final TagCheck check = candidate.check;
+            if (check == matched || (Severity.OTHER.equals(check.getSeverity()) && !includeOtherSeverity)) {
+                continue;
+            }
+            env.clearSelectorMatchingInformation();
+            if (candidate.selector.matches(env)) {
+                matched = check;
+                addError(r, p, check, candidate.selector, env);
+            }
+        }
+        return r;
     }
 
-    private static Collection<TestError> getErrorsForPrimitive(OsmPrimitive p, boolean includeOtherSeverity,
+    static Collection<TestError> getErrorsForPrimitive(OsmPrimitive p, boolean includeOtherSeverity,
             Collection<Set<TagCheck>> checksCol) {
         final List<TestError> r = new ArrayList<>();
         final Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, null);
@@ -607,18 +651,22 @@ public class MapCSSTagChecker extends Test.TagTest {
                 }
                 final Selector selector = check.whichSelectorMatchesEnvironment(env);
                 if (selector != null) {
-                    check.rule.declaration.execute(env);
-                    final TestError error = check.getErrorForPrimitive(p, selector, env);
-                    if (error != null) {
-                        error.setTester(new MapCSSTagCheckerAndRule(check.rule));
-                        r.add(error);
-                    }
+                    addError(r, p, check, selector, env);
                 }
             }
         }
         return r;
     }
 
+    private static void addError(List<TestError> r, OsmPrimitive p, TagCheck check, Selector selector, Environment env) {
+        check.rule.declaration.execute(env);
+        final TestError error = check.getErrorForPrimitive(p, selector, env);
+        if (error != null) {
+            error.setTester(new MapCSSTagCheckerAndRule(check.rule));
+            r.add(error);
+        }
+    }
+
     /**
      * Visiting call for primitives.
      *
@@ -644,6 +692,7 @@ public class MapCSSTagChecker extends Test.TagTest {
             List<TagCheck> tagchecks = TagCheck.readMapCSS(new BufferedReader(UTFInputStreamReader.create(s)));
             checks.remove(url);
             checks.putAll(url, tagchecks);
+            index = null;
             // Check assertions, useful for development of local files
             if (Main.pref.getBoolean("validator.check_assert_local_rules", false) && Utils.isLocalUrl(url)) {
                 for (String msg : checkAsserts(tagchecks)) {
@@ -656,6 +705,7 @@ public class MapCSSTagChecker extends Test.TagTest {
     @Override
     public synchronized void initialize() throws Exception {
         checks.clear();
+        index = null;
         for (SourceEntry source : new ValidatorTagCheckerRulesPreference.RulePrefHelper().get()) {
             if (!source.active) {
                 continue;
@@ -50,6 +50,7 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.osm.visitor.paint.PaintColors;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.layer.GpxLayer;
 import org.openstreetmap.josm.gui.layer.ImageryLayer;
 import org.openstreetmap.josm.gui.layer.Layer;
@@ -203,6 +204,11 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         }
     }
 
+    /**
+     * Preference to show statistics about the painting of the map, for debugging.
+     */
+    public static final BooleanProperty PROP_DEBUG_OVERLAY = new BooleanProperty("draw.debug-overlay", false);
+
     /**
      * A list of all layers currently loaded.
      */
@@ -233,9 +239,16 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
     private Layer changedLayer;
     private int lastViewID;
     private boolean paintPreferencesChanged = true;
+    private int paintPreferencesCount;
     private Rectangle lastClipBounds = new Rectangle();
     private MapMover mapMover;
 
+    // statistics of the debug overlay, updated at most once per second
+    private long debugTime;
+    private long debugMultipolygonsBuilt;
+    private long debugRingsRebuilt;
+    private String debugText;
+
     /**
      * Constructs a new {@code MapView}.
      * @param contentPane The content pane used to register shortcuts in its
@@ -690,6 +703,10 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
             Main.map.filterDialog.drawOSDText(tempG);
         }
 
+        if (PROP_DEBUG_OVERLAY.get()) {
+            drawDebugOverlay(tempG);
+        }
+
         if (playHeadMarker != null) {
             playHeadMarker.paint(tempG, this);
         }
@@ -698,6 +715,37 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         super.paint(g);
     }
 
+    /**
+     * Draws the statistics of {@link #PROP_DEBUG_OVERLAY}. The rates are averaged over the time since the last
+     * update, which happens at most once per second.
+     * @param g the graphics to draw on
+     */
+    private void drawDebugOverlay(Graphics2D g) {
+        long now = System.currentTimeMillis();
+        if (now - debugTime >= 1000) {
+            MultipolygonCache cache = MultipolygonCache.getInstance();
+            long built = cache.getMultipolygonsBuilt();
+            long rebuilt = cache.getRingsRebuilt();
+            if (debugTime != 0) {
+                double seconds = (now - debugTime) / 1000.0;
+                debugText = tr("Multipolygons built: {0}/s, rings rebuilt: {1}/s",
+                        Math.round((built - debugMultipolygonsBuilt) / seconds),
+                        Math.round((rebuilt - debugRingsRebuilt) / seconds));
+            }
+            debugTime = now;
+            debugMultipolygonsBuilt = built;
+            debugRingsRebuilt = rebuilt;
+        }
+        if (debugText != null) {
+            int height = g.getFontMetrics().getHeight();
+            int width = g.getFontMetrics().stringWidth(debugText);
+            g.setColor(new Color(0, 0, 0, 160));
+            g.fillRect(5, getHeight() - height - 10, width + 10, height + 5);
+            g.setColor(Color.WHITE);
+            g.drawString(debugText, 10, getHeight() - 10);
+        }
+    }
+
     /**
      * Set the new dimension to the view.
      * 
@@ -905,9 +953,19 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
     public void preferenceChanged(PreferenceChangeEvent e) {
         synchronized (this) {
             paintPreferencesChanged = true;
+            paintPreferencesCount++;
         }
     }
 
+    /**
+     * Replies a counter which is incremented whenever a preference changed which may affect painting.
+     * Layers can use it to detect that images they rendered before are outdated.
+     * @return the number of paint preference changes
+     */
+    public synchronized int getPaintPreferencesCount() {
+        return paintPreferencesCount;
+    }
+
     private SelectionChangedListener repaintSelectionChangedListener = new SelectionChangedListener(){
         @Override public void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
             repaint();
@@ -1,9 +1,12 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.gui.dialogs;
 
+import static org.openstreetmap.josm.tools.I18n.tr;
+
 import javax.swing.JLabel;
 import javax.swing.tree.DefaultMutableTreeNode;
 
+import org.openstreetmap.josm.command.Command;
 import org.openstreetmap.josm.command.PseudoCommand;
 
 /**
@@ -15,11 +18,21 @@ public class CommandListMutableTreeNode extends DefaultMutableTreeNode {
     protected int idx;
 
     public CommandListMutableTreeNode(PseudoCommand cmd, int idx) {
-        super(new JLabel(cmd.getDescriptionText(), cmd.getDescriptionIcon(), JLabel.HORIZONTAL));
+        super(new JLabel(getText(cmd), cmd.getDescriptionIcon(), JLabel.HORIZONTAL));
         this.cmd = cmd;
         this.idx = idx;
     }
 
+    /**
+     * Replies the description of the command, followed by the memory it uses in the undo list.
+     */
+    private static String getText(PseudoCommand cmd) {
+        if (!(cmd instanceof Command))
+            return cmd.getDescriptionText();
+        long kb = (((Command) cmd).getEstimatedMemory() + 1023) / 1024;
+        return tr("{0} ({1} KB)", cmd.getDescriptionText(), kb);
+    }
+
     public PseudoCommand getCommand() {
         return cmd;
     }
@@ -33,6 +33,7 @@ import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListener;
 import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
@@ -78,7 +79,7 @@ public class FilterDialog extends ToggleDialog implements DataSetListener {
 
     @Override
     public void showNotify() {
-        DatasetEventManager.getInstance().addDatasetListener(this, FireMode.IN_EDT_CONSOLIDATED);
+        DatasetEventManager.getInstance().addDatasetListener(this, FireMode.IN_EDT_COALESCED);
         filterModel.executeFilters();
     }
 
@@ -318,7 +319,34 @@ public class FilterDialog extends ToggleDialog implements DataSetListener {
 
     @Override
     public void dataChanged(DataChangedEvent event) {
-        filterModel.executeFilters();
+        List<AbstractDatasetChangedEvent> events = event instanceof CoalescedDataChangedEvent
+                ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : null;
+        if (events == null) {
+            filterModel.executeFilters();
+            return;
+        }
+        // merged events, filter the affected primitives at once
+        Set<OsmPrimitive> affected = new HashSet<>();
+        for (AbstractDatasetChangedEvent e : events) {
+            switch (e.getType()) {
+            case NODE_MOVED:
+                break;
+            case PRIMITIVES_ADDED:
+                affected.addAll(e.getPrimitives());
+                break;
+            case RELATION_MEMBERS_CHANGED:
+            case TAGS_CHANGED:
+            case WAY_NODES_CHANGED:
+                affected.addAll(getAffectedPrimitives(e.getPrimitives()));
+                break;
+            default:
+                filterModel.executeFilters();
+                return;
+            }
+        }
+        if (!affected.isEmpty()) {
+            filterModel.executeFilters(affected);
+        }
     }
 
     @Override
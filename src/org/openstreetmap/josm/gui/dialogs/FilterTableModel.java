@@ -111,6 +111,8 @@ public class FilterTableModel extends AbstractTableModel {
         }
 
         if (Main.isDisplayingMapView() && changed) {
+            // disabled state is not reported by dataset events, force the layers to repaint
+            Main.map.mapView.preferenceChanged(null);
             Main.map.mapView.repaint();
             Main.map.filterDialog.updateDialogHeader();
         }
@@ -162,6 +164,7 @@ public class FilterTableModel extends AbstractTableModel {
         }
 
         if (changed) {
+            Main.map.mapView.preferenceChanged(null);
             Main.map.mapView.repaint();
             Main.map.filterDialog.updateDialogHeader();
             ds.clearSelection(deselect);
@@ -66,6 +66,7 @@ import org.openstreetmap.josm.gui.PleaseWaitRunnable;
 import org.openstreetmap.josm.gui.SideButton;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles.MapPaintSylesUpdateListener;
+import org.openstreetmap.josm.gui.mappaint.SharedStyleCache;
 import org.openstreetmap.josm.gui.mappaint.StyleSetting;
 import org.openstreetmap.josm.gui.mappaint.StyleSource;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
@@ -604,6 +605,18 @@ public class MapPaintDialog extends ToggleDialog {
                 text.append(tableRow(tr("Background:"), Utils.toString(s.getBackgroundColorOverride())));
             }
             text.append(tableRow(tr("Style is currently active?"), s.active ? tr("Yes") : tr("No")));
+            if (s instanceof MapCSSStyleSource) {
+                MapCSSStyleSource mapcss = (MapCSSStyleSource) s;
+                text.append(tableRow(tr("Rules depending only on tags:"),
+                        tr("{0} of {1}", mapcss.getContextFreeRuleCount(), mapcss.rules.size())));
+            }
+            SharedStyleCache shared = MapPaintStyles.getStyles().getSharedStyleCache();
+            long lookups = shared.getHits() + shared.getMisses() + shared.getContextDependent();
+            if (lookups > 0) {
+                text.append(tableRow(tr("Shared styles (all active styles):"),
+                        tr("{0}% hits, {1}% depending on the context ({2} lookups)",
+                                100 * shared.getHits() / lookups, 100 * shared.getContextDependent() / lookups, lookups)));
+            }
             text.append("</table>");
             p.add(new JScrollPane(new HtmlPanel(text.toString())), GBC.eol().fill(GBC.BOTH));
             return p;
@@ -48,6 +48,8 @@ import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent.DatasetEventType;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSetListener;
 import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
@@ -206,7 +208,7 @@ public class RelationListDialog extends ToggleDialog implements DataSetListener
     public void showNotify() {
         MapView.addLayerChangeListener(newAction);
         newAction.updateEnabledState();
-        DatasetEventManager.getInstance().addDatasetListener(this, FireMode.IN_EDT);
+        DatasetEventManager.getInstance().addDatasetListener(this, FireMode.IN_EDT_COALESCED);
         DataSet.addSelectionListener(addSelectionToRelations);
         dataChanged(null);
     }
@@ -679,7 +681,54 @@ public class RelationListDialog extends ToggleDialog implements DataSetListener
 
     @Override
     public void dataChanged(DataChangedEvent event) {
-        initFromLayer(Main.main.getEditLayer());
+        List<AbstractDatasetChangedEvent> events = event instanceof CoalescedDataChangedEvent
+                ? ((CoalescedDataChangedEvent) event).getCoalescedEvents() : null;
+        if (events == null) {
+            initFromLayer(Main.main.getEditLayer());
+            return;
+        }
+        // merged events, add and remove the relations of consecutive events at once and sort the list only once
+        boolean sort = false;
+        List<OsmPrimitive> primitives = new ArrayList<>();
+        DatasetEventType type = null;
+        for (AbstractDatasetChangedEvent e : events) {
+            if (e.getType() != type) {
+                updateRelations(type, primitives);
+                primitives.clear();
+                type = e.getType();
+            }
+            switch (type) {
+            case PRIMITIVES_ADDED:
+            case PRIMITIVES_REMOVED:
+                primitives.addAll(e.getPrimitives());
+                break;
+            case TAGS_CHANGED:
+                sort |= ((TagsChangedEvent) e).getPrimitive() instanceof Relation;
+                break;
+            case RELATION_MEMBERS_CHANGED:
+                sort = true;
+                break;
+            default: // irrelevant in this context
+            }
+        }
+        updateRelations(type, primitives);
+        if (sort) {
+            List<Relation> sel = model.getSelectedRelations();
+            model.sort();
+            model.setSelectedRelations(sel);
+            displaylist.repaint();
+        }
+    }
+
+    private void updateRelations(DatasetEventType type, List<OsmPrimitive> primitives) {
+        if (primitives.isEmpty())
+            return;
+        if (type == DatasetEventType.PRIMITIVES_ADDED) {
+            model.addRelations(primitives);
+        } else {
+            model.removeRelations(primitives);
+        }
+        model.updateTitle();
     }
 
     @Override
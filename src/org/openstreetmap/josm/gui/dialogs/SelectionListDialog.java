@@ -172,7 +172,7 @@ public class SelectionListDialog extends ToggleDialog  {
         MapView.addEditLayerChangeListener(model);
         SelectionEventManager.getInstance().addSelectionListener(actShowHistory, FireMode.IN_EDT_CONSOLIDATED);
         SelectionEventManager.getInstance().addSelectionListener(model, FireMode.IN_EDT_CONSOLIDATED);
-        DatasetEventManager.getInstance().addDatasetListener(model, FireMode.IN_EDT);
+        DatasetEventManager.getInstance().addDatasetListener(model, FireMode.IN_EDT_COALESCED);
         MapView.addEditLayerChangeListener(actSearch);
         // editLayerChanged also gets the selection history of the level
         OsmDataLayer editLayer = Main.main.getEditLayer();
@@ -685,7 +685,7 @@ public class SelectionListDialog extends ToggleDialog  {
         /* ------------------------------------------------------------------------ */
         @Override
         public void dataChanged(DataChangedEvent event) {
-            // refresh the whole list
+            // refresh the whole list, also for merged events which may change the display names of many primitives
             fireContentsChanged(this, 0, getSize());
         }
 
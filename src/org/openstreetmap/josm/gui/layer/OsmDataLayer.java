@@ -71,6 +71,7 @@ import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter.Listener;
 import org.openstreetmap.josm.data.osm.visitor.AbstractVisitor;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.RenderedTileCache;
 import org.openstreetmap.josm.data.osm.visitor.paint.Rendering;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.data.projection.Projection;
@@ -109,6 +110,9 @@ public class OsmDataLayer extends AbstractModifiableLayer implements Listener, S
     private boolean requiresUploadToServer = false;
     private boolean isChanged = true;
     private int highlightUpdateCount;
+    /** rendered tiles of the data, {@code null} if disabled */
+    private volatile RenderedTileCache tileCache;
+    private int paintPreferencesCount;
 
     /**
      * List of validation errors in this layer.
@@ -343,8 +347,23 @@ public class OsmDataLayer extends AbstractModifiableLayer implements Listener, S
             g.fill(a);
         }
 
-        Rendering painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
-        painter.render(data, virtual, box);
+        RenderedTileCache cache = tileCache;
+        if (RenderedTileCache.PROP_ENABLED.get()) {
+            if (cache == null) {
+                cache = new RenderedTileCache(data);
+                tileCache = cache;
+            } else if (paintPreferencesCount != mv.getPaintPreferencesCount()) {
+                cache.invalidateAll();
+            }
+            paintPreferencesCount = mv.getPaintPreferencesCount();
+        } else {
+            cache = null;
+            tileCache = null;
+        }
+        if (cache == null || !cache.paint(g, mv, inactive, virtual)) {
+            Rendering painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
+            painter.render(data, virtual, box);
+        }
         Main.map.conflictDialog.paintConflicts(g, mv);
     }
 
@@ -796,6 +815,14 @@ public class OsmDataLayer extends AbstractModifiableLayer implements Listener, S
         setRequiresUploadToServer(isModified());
     }
 
+    /**
+     * Actions run when saving the layer in the background failed, after it has been marked as saved by
+     * {@link #onPostSaveToFile()}.
+     */
+    public void onSaveToFileFailed() {
+        setRequiresSaveToFile(true);
+    }
+
     @Override
     public void onPostUploadToServer() {
         setRequiresUploadToServer(isModified());
@@ -829,11 +856,16 @@ public class OsmDataLayer extends AbstractModifiableLayer implements Listener, S
     @Override
     public void destroy() {
         DataSet.removeSelectionListener(this);
+        tileCache = null;
     }
 
     @Override
     public void processDatasetEvent(AbstractDatasetChangedEvent event) {
         isChanged = true;
+        RenderedTileCache cache = tileCache;
+        if (cache != null) {
+            cache.invalidate(event);
+        }
         setRequiresSaveToFile(true);
         setRequiresUploadToServer(true);
     }
@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.Node;
@@ -26,7 +27,11 @@ public class ElemStyles {
     private List<StyleSource> styleSources;
     private boolean drawMultipolygon;
 
-    private int cacheIdx = 1;
+    /** the last index of a style cache, unique among all instances, so their cached styles are not mixed up */
+    private static final AtomicInteger LAST_CACHE_IDX = new AtomicInteger();
+
+    private volatile int cacheIdx = LAST_CACHE_IDX.incrementAndGet();
+    private final SharedStyleCache sharedStyles = new SharedStyleCache();
 
     private boolean defaultNodes, defaultLines;
     private int defaultNodesIdx, defaultLinesIdx;
@@ -38,6 +43,16 @@ public class ElemStyles {
         styleSources = new ArrayList<>();
     }
 
+    /**
+     * Constructs a new {@code ElemStyles} with the given style sources, independent of the map paint preferences,
+     * e.g. to render images without a map view. The styles cached in the primitives are replaced when primitives
+     * are styled by another {@code ElemStyles}.
+     * @param sources the style sources, which have to be loaded
+     */
+    public ElemStyles(Collection<? extends StyleSource> sources) {
+        styleSources = new ArrayList<StyleSource>(sources);
+    }
+
     /**
      * Clear the style cache for all primitives of all DataSets.
      */
@@ -47,11 +62,20 @@ public class ElemStyles {
         GuiHelper.runInEDT(new Runnable() {
             @Override
             public void run() {
-                cacheIdx++;
+                cacheIdx = LAST_CACHE_IDX.incrementAndGet();
+                sharedStyles.clear();
             }
         });
     }
 
+    /**
+     * Replies the styles shared by primitives with the same tags, e.g. for statistics.
+     * @return the shared style cache
+     */
+    public SharedStyleCache getSharedStyleCache() {
+        return sharedStyles;
+    }
+
     public List<StyleSource> getStyleSources() {
         return Collections.<StyleSource>unmodifiableList(styleSources);
     }
@@ -311,7 +335,18 @@ public class ElemStyles {
      * @return the generated styles and the valid range as a pair
      */
     public Pair<StyleList, Range> generateStyles(OsmPrimitive osm, double scale, boolean pretendWayIsClosed) {
+        if (!sharedStyles.isShared(osm, styleSources))
+            return generateStylesImpl(osm, scale, pretendWayIsClosed);
+        SharedStyleCache.Key key = new SharedStyleCache.Key(osm, pretendWayIsClosed);
+        Pair<StyleList, Range> p = sharedStyles.get(key, scale);
+        if (p == null) {
+            p = generateStylesImpl(osm, scale, pretendWayIsClosed);
+            sharedStyles.put(key, scale, p);
+        }
+        return p;
+    }
 
+    private Pair<StyleList, Range> generateStylesImpl(OsmPrimitive osm, double scale, boolean pretendWayIsClosed) {
         List<ElemStyle> sl = new ArrayList<>();
         MultiCascade mc = new MultiCascade();
         Environment env = new Environment(osm, mc, null, null);
@@ -412,6 +447,7 @@ public class ElemStyles {
      */
     void clear() {
         styleSources.clear();
+        sharedStyles.clear();
     }
 
     /**
@@ -419,6 +455,7 @@ public class ElemStyles {
      */
     void add(StyleSource style) {
         styleSources.add(style);
+        sharedStyles.clear();
     }
 
     /**
@@ -427,6 +464,7 @@ public class ElemStyles {
     void setStyleSources(Collection<StyleSource> sources) {
         styleSources.clear();
         styleSources.addAll(sources);
+        sharedStyles.clear();
     }
 
     /**
@@ -318,6 +318,30 @@ public class LineElemStyle extends ElemStyle {
         }
     }
 
+    /**
+     * Replies the maximum distance in pixels between the way and the pixels painted for it by this style, not
+     * including direction arrows, highlighting and order numbers.
+     * @param circum the current map scale, see {@link StyledMapRenderer#getCircum()}
+     * @param paintSettings the paint settings
+     * @return the maximum distance in pixels between the way and its painted line, or
+     * {@link Float#POSITIVE_INFINITY} for lines with an offset
+     */
+    public float getMaxExtent(double circum, MapPaintSettings paintSettings) {
+        if (offset != 0)
+            // the offset line may be far from the way at sharp angles
+            return Float.POSITIVE_INFINITY;
+        float width = line.getLineWidth();
+        if (dashesLine != null) {
+            width = Math.max(width, dashesLine.getLineWidth());
+        }
+        if (realWidth > 0 && paintSettings.isUseRealWidth()) {
+            width = Math.max(width, (int) (100 / (float) (circum / realWidth)));
+        }
+        if (line.getLineJoin() == BasicStroke.JOIN_MITER)
+            return width / 2 * Math.max(1, line.getMiterLimit());
+        return width / 2;
+    }
+
     @Override
     public boolean isProperLineStyle() {
         return !isModifier;
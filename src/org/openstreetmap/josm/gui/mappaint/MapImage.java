@@ -59,7 +59,7 @@ public class MapImage {
         }
     }
 
-    private BufferedImage getDisabled() {
+    private synchronized BufferedImage getDisabled() {
         if (disabledImgCache != null)
                 return disabledImgCache;
         if (img == null)
@@ -76,7 +76,7 @@ public class MapImage {
         return disabledImgCache;
     }
 
-    private BufferedImage getImage() {
+    private synchronized BufferedImage getImage() {
         if (img != null)
             return img;
         temporary = false;
@@ -100,8 +100,10 @@ public class MapImage {
                             }
                             if (temporary) {
                                 disabledImgCache = null;
-                                Main.map.mapView.preferenceChanged(null); // otherwise repaint is ignored, because layer hasn't changed
-                                Main.map.mapView.repaint();
+                                if (Main.isDisplayingMapView()) {
+                                    Main.map.mapView.preferenceChanged(null); // otherwise repaint is ignored, because layer hasn't changed
+                                    Main.map.mapView.repaint();
+                                }
                             }
                             temporary = false;
                         }
@@ -270,7 +270,12 @@ public final class MapPaintStyles {
         }
     }
 
-    private static StyleSource fromSourceEntry(SourceEntry entry) {
+    /**
+     * Creates the style source of a source entry, after detecting the type of the style.
+     * @param entry the source entry
+     * @return the style source, which is not loaded yet, or {@code null} if the source cannot be read
+     */
+    static StyleSource fromSourceEntry(SourceEntry entry) {
         CachedFile cf = null;
         try {
             Set<String> mimes = new HashSet<>();
@@ -0,0 +1,234 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.tools.ColorHelper;
+import org.openstreetmap.josm.tools.I18n;
+
+/**
+ * Command line interface to render an OSM file as PNG image without a display, see {@link RenderingHelper}.
+ *
+ * Usage: {@code java -cp josm.jar org.openstreetmap.josm.gui.mappaint.RenderingCLI --output=map.png data.osm}
+ */
+public final class RenderingCLI {
+
+    private static final String DEFAULT_STYLE = "resource://styles/standard/elemstyles.mapcss";
+    private static final int DEFAULT_WIDTH = 1024;
+    private static final long MAX_PIXELS = 100000000;
+
+    private enum Option {
+        HELP(false), OUTPUT(true), BOUNDS(true), SCALE(true), WIDTH(true), STYLE(true), PROJECTION(true),
+        BACKGROUND(true);
+
+        private final String name;
+        private final boolean requiresArgument;
+
+        Option(boolean requiresArgument) {
+            this.name = name().toLowerCase();
+            this.requiresArgument = requiresArgument;
+        }
+    }
+
+    private String input;
+    private String output;
+    private Bounds bounds;
+    private double scale;
+    private int width = DEFAULT_WIDTH;
+    private final List<String> styles = new ArrayList<>();
+    private String projection = "EPSG:3857";
+    private Color background;
+
+    private RenderingCLI() {
+        // Hide default constructor
+    }
+
+    /**
+     * Renders an OSM file as PNG image.
+     * @param args the command line arguments, see {@link #showHelp()}
+     */
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        I18n.init();
+        RenderingCLI cli = new RenderingCLI();
+        try {
+            if (!cli.parseArguments(args)) {
+                showHelp();
+                System.exit(args.length == 0 ? 1 : 0);
+                return;
+            }
+            cli.run();
+            // the thread pools of the renderer would keep the application running
+            System.exit(0);
+        } catch (IllegalArgumentException | IOException | IllegalDataException e) {
+            System.err.println(tr("Error: {0}", e.getMessage()));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Displays help on the console.
+     */
+    public static void showHelp() {
+        System.out.println(tr("Renders an OSM file as PNG image with map styles.")+"\n\n"+
+                tr("usage")+":\n"+
+                "\tjava -cp josm.jar "+RenderingCLI.class.getName()+" <options>... <file>\n\n"+
+                tr("options")+":\n"+
+                "\t--help                                    "+tr("Show this help")+"\n"+
+                "\t--output=<file>                           "+tr("The PNG file to write (required)")+"\n"+
+                "\t--bounds=minlat,minlon,maxlat,maxlon      "+tr("The area to render (default: the downloaded area or the whole data)")+"\n"+
+                "\t--scale=<scale>                           "+tr("The scale in east/north units per pixel")+"\n"+
+                "\t--width=<pixels>                          "+tr("The width of the image, if no scale is given (default: {0})", DEFAULT_WIDTH)+"\n"+
+                "\t--style=<url>                             "+tr("A map style, may be repeated (default: {0})", DEFAULT_STYLE)+"\n"+
+                "\t--projection=<code>                       "+tr("The projection (default: {0})", "EPSG:3857")+"\n"+
+                "\t--background=<#rrggbb>                    "+tr("The background color (default: transparent)")+"\n\n"+
+                tr("options provided as Java system properties")+":\n"+
+                "\t-Djosm.pref="+tr("/PATH/TO/JOSM/PREF    ")+tr("Set the preferences directory, e.g. for map paint settings")+"\n");
+    }
+
+    private boolean parseArguments(String[] args) {
+        LongOpt[] los = new LongOpt[Option.values().length];
+        for (Option o : Option.values()) {
+            los[o.ordinal()] = new LongOpt(o.name, o.requiresArgument ? LongOpt.REQUIRED_ARGUMENT : LongOpt.NO_ARGUMENT, null, 0);
+        }
+        Getopt g = new Getopt("JOSM rendering", args, "h", los);
+        int c;
+        while ((c = g.getopt()) != -1) {
+            if (c == 'h')
+                return false;
+            if (c != 0)
+                throw new IllegalArgumentException(tr("Invalid option"));
+            String arg = g.getOptarg();
+            switch (Option.values()[g.getLongind()]) {
+            case HELP:
+                return false;
+            case OUTPUT:
+                output = arg;
+                break;
+            case BOUNDS:
+                bounds = new Bounds(arg, ",");
+                break;
+            case SCALE:
+                scale = parseNumber(arg);
+                break;
+            case WIDTH:
+                width = (int) parseNumber(arg);
+                break;
+            case STYLE:
+                styles.add(arg);
+                break;
+            case PROJECTION:
+                projection = arg;
+                break;
+            case BACKGROUND:
+                background = ColorHelper.html2color(arg);
+                if (background == null)
+                    throw new IllegalArgumentException(tr("Invalid color: {0}", arg));
+                break;
+            }
+        }
+        if (g.getOptind() != args.length - 1 || output == null)
+            return false;
+        input = args[g.getOptind()];
+        return true;
+    }
+
+    private static double parseNumber(String arg) {
+        try {
+            double value = Double.parseDouble(arg);
+            if (value > 0)
+                return value;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(tr("Not a positive number: {0}", arg));
+    }
+
+    private void run() throws IOException, IllegalDataException {
+        Main.initApplicationPreferences();
+        Main.pref.enableSaveOnPut(false);
+        Main.determinePlatformHook();
+        Main.pref.init(false);
+        I18n.set(Main.pref.get("language", "en"));
+        Projection p = Projections.getProjectionByCode(projection);
+        if (p == null)
+            throw new IllegalArgumentException(tr("Unknown projection: {0}", projection));
+        Main.setProjection(p);
+
+        DataSet data;
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File(input))) {
+            data = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        if (bounds == null) {
+            for (Bounds b : data.getDataSourceBounds()) {
+                if (bounds == null) {
+                    bounds = new Bounds(b.getMin(), b.getMax());
+                } else {
+                    bounds.extend(b);
+                }
+            }
+        }
+        if (bounds == null) {
+            BoundingXYVisitor v = new BoundingXYVisitor();
+            v.computeBoundingBox(data.getNodes());
+            ProjectionBounds pb = v.getBounds();
+            if (pb == null)
+                throw new IllegalArgumentException(tr("No data to render in {0}", input));
+            bounds = new Bounds(p.eastNorth2latlon(pb.getMin()), p.eastNorth2latlon(pb.getMax()));
+        }
+
+        List<StyleSource> sources = new ArrayList<>();
+        for (String url : styles.isEmpty() ? Collections.singletonList(DEFAULT_STYLE) : styles) {
+            StyleSource source = MapPaintStyles.fromSourceEntry(new SourceEntry(url, null, null, true));
+            if (source == null)
+                throw new IOException(tr("Failed to load map style {0}", url));
+            source.loadStyleSource();
+            if (!source.getErrors().isEmpty())
+                throw new IOException(tr("Failed to load map style {0}: {1}", url, source.getErrors().iterator().next()));
+            sources.add(source);
+        }
+
+        if (scale <= 0) {
+            scale = (p.latlon2eastNorth(bounds.getMax()).east() - p.latlon2eastNorth(bounds.getMin()).east()) / width;
+            if (!(scale > 0))
+                throw new IllegalArgumentException(tr("The area to render is empty, please specify the scale"));
+        }
+        Dimension size = RenderingHelper.getImageSize(bounds, scale);
+        if ((long) size.width * size.height > MAX_PIXELS)
+            throw new IllegalArgumentException(tr("The image would be too large ({0}x{1} pixels), please increase the scale",
+                    size.width, size.height));
+        RenderingHelper helper = new RenderingHelper(data, sources);
+        helper.setBackgroundColor(background);
+        try (OutputStream out = new FileOutputStream(output)) {
+            helper.renderPng(bounds, scale, out);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+import javax.imageio.ImageIO;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+
+/**
+ * Renders images of a dataset with the {@link StyledMapRenderer}, without a map view.
+ *
+ * Images can be rendered from any thread, also without a display, and several images of the same dataset may be
+ * rendered at once, e.g. the tiles of a large map. Each image is rendered with its own viewport, so the map paint
+ * preferences apply, but not the state of the map view (zoom, selection or filters of the layer).
+ */
+public class RenderingHelper {
+
+    /** distance in pixels around the image in which primitives are rendered, so icons and labels are not cut */
+    private static final int MARGIN = 128;
+
+    private final DataSet data;
+    private final ElemStyles styles;
+    private Color backgroundColor;
+
+    /**
+     * Constructs a new {@code RenderingHelper}.
+     * @param data the dataset to render
+     * @param sources the map styles to render with, which have to be loaded
+     */
+    public RenderingHelper(DataSet data, Collection<? extends StyleSource> sources) {
+        CheckParameterUtil.ensureParameterNotNull(data, "data");
+        CheckParameterUtil.ensureParameterNotNull(sources, "sources");
+        this.data = data;
+        this.styles = new ElemStyles(sources);
+    }
+
+    /**
+     * Sets the color the images are filled with before rendering.
+     * @param backgroundColor the background color, or {@code null} for transparent images
+     */
+    public void setBackgroundColor(Color backgroundColor) {
+        this.backgroundColor = backgroundColor;
+    }
+
+    /**
+     * Replies the size of the image of an area.
+     * @param bounds the area to render
+     * @param scale the scale in east/north units per pixel, see {@link NavigatableComponent#getScale()}
+     * @return the size of the image in pixels
+     */
+    public static Dimension getImageSize(Bounds bounds, double scale) {
+        EastNorth min = Main.getProjection().latlon2eastNorth(bounds.getMin());
+        EastNorth max = Main.getProjection().latlon2eastNorth(bounds.getMax());
+        return new Dimension(
+                Math.max(1, (int) Math.ceil((max.east() - min.east()) / scale)),
+                Math.max(1, (int) Math.ceil((max.north() - min.north()) / scale)));
+    }
+
+    /**
+     * Renders an area of the dataset. This method is thread safe.
+     * @param bounds the area to render
+     * @param scale the scale in east/north units per pixel, see {@link NavigatableComponent#getScale()}
+     * @return the image, of the size replied by {@link #getImageSize}
+     * @throws IllegalArgumentException if the scale is out of the range supported by the projection
+     */
+    public BufferedImage render(Bounds bounds, double scale) {
+        CheckParameterUtil.ensureParameterNotNull(bounds, "bounds");
+        if (!(scale > 0))
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        Dimension size = getImageSize(bounds, scale);
+        EastNorth min = Main.getProjection().latlon2eastNorth(bounds.getMin());
+        NavigatableComponent nc = new NavigatableComponent();
+        nc.setSize(size);
+        // align the bottom left corner of the area with the bottom left pixel, the size is rounded up at the top and right
+        nc.zoomTo(new EastNorth(min.east() + size.width * scale / 2, min.north() + size.height * scale / 2), scale, true);
+        if (nc.getScale() != scale)
+            throw new IllegalArgumentException("Scale " + scale + " is out of the range of the projection, it would be "
+                    + nc.getScale());
+
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (backgroundColor != null) {
+                g.setColor(backgroundColor);
+                g.fillRect(0, 0, size.width, size.height);
+            }
+            g.setClip(0, 0, size.width, size.height);
+            StyledMapRenderer renderer = new StyledMapRenderer(g, nc, false);
+            renderer.setStyles(styles);
+            renderer.render(data, false, nc.getLatLonBounds(
+                    new Rectangle(-MARGIN, -MARGIN, size.width + 2 * MARGIN, size.height + 2 * MARGIN)));
+        } finally {
+            g.dispose();
+            MultipolygonCache.getInstance().clear(nc);
+        }
+        return image;
+    }
+
+    /**
+     * Renders an area of the dataset as PNG image. This method is thread safe.
+     * @param bounds the area to render
+     * @param scale the scale in east/north units per pixel, see {@link NavigatableComponent#getScale()}
+     * @param out the stream to write the image to, which is not closed
+     * @throws IOException if the image cannot be written
+     * @throws IllegalArgumentException if the scale is out of the range supported by the projection
+     */
+    public void renderPng(Bounds bounds, double scale, OutputStream out) throws IOException {
+        if (!ImageIO.write(render(bounds, scale), "png", out))
+            throw new IOException("No PNG image writer available");
+    }
+}
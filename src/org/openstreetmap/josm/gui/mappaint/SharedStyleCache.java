@@ -0,0 +1,168 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.gui.mappaint.StyleCache.StyleList;
+import org.openstreetmap.josm.tools.Pair;
+
+/**
+ * Styles shared by all primitives of the same type with the same tags.
+ *
+ * Usually, the styles of a primitive depend only on its type, its tags and the scale, so thousands of identically
+ * tagged buildings get the same styles. If all style sources report that the primitive is
+ * {@link StyleSource#isContextFree context free}, i.e. no rule depending on parent or child primitives, the
+ * geometry or the state of the primitive applies, the styles are generated once per scale range and reused for the
+ * other context free primitives with these tags.
+ *
+ * The cache has to be cleared whenever the style sources change, see {@link ElemStyles#clearCached()}.
+ */
+public class SharedStyleCache {
+
+    /** maximum number of tag sets in the cache, further tag sets are not cached until the cache is cleared */
+    private static final int MAX_SIZE = 20000;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong contextDependent = new AtomicLong();
+
+    private static final class Entry {
+        private volatile StyleCache styles = StyleCache.EMPTY_STYLECACHE;
+    }
+
+    /**
+     * Identifies the primitives which share their styles.
+     */
+    public static final class Key {
+        private final OsmPrimitiveType type;
+        private final boolean pretendWayIsClosed;
+        private final Map<String, String> tags;
+        private final int hash;
+
+        /**
+         * Constructs a new {@code Key}.
+         * @param osm the primitive
+         * @param pretendWayIsClosed see {@link ElemStyles#generateStyles}
+         */
+        public Key(OsmPrimitive osm, boolean pretendWayIsClosed) {
+            this.type = osm.getType();
+            this.pretendWayIsClosed = pretendWayIsClosed;
+            this.tags = osm.getKeys();
+            this.hash = (31 * type.hashCode() + tags.hashCode()) * 2 + (pretendWayIsClosed ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return hash == other.hash && type == other.type && pretendWayIsClosed == other.pretendWayIsClosed
+                    && tags.equals(other.tags);
+        }
+    }
+
+    /**
+     * Determines if the styles of a primitive can be shared, see {@link StyleSource#isContextFree}.
+     * @param osm the primitive
+     * @param sources the style sources
+     * @return {@code true} if all active style sources report that the primitive is context free
+     */
+    public boolean isShared(OsmPrimitive osm, List<StyleSource> sources) {
+        for (StyleSource s : sources) {
+            if (s.active && !s.isContextFree(osm)) {
+                contextDependent.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the shared styles of a primitive for which {@link #isShared} replied {@code true}.
+     * @param key the key of the primitive
+     * @param scale the scale
+     * @return the styles and their valid range, or {@code null} if the styles have to be generated
+     */
+    public Pair<StyleList, Range> get(Key key, double scale) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            Pair<StyleList, Range> p = entry.styles.getWithRange(scale);
+            if (p.a != null) {
+                hits.incrementAndGet();
+                // the caller may replace the members of the pair
+                return new Pair<>(p.a, p.b);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the styles generated for a primitive after {@link #get} replied {@code null}.
+     * @param key the key of the primitive
+     * @param scale the scale the styles were generated for
+     * @param styles the styles and their valid range
+     */
+    public void put(Key key, double scale, Pair<StyleList, Range> styles) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= MAX_SIZE)
+                return;
+            entry = new Entry();
+            Entry previous = entries.putIfAbsent(key, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        synchronized (entry) {
+            // skip styles added by another thread in the meantime
+            if (entry.styles.get(scale) == null) {
+                entry.styles = entry.styles.put(styles.a, styles.b);
+            }
+        }
+    }
+
+    /**
+     * Removes all shared styles, needed when the style sources change.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Replies the number of lookups answered by the cache.
+     * @return the number of lookups answered by the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Replies the number of lookups for context free primitives whose styles had to be generated.
+     * @return the number of lookups of shared styles which were not cached yet
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Replies the number of lookups for primitives whose styles depend on their context.
+     * @return the number of lookups for styles which cannot be shared
+     */
+    public long getContextDependent() {
+        return contextDependent.get();
+    }
+}
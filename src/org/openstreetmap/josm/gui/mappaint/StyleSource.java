@@ -79,6 +79,17 @@ public abstract class StyleSource extends SourceEntry {
      */
     public abstract void apply(MultiCascade mc, OsmPrimitive osm, double scale, boolean pretendWayIsClosed);
 
+    /**
+     * Determines if the properties this source adds for a primitive depend only on the type and the tags of the
+     * primitive, so they can be shared with other primitives, see {@link SharedStyleCache}.
+     * @param osm the primitive
+     * @return {@code true} if {@link #apply} adds the same properties as for all other context free primitives of
+     * the same type with the same tags. The default implementation returns {@code false}.
+     */
+    public boolean isContextFree(OsmPrimitive osm) {
+        return false;
+    }
+
     /**
      * Loads the style source.
      */
@@ -423,6 +423,14 @@ public abstract class Condition {
             this.e = e;
         }
 
+        /**
+         * Returns the expression.
+         * @return the expression
+         */
+        public Expression getExpression() {
+            return e;
+        }
+
         @Override
         public boolean applies(Environment env) {
             Boolean b = Cascade.convertTo(e.evaluate(env), Boolean.class);
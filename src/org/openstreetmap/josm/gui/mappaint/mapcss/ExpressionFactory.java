@@ -7,6 +7,8 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -16,7 +18,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
@@ -29,6 +33,7 @@ import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.gui.mappaint.Cascade;
 import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.StyleSource;
 import org.openstreetmap.josm.io.XmlWriter;
 import org.openstreetmap.josm.tools.ColorHelper;
 import org.openstreetmap.josm.tools.Predicates;
@@ -53,6 +58,29 @@ public final class ExpressionFactory {
     private static final List<Method> parameterFunctions = new ArrayList<>();
     private static final List<Method> parameterFunctionsEnv = new ArrayList<>();
 
+    /**
+     * Functions without {@link Environment} parameter which must not be evaluated when a style is compiled.
+     */
+    private static final Set<String> NOT_CONSTANT_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "JOSM_pref", "print", "println", "random"));
+
+    /**
+     * Functions which only use the style source of the {@link Environment}.
+     */
+    private static final Set<String> SOURCE_FUNCTIONS = Collections.singleton("setting");
+
+    /**
+     * Functions whose result depends on more than the tags and the style properties of the primitive.
+     */
+    private static final Set<String> CONTEXT_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "parent_tag", "child_tag", "index", "role", "JOSM_search", "osm_id", "is_right_hand_traffic",
+            "print", "println", "random"));
+
+    /**
+     * Functions which read the properties set by other rules.
+     */
+    private static final Set<String> CASCADE_FUNCTIONS = new HashSet<>(Arrays.asList("prop", "is_prop_set"));
+
     static {
         for (Method m : Functions.class.getDeclaredMethods()) {
             Class<?>[] paramTypes = m.getParameterTypes();
@@ -853,6 +881,138 @@ public final class ExpressionFactory {
         return NullExpression.INSTANCE;
     }
 
+    /**
+     * Compiles an expression for faster evaluation, see {@link MapCSSCompiler}.
+     *
+     * Functions are called through {@link MethodHandle}s and constant arguments are converted only once.
+     * Functions which do not depend on the primitive are evaluated right away if all arguments are constant,
+     * this includes {@link Functions#setting} as the style is reloaded when a setting changes.
+     * Expressions which cannot be compiled are returned unchanged.
+     *
+     * @param e the expression
+     * @param source the style source the expression belongs to
+     * @return an expression with the same result as {@code e}
+     */
+    static Expression compile(Expression e, StyleSource source) {
+        if (e instanceof ParameterFunction) {
+            ParameterFunction f = (ParameterFunction) e;
+            Class<?>[] types = f.expectedParameterTypes;
+            if (f.needsEnvironment) {
+                types = Arrays.copyOfRange(types, 1, types.length);
+            }
+            return compileFunction(e, f.m, f.nullable, f.needsEnvironment, compile(f.args, source), types, null, source);
+        } else if (e instanceof ArrayFunction) {
+            ArrayFunction f = (ArrayFunction) e;
+            Class<?>[] types = new Class<?>[f.args.size()];
+            Arrays.fill(types, f.arrayComponentType);
+            return compileFunction(e, f.m, f.nullable, false, compile(f.args, source), types, f.arrayComponentType, source);
+        } else if (e instanceof CondOperator) {
+            CondOperator c = (CondOperator) e;
+            Expression condition = compile(c.condition, source);
+            if (condition instanceof ConstantExpression) {
+                Boolean b = Cascade.convertTo(condition.evaluate(null), boolean.class);
+                return compile(b != null && b ? c.firstOption : c.secondOption, source);
+            }
+            return new CondOperator(condition, compile(c.firstOption, source), compile(c.secondOption, source));
+        } else if (e instanceof AndOperator) {
+            return new AndOperator(compile(((AndOperator) e).args, source));
+        } else if (e instanceof OrOperator) {
+            return new OrOperator(compile(((OrOperator) e).args, source));
+        } else if (e instanceof LiteralExpression || e instanceof NullExpression) {
+            return new ConstantExpression(e.evaluate(null));
+        }
+        return e;
+    }
+
+    private static List<Expression> compile(List<Expression> args, StyleSource source) {
+        List<Expression> compiled = new ArrayList<>(args.size());
+        for (Expression arg : args) {
+            compiled.add(compile(arg, source));
+        }
+        return compiled;
+    }
+
+    private static Expression compileFunction(Expression e, Method m, boolean nullable, boolean needsEnvironment,
+            List<Expression> args, Class<?>[] types, Class<?> arrayComponentType, StyleSource source) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(m).asFixedArity();
+        } catch (IllegalAccessException ex) {
+            Main.warn(ex);
+            return e;
+        }
+        handle = handle.asType(handle.type().generic()).asSpreader(Object[].class, handle.type().parameterCount());
+        CompiledFunction f = new CompiledFunction(e, handle, nullable, needsEnvironment, args, types, arrayComponentType);
+        if (!f.isConstant())
+            return f;
+        Object value;
+        if (!needsEnvironment && !NOT_CONSTANT_FUNCTIONS.contains(m.getName())) {
+            value = f.evaluate(null);
+        } else if (source != null && SOURCE_FUNCTIONS.contains(m.getName())) {
+            value = f.evaluate(new Environment(null, null, null, source));
+        } else {
+            return f;
+        }
+        // lists are mutable, every evaluation replies a new one
+        return value instanceof List ? f : new ConstantExpression(value);
+    }
+
+    /**
+     * Determines if an expression depends only on the tags and the style properties of the primitive, so it
+     * evaluates to the same value for all primitives of the same type with the same tags.
+     * @param e the expression
+     * @return {@code true} if the value of {@code e} does not depend on the context of the primitive
+     */
+    static boolean isContextFree(Expression e) {
+        return !usesFunction(e, CONTEXT_FUNCTIONS);
+    }
+
+    /**
+     * Determines if an expression reads the properties set by other rules, like {@code prop()}.
+     * @param e the expression
+     * @return {@code true} if the value of {@code e} may depend on the cascade
+     */
+    static boolean readsCascade(Expression e) {
+        return usesFunction(e, CASCADE_FUNCTIONS);
+    }
+
+    /**
+     * Determines if one of the given functions is called by an expression.
+     * Unknown expression types are considered to call every function.
+     */
+    private static boolean usesFunction(Expression e, Set<String> names) {
+        if (e instanceof ParameterFunction) {
+            ParameterFunction f = (ParameterFunction) e;
+            return names.contains(f.m.getName()) || usesFunction(f.args, names);
+        } else if (e instanceof ArrayFunction) {
+            ArrayFunction f = (ArrayFunction) e;
+            return names.contains(f.m.getName()) || usesFunction(f.args, names);
+        } else if (e instanceof CompiledFunction) {
+            return usesFunction(((CompiledFunction) e).original, names);
+        } else if (e instanceof CondOperator) {
+            CondOperator c = (CondOperator) e;
+            return usesFunction(c.condition, names) || usesFunction(c.firstOption, names)
+                    || usesFunction(c.secondOption, names);
+        } else if (e instanceof AndOperator) {
+            return usesFunction(((AndOperator) e).args, names);
+        } else if (e instanceof OrOperator) {
+            return usesFunction(((OrOperator) e).args, names);
+        } else if (e instanceof LengthFunction) {
+            return usesFunction(((LengthFunction) e).arg, names);
+        } else if (e instanceof MinMaxFunction) {
+            return usesFunction(((MinMaxFunction) e).args, names);
+        }
+        return !(e instanceof LiteralExpression || e instanceof NullExpression || e instanceof ConstantExpression);
+    }
+
+    private static boolean usesFunction(List<Expression> args, Set<String> names) {
+        for (Expression arg : args) {
+            if (usesFunction(arg, names))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Expression that always evaluates to null.
      */
@@ -1164,4 +1324,111 @@ public final class ExpressionFactory {
             return b.toString();
         }
     }
+
+    /**
+     * Value of an expression which does not depend on the environment, see {@link #compile(Expression, StyleSource)}.
+     */
+    static final class ConstantExpression implements Expression {
+
+        private final Object value;
+
+        ConstantExpression(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(Environment env) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "Constant<" + (value instanceof float[] ? Arrays.toString((float[]) value) : value) + ">";
+        }
+    }
+
+    /**
+     * Compiled {@link ParameterFunction} or {@link ArrayFunction}, see {@link #compile(Expression, StyleSource)}.
+     */
+    static final class CompiledFunction implements Expression {
+
+        private final Expression original;
+        /** the function, taking all arguments as {@code Object[]} */
+        private final MethodHandle handle;
+        private final boolean nullable;
+        private final boolean needsEnvironment;
+        /** the arguments, {@code null} for constant arguments */
+        private final Expression[] args;
+        /** the converted values of the constant arguments */
+        private final Object[] constants;
+        private final Class<?>[] types;
+        /** the component type of the single array argument, {@code null} for parameter functions */
+        private final Class<?> arrayComponentType;
+
+        CompiledFunction(Expression original, MethodHandle handle, boolean nullable, boolean needsEnvironment,
+                List<Expression> args, Class<?>[] types, Class<?> arrayComponentType) {
+            this.original = original;
+            this.handle = handle;
+            this.nullable = nullable;
+            this.needsEnvironment = needsEnvironment;
+            this.types = types;
+            this.arrayComponentType = arrayComponentType;
+            this.args = new Expression[args.size()];
+            this.constants = new Object[args.size()];
+            for (int i = 0; i < this.args.length; i++) {
+                Expression arg = args.get(i);
+                if (arg instanceof ConstantExpression) {
+                    constants[i] = Cascade.convertTo(arg.evaluate(null), types[i]);
+                } else {
+                    this.args[i] = arg;
+                }
+            }
+        }
+
+        boolean isConstant() {
+            for (Expression arg : args) {
+                if (arg != null)
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Object evaluate(Environment env) {
+            int offset = needsEnvironment ? 1 : 0;
+            Object[] values = new Object[args.length + offset];
+            if (needsEnvironment) {
+                values[0] = env;
+            }
+            for (int i = 0; i < args.length; i++) {
+                Object value = args[i] == null ? constants[i] : Cascade.convertTo(args[i].evaluate(env), types[i]);
+                if (value == null && !nullable) {
+                    return null;
+                }
+                values[i + offset] = value;
+            }
+            if (arrayComponentType != null) {
+                Object array = Array.newInstance(arrayComponentType, values.length);
+                for (int i = 0; i < values.length; i++) {
+                    Array.set(array, i, values[i]);
+                }
+                values = new Object[] {array};
+            }
+            try {
+                return (Object) handle.invokeExact(values);
+            } catch (RuntimeException ex) {
+                Main.error(ex);
+                return null;
+            } catch (Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Compiled" + original;
+        }
+    }
 }
@@ -0,0 +1,250 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.StyleSource;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.ExpressionCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyValueCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Op;
+import org.openstreetmap.josm.gui.mappaint.mapcss.ExpressionFactory.ConstantExpression;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction.AssignmentInstruction;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSRule.Declaration;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.AbstractSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.LinkSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.OptimizedGeneralSelector;
+
+/**
+ * Compiles the rules of a MapCSS style for faster evaluation.
+ *
+ * The parsed rules are a tree of generic selectors, conditions and expressions which are interpreted for every
+ * primitive. The compiler replaces the parts which can be specialized once the style is loaded:
+ * <ul>
+ * <li>function calls are bound to {@link java.lang.invoke.MethodHandle}s instead of being called by reflection,
+ * constant arguments are converted only once, and functions with constant arguments are evaluated right away,
+ * see {@link ExpressionFactory#compile(Expression, StyleSource)}</li>
+ * <li>conditions which are constant, like {@code [setting("hide_icons")]}, are removed. Rules which never match
+ * are dropped</li>
+ * <li>numeric comparisons and list conditions like {@code [lanes>2]} or {@code [ref~=A1]} parse their
+ * constant operand only once</li>
+ * <li>expressions in conditions and declarations are compiled</li>
+ * </ul>
+ * Everything else, in particular unknown selector, condition and expression types, is kept and interpreted as
+ * before. Compiled selectors keep their type and the conditions used by the
+ * {@link MapCSSStyleSource.MapCSSRuleIndex rule index}, so a compiled rule can be used in place of the original one.
+ *
+ * @see MapCSSStyleSource#COMPILE
+ */
+public class MapCSSCompiler {
+
+    /** marks a list of conditions which is never fulfilled */
+    private static final List<Condition> NEVER = Collections.emptyList();
+
+    private final StyleSource source;
+    /** compiled declarations, a declaration is shared by all rules of a selector list like {@code a, b { ... }} */
+    private final Map<Declaration, Declaration> declarations = new IdentityHashMap<>();
+
+    /**
+     * Constructs a new {@code MapCSSCompiler}.
+     * @param source the style source the rules belong to, its settings are treated as constants
+     */
+    public MapCSSCompiler(StyleSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Compiles a rule.
+     * @param rule the rule
+     * @return a rule with the same effect as {@code rule}, or {@code null} if the selector never matches
+     */
+    public MapCSSRule compile(MapCSSRule rule) {
+        Selector selector = compile(rule.selector);
+        if (selector == null)
+            return null;
+        Declaration declaration = declarations.get(rule.declaration);
+        if (declaration == null) {
+            declaration = compile(rule.declaration);
+            declarations.put(rule.declaration, declaration);
+        }
+        return new MapCSSRule(selector, declaration);
+    }
+
+    private Declaration compile(Declaration declaration) {
+        List<Instruction> instructions = new ArrayList<>(declaration.instructions.size());
+        for (Instruction i : declaration.instructions) {
+            instructions.add(compile(i));
+        }
+        return new Declaration(instructions, declaration.idx);
+    }
+
+    private Instruction compile(Instruction instruction) {
+        if (instruction instanceof AssignmentInstruction) {
+            AssignmentInstruction a = (AssignmentInstruction) instruction;
+            if (a.val instanceof Expression) {
+                return new AssignmentInstruction(a.key, ExpressionFactory.compile((Expression) a.val, source),
+                        a.isSetInstruction);
+            }
+        }
+        return instruction;
+    }
+
+    /**
+     * Compiles a selector.
+     * @param selector the selector
+     * @return a selector of the same type which matches the same primitives as {@code selector},
+     * or {@code null} if the selector never matches
+     */
+    public Selector compile(Selector selector) {
+        if (selector instanceof ChildOrParentSelector) {
+            ChildOrParentSelector s = (ChildOrParentSelector) selector;
+            Selector left = compile(s.left);
+            Selector link = compile(s.link);
+            Selector right = compile(s.right);
+            if (left == null || link == null || right == null)
+                return null;
+            return new ChildOrParentSelector(left, (LinkSelector) link, right, s.type);
+        }
+        if (!(selector instanceof AbstractSelector))
+            return selector;
+        List<Condition> conditions = compile(((AbstractSelector) selector).conds);
+        if (conditions == NEVER)
+            return null;
+        if (selector instanceof GeneralSelector) {
+            GeneralSelector s = (GeneralSelector) selector;
+            return new GeneralSelector(s.base, s.range, conditions, s.subpart);
+        } else if (selector.getClass() == OptimizedGeneralSelector.class) {
+            OptimizedGeneralSelector s = (OptimizedGeneralSelector) selector;
+            return new OptimizedGeneralSelector(s.base, s.range, conditions, s.subpart);
+        } else if (selector.getClass() == LinkSelector.class) {
+            return new LinkSelector(conditions);
+        }
+        return selector;
+    }
+
+    private List<Condition> compile(List<Condition> conditions) {
+        if (conditions == null)
+            return null;
+        List<Condition> compiled = new ArrayList<>(conditions.size());
+        for (Condition c : conditions) {
+            Condition condition = compile(c);
+            if (condition instanceof ExpressionCondition
+                    && ((ExpressionCondition) condition).getExpression() instanceof ConstantExpression) {
+                if (!condition.applies(null))
+                    return NEVER;
+                // always fulfilled
+                continue;
+            }
+            compiled.add(condition);
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles a condition.
+     * @param condition the condition
+     * @return a condition with the same result as {@code condition}
+     */
+    public Condition compile(Condition condition) {
+        if (condition.getClass() == KeyValueCondition.class) {
+            KeyValueCondition c = (KeyValueCondition) condition;
+            if (!c.considerValAsKey && CompiledKeyValueCondition.supports(c.op, c.v)) {
+                return new CompiledKeyValueCondition(c.k, c.v, c.op);
+            }
+        } else if (condition instanceof ExpressionCondition) {
+            Expression e = ((ExpressionCondition) condition).getExpression();
+            return new ExpressionCondition(ExpressionFactory.compile(e, source));
+        }
+        return condition;
+    }
+
+    /**
+     * Key/value condition whose value is parsed once, see {@link Op#eval(String, String)}.
+     */
+    private static final class CompiledKeyValueCondition extends KeyValueCondition {
+
+        private static final Pattern ONE_OF_SEPARATOR = Pattern.compile("\\s*;\\s*");
+
+        private final float number;
+
+        CompiledKeyValueCondition(String k, String v, Op op) {
+            super(k, v, op, false);
+            this.number = Condition.COMPARISON_OPERATERS.contains(op) ? Float.parseFloat(v) : Float.NaN;
+        }
+
+        static boolean supports(Op op, String v) {
+            switch (op) {
+            case REGEX:
+            case NREGEX:
+                return false;
+            case GREATER_OR_EQUAL:
+            case GREATER:
+            case LESS_OR_EQUAL:
+            case LESS:
+                try {
+                    Float.parseFloat(v);
+                    return true;
+                } catch (NumberFormatException e) {
+                    // keep the interpreted condition, which fails for every numeric value
+                    return false;
+                }
+            default:
+                return true;
+            }
+        }
+
+        @Override
+        public boolean applies(Environment env) {
+            String value = env.osm.get(k);
+            switch (op) {
+            case EQ:
+                return v.equals(value);
+            case NEQ:
+                return !v.equals(value);
+            case ONE_OF:
+                if (value == null)
+                    return false;
+                for (String s : ONE_OF_SEPARATOR.split(value)) {
+                    if (v.equals(s))
+                        return true;
+                }
+                return false;
+            case BEGINS_WITH:
+                return value != null && value.startsWith(v);
+            case ENDS_WITH:
+                return value != null && value.endsWith(v);
+            case CONTAINS:
+                return value != null && value.contains(v);
+            default:
+                break;
+            }
+            if (value == null)
+                return false;
+            float f;
+            try {
+                f = Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            switch (op) {
+            case GREATER_OR_EQUAL:
+                return f >= number;
+            case GREATER:
+                return f > number;
+            case LESS_OR_EQUAL:
+                return f <= number;
+            case LESS:
+                return f < number;
+            default:
+                throw new AssertionError();
+            }
+        }
+    }
+}
@@ -12,8 +12,6 @@ import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -21,6 +19,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -29,10 +28,13 @@ import java.util.zip.ZipFile;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Version;
+import org.openstreetmap.josm.data.osm.AbstractPrimitive;
+import org.openstreetmap.josm.data.osm.KeyValueVisitor;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.mappaint.Cascade;
 import org.openstreetmap.josm.gui.mappaint.Environment;
 import org.openstreetmap.josm.gui.mappaint.LineElemStyle;
@@ -42,14 +44,20 @@ import org.openstreetmap.josm.gui.mappaint.StyleKeys;
 import org.openstreetmap.josm.gui.mappaint.StyleSetting;
 import org.openstreetmap.josm.gui.mappaint.StyleSetting.BooleanStyleSetting;
 import org.openstreetmap.josm.gui.mappaint.StyleSource;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.ClassCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.ExpressionCondition;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyCondition;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyMatchType;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyValueCondition;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Op;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.PseudoClassCondition;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.SimpleKeyValueCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.AbstractSelector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Instruction.AssignmentInstruction;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.OptimizedGeneralSelector;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Subpart.StringSubpart;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.MapCSSParser;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.ParseException;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.TokenMgrError;
@@ -90,6 +98,12 @@ public class MapCSSStyleSource extends StyleSource {
      */
     public static final ReadWriteLock STYLE_SOURCE_LOCK = new ReentrantReadWriteLock();
 
+    /**
+     * Determines if the rules are compiled for faster evaluation when the style is loaded.
+     * @see MapCSSCompiler
+     */
+    public static final BooleanProperty COMPILE = new BooleanProperty("mappaint.mapcss.compile", false);
+
     /**
      * Set of all supported MapCSS keys.
      */
@@ -122,86 +136,78 @@ public class MapCSSStyleSource extends StyleSource {
         }
     }
 
-    private static class MergedRules implements Iterator<MapCSSRule>{
-        private final ArrayList<Iterator<MapCSSRule>> rules;
-        // Heap and head of each rule.
-        private final MapCSSRule[] heap;
-        private int heapSize;
-
-        public MergedRules(ArrayList<Iterator<MapCSSRule>> rules) {
-            this.rules = rules;
-            heapSize = rules.size() - 1;
-            this.heap = new MapCSSRule[heapSize + rules.size()];
-            for (int i = heap.length - 1; i >= 0; i--) {
-                // Pull the null values out.
-                pullOutOf(i);
+    /**
+     * A set of rules, stored as the words of a bitset in which only the non-zero words are kept.
+     */
+    private static final class RuleBits {
+        private final int[] wordIndex;
+        private final long[] words;
+
+        RuleBits(long[] bits) {
+            int count = 0;
+            for (long word : bits) {
+                if (word != 0) {
+                    count++;
+                }
             }
-        }
-
-        @Override
-        public boolean hasNext() {
-            return heap[0] != null;
-        }
-
-        @Override
-        public MapCSSRule next() {
-            return pullOutOf(0);
-        }
-
-        private MapCSSRule pullOutOf(int i) {
-            MapCSSRule next = heap[i];
-            if (i < heapSize) {
-                // Pull from two upper nodes.
-                int nextLeft = i * 2 + 1;
-                int nextRight = i * 2 + 2;
-                if (heap[nextLeft] == null) {
-                    heap[i] = pullOutOf(nextRight);
-                } else if (heap[nextRight] == null) {
-                    heap[i] = pullOutOf(nextLeft);
-                } else {
-                    if (heap[nextLeft].compareTo(heap[nextRight]) < 0) {
-                        heap[i] = pullOutOf(nextLeft);
-                    } else {
-                        heap[i] = pullOutOf(nextRight);
-                    }
+            wordIndex = new int[count];
+            words = new long[count];
+            count = 0;
+            for (int i = 0; i < bits.length; i++) {
+                if (bits[i] != 0) {
+                    wordIndex[count] = i;
+                    words[count++] = bits[i];
                 }
-            } else {
-                // pull from iterator.
-                Iterator<MapCSSRule> it = rules.get(i - heapSize);
-                heap[i] = it.hasNext() ? it.next() : null;
             }
-            return next;
         }
 
-        @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        void addTo(long[] bits) {
+            for (int i = 0; i < words.length; i++) {
+                bits[wordIndex[i]] |= words[i];
+            }
         }
     }
 
+    /**
+     * The rules indexed by one tag key.
+     */
+    private static final class KeyRules {
+        /* rules which require the key, but no specific value */
+        private RuleBits keyRules;
+        /* rules which require a value of the key */
+        private final Map<String, RuleBits> valueRules = new HashMap<>();
+    }
+
     /**
      * A collection of {@link MapCSSRule}s, that are indexed by tag key and value.
      *
      * Speeds up the process of finding all rules that match a certain primitive.
      *
-     * Rules with a {@link SimpleKeyValueCondition} [key=value] are indexed by
-     * key and value in a HashMap. Now you only need to loop the tags of a
-     * primitive to retrieve the possibly matching rules.
-     *
-     * Rules with no SimpleKeyValueCondition in the selector have to be
-     * checked separately.
-     *
-     * The order of rules gets mixed up by this and needs to be sorted later.
+     * Every rule gets the number of its position in {@link #rules}. Rules with a
+     * {@link SimpleKeyValueCondition} [key=value] are indexed by key and value, rules
+     * which require a key by other conditions are indexed by this key, both as bitsets of
+     * the rule numbers. The candidates for a primitive are the union of the bitsets of its
+     * tags and of the rules which are not indexed. Iterating over the set bits replies the
+     * rules in the order they were added, which is the order of their declarations.
      */
     public static class MapCSSRuleIndex {
-        /* all rules for this index */
+        /* all rules for this index, in the order of their declarations */
         public final List<MapCSSRule> rules = new ArrayList<>();
-        /* tag based index */
-        public final Map<String,Map<String,ArrayList<MapCSSRule>>> index = new HashMap<>();
-        public final Map<String,ArrayList<MapCSSRule>> keyIndex = new HashMap<>();
-        /* rules without SimpleKeyValueCondition */
-        public final ArrayList<MapCSSRule> remaining = new ArrayList<>();
-        public final HashSet<MapCSSRule> remaining2 = new HashSet<>();
+        /* the rules by their number */
+        private MapCSSRule[] numberedRules = new MapCSSRule[0];
+        /* bitset of the rules which are not indexed by a key */
+        private long[] remainingBits = new long[0];
+        /* bitsets of the rules indexed by a key or a key and a value */
+        private final Map<String, KeyRules> keyRules = new HashMap<>();
+        /* candidate iterator of each thread, reused once it is exhausted */
+        private static final ThreadLocal<RuleCandidates> reusableCandidates = new ThreadLocal<>();
+        /* rules which depend on more than the type and the tags of a primitive */
+        public final List<MapCSSRule> contextRules = new ArrayList<>();
+        /* tag key and value by which the rule at the same position in contextRules is indexed, or null */
+        private final List<String> contextRuleKeys = new ArrayList<>();
+        private final List<String> contextRuleValues = new ArrayList<>();
+        /* if the selector of a rule in contextRules reads properties set by other rules */
+        private boolean contextRulesReadCascade;
 
         public void add(MapCSSRule rule) {
             rules.add(rule);
@@ -213,7 +219,17 @@ public class MapCSSStyleSource extends StyleSource {
          * You must own the write lock of STYLE_SOURCE_LOCK when calling this method.
          */
         public void initIndex() {
-            for (MapCSSRule r: rules) {
+            numberedRules = rules.toArray(new MapCSSRule[rules.size()]);
+            remainingBits = new long[(numberedRules.length + 63) >>> 6];
+            Map<String, long[]> keyBits = new HashMap<>();
+            Map<String, Map<String, long[]>> valueBits = new HashMap<>();
+            for (int i = 0; i < numberedRules.length; i++) {
+                MapCSSRule r = numberedRules[i];
+                boolean context = !isContextFree(r);
+                if (context) {
+                    contextRules.add(r);
+                    contextRulesReadCascade |= readsCascade(r.selector);
+                }
                 // find the rightmost selector, this must be a GeneralSelector
                 Selector selRightmost = r.selector;
                 while (selRightmost instanceof ChildOrParentSelector) {
@@ -221,48 +237,148 @@ public class MapCSSStyleSource extends StyleSource {
                 }
                 OptimizedGeneralSelector s = (OptimizedGeneralSelector) selRightmost;
                 if (s.conds == null) {
-                    remaining.add(r);
-                    remaining2.add(r);
-                    System.out.println("No conds: " + r);
+                    if (context) {
+                        contextRuleKeys.add(null);
+                        contextRuleValues.add(null);
+                    }
+                    setBit(remainingBits, i);
                     continue;
                 }
                 List<SimpleKeyValueCondition> sk = new ArrayList<>(Utils.filteredCollection(s.conds, SimpleKeyValueCondition.class));
                 if (!sk.isEmpty()) {
                     SimpleKeyValueCondition c = sk.get(sk.size() - 1);
-                    Map<String,ArrayList<MapCSSRule>> rulesWithMatchingKey = index.get(c.k);
-                    if (rulesWithMatchingKey == null) {
-                        rulesWithMatchingKey = new HashMap<>();
-                        index.put(c.k, rulesWithMatchingKey);
+                    if (context) {
+                        contextRuleKeys.add(c.k);
+                        contextRuleValues.add(c.v);
                     }
-                    ArrayList<MapCSSRule> rulesWithMatchingKeyValue = rulesWithMatchingKey.get(c.v);
-                    if (rulesWithMatchingKeyValue == null) {
-                        rulesWithMatchingKeyValue = new ArrayList<>();
-                        rulesWithMatchingKey.put(c.v, rulesWithMatchingKeyValue);
+                    Map<String, long[]> bitsWithMatchingKey = valueBits.get(c.k);
+                    if (bitsWithMatchingKey == null) {
+                        bitsWithMatchingKey = new HashMap<>();
+                        valueBits.put(c.k, bitsWithMatchingKey);
                     }
-                    rulesWithMatchingKeyValue.add(r);
+                    setBit(getBits(bitsWithMatchingKey, c.v), i);
                 } else {
-                    remaining2.add(r);
                     String key = findRequiredKey(s.conds);
+                    if (context) {
+                        contextRuleKeys.add(key);
+                        contextRuleValues.add(null);
+                    }
                     if (key != null) {
-                        ArrayList<MapCSSRule> rulesWithMatchingKey = keyIndex.get(key);
-                        if (rulesWithMatchingKey == null) {
-                            rulesWithMatchingKey = new ArrayList<>();
-                            keyIndex.put(key, rulesWithMatchingKey);
-                        }
-                        rulesWithMatchingKey.add(r);
+                        setBit(getBits(keyBits, key), i);
                     } else {
-                        remaining.add(r);
-                        System.out.println("No key: " + r);
+                        setBit(remainingBits, i);
                     }
                 }
             }
-            Collections.sort(remaining);
+            for (Entry<String, long[]> e : keyBits.entrySet()) {
+                getKeyRules(e.getKey()).keyRules = new RuleBits(e.getValue());
+            }
+            for (Entry<String, Map<String, long[]>> e : valueBits.entrySet()) {
+                KeyRules k = getKeyRules(e.getKey());
+                for (Entry<String, long[]> v : e.getValue().entrySet()) {
+                    k.valueRules.put(v.getKey(), new RuleBits(v.getValue()));
+                }
+            }
+        }
+
+        private long[] getBits(Map<String, long[]> bits, String key) {
+            long[] result = bits.get(key);
+            if (result == null) {
+                result = new long[remainingBits.length];
+                bits.put(key, result);
+            }
+            return result;
+        }
 
-            for (Map<String, ArrayList<MapCSSRule>> e : index.values()) {
-                for (ArrayList<MapCSSRule> rules : e.values()) {
-                    Collections.sort(rules);
+        private static void setBit(long[] bits, int i) {
+            bits[i >>> 6] |= 1L << i;
+        }
+
+        private KeyRules getKeyRules(String key) {
+            KeyRules result = keyRules.get(key);
+            if (result == null) {
+                result = new KeyRules();
+                keyRules.put(key, result);
+            }
+            return result;
+        }
+
+        /**
+         * Determines if a rule depends only on the type and the tags of a primitive and on the properties set by
+         * other rules. Rules with parent or child selectors, pseudo classes other than {@code :tagged} or
+         * functions like {@code parent_tag()} or {@code osm_id()} depend on the context of the primitive.
+         * @param r the rule
+         * @return {@code true} if the rule matches and sets the same properties for all primitives of the same
+         * type with the same tags
+         */
+        static boolean isContextFree(MapCSSRule r) {
+            if (!(r.selector instanceof OptimizedGeneralSelector))
+                return false;
+            OptimizedGeneralSelector s = (OptimizedGeneralSelector) r.selector;
+            if (s.subpart != null && !(s.subpart instanceof StringSubpart))
+                return false;
+            for (Condition c : s.getConditions()) {
+                if (!isContextFree(c))
+                    return false;
+            }
+            for (Instruction i : r.declaration.instructions) {
+                if (!(i instanceof AssignmentInstruction))
+                    return false;
+                Object val = ((AssignmentInstruction) i).val;
+                if (val instanceof Expression && !ExpressionFactory.isContextFree((Expression) val))
+                    return false;
+            }
+            return true;
+        }
+
+        private static boolean isContextFree(Condition c) {
+            if (c instanceof PseudoClassCondition)
+                return "tagged".equals(((PseudoClassCondition) c).id);
+            if (c instanceof ExpressionCondition)
+                return ExpressionFactory.isContextFree(((ExpressionCondition) c).getExpression());
+            return c instanceof SimpleKeyValueCondition || c instanceof KeyValueCondition
+                    || c instanceof KeyCondition || c instanceof ClassCondition;
+        }
+
+        private static boolean readsCascade(Selector selector) {
+            if (selector instanceof ChildOrParentSelector) {
+                ChildOrParentSelector s = (ChildOrParentSelector) selector;
+                return readsCascade(s.left) || readsCascade(s.link) || readsCascade(s.right);
+            } else if (!(selector instanceof AbstractSelector))
+                return true;
+            for (Condition c : ((AbstractSelector) selector).getConditions()) {
+                if (c instanceof ClassCondition || (c instanceof ExpressionCondition
+                        && ExpressionFactory.readsCascade(((ExpressionCondition) c).getExpression())))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Determines if no rule which depends on the context matches the primitive. Then the rules apply to the
+         * primitive as to all other context free primitives of the same type with the same tags.
+         * @param env the environment of the primitive
+         * @return {@code true} if the primitive gets the same properties as other context free primitives
+         *
+         * You must have a read lock of STYLE_SOURCE_LOCK when calling this method.
+         */
+        public boolean isContextFree(Environment env) {
+            // without the properties set by the preceding rules, these selectors cannot be evaluated on their own
+            if (contextRulesReadCascade)
+                return false;
+            for (int i = 0; i < contextRules.size(); i++) {
+                // like getRuleCandidates(), skip the rules which are not indexed by the tags of the primitive
+                String key = contextRuleKeys.get(i);
+                if (key != null) {
+                    String value = env.osm.get(key);
+                    if (value == null || (contextRuleValues.get(i) != null && !contextRuleValues.get(i).equals(value)))
+                        continue;
                 }
+                env.clearSelectorMatchingInformation();
+                if (contextRules.get(i).selector.matches(env))
+                    return false;
             }
+            return true;
         }
 
         // Copied
@@ -278,7 +394,7 @@ public class MapCSSStyleSource extends StyleSource {
                     }
                 } else if (c instanceof KeyValueCondition) {
                     KeyValueCondition keyValueCondition = (KeyValueCondition) c;
-                    if (!NEGATED_OPS.contains(keyValueCondition)) {
+                    if (!NEGATED_OPS.contains(keyValueCondition.op)) {
                         key = keyValueCondition.k;
                     }
                 }
@@ -287,57 +403,93 @@ public class MapCSSStyleSource extends StyleSource {
         }
 
         /**
-         * Get a subset of all rules that might match the primitive.
-         * @param osm the primitive to match
-         * @return a Collection of rules that filters out most of the rules
-         * that cannot match, based on the tags of the primitive
-         *
-         * You must have a read lock of STYLE_SOURCE_LOCK when calling this method.
+         * Iterates over the set bits of the rule candidates for one primitive. The iterator keeps the rules of its
+         * index until all candidates have been replied, then it may be reused for the next primitive.
          */
-        public Iterator<MapCSSRule> getRuleCandidates(OsmPrimitive osm) {
-            ArrayList<Iterator<MapCSSRule>> ruleCandidates = new ArrayList<>();
-            ruleCandidates.add(remaining.iterator());
-            for (Map.Entry<String,String> e : osm.getKeys().entrySet()) {
-                Map<String, ArrayList<MapCSSRule>> v = index.get(e.getKey());
-                if (v != null) {
-                    ArrayList<MapCSSRule> rs = v.get(e.getValue());
-                    if (rs != null)  {
-                        ruleCandidates.add(rs.iterator());
-                    }
-                }
-                ArrayList<MapCSSRule> forKey = keyIndex.get(e.getKey());
-                if (forKey != null) {
-                    ruleCandidates.add(forKey.iterator());
+        private static final class RuleCandidates implements Iterator<MapCSSRule>, KeyValueVisitor {
+            private long[] bits = new long[0];
+            private MapCSSRule[] candidates;
+            private Map<String, KeyRules> keyRules;
+            private int word;
+            private long current;
+
+            private void reset(MapCSSRuleIndex index, OsmPrimitive osm) {
+                candidates = index.numberedRules;
+                keyRules = index.keyRules;
+                if (bits.length != index.remainingBits.length) {
+                    bits = new long[index.remainingBits.length];
                 }
+                System.arraycopy(index.remainingBits, 0, bits, 0, bits.length);
+                osm.visitKeys(this);
+                keyRules = null;
+                word = 0;
+                current = bits.length == 0 ? 0 : bits[0];
             }
-            if (ruleCandidates.size() == 1) {
-                return ruleCandidates.get(0);
-            } else {
-                System.out.println("Found iterators: " + ruleCandidates.size());
-                return new MergedRules(ruleCandidates);
+
+            private boolean isInUse() {
+                return candidates != null;
             }
-        }
 
-        private static final MapCSSRule[] ruleArray = new MapCSSRule[0];
+            @Override
+            public void visitKeyValue(AbstractPrimitive primitive, String key, String value) {
+                KeyRules k = keyRules.get(key);
+                if (k != null) {
+                    if (k.keyRules != null) {
+                        k.keyRules.addTo(bits);
+                    }
+                    RuleBits v = k.valueRules.get(value);
+                    if (v != null) {
+                        v.addTo(bits);
+                    }
+                }
+            }
 
-        public MapCSSRule[] getRuleCandidatesOld(OsmPrimitive osm) {
-            ArrayList<MapCSSRule> ruleCandidates = new ArrayList<>(remaining2);
-            for (Map.Entry<String,String> e : osm.getKeys().entrySet()) {
-                Map<String, ArrayList<MapCSSRule>> v = index.get(e.getKey());
-                if (v != null) {
-                    ArrayList<MapCSSRule> rs = v.get(e.getValue());
-                    if (rs != null)  {
-                        ruleCandidates.addAll(rs);
+            @Override
+            public boolean hasNext() {
+                while (current == 0) {
+                    if (word + 1 >= bits.length) {
+                        // release the rules, so that the index of a reloaded style is not kept
+                        candidates = null;
+                        return false;
                     }
+                    current = bits[++word];
                 }
-//                ArrayList<MapCSSRule> forKey = keyIndex.get(e.getKey());
-//                if (forKey != null) {
-//                    ruleCandidates.addAll(forKey);
-//                }
+                return true;
             }
-            MapCSSRule[] result = ruleCandidates.toArray(ruleArray);
-            Arrays.sort(result);
-            return result;
+
+            @Override
+            public MapCSSRule next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int bit = Long.numberOfTrailingZeros(current);
+                current &= current - 1;
+                return candidates[(word << 6) + bit];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        /**
+         * Get a subset of all rules that might match the primitive.
+         * @param osm the primitive to match
+         * @return the rules that are not filtered out by the tags of the primitive, in the order of their
+         * declarations. The iterator is reused by a later call in the same thread once it is exhausted.
+         *
+         * You must have a read lock of STYLE_SOURCE_LOCK when calling this method.
+         */
+        public Iterator<MapCSSRule> getRuleCandidates(OsmPrimitive osm) {
+            RuleCandidates candidates = reusableCandidates.get();
+            if (candidates == null || candidates.isInUse()) {
+                // the candidates of another primitive are still iterated or have not been iterated to the end,
+                // replace them, so that the following calls reuse the new iterator
+                candidates = new RuleCandidates();
+                reusableCandidates.set(candidates);
+            }
+            candidates.reset(this, osm);
+            return candidates;
         }
 
         /**
@@ -347,10 +499,13 @@ public class MapCSSStyleSource extends StyleSource {
          */
         public void clear() {
             rules.clear();
-            index.clear();
-            remaining.clear();
-            keyIndex.clear();
-            remaining2.clear();
+            numberedRules = new MapCSSRule[0];
+            remainingBits = new long[0];
+            keyRules.clear();
+            contextRules.clear();
+            contextRuleKeys.clear();
+            contextRuleValues.clear();
+            contextRulesReadCascade = false;
         }
     }
 
@@ -418,6 +573,7 @@ public class MapCSSStyleSource extends StyleSource {
                 logError(new ParseException(e.getMessage())); // allow e to be garbage collected, it links to the entire token stream
             }
             // optimization: filter rules for different primitive types
+            MapCSSCompiler compiler = COMPILE.get() ? new MapCSSCompiler(this) : null;
             for (MapCSSRule r: rules) {
                 // find the rightmost selector, this must be a GeneralSelector
                 Selector selRightmost = r.selector;
@@ -425,6 +581,13 @@ public class MapCSSStyleSource extends StyleSource {
                     selRightmost = ((ChildOrParentSelector) selRightmost).right;
                 }
                 MapCSSRule optRule = new MapCSSRule(r.selector.optimizedBaseCheck(), r.declaration);
+                if (compiler != null) {
+                    optRule = compiler.compile(optRule);
+                    if (optRule == null) {
+                        // never matches
+                        continue;
+                    }
+                }
                 final String base = ((GeneralSelector) selRightmost).getBase();
                 switch (base) {
                     case "node":
@@ -597,6 +760,21 @@ public class MapCSSStyleSource extends StyleSource {
         return mc.getCascade("default");
     }
 
+    /**
+     * Replies the number of rules which depend only on the type and the tags of a primitive, see
+     * {@link #isContextFree(OsmPrimitive)}.
+     * @return the number of context free rules
+     */
+    public int getContextFreeRuleCount() {
+        int count = 0;
+        for (MapCSSRule r : rules) {
+            if (MapCSSRuleIndex.isContextFree(r)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Override
     public Color getBackgroundColorOverride() {
         return backgroundColorOverride;
@@ -608,77 +786,40 @@ public class MapCSSStyleSource extends StyleSource {
     public static long rulesExecuted = 0;
     public static long elementsProcessed = 0;
 
-    @Override
-    public void apply(MultiCascade mc, OsmPrimitive osm, double scale, boolean pretendWayIsClosed) {
-        Environment env = new Environment(osm, mc, null, this);
-        MapCSSRuleIndex matchingRuleIndex;
+    MapCSSRuleIndex getRuleIndex(OsmPrimitive osm) {
         if (osm instanceof Node) {
-            matchingRuleIndex = nodeRules;
+            return nodeRules;
         } else if (osm instanceof Way) {
             if (osm.isKeyFalse("area")) {
-                matchingRuleIndex = wayNoAreaRules;
+                return wayNoAreaRules;
             } else {
-                matchingRuleIndex = wayRules;
+                return wayRules;
             }
         } else {
             if (((Relation) osm).isMultipolygon()) {
-                matchingRuleIndex = multipolygonRules;
+                return multipolygonRules;
             } else if (osm.hasKey("#canvas")) {
-                matchingRuleIndex = canvasRules;
+                return canvasRules;
             } else {
-                matchingRuleIndex = relationRules;
+                return relationRules;
             }
         }
+    }
+
+    @Override
+    public boolean isContextFree(OsmPrimitive osm) {
+        return getRuleIndex(osm).isContextFree(new Environment(osm, new MultiCascade(), null, this));
+    }
+
+    @Override
+    public void apply(MultiCascade mc, OsmPrimitive osm, double scale, boolean pretendWayIsClosed) {
+        Environment env = new Environment(osm, mc, null, this);
+        MapCSSRuleIndex matchingRuleIndex = getRuleIndex(osm);
 
         // the declaration indices are sorted, so it suffices to save the
         // last used index
         int lastDeclUsed = -1;
 
-        if (false) {
-            ArrayList<MapCSSRule> old = new ArrayList<>();
-            ArrayList<MapCSSRule> pq = new ArrayList<>();
-
-            // To avoid cache times.
-            matchingRuleIndex.getRuleCandidates(osm);
-            matchingRuleIndex.getRuleCandidatesOld(osm);
-
-            // ------------ New
-            long t1 = System.nanoTime();
-            Iterator<MapCSSRule> candidates = matchingRuleIndex.getRuleCandidates(osm);
-            while (candidates.hasNext()) {
-                pq.add(candidates.next());
-            }
-
-            // ------------ Old
-            long t2 = System.nanoTime();
-            MapCSSRule[] candidatesOld = matchingRuleIndex.getRuleCandidatesOld(osm);
-            for(MapCSSRule r : candidatesOld) {
-                old.add(r);
-            }
-            long t3 = System.nanoTime();
-
-            // Now check result
-//            if (old.size() != pq.size()) {
-//                System.err.println("Warning: Rule count mismatch.");
-//            } else {
-//                // Check elements.
-//                for (MapCSSRule e : old) {
-//                    if (!pq.contains(e)) {
-//                        System.err.println("Missing in list: " + e);
-//                    }
-//                }
-//            }
-            // Check for sorted:
-            for (int i = 0; i < pq.size() - 1; i++) {
-                if (pq.get(i).compareTo(pq.get(i+1)) > 0) {
-                    System.err.println("Warning: Order is wrong.");
-                }
-            }
-
-            tNew += t2 - t1;
-            tOld += t3 - t2;
-        }
-
         Iterator<MapCSSRule> ruleCandidates = matchingRuleIndex.getRuleCandidates(osm);
         while (ruleCandidates.hasNext()) {
             rulesGuessed++;
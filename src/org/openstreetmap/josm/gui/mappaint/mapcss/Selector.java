@@ -478,6 +478,10 @@ public interface Selector {
             super(base, zoom, conds, subpart);
         }
 
+        public GeneralSelector(String base, Range range, List<Condition> conds, Subpart subpart) {
+            super(base, range, conds, subpart);
+        }
+
         public boolean matchesConditions(Environment e) {
             return super.matches(e);
         }
@@ -5,21 +5,20 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.LongKeyMap;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
-import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.PrimitiveIdMap;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.RelationMemberData;
-import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
 import org.openstreetmap.josm.data.osm.Way;
 
 /**
@@ -40,17 +39,17 @@ public abstract class AbstractReader {
      * longs too, but in contrast to internal ids negative values are used
      * to identify primitives unknown to the OSM server
      */
-    protected final Map<PrimitiveId, OsmPrimitive> externalIdMap = new HashMap<>();
+    protected final PrimitiveIdMap<OsmPrimitive> externalIdMap = new PrimitiveIdMap<>();
 
     /**
-     * Data structure for the remaining way objects
+     * Data structure for the remaining way objects, maps the external way id to the external ids of its nodes
      */
-    protected final Map<Long, Collection<Long>> ways = new HashMap<>();
+    protected final LongKeyMap<long[]> ways = new LongKeyMap<>();
 
     /**
      * Data structure for relation objects
      */
-    protected final Map<Long, Collection<RelationMemberData>> relations = new HashMap<>();
+    protected final LongKeyMap<Collection<RelationMemberData>> relations = new LongKeyMap<>();
     
     /**
      * Replies the parsed data set
@@ -67,11 +66,7 @@ public abstract class AbstractReader {
      *
      */
     protected void processNodesAfterParsing() {
-        for (OsmPrimitive primitive: externalIdMap.values()) {
-            if (primitive instanceof Node) {
-                this.ds.addPrimitive(primitive);
-            }
-        }
+        ds.addPrimitives(externalIdMap.getMap(OsmPrimitiveType.NODE).values());
     }
 
     /**
@@ -81,11 +76,16 @@ public abstract class AbstractReader {
      * @throws IllegalDataException thrown if a data integrity problem is detected
      */
     protected void processWaysAfterParsing() throws IllegalDataException{
-        for (Long externalWayId: ways.keySet()) {
-            Way w = (Way)externalIdMap.get(new SimplePrimitiveId(externalWayId, OsmPrimitiveType.WAY));
-            List<Node> wayNodes = new ArrayList<>();
-            for (long id : ways.get(externalWayId)) {
-                Node n = (Node)externalIdMap.get(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+        List<Way> parsedWays = new ArrayList<>(ways.size());
+        List<List<Node>> parsedWayNodes = new ArrayList<>(ways.size());
+        LongKeyMap.Cursor<long[]> cursor = ways.cursor();
+        while (cursor.next()) {
+            long externalWayId = cursor.key();
+            long[] nodeIds = cursor.value();
+            Way w = (Way)externalIdMap.get(externalWayId, OsmPrimitiveType.WAY);
+            List<Node> wayNodes = new ArrayList<>(nodeIds.length);
+            for (long id : nodeIds) {
+                Node n = (Node)externalIdMap.get(id, OsmPrimitiveType.NODE);
                 if (n == null) {
                     if (id <= 0)
                         throw new IllegalDataException (
@@ -106,13 +106,19 @@ public abstract class AbstractReader {
                     wayNodes.add(n);
                 }
             }
-            w.setNodes(wayNodes);
-            if (w.hasIncompleteNodes()) {
-                Main.info(tr("Way {0} with {1} nodes has incomplete nodes because at least one node was missing in the loaded data.",
-                          externalWayId, w.getNodesCount()));
+            for (Node n : wayNodes) {
+                if (n.isIncomplete()) {
+                    Main.info(tr("Way {0} with {1} nodes has incomplete nodes because at least one node was missing in the loaded data.",
+                              externalWayId, wayNodes.size()));
+                    break;
+                }
             }
-            ds.addPrimitive(w);
+            parsedWays.add(w);
+            parsedWayNodes.add(wayNodes);
         }
+        // register the ways as referrers of their nodes at once, junction nodes may be shared by many ways
+        Way.setNodes(parsedWays, parsedWayNodes);
+        ds.addPrimitives(parsedWays);
     }
 
     /**
@@ -125,23 +131,23 @@ public abstract class AbstractReader {
     protected void processRelationsAfterParsing() throws IllegalDataException {
 
         // First add all relations to make sure that when relation reference other relation, the referenced will be already in dataset
-        for (Long externalRelationId : relations.keySet()) {
-            Relation relation = (Relation) externalIdMap.get(
-                    new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
-            );
-            ds.addPrimitive(relation);
+        List<Relation> parsedRelations = new ArrayList<>(relations.size());
+        LongKeyMap.Cursor<Collection<RelationMemberData>> cursor = relations.cursor();
+        while (cursor.next()) {
+            parsedRelations.add((Relation) externalIdMap.get(cursor.key(), OsmPrimitiveType.RELATION));
         }
-
-        for (Long externalRelationId : relations.keySet()) {
-            Relation relation = (Relation) externalIdMap.get(
-                    new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
-            );
-            List<RelationMember> relationMembers = new ArrayList<>();
-            for (RelationMemberData rm : relations.get(externalRelationId)) {
+        ds.addPrimitives(parsedRelations);
+
+        cursor = relations.cursor();
+        while (cursor.next()) {
+            long externalRelationId = cursor.key();
+            Relation relation = (Relation) externalIdMap.get(externalRelationId, OsmPrimitiveType.RELATION);
+            List<RelationMember> relationMembers = new ArrayList<>(cursor.value().size());
+            for (RelationMemberData rm : cursor.value()) {
                 OsmPrimitive primitive = null;
 
                 // lookup the member from the map of already created primitives
-                primitive = externalIdMap.get(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()));
+                primitive = externalIdMap.get(rm.getMemberId(), rm.getMemberType());
 
                 if (primitive == null) {
                     if (rm.getMemberId() <= 0)
@@ -170,7 +176,7 @@ public abstract class AbstractReader {
                         }
 
                         ds.addPrimitive(primitive);
-                        externalIdMap.put(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()), primitive);
+                        externalIdMap.put(rm.getMemberId(), rm.getMemberType(), primitive);
                     }
                 }
                 if (primitive.isDeleted()) {
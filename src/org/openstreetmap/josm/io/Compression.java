@@ -12,6 +12,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.tools.bzip2.CBZip2OutputStream;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
@@ -57,6 +58,8 @@ public enum Compression {
      */
     public InputStream getUncompressedInputStream(InputStream in) throws IOException {
         switch (this) {
+            case BZIP2:
+                return Utils.getBZip2InputStream(in);
             case GZIP:
                 return Utils.getGZipInputStream(in);
             case ZIP:
@@ -93,6 +96,11 @@ public enum Compression {
      */
     public OutputStream getCompressedOutputStream(OutputStream out) throws IOException {
         switch (this) {
+            case BZIP2:
+                // the magic is not written by the stream
+                out.write('B');
+                out.write('Z');
+                return new CBZip2OutputStream(out);
             case GZIP:
                 return new GZIPOutputStream(out);
             case ZIP:
@@ -10,15 +10,27 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
@@ -27,6 +39,25 @@ import org.openstreetmap.josm.tools.Utils;
  */
 public class OsmExporter extends FileExporter {
 
+    /**
+     * Writes the layers saved in the background one after the other, created when a layer is saved for the first time.
+     */
+    private static final class BackgroundSaveHolder {
+        private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OSM file saver");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /** the last layer submitted to be saved in the background, the layers are saved in order */
+    private static volatile Future<?> lastBackgroundSave;
+
+    private boolean writeInBackground = true;
+
     /**
      * Constructs a new {@code OsmExporter}.
      */
@@ -42,6 +73,15 @@ public class OsmExporter extends FileExporter {
         super(filter);
     }
 
+    /**
+     * Sets if a layer saved from the event dispatch thread is written in the background. Then the layer is copied,
+     * and {@link #exportData(File, Layer, boolean)} returns before the file has been written. This is the default.
+     * @param writeInBackground {@code false} if the file has to be written when the export returns
+     */
+    public void setWriteInBackground(boolean writeInBackground) {
+        this.writeInBackground = writeInBackground;
+    }
+
     @Override
     public boolean acceptFile(File pathname, Layer layer) {
         if (!(layer instanceof OsmDataLayer))
@@ -61,6 +101,7 @@ public class OsmExporter extends FileExporter {
      * @param noBackup if {@code true}, the potential backup file created if the output file already exists will be deleted
      *                 after a successful export
      * @throws IllegalArgumentException if {@code layer} is not an instance of {@code OsmDataLayer}
+     * @see #setWriteInBackground(boolean)
      */
     public void exportData(File file, Layer layer, boolean noBackup) throws IllegalArgumentException {
         checkOsmDataLayer(layer);
@@ -95,7 +136,10 @@ public class OsmExporter extends FileExporter {
                     tmpFile.delete();
                 }
             }
-            layer.onPostSaveToFile();
+            // a subclass may have canceled the export, or written data which does not contain all changes
+            if (!isCanceled()) {
+                layer.onPostSaveToFile();
+            }
         } catch (IOException e) {
             Main.error(e);
             JOptionPane.showMessageDialog(
@@ -123,7 +167,97 @@ public class OsmExporter extends FileExporter {
         }
     }
 
+    /**
+     * Writes a copy of a layer to a file of its own and replaces the target by it, so that the target is never
+     * truncated.
+     */
+    private static void write(File file, ParallelOsmWriter writer) throws IOException {
+        File partFile = new File(file.getPath() + ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(partFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+            }
+            try {
+                Files.move(partFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(partFile.toPath());
+        }
+    }
+
+    /**
+     * Writes a copy of a layer in the background, so that the user interface is not blocked while a large layer
+     * is saved. The layer is marked as saved right away, as changes made meanwhile mark it as modified again.
+     * If writing fails, the error is shown and the layer is marked as not saved.
+     */
+    private static void writeInBackground(final File file, final OsmDataLayer layer, final ParallelOsmWriter writer) {
+        lastBackgroundSave = BackgroundSaveHolder.EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file, writer);
+                } catch (final IOException | RuntimeException e) {
+                    Main.error(e);
+                    GuiHelper.runInEDT(new Runnable() {
+                        @Override
+                        public void run() {
+                            layer.onSaveToFileFailed();
+                            JOptionPane.showMessageDialog(
+                                    Main.parent,
+                                    tr("<html>An error occurred while saving.<br>Error is:<br>{0}</html>", e.getMessage()),
+                                    tr("Error"),
+                                    JOptionPane.ERROR_MESSAGE
+                            );
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the layers which are saved in the background have been written, e.g. before the program exits.
+     */
+    public static void waitForBackgroundSaves() {
+        Future<?> last = lastBackgroundSave;
+        if (last == null)
+            return;
+        try {
+            last.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Main.error(e);
+        }
+    }
+
+    /**
+     * Determines if the primitives are serialized in parallel by a {@link ParallelOsmWriter}.
+     */
+    private static boolean isParallel(File file) {
+        // writers substituted by plugins may rely on writing the whole layer at once
+        OsmWriterFactory factory = OsmWriterFactory.theFactory;
+        return (factory == null || factory.getClass() == OsmWriterFactory.class)
+                && Compression.byExtension(file.getName()) != Compression.ZIP
+                && Main.pref.getBoolean("osm.writer.parallel", Runtime.getRuntime().availableProcessors() > 1);
+    }
+
     protected void doSave(File file, OsmDataLayer layer) throws IOException, FileNotFoundException {
+        if (isParallel(file)) {
+            // the layer is copied under its read lock, the copy is written without the lock
+            ParallelOsmWriter writer = new ParallelOsmWriter(Compression.byExtension(file.getName()));
+            writer.copyLayer(layer);
+            if (writeInBackground && SwingUtilities.isEventDispatchThread()) {
+                writeInBackground(file, layer, writer);
+            } else {
+                write(file, writer);
+            }
+            return;
+        }
         // create outputstream and wrap it with gzip or bzip, if necessary
         try (
             OutputStream out = getOutputStream(file);
@@ -95,9 +95,15 @@ public class OsmImporter extends FileImporter {
      * @param pm handler for progress monitoring and canceling
      */
     protected void importData(InputStream in, final File associatedFile, ProgressMonitor pm) throws IllegalDataException {
-        final OsmImporterData data = loadLayer(in, associatedFile,
-                associatedFile == null ? OsmDataLayer.createNewName() : associatedFile.getName(), pm);
+        addLayer(loadLayer(in, associatedFile,
+                associatedFile == null ? OsmDataLayer.createNewName() : associatedFile.getName(), pm));
+    }
 
+    /**
+     * Adds a loaded osm data layer to the map view, zoomed to its data, and runs its post layer task.
+     * @param data the loaded layer
+     */
+    public static void addLayer(final OsmImporterData data) {
         // FIXME: remove UI stuff from IO subsystem
         GuiHelper.runInEDT(new Runnable() {
             @Override
@@ -127,6 +133,16 @@ public class OsmImporter extends FileImporter {
         if (dataSet == null) {
             throw new IllegalDataException(tr("Invalid dataset"));
         }
+        return loadLayer(dataSet, associatedFile, layerName);
+    }
+
+    /**
+     * Load osm data layer from a dataset which has already been read, e.g. from a snapshot.
+     * @param dataSet the dataset
+     * @param associatedFile filename of data (can be <code>null</code>)
+     * @param layerName name of generated layer
+     */
+    public OsmImporterData loadLayer(DataSet dataSet, File associatedFile, String layerName) {
         OsmDataLayer layer = createLayer(dataSet, associatedFile, layerName);
         Runnable postLayerTask = createPostLayerTask(dataSet, associatedFile, layerName, layer);
         return new OsmImporterData(layer, postLayerTask);
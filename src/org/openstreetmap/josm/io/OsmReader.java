@@ -5,10 +5,24 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Method;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,18 +40,21 @@ import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.PrimitiveData;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationData;
 import org.openstreetmap.josm.data.osm.RelationMemberData;
 import org.openstreetmap.josm.data.osm.Tagged;
+import org.openstreetmap.josm.data.osm.TagSetPool;
 import org.openstreetmap.josm.data.osm.User;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WayData;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.date.DateUtils;
 
 /**
@@ -53,6 +70,28 @@ public class OsmReader extends AbstractReader {
 
     protected boolean cancel;
 
+    /** Number of primitives handed over to the building stage at once */
+    private static final int BATCH_SIZE = 1024;
+
+    /** Number of batches the parser may run ahead of the building stage */
+    private static final int QUEUE_CAPACITY = 8;
+
+    /** Runs the stages of reading which run in parallel to the parser, shared by all readers */
+    private static final ExecutorService PIPELINE = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "OSM reader pipeline");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /** The methods which parse a primitive, skipped by the building stage */
+    private static final Collection<String> PARSE_METHODS = Arrays.asList("parseNode", "parseWay", "parseRelation");
+
+    /** the building stage, or {@code null} if primitives are built by the parser */
+    private PrimitiveBuilder builder;
+
     /** Used by plugins to register themselves as data postprocessors. */
     private static volatile List<OsmServerReadPostprocessor> postprocessors;
 
@@ -147,13 +186,13 @@ public class OsmReader extends AbstractReader {
                     parseBounds(generator);
                     break;
                 case "node":
-                    parseNode();
+                    parsePrimitive(OsmPrimitiveType.NODE);
                     break;
                 case "way":
-                    parseWay();
+                    parsePrimitive(OsmPrimitiveType.WAY);
                     break;
                 case "relation":
-                    parseRelation();
+                    parsePrimitive(OsmPrimitiveType.RELATION);
                     break;
                 case "changeset":
                     parseChangeset(uploadChangesetId);
@@ -196,144 +235,181 @@ public class OsmReader extends AbstractReader {
     }
 
     protected Node parseNode() throws XMLStreamException {
-        NodeData nd = new NodeData();
-        String lat = parser.getAttributeValue(null, "lat");
-        String lon = parser.getAttributeValue(null, "lon");
-        if (lat != null && lon != null) {
-            nd.setCoor(new LatLon(Double.parseDouble(lat), Double.parseDouble(lon)));
-        }
-        readCommon(nd);
-        Node n = new Node(nd.getId(), nd.getVersion());
-        n.setVisible(nd.isVisible());
-        n.load(nd);
-        externalIdMap.put(nd.getPrimitiveId(), n);
-        while (true) {
-            int event = parser.next();
-            if (event == XMLStreamConstants.START_ELEMENT) {
-                if ("tag".equals(parser.getLocalName())) {
-                    parseTag(n);
-                } else {
-                    parseUnknown();
-                }
-            } else if (event == XMLStreamConstants.END_ELEMENT)
-                return n;
-        }
+        return (Node) buildPrimitive(readPrimitive(OsmPrimitiveType.NODE));
     }
 
     protected Way parseWay() throws XMLStreamException {
-        WayData wd = new WayData();
-        readCommon(wd);
-        Way w = new Way(wd.getId(), wd.getVersion());
-        w.setVisible(wd.isVisible());
-        w.load(wd);
-        externalIdMap.put(wd.getPrimitiveId(), w);
-
-        Collection<Long> nodeIds = new ArrayList<>();
+        return (Way) buildPrimitive(readPrimitive(OsmPrimitiveType.WAY));
+    }
+
+    protected Relation parseRelation() throws XMLStreamException {
+        return (Relation) buildPrimitive(readPrimitive(OsmPrimitiveType.RELATION));
+    }
+
+    /**
+     * Reads a node, way or relation and hands it over to the building stage. If there is no building stage,
+     * it is parsed by {@link #parseNode}, {@link #parseWay} or {@link #parseRelation}, which subclasses may override.
+     */
+    private void parsePrimitive(OsmPrimitiveType type) throws XMLStreamException {
+        if (builder != null) {
+            builder.add(readPrimitive(type));
+            return;
+        }
+        switch (type) {
+        case NODE:
+            parseNode();
+            break;
+        case WAY:
+            parseWay();
+            break;
+        default:
+            parseRelation();
+        }
+    }
+
+    /**
+     * Reads the attributes, tags, way nodes and relation members of the current element.
+     * Only the presence of attributes is checked here, their values are checked by {@link #buildPrimitive}.
+     */
+    private PrimitiveRecord readPrimitive(OsmPrimitiveType type) throws XMLStreamException {
+        PrimitiveRecord record = new PrimitiveRecord(type, parser);
         while (true) {
             int event = parser.next();
             if (event == XMLStreamConstants.START_ELEMENT) {
-                switch (parser.getLocalName()) {
-                case "nd":
-                    nodeIds.add(parseWayNode(w));
-                    break;
-                case "tag":
-                    parseTag(w);
-                    break;
-                default:
+                String name = parser.getLocalName();
+                if ("tag".equals(name)) {
+                    String key = parser.getAttributeValue(null, "k");
+                    String value = parser.getAttributeValue(null, "v");
+                    if (key == null || value == null) {
+                        throwException(tr("Missing key or value attribute in tag."));
+                    }
+                    record.addTag(key, value);
+                    jumpToEnd();
+                } else if ("nd".equals(name) && type == OsmPrimitiveType.WAY) {
+                    String ref = parser.getAttributeValue(null, "ref");
+                    if (ref == null) {
+                        throwException(tr("Missing mandatory attribute ''{0}'' on <nd> of way {1}.", "ref", record.id));
+                    }
+                    record.addChild(ref);
+                    jumpToEnd();
+                } else if ("member".equals(name) && type == OsmPrimitiveType.RELATION) {
+                    readRelationMember(record);
+                } else {
                     parseUnknown();
                 }
-            } else if (event == XMLStreamConstants.END_ELEMENT) {
-                break;
-            }
-        }
-        if (w.isDeleted() && !nodeIds.isEmpty()) {
-            Main.info(tr("Deleted way {0} contains nodes", w.getUniqueId()));
-            nodeIds = new ArrayList<>();
+            } else if (event == XMLStreamConstants.END_ELEMENT)
+                return record;
         }
-        ways.put(wd.getUniqueId(), nodeIds);
-        return w;
     }
 
-    private long parseWayNode(Way w) throws XMLStreamException {
-        if (parser.getAttributeValue(null, "ref") == null) {
-            throwException(
-                    tr("Missing mandatory attribute ''{0}'' on <nd> of way {1}.", "ref", w.getUniqueId())
-            );
+    private void readRelationMember(PrimitiveRecord record) throws XMLStreamException {
+        String ref = parser.getAttributeValue(null, "ref");
+        if (ref == null) {
+            throwException(tr("Missing attribute ''ref'' on member in relation {0}.", record.id));
         }
-        long id = getLong("ref");
-        if (id == 0) {
-            throwException(
-                    tr("Illegal value of attribute ''ref'' of element <nd>. Got {0}.", id)
-            );
+        String type = parser.getAttributeValue(null, "type");
+        if (type == null) {
+            throwException(tr("Missing attribute ''type'' on member {0} in relation {1}.", ref, record.id));
         }
+        record.addChild(type);
+        record.addChild(ref);
+        record.addChild(parser.getAttributeValue(null, "role"));
         jumpToEnd();
-        return id;
     }
 
-    protected Relation parseRelation() throws XMLStreamException {
-        RelationData rd = new RelationData();
-        readCommon(rd);
-        Relation r = new Relation(rd.getId(), rd.getVersion());
-        r.setVisible(rd.isVisible());
-        r.load(rd);
-        externalIdMap.put(rd.getPrimitiveId(), r);
-
-        Collection<RelationMemberData> members = new ArrayList<>();
-        while (true) {
-            int event = parser.next();
-            if (event == XMLStreamConstants.START_ELEMENT) {
-                switch (parser.getLocalName()) {
-                case "member":
-                    members.add(parseRelationMember(r));
-                    break;
-                case "tag":
-                    parseTag(r);
-                    break;
-                default:
-                    parseUnknown();
-                }
-            } else if (event == XMLStreamConstants.END_ELEMENT) {
-                break;
+    /**
+     * Builds the primitive read by {@link #readPrimitive} and registers it in the maps of the reader.
+     * Called by the building stage, so it must not access the parser.
+     */
+    private OsmPrimitive buildPrimitive(PrimitiveRecord record) throws XMLStreamException {
+        PrimitiveData data;
+        switch (record.type) {
+        case NODE:
+            NodeData nd = new NodeData();
+            if (record.lat != null && record.lon != null) {
+                nd.setCoor(new LatLon(Double.parseDouble(record.lat), Double.parseDouble(record.lon)));
+            }
+            data = nd;
+            break;
+        case WAY:
+            data = new WayData();
+            break;
+        default:
+            data = new RelationData();
+        }
+        readCommon(data, record);
+        OsmPrimitive p;
+        switch (record.type) {
+        case NODE:
+            p = new Node(data.getId(), data.getVersion());
+            break;
+        case WAY:
+            p = new Way(data.getId(), data.getVersion());
+            break;
+        default:
+            p = new Relation(data.getId(), data.getVersion());
+        }
+        p.setVisible(data.isVisible());
+        p.load(data);
+        externalIdMap.put(data.getPrimitiveId(), p);
+        if (record.tagCount > 0) {
+            // set all tags at once, so that the complete tag set is interned only
+            Map<String, String> keys = new HashMap<>(record.tagCount);
+            for (int i = 0; i < record.tagCount; i += 2) {
+                if (Utils.strip(record.tags[i]).isEmpty())
+                    continue; // ignored by put() as well
+                keys.put(TagSetPool.internString(record.tags[i]), TagSetPool.internString(record.tags[i + 1]));
             }
+            p.setKeys(keys);
         }
-        if (r.isDeleted() && !members.isEmpty()) {
-            Main.info(tr("Deleted relation {0} contains members", r.getUniqueId()));
-            members = new ArrayList<>();
+        if (record.type == OsmPrimitiveType.WAY) {
+            buildWayNodes((Way) p, data.getUniqueId(), record);
+        } else if (record.type == OsmPrimitiveType.RELATION) {
+            buildRelationMembers((Relation) p, data.getUniqueId(), record);
         }
-        relations.put(rd.getUniqueId(), members);
-        return r;
+        return p;
     }
 
-    private RelationMemberData parseRelationMember(Relation r) throws XMLStreamException {
-        String role = null;
-        OsmPrimitiveType type = null;
-        long id = 0;
-        String value = parser.getAttributeValue(null, "ref");
-        if (value == null) {
-            throwException(tr("Missing attribute ''ref'' on member in relation {0}.",r.getUniqueId()));
-        }
-        try {
-            id = Long.parseLong(value);
-        } catch(NumberFormatException e) {
-            throwException(tr("Illegal value for attribute ''ref'' on member in relation {0}. Got {1}", Long.toString(r.getUniqueId()),value), e);
-        }
-        value = parser.getAttributeValue(null, "type");
-        if (value == null) {
-            throwException(tr("Missing attribute ''type'' on member {0} in relation {1}.", Long.toString(id), Long.toString(r.getUniqueId())));
+    private void buildWayNodes(Way w, long externalId, PrimitiveRecord record) throws XMLStreamException {
+        long[] nodeIds = new long[record.childCount];
+        for (int i = 0; i < nodeIds.length; i++) {
+            nodeIds[i] = getLong(record, "ref", record.children[i]);
+            if (nodeIds[i] == 0)
+                throw record.error(tr("Illegal value of attribute ''ref'' of element <nd>. Got {0}.", nodeIds[i]));
         }
-        try {
-            type = OsmPrimitiveType.fromApiTypeName(value);
-        } catch(IllegalArgumentException e) {
-            throwException(tr("Illegal value for attribute ''type'' on member {0} in relation {1}. Got {2}.", Long.toString(id), Long.toString(r.getUniqueId()), value), e);
+        if (w.isDeleted() && nodeIds.length > 0) {
+            Main.info(tr("Deleted way {0} contains nodes", w.getUniqueId()));
+            nodeIds = new long[0];
         }
-        value = parser.getAttributeValue(null, "role");
-        role = value;
+        ways.put(externalId, nodeIds);
+    }
 
-        if (id == 0) {
-            throwException(tr("Incomplete <member> specification with ref=0"));
+    private void buildRelationMembers(Relation r, long externalId, PrimitiveRecord record) throws XMLStreamException {
+        Collection<RelationMemberData> members = new ArrayList<>(record.childCount / 3);
+        for (int i = 0; i < record.childCount; i += 3) {
+            String value = record.children[i + 1];
+            long id = 0;
+            try {
+                id = Long.parseLong(value);
+            } catch(NumberFormatException e) {
+                throw record.error(tr("Illegal value for attribute ''ref'' on member in relation {0}. Got {1}", Long.toString(r.getUniqueId()),value), e);
+            }
+            value = record.children[i];
+            OsmPrimitiveType type = null;
+            try {
+                type = OsmPrimitiveType.fromApiTypeName(value);
+            } catch(IllegalArgumentException e) {
+                throw record.error(tr("Illegal value for attribute ''type'' on member {0} in relation {1}. Got {2}.", Long.toString(id), Long.toString(r.getUniqueId()), value), e);
+            }
+            if (id == 0)
+                throw record.error(tr("Incomplete <member> specification with ref=0"));
+            members.add(new RelationMemberData(record.children[i + 2], type, id));
         }
-        jumpToEnd();
-        return new RelationMemberData(role, type, id);
+        if (r.isDeleted() && !members.isEmpty()) {
+            Main.info(tr("Deleted relation {0} contains members", r.getUniqueId()));
+            members = new ArrayList<>();
+        }
+        relations.put(externalId, members);
     }
 
     private void parseChangeset(Long uploadChangesetId) throws XMLStreamException {
@@ -367,7 +443,7 @@ public class OsmReader extends AbstractReader {
         if (key == null || value == null) {
             throwException(tr("Missing key or value attribute in tag."));
         }
-        t.put(key.intern(), value.intern());
+        t.put(TagSetPool.internString(key), TagSetPool.internString(value));
         jumpToEnd();
     }
 
@@ -409,7 +485,7 @@ public class OsmReader extends AbstractReader {
         jumpToEnd(true);
     }
 
-    private User createUser(String uid, String name) throws XMLStreamException {
+    private static User createUser(PrimitiveRecord record, String uid, String name) throws XMLStreamException {
         if (uid == null) {
             if (name == null)
                 return null;
@@ -419,47 +495,44 @@ public class OsmReader extends AbstractReader {
             long id = Long.parseLong(uid);
             return User.createOsmUser(id, name);
         } catch(NumberFormatException e) {
-            throwException(MessageFormat.format("Illegal value for attribute ''uid''. Got ''{0}''.", uid), e);
+            throw record.error(MessageFormat.format("Illegal value for attribute ''uid''. Got ''{0}''.", uid), e);
         }
-        return null;
     }
 
     /**
-     * Read out the common attributes and put them into current OsmPrimitive.
+     * Read out the common attributes of a record and put them into current OsmPrimitive.
      */
-    private void readCommon(PrimitiveData current) throws XMLStreamException {
-        current.setId(getLong("id"));
+    private void readCommon(PrimitiveData current, PrimitiveRecord record) throws XMLStreamException {
+        current.setId(getLong(record, "id", record.id));
         if (current.getUniqueId() == 0) {
-            throwException(tr("Illegal object with ID=0."));
+            throw record.error(tr("Illegal object with ID=0."));
         }
 
-        String time = parser.getAttributeValue(null, "timestamp");
+        String time = record.timestamp;
         if (time != null && time.length() != 0) {
             current.setTimestamp(DateUtils.fromString(time));
         }
 
-        String user = parser.getAttributeValue(null, "user");
-        String uid = parser.getAttributeValue(null, "uid");
-        current.setUser(createUser(uid, user));
+        current.setUser(createUser(record, record.uid, record.user));
 
-        String visible = parser.getAttributeValue(null, "visible");
+        String visible = record.visible;
         if (visible != null) {
             current.setVisible(Boolean.parseBoolean(visible));
         }
 
-        String versionString = parser.getAttributeValue(null, "version");
+        String versionString = record.version;
         int version = 0;
         if (versionString != null) {
             try {
                 version = Integer.parseInt(versionString);
             } catch(NumberFormatException e) {
-                throwException(tr("Illegal value for attribute ''version'' on OSM primitive with ID {0}. Got {1}.",
+                throw record.error(tr("Illegal value for attribute ''version'' on OSM primitive with ID {0}. Got {1}.",
                         Long.toString(current.getUniqueId()), versionString), e);
             }
             switch (ds.getVersion()) {
             case "0.6":
                 if (version <= 0 && !current.isNew()) {
-                    throwException(tr("Illegal value for attribute ''version'' on OSM primitive with ID {0}. Got {1}.",
+                    throw record.error(tr("Illegal value for attribute ''version'' on OSM primitive with ID {0}. Got {1}.",
                             Long.toString(current.getUniqueId()), versionString));
                 } else if (version < 0 && current.isNew()) {
                     Main.warn(tr("Normalizing value of attribute ''version'' of element {0} to {2}, API version is ''{3}''. Got {1}.",
@@ -469,17 +542,17 @@ public class OsmReader extends AbstractReader {
                 break;
             default:
                 // should not happen. API version has been checked before
-                throwException(tr("Unknown or unsupported API version. Got {0}.", ds.getVersion()));
+                throw record.error(tr("Unknown or unsupported API version. Got {0}.", ds.getVersion()));
             }
         } else {
             // version expected for OSM primitives with an id assigned by the server (id > 0), since API 0.6
             if (!current.isNew() && ds.getVersion() != null && "0.6".equals(ds.getVersion())) {
-                throwException(tr("Missing attribute ''version'' on OSM primitive with ID {0}.", Long.toString(current.getUniqueId())));
+                throw record.error(tr("Missing attribute ''version'' on OSM primitive with ID {0}.", Long.toString(current.getUniqueId())));
             }
         }
         current.setVersion(version);
 
-        String action = parser.getAttributeValue(null, "action");
+        String action = record.action;
         if (action == null) {
             // do nothing
         } else if ("delete".equals(action)) {
@@ -489,7 +562,7 @@ public class OsmReader extends AbstractReader {
             current.setModified(true);
         }
 
-        String v = parser.getAttributeValue(null, "changeset");
+        String v = record.changeset;
         if (v == null) {
             current.setChangesetId(0);
         } else {
@@ -503,7 +576,7 @@ public class OsmReader extends AbstractReader {
                     current.setChangesetId(0);
                 } else {
                     // for an existing primitive this is a problem
-                    throwException(tr("Illegal value for attribute ''changeset''. Got {0}.", v), e);
+                    throw record.error(tr("Illegal value for attribute ''changeset''. Got {0}.", v), e);
                 }
             } catch (IllegalStateException e) {
                 // thrown for positive changeset id on new primitives
@@ -517,7 +590,7 @@ public class OsmReader extends AbstractReader {
                     current.setChangesetId(0);
                 } else {
                     // for an existing primitive this is a problem
-                    throwException(tr("Illegal value for attribute ''changeset''. Got {0}.", v));
+                    throw record.error(tr("Illegal value for attribute ''changeset''. Got {0}.", v));
                 }
             }
         }
@@ -536,6 +609,17 @@ public class OsmReader extends AbstractReader {
         return 0; // should not happen
     }
 
+
+    private static long getLong(PrimitiveRecord record, String name, String value) throws XMLStreamException {
+        if (value == null)
+            throw record.error(tr("Missing required attribute ''{0}''.",name));
+        try {
+            return Long.parseLong(value);
+        } catch(NumberFormatException e) {
+            throw record.error(tr("Illegal long value for attribute ''{0}''. Got ''{1}''.",name, value), e);
+        }
+    }
+
     private static class OsmParsingException extends XMLStreamException {
 
         public OsmParsingException(String msg, Location location) {
@@ -579,6 +663,175 @@ public class OsmReader extends AbstractReader {
         }
     }
 
+    /**
+     * The attributes, tags, way nodes and relation members of a node, way or relation as read from the XML stream.
+     * The strings are converted by {@link OsmReader#buildPrimitive}, which may run in another thread than the parser.
+     */
+    private static final class PrimitiveRecord {
+        private static final String[] EMPTY = new String[0];
+
+        final OsmPrimitiveType type;
+        final Location location;
+        final String id;
+        final String timestamp;
+        final String user;
+        final String uid;
+        final String visible;
+        final String version;
+        final String action;
+        final String changeset;
+        final String lat;
+        final String lon;
+        /** the keys and values of the tags, alternating */
+        String[] tags = EMPTY;
+        int tagCount;
+        /** the ref of each way node, or the type, ref and role of each relation member */
+        String[] children = EMPTY;
+        int childCount;
+
+        PrimitiveRecord(OsmPrimitiveType type, XMLStreamReader parser) {
+            this.type = type;
+            this.location = parser.getLocation();
+            id = parser.getAttributeValue(null, "id");
+            timestamp = parser.getAttributeValue(null, "timestamp");
+            user = parser.getAttributeValue(null, "user");
+            uid = parser.getAttributeValue(null, "uid");
+            visible = parser.getAttributeValue(null, "visible");
+            version = parser.getAttributeValue(null, "version");
+            action = parser.getAttributeValue(null, "action");
+            changeset = parser.getAttributeValue(null, "changeset");
+            if (type == OsmPrimitiveType.NODE) {
+                lat = parser.getAttributeValue(null, "lat");
+                lon = parser.getAttributeValue(null, "lon");
+            } else {
+                lat = null;
+                lon = null;
+            }
+        }
+
+        void addTag(String key, String value) {
+            if (tagCount + 2 > tags.length) {
+                tags = Arrays.copyOf(tags, Math.max(8, tags.length * 2));
+            }
+            tags[tagCount++] = key;
+            tags[tagCount++] = value;
+        }
+
+        void addChild(String value) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(16, children.length * 2));
+            }
+            children[childCount++] = value;
+        }
+
+        OsmParsingException error(String msg) {
+            return new OsmParsingException(msg, location);
+        }
+
+        OsmParsingException error(String msg, Throwable th) {
+            return new OsmParsingException(msg, location, th);
+        }
+    }
+
+    /**
+     * The stage which builds the primitives read by the parser in a thread of its own.
+     * Records are handed over in batches through a bounded queue, so that the parser
+     * runs at most {@link #QUEUE_CAPACITY} batches ahead.
+     */
+    private final class PrimitiveBuilder implements Callable<Void> {
+        private final BlockingQueue<List<PrimitiveRecord>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Future<Void> future;
+        private List<PrimitiveRecord> batch = new ArrayList<>(BATCH_SIZE);
+
+        PrimitiveBuilder() {
+            future = PIPELINE.submit(this);
+        }
+
+        @Override
+        public Void call() throws XMLStreamException, InterruptedException {
+            while (true) {
+                List<PrimitiveRecord> records = queue.take();
+                if (records.isEmpty())
+                    return null;
+                for (PrimitiveRecord record : records) {
+                    buildPrimitive(record);
+                }
+            }
+        }
+
+        void add(PrimitiveRecord record) throws XMLStreamException {
+            batch.add(record);
+            if (batch.size() == BATCH_SIZE) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        /**
+         * Hands over the remaining records and waits until all primitives are built.
+         */
+        void finish() throws XMLStreamException {
+            if (!batch.isEmpty()) {
+                put(batch);
+            }
+            put(Collections.<PrimitiveRecord>emptyList());
+            waitFor();
+        }
+
+        void cancel() {
+            future.cancel(true);
+        }
+
+        private void put(List<PrimitiveRecord> records) throws XMLStreamException {
+            try {
+                while (!queue.offer(records, 100, TimeUnit.MILLISECONDS)) {
+                    if (future.isDone()) {
+                        // the builder failed, it won't take any more records
+                        waitFor();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XMLStreamException(e);
+            }
+        }
+
+        private void waitFor() throws XMLStreamException {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XMLStreamException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof XMLStreamException)
+                    throw (XMLStreamException) cause;
+                else if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                else if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new XMLStreamException(cause);
+            }
+        }
+    }
+
+    /**
+     * Determines if reading runs in stages of their own: decompressing the input, parsing the XML stream,
+     * building the primitives and finally wiring their references with {@link #prepareDataSet()}.
+     * Readers which override {@link #parseNode}, {@link #parseWay} or {@link #parseRelation} are not pipelined,
+     * as the building stage does not call them.
+     */
+    private boolean isPipelined() {
+        for (Class<?> c = getClass(); c != OsmReader.class; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getParameterTypes().length == 0 && PARSE_METHODS.contains(m.getName()))
+                    return false;
+            }
+        }
+        boolean def = Runtime.getRuntime().availableProcessors() > 1;
+        return Main.pref == null ? def : Main.pref.getBoolean("osm.reader.pipelined", def);
+    }
+
     protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
         if (progressMonitor == null) {
             progressMonitor = NullProgressMonitor.INSTANCE;
@@ -594,10 +847,24 @@ public class OsmReader extends AbstractReader {
             progressMonitor.beginTask(tr("Prepare OSM data...", 2));
             progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
 
-            try (InputStreamReader ir = UTFInputStreamReader.create(source)) {
+            boolean pipelined = isPipelined();
+            // decompression happens in the thread reading the source
+            InputStream in = pipelined ? new ReadAheadInputStream(source, PIPELINE) : source;
+            try (InputStreamReader ir = UTFInputStreamReader.create(in)) {
                 XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(ir);
                 setParser(parser);
+                if (pipelined) {
+                    builder = new PrimitiveBuilder();
+                }
                 parse();
+                if (builder != null) {
+                    builder.finish();
+                }
+            } finally {
+                if (builder != null) {
+                    builder.cancel();
+                    builder = null;
+                }
             }
             progressMonitor.worked(1);
 
@@ -0,0 +1,146 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes of a dataset since a snapshot, see {@link OsmSnapshotWriter#writeChanges}.
+ *
+ * The journal starts with the magic {@link #MAGIC} and a format version. Each entry is preceded by its length and
+ * its CRC32 checksum, and forced to the disk when it is appended. If the program ends while an entry is written,
+ * the entries before it can still be read, see {@link #read()}.
+ */
+public class OsmSnapshotJournal {
+
+    /** The magic at the start of a journal */
+    static final byte[] MAGIC = "JOSMJRNL".getBytes(StandardCharsets.US_ASCII);
+    /** The version of the format */
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8 + 4;
+    private static final int ENTRY_HEADER_SIZE = 4 + 4;
+
+    private final File file;
+    private int entryCount;
+
+    /**
+     * Constructs a new {@code OsmSnapshotJournal}.
+     * @param file the file of the journal, which does not need to exist
+     */
+    public OsmSnapshotJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replies the file of the journal.
+     * @return the file of the journal
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Replies the number of entries appended by this instance.
+     * @return the number of entries appended by this instance
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Replies the size of the journal.
+     * @return the size of the journal file in bytes, 0 if it does not exist
+     */
+    public long size() {
+        return file.length();
+    }
+
+    /**
+     * Appends an entry to the journal, which is created if it does not exist. If appending fails, the journal
+     * should not be used any further, as the entries appended after a damaged one are not read.
+     * @param entry the entry, e.g. written by {@link OsmSnapshotWriter#writeChanges}
+     * @throws IOException if an I/O error occurs
+     */
+    public void append(byte[] entry) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(entry);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            ByteBuffer header;
+            if (position < HEADER_SIZE) {
+                position = 0;
+                header = ByteBuffer.allocate(HEADER_SIZE + ENTRY_HEADER_SIZE);
+                header.put(MAGIC).putInt(VERSION);
+            } else {
+                header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+            }
+            header.putInt(entry.length).putInt((int) crc.getValue());
+            header.flip();
+            channel.position(position);
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(entry));
+            channel.force(false);
+        }
+        entryCount++;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the entries of the journal. Reading stops at the first entry which is incomplete or damaged, as left
+     * behind if the program ended while it was appended.
+     * @return the entries in the order they were appended, empty if the journal does not exist
+     * @throws IOException if an I/O error occurs, or if the journal has been written in another format
+     */
+    public List<ByteBuffer> read() throws IOException {
+        List<ByteBuffer> result = new ArrayList<>();
+        if (!file.exists())
+            return result;
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_SIZE)
+            return result;
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic) || buffer.getInt() != VERSION)
+            throw new IOException("Journal "+file+" has an unknown format");
+        while (buffer.remaining() >= ENTRY_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                break;
+            byte[] entry = new byte[length];
+            buffer.get(entry);
+            CRC32 crc = new CRC32();
+            crc.update(entry);
+            if ((int) crc.getValue() != checksum)
+                break;
+            result.add(ByteBuffer.wrap(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the journal.
+     * @return {@code true} if the journal has been deleted or did not exist
+     */
+    public boolean delete() {
+        entryCount = 0;
+        return !file.exists() || file.delete();
+    }
+}
@@ -0,0 +1,638 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.conflict.Conflict;
+import org.openstreetmap.josm.data.conflict.ConflictCollection;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+/**
+ * Reads a binary snapshot of a data layer written by {@link OsmSnapshotWriter}.
+ *
+ * The snapshot is read from a {@link ByteBuffer}, usually a file mapped into memory by {@link #open(File)}, so the
+ * operating system pages it in while it is read and no copy of the file is made. The strings and tag sets are
+ * stored once in tables at the end of the snapshot. They are decoded on first use only, and shared by all
+ * primitives referring to them.
+ */
+public class OsmSnapshotReader {
+
+    private final ByteBuffer buffer;
+    private final DataSet ds = new DataSet();
+    private ConflictCollection conflicts = new ConflictCollection();
+
+    private int usersOffset, tagSetsOffset, stringsOffset;
+    private String[] strings;
+    private Map<String, String>[] tagSets;
+    private User[] users;
+
+    private Node[] nodes;
+    private Way[] ways;
+    private Relation[] relations;
+    /** the ids of the primitives in the snapshot, which differ from the ids of the read primitives if these are new */
+    private long[] nodeIds, wayIds, relationIds;
+    /** the new primitives created by changes, by the id they had when the change was written */
+    private final Map<PrimitiveId, OsmPrimitive> created = new HashMap<>();
+
+    /**
+     * Constructs a new {@code OsmSnapshotReader}.
+     * @param buffer the snapshot, from position 0 to its limit
+     */
+    public OsmSnapshotReader(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    /**
+     * Maps a snapshot file into memory.
+     * @param file the snapshot file
+     * @return a reader for the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static OsmSnapshotReader open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new OsmSnapshotReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Determines if a buffer starts like a snapshot.
+     * @param buffer the buffer
+     * @return {@code true} if the buffer starts with the magic of a snapshot
+     */
+    public static boolean isSnapshot(ByteBuffer buffer) {
+        if (buffer.limit() < OsmSnapshotWriter.MAGIC.length)
+            return false;
+        for (int i = 0; i < OsmSnapshotWriter.MAGIC.length; i++) {
+            if (buffer.get(i) != OsmSnapshotWriter.MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the snapshot.
+     * @param progressMonitor the progress monitor, may be {@code null}
+     * @return the dataset
+     * @throws IllegalDataException if the buffer is not a valid snapshot
+     */
+    public DataSet parse(ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        progressMonitor.beginTask(tr("Reading snapshot..."));
+        try {
+            return doParse();
+        } catch (RuntimeException e) {
+            // the buffer ends early or an index is out of range
+            throw new IllegalDataException(tr("The snapshot is damaged."), e);
+        } finally {
+            progressMonitor.finishTask();
+        }
+    }
+
+    /**
+     * Replies the conflicts read by {@link #parse(ProgressMonitor)} or the last change applied.
+     * @return the conflicts, whose primitives on my side are part of the dataset
+     */
+    public ConflictCollection getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Applies changes written by {@link OsmSnapshotWriter#writeChanges} after the snapshot, e.g. read from a
+     * {@link OsmSnapshotJournal journal}, to the dataset read by {@link #parse(ProgressMonitor)}.
+     * @param changes the changes, from position 0 to its limit
+     * @throws IllegalDataException if the buffer does not contain valid changes
+     */
+    public void applyChanges(ByteBuffer changes) throws IllegalDataException {
+        try {
+            new OsmSnapshotReader(changes).readChanges(this);
+        } catch (RuntimeException e) {
+            throw new IllegalDataException(tr("The changes are damaged."), e);
+        }
+    }
+
+    /**
+     * Reads the offsets of the sections following the primitives.
+     * @return the offsets of the conflicts, data sources and dataset properties
+     */
+    @SuppressWarnings("unchecked")
+    private int[] readOffsets() {
+        int[] offsets = {buffer.getInt(), buffer.getInt(), buffer.getInt()};
+        usersOffset = buffer.getInt();
+        tagSetsOffset = buffer.getInt();
+        stringsOffset = buffer.getInt();
+        strings = new String[buffer.getInt(stringsOffset)];
+        tagSets = new Map[buffer.getInt(tagSetsOffset)];
+        users = new User[buffer.getInt(usersOffset)];
+        return offsets;
+    }
+
+    /**
+     * Reads the conflicts, data sources and dataset properties, see {@link #readOffsets()}.
+     * @param base the reader of the snapshot, to which the sections are applied
+     * @param offsets the offsets of the sections
+     */
+    private void readSections(OsmSnapshotReader base, int[] offsets) {
+        buffer.position(offsets[0]);
+        base.conflicts = readConflicts(base);
+        buffer.position(offsets[1]);
+        base.ds.dataSources.clear();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            Bounds bounds = new Bounds(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            base.ds.dataSources.add(new DataSource(bounds, getString(buffer.getInt())));
+        }
+        buffer.position(offsets[2]);
+        base.ds.setVersion(getString(buffer.getInt()));
+        base.ds.setUploadDiscouraged(buffer.get() != 0);
+        base.ds.getChangeSetTags().clear();
+        Map<String, String> changesetTags = getTagSet(buffer.getInt());
+        if (changesetTags != null) {
+            for (Map.Entry<String, String> e : changesetTags.entrySet()) {
+                base.ds.addChangeSetTag(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private DataSet doParse() throws IllegalDataException {
+        int trailer = buffer.limit() - OsmSnapshotWriter.TRAILER_SIZE;
+        if (!isSnapshot(buffer) || trailer < OsmSnapshotWriter.MAGIC.length + 4)
+            throw new IllegalDataException(tr("The file is no snapshot."));
+        int version = buffer.getInt(OsmSnapshotWriter.MAGIC.length);
+        if (version != OsmSnapshotWriter.VERSION)
+            throw new IllegalDataException(tr("Version {0} of the snapshot is not supported.", version));
+        for (int i = 0; i < OsmSnapshotWriter.MAGIC.length; i++) {
+            if (buffer.get(buffer.limit() - OsmSnapshotWriter.MAGIC.length + i) != OsmSnapshotWriter.MAGIC[i])
+                throw new IllegalDataException(tr("The snapshot is incomplete."));
+        }
+
+        buffer.position(trailer);
+        nodes = new Node[buffer.getInt()];
+        ways = new Way[buffer.getInt()];
+        relations = new Relation[buffer.getInt()];
+        int[] offsets = readOffsets();
+        nodeIds = new long[nodes.length];
+        wayIds = new long[ways.length];
+        relationIds = new long[relations.length];
+
+        buffer.position(OsmSnapshotWriter.MAGIC.length + 4);
+        List<int[]> wayNodes = new ArrayList<>(ways.length);
+        List<int[]> relationMembers = new ArrayList<>(relations.length);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (Node) readPrimitive(0, nodeIds, i);
+        }
+        for (int i = 0; i < ways.length; i++) {
+            ways[i] = (Way) readPrimitive(1, wayIds, i);
+            wayNodes.add(readWayNodes(ways[i]));
+        }
+        for (int i = 0; i < relations.length; i++) {
+            relations[i] = (Relation) readPrimitive(2, relationIds, i);
+            relationMembers.add(readRelationMembers(relations[i]));
+        }
+
+        // like the other readers, add the primitives bottom up and leave out deleted nodes and members
+        ds.addPrimitives(Arrays.asList(nodes));
+        List<List<Node>> nodeLists = new ArrayList<>(ways.length);
+        for (int i = 0; i < ways.length; i++) {
+            int[] indexes = wayNodes.get(i);
+            List<Node> list = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                if (!nodes[index].isDeleted()) {
+                    list.add(nodes[index]);
+                }
+            }
+            nodeLists.add(list);
+        }
+        Way.setNodes(Arrays.asList(ways), nodeLists);
+        ds.addPrimitives(Arrays.asList(ways));
+        ds.addPrimitives(Arrays.asList(relations));
+        for (int i = 0; i < relations.length; i++) {
+            int[] members = relationMembers.get(i);
+            List<RelationMember> list = new ArrayList<>(members.length / 3);
+            for (int j = 0; j < members.length; j += 3) {
+                OsmPrimitive member = getPrimitive(members[j], members[j + 1]);
+                if (!member.isDeleted()) {
+                    list.add(new RelationMember(getString(members[j + 2]), member));
+                }
+            }
+            relations[i].setMembers(list);
+        }
+
+        readSections(this, offsets);
+        return ds;
+    }
+
+    /**
+     * Reads changes and applies them to the dataset of the snapshot.
+     * @param base the reader of the snapshot
+     */
+    private void readChanges(OsmSnapshotReader base) {
+        buffer.position(buffer.limit() - OsmSnapshotWriter.CHANGE_TRAILER_SIZE);
+        int[] offsets = readOffsets();
+        buffer.position(0);
+        List<PrimitiveData> changed = new ArrayList<>();
+        List<OsmPrimitive> removed = new ArrayList<>();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            int code = buffer.get();
+            if ((code & OsmSnapshotWriter.CHANGE_REMOVED) != 0) {
+                OsmPrimitive osm = base.lookup(code & ~OsmSnapshotWriter.CHANGE_REMOVED, buffer.getLong());
+                if (osm != null) {
+                    removed.add(osm);
+                }
+            } else {
+                changed.add(readPrimitiveData(code));
+            }
+        }
+
+        // create the primitives added since, so that all references can be resolved
+        for (PrimitiveData data : changed) {
+            int typeCode = OsmSnapshotWriter.getTypeCode(data.getType());
+            if (base.lookup(typeCode, data.getUniqueId()) == null) {
+                base.create(typeCode, data);
+            }
+        }
+        // update the primitives bottom up, and remove them top down
+        for (OsmPrimitiveType type : new OsmPrimitiveType[] {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION}) {
+            for (PrimitiveData data : changed) {
+                if (data.getType() == type) {
+                    base.update(data);
+                }
+            }
+        }
+        for (OsmPrimitiveType type : new OsmPrimitiveType[] {OsmPrimitiveType.RELATION, OsmPrimitiveType.WAY, OsmPrimitiveType.NODE}) {
+            for (OsmPrimitive osm : removed) {
+                if (osm.getType() == type) {
+                    base.ds.removePrimitive(osm.getPrimitiveId());
+                }
+            }
+        }
+        readSections(base, offsets);
+    }
+
+    /**
+     * Reads a primitive of a change, whose references are ids.
+     */
+    private PrimitiveData readPrimitiveData(int typeCode) {
+        PrimitiveData data;
+        switch (typeCode) {
+        case 0: data = new NodeData(); break;
+        case 1: data = new WayData(); break;
+        default: data = new RelationData();
+        }
+        int flags = buffer.get();
+        data.setId(buffer.getLong());
+        if ((flags & OsmSnapshotWriter.FLAG_INCOMPLETE) != 0) {
+            data.setIncomplete(true);
+            return data;
+        }
+        data.setVersion(buffer.getInt());
+        data.setTimestamp(new Date(buffer.getInt() * 1000L));
+        data.setChangesetId(buffer.getInt());
+        data.setUser(getUser(buffer.getInt()));
+        Map<String, String> keys = getTagSet(buffer.getInt());
+        if (keys != null) {
+            data.setKeys(keys);
+        }
+        data.setVisible((flags & OsmSnapshotWriter.FLAG_INVISIBLE) == 0);
+        data.setDeleted((flags & OsmSnapshotWriter.FLAG_DELETED) != 0);
+        data.setModified((flags & OsmSnapshotWriter.FLAG_MODIFIED) != 0);
+        if (data instanceof NodeData) {
+            double lat = buffer.getDouble();
+            double lon = buffer.getDouble();
+            ((NodeData) data).setCoor(Double.isNaN(lat) || Double.isNaN(lon) ? null : new LatLon(lat, lon));
+        } else if (data instanceof WayData) {
+            List<Long> wayNodes = ((WayData) data).getNodes();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                wayNodes.add(buffer.getLong());
+            }
+        } else {
+            List<RelationMemberData> members = ((RelationData) data).getMembers();
+            for (int i = buffer.getInt(); i > 0; i--) {
+                OsmPrimitiveType type = getType(buffer.get());
+                long id = buffer.getLong();
+                members.add(new RelationMemberData(getString(buffer.getInt()), type, id));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Creates a primitive added by a change, which is loaded by {@link #update(PrimitiveData)} afterwards.
+     */
+    private void create(int typeCode, PrimitiveData data) {
+        long id = data.getUniqueId();
+        OsmPrimitive osm;
+        if (id > 0) {
+            osm = createPrimitive(typeCode, id);
+        } else {
+            switch (typeCode) {
+            case 0:
+                // a complete node needs its coordinates to be added
+                osm = new Node();
+                osm.load(data);
+                break;
+            case 1: osm = new Way(); break;
+            default: osm = new Relation();
+            }
+            created.put(new SimplePrimitiveId(id, getType(typeCode)), osm);
+        }
+        ds.addPrimitive(osm);
+    }
+
+    /**
+     * Sets the state of a primitive to the state read from a change.
+     */
+    private void update(PrimitiveData data) {
+        OsmPrimitive osm = lookup(OsmSnapshotWriter.getTypeCode(data.getType()), data.getUniqueId());
+        // like when reading the snapshot, leave out deleted nodes and members
+        if (data instanceof WayData) {
+            List<Long> wayNodes = new ArrayList<>();
+            for (long id : ((WayData) data).getNodes()) {
+                OsmPrimitive n = lookup(0, id);
+                if (n != null && !n.isDeleted()) {
+                    wayNodes.add(n.getUniqueId());
+                }
+            }
+            ((WayData) data).setNodes(wayNodes);
+        } else if (data instanceof RelationData) {
+            List<RelationMemberData> members = new ArrayList<>();
+            for (RelationMemberData m : ((RelationData) data).getMembers()) {
+                OsmPrimitive member = lookup(OsmSnapshotWriter.getTypeCode(m.getMemberType()), m.getMemberId());
+                if (member != null && !member.isDeleted()) {
+                    members.add(new RelationMemberData(m.getRole(), member));
+                }
+            }
+            ((RelationData) data).setMembers(members);
+        }
+        osm.load(data);
+        if (!osm.isNew()) {
+            osm.setVisible(data.isVisible());
+        }
+    }
+
+    /**
+     * Finds a primitive of the dataset by the id it had when the snapshot or a change was written.
+     * @return the primitive, or {@code null} if it is not part of the dataset
+     */
+    private OsmPrimitive lookup(int typeCode, long id) {
+        OsmPrimitive osm;
+        if (id > 0) {
+            osm = ds.getPrimitiveById(id, getType(typeCode));
+        } else {
+            osm = created.get(new SimplePrimitiveId(id, getType(typeCode)));
+            if (osm == null) {
+                long[] ids;
+                switch (typeCode) {
+                case 0: ids = nodeIds; break;
+                case 1: ids = wayIds; break;
+                default: ids = relationIds;
+                }
+                int index = Arrays.binarySearch(ids, id);
+                osm = index >= 0 ? getPrimitive(typeCode, index) : null;
+            }
+        }
+        return osm != null && osm.getDataSet() == ds ? osm : null;
+    }
+
+    private static OsmPrimitiveType getType(int typeCode) {
+        switch (typeCode) {
+        case 0: return OsmPrimitiveType.NODE;
+        case 1: return OsmPrimitiveType.WAY;
+        case 2: return OsmPrimitiveType.RELATION;
+        default: throw new IllegalArgumentException("type " + typeCode);
+        }
+    }
+
+    /**
+     * Reads the attributes common to all primitives.
+     * @param typeCode the type of the primitive
+     * @param ids the ids of the primitives of the type read, to fill in, may be {@code null}
+     * @param index the index of the primitive
+     * @return the primitive
+     */
+    private OsmPrimitive readPrimitive(int typeCode, long[] ids, int index) {
+        int flags = buffer.get();
+        long id = buffer.getLong();
+        if (ids != null) {
+            ids[index] = id;
+        }
+        if ((flags & OsmSnapshotWriter.FLAG_INCOMPLETE) != 0)
+            return createPrimitive(typeCode, id);
+        int version = buffer.getInt();
+        OsmPrimitive osm;
+        if (id > 0) {
+            osm = createPrimitive(typeCode, id, version);
+        } else {
+            switch (typeCode) {
+            case 0: osm = new Node(); break;
+            case 1: osm = new Way(); break;
+            default: osm = new Relation();
+            }
+        }
+        int timestamp = buffer.getInt();
+        if (timestamp != 0) {
+            osm.setTimestamp(new Date(timestamp * 1000L));
+        }
+        osm.setChangesetId(buffer.getInt());
+        osm.setUser(getUser(buffer.getInt()));
+        Map<String, String> keys = getTagSet(buffer.getInt());
+        if (keys != null) {
+            osm.setKeys(keys);
+        }
+        if ((flags & OsmSnapshotWriter.FLAG_INVISIBLE) != 0) {
+            osm.setVisible(false);
+        }
+        osm.setDeleted((flags & OsmSnapshotWriter.FLAG_DELETED) != 0);
+        osm.setModified((flags & OsmSnapshotWriter.FLAG_MODIFIED) != 0);
+        if (osm instanceof Node) {
+            double lat = buffer.getDouble();
+            double lon = buffer.getDouble();
+            if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+                ((Node) osm).setCoor(new LatLon(lat, lon));
+            }
+        }
+        return osm;
+    }
+
+    private static OsmPrimitive createPrimitive(int typeCode, long id) {
+        switch (typeCode) {
+        case 0: return new Node(id);
+        case 1: return new Way(id);
+        default: return new Relation(id);
+        }
+    }
+
+    private static OsmPrimitive createPrimitive(int typeCode, long id, int version) {
+        switch (typeCode) {
+        case 0: return new Node(id, version);
+        case 1: return new Way(id, version);
+        default: return new Relation(id, version);
+        }
+    }
+
+    private int[] readWayNodes(Way w) {
+        if (w.isIncomplete())
+            return new int[0];
+        int[] indexes = new int[buffer.getInt()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = buffer.getInt();
+        }
+        return indexes;
+    }
+
+    /**
+     * Reads the members of a relation as triples of type code, index and role.
+     */
+    private int[] readRelationMembers(Relation r) {
+        if (r.isIncomplete())
+            return new int[0];
+        int[] members = new int[3 * buffer.getInt()];
+        for (int i = 0; i < members.length; i += 3) {
+            members[i] = buffer.get();
+            members[i + 1] = buffer.getInt();
+            members[i + 2] = buffer.getInt();
+        }
+        return members;
+    }
+
+    private OsmPrimitive getPrimitive(int typeCode, int index) {
+        switch (typeCode) {
+        case 0: return nodes[index];
+        case 1: return ways[index];
+        case 2: return relations[index];
+        default: throw new IllegalArgumentException("type " + typeCode);
+        }
+    }
+
+    /**
+     * Finds a primitive referred to by the other side of a conflict.
+     * @return the primitive with the given id in the dataset, a new incomplete primitive, or {@code null} if
+     * a new primitive is not found
+     */
+    private OsmPrimitive getPrimitiveById(int typeCode, long id) {
+        OsmPrimitive osm = lookup(typeCode, id);
+        if (osm != null)
+            return osm;
+        return id > 0 ? createPrimitive(typeCode, id) : null;
+    }
+
+    /**
+     * Reads the conflicts, of the snapshot or of a change.
+     * @param base the reader of the snapshot, which resolves the references
+     */
+    private ConflictCollection readConflicts(OsmSnapshotReader base) {
+        ConflictCollection result = new ConflictCollection();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            int typeCode = buffer.get();
+            OsmPrimitive my = base == this ? getPrimitive(typeCode, buffer.getInt()) : base.lookup(typeCode, buffer.getLong());
+            boolean isMyDeleted = buffer.get() != 0;
+            OsmPrimitive their = readPrimitive(typeCode, null, 0);
+            if (their instanceof Way && !their.isIncomplete()) {
+                List<Node> list = new ArrayList<>();
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    Node n = (Node) base.getPrimitiveById(0, buffer.getLong());
+                    if (n != null) {
+                        list.add(n);
+                    }
+                }
+                ((Way) their).setNodes(list);
+            } else if (their instanceof Relation && !their.isIncomplete()) {
+                List<RelationMember> list = new ArrayList<>();
+                for (int j = buffer.getInt(); j > 0; j--) {
+                    OsmPrimitive member = base.getPrimitiveById(buffer.get(), buffer.getLong());
+                    String role = getString(buffer.getInt());
+                    if (member != null) {
+                        list.add(new RelationMember(role, member));
+                    }
+                }
+                ((Relation) their).setMembers(list);
+            }
+            if (my != null) {
+                result.add(new Conflict<>(my, their, isMyDeleted));
+            }
+        }
+        return result;
+    }
+
+    private String getString(int index) {
+        if (index < 0)
+            return null;
+        String s = strings[index];
+        if (s == null) {
+            int table = stringsOffset + 4;
+            int start = buffer.getInt(table + 4 * index);
+            int end = buffer.getInt(table + 4 * index + 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer data = buffer.duplicate();
+            data.position(table + 4 * (strings.length + 1) + start);
+            data.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    private Map<String, String> getTagSet(int index) {
+        if (index < 0)
+            return null;
+        Map<String, String> tagSet = tagSets[index];
+        if (tagSet == null) {
+            int table = tagSetsOffset + 4;
+            int start = buffer.getInt(table + 4 * index);
+            int end = buffer.getInt(table + 4 * index + 4);
+            int data = table + 4 * (tagSets.length + 1);
+            tagSet = new HashMap<>();
+            for (int i = start; i < end; i += 2) {
+                tagSet.put(getString(buffer.getInt(data + 4 * i)), getString(buffer.getInt(data + 4 * i + 4)));
+            }
+            tagSets[index] = tagSet;
+        }
+        return tagSet;
+    }
+
+    private User getUser(int index) {
+        if (index < 0)
+            return null;
+        User user = users[index];
+        if (user == null) {
+            int entry = usersOffset + 4 + 13 * index;
+            long id = buffer.getLong(entry);
+            String name = getString(buffer.getInt(entry + 8));
+            user = buffer.get(entry + 12) != 0 ? User.createOsmUser(id, name) : User.createLocalUser(name);
+            users[index] = user;
+        }
+        return user;
+    }
+}
@@ -0,0 +1,424 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.conflict.Conflict;
+import org.openstreetmap.josm.data.conflict.ConflictCollection;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.AbstractPrimitive;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.KeyValueVisitor;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Writes the contents of a data layer to a binary snapshot, see {@link OsmSnapshotReader}.
+ *
+ * Unlike the OSM formats, a snapshot keeps everything JOSM knows about the primitives: the modified and deleted
+ * state, incomplete primitives and the conflicts of the layer. It is meant to be read again by the same
+ * program, not to be exchanged.
+ *
+ * A snapshot consists of
+ * <ul>
+ * <li>a header: the magic {@link #MAGIC} followed by the format {@link #VERSION},</li>
+ * <li>the nodes, ways and relations, each sorted by id, which refer to each other by their index in this order,</li>
+ * <li>the conflicts, the data sources and the dataset properties,</li>
+ * <li>the tables of users, tag sets and strings the sections above refer to by index,</li>
+ * <li>a trailer of fixed size with the offsets of the sections, the primitive counts and the magic again.</li>
+ * </ul>
+ * All numbers are big-endian. The file may not exceed 2 GiB, so that all offsets fit into an {@code int}.
+ *
+ * Besides, the changes of a dataset since a snapshot can be written, see {@link #writeChanges}, e.g. to a
+ * {@link OsmSnapshotJournal journal}.
+ */
+public class OsmSnapshotWriter implements Closeable {
+
+    /** The magic at the start and the end of a snapshot */
+    static final byte[] MAGIC = "JOSMSNAP".getBytes(StandardCharsets.US_ASCII);
+    /** The version of the format */
+    static final int VERSION = 1;
+    /** The size of the trailer in bytes */
+    static final int TRAILER_SIZE = 9 * 4 + 8;
+    /** The size of the trailer of a change in bytes */
+    static final int CHANGE_TRAILER_SIZE = 6 * 4;
+    /** Marks a primitive of a change as removed from the dataset, in addition to its type code */
+    static final int CHANGE_REMOVED = 4;
+
+    static final int FLAG_MODIFIED = 1;
+    static final int FLAG_DELETED = 2;
+    static final int FLAG_INVISIBLE = 4;
+    static final int FLAG_INCOMPLETE = 8;
+
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private final Map<List<String>, Integer> tagSets = new HashMap<>();
+    private final List<List<String>> tagSetTable = new ArrayList<>();
+    private final Map<User, Integer> users = new HashMap<>();
+    private final List<User> userTable = new ArrayList<>();
+
+    /** the key/value pairs of the primitive written last, reused for the lookup of its tag set */
+    private final List<String> tags = new ArrayList<>();
+    private final KeyValueVisitor tagCollector = new KeyValueVisitor() {
+        @Override
+        public void visitKeyValue(AbstractPrimitive primitive, String key, String value) {
+            tags.add(key);
+            tags.add(value);
+        }
+    };
+
+    /** the ids of the written nodes, ways and relations, in the order they are written */
+    private long[] nodeIds, wayIds, relationIds;
+
+    /**
+     * Constructs a new {@code OsmSnapshotWriter}.
+     * @param out the stream to write to
+     */
+    public OsmSnapshotWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    }
+
+    /**
+     * Writes a snapshot of a dataset. The caller has to hold the read lock of the dataset.
+     * @param ds the dataset
+     * @param conflicts the conflicts of the dataset, may be {@code null}
+     * @throws IOException if an I/O error occurs or the snapshot gets too large
+     */
+    public void write(DataSet ds, ConflictCollection conflicts) throws IOException {
+        List<Node> nodes = sortById(ds.getNodes());
+        List<Way> ways = sortById(ds.getWays());
+        List<Relation> relations = sortById(ds.getRelations());
+        nodeIds = getIds(nodes);
+        wayIds = getIds(ways);
+        relationIds = getIds(relations);
+
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        for (Node n : nodes) {
+            writePrimitive(n, false);
+        }
+        for (Way w : ways) {
+            writePrimitive(w, false);
+        }
+        for (Relation r : relations) {
+            writePrimitive(r, false);
+        }
+
+        int[] offsets = writeSections(ds, conflicts, false);
+        out.writeInt(nodes.size());
+        out.writeInt(ways.size());
+        out.writeInt(relations.size());
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        out.write(MAGIC);
+        if (out.size() == Integer.MAX_VALUE)
+            throw new IOException(tr("The data is too large for a snapshot."));
+        out.flush();
+    }
+
+    /**
+     * Writes the current state of some primitives of a dataset, as a change to a snapshot of the dataset written
+     * before, see {@link OsmSnapshotReader#applyChanges(java.nio.ByteBuffer)}. Primitives which are no longer part of the
+     * dataset are written as removed. The conflicts, data sources and dataset properties are written as a whole.
+     *
+     * A change consists of the primitives, the same sections as a snapshot, and a trailer with their offsets.
+     * The primitives refer to each other by id, as they refer to primitives not written as well.
+     * The caller has to hold the read lock of the dataset.
+     * @param ds the dataset
+     * @param primitives the primitives which have changed
+     * @param conflicts the conflicts of the dataset, may be {@code null}
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeChanges(DataSet ds, Collection<? extends OsmPrimitive> primitives, ConflictCollection conflicts)
+            throws IOException {
+        out.writeInt(primitives.size());
+        for (OsmPrimitive osm : primitives) {
+            if (osm.getDataSet() == ds) {
+                out.writeByte(getTypeCode(osm.getType()));
+                writePrimitive(osm, true);
+            } else {
+                out.writeByte(getTypeCode(osm.getType()) | CHANGE_REMOVED);
+                out.writeLong(osm.getUniqueId());
+            }
+        }
+        for (int offset : writeSections(ds, conflicts, true)) {
+            out.writeInt(offset);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the sections following the primitives.
+     * @return the offsets of the conflicts, data sources, dataset properties, users, tag sets and strings
+     */
+    private int[] writeSections(DataSet ds, ConflictCollection conflicts, boolean external) throws IOException {
+        int conflictsOffset = out.size();
+        writeConflicts(ds, conflicts, external);
+        int dataSourcesOffset = out.size();
+        out.writeInt(ds.dataSources.size());
+        for (DataSource source : ds.dataSources) {
+            out.writeDouble(source.bounds.getMinLat());
+            out.writeDouble(source.bounds.getMinLon());
+            out.writeDouble(source.bounds.getMaxLat());
+            out.writeDouble(source.bounds.getMaxLon());
+            out.writeInt(getString(source.origin));
+        }
+        int infoOffset = out.size();
+        out.writeInt(getString(ds.getVersion()));
+        out.writeBoolean(ds.isUploadDiscouraged());
+        tags.clear();
+        for (Map.Entry<String, String> e : ds.getChangeSetTags().entrySet()) {
+            tags.add(e.getKey());
+            tags.add(e.getValue());
+        }
+        out.writeInt(getTagSet());
+
+        int usersOffset = out.size();
+        writeUsers();
+        int tagSetsOffset = out.size();
+        writeTagSets();
+        int stringsOffset = out.size();
+        writeStrings();
+        return new int[] {conflictsOffset, dataSourcesOffset, infoOffset, usersOffset, tagSetsOffset, stringsOffset};
+    }
+
+    private static <T extends OsmPrimitive> List<T> sortById(Collection<T> primitives) {
+        List<T> result = new ArrayList<>(primitives);
+        Collections.sort(result, OsmWriter.byIdComparator);
+        return result;
+    }
+
+    private static long[] getIds(List<? extends OsmPrimitive> primitives) {
+        long[] ids = new long[primitives.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = primitives.get(i).getUniqueId();
+        }
+        return ids;
+    }
+
+    /**
+     * Writes one primitive.
+     * @param osm the primitive
+     * @param external {@code true} if the primitive is not part of the dataset, like the other side of a conflict.
+     * Its references are written as ids then, as the referenced primitives need not be part of the dataset either.
+     */
+    private void writePrimitive(OsmPrimitive osm, boolean external) throws IOException {
+        int flags = 0;
+        if (osm.isModified()) {
+            flags |= FLAG_MODIFIED;
+        }
+        if (osm.isDeleted()) {
+            flags |= FLAG_DELETED;
+        }
+        if (!osm.isVisible()) {
+            flags |= FLAG_INVISIBLE;
+        }
+        if (osm.isIncomplete()) {
+            flags |= FLAG_INCOMPLETE;
+        }
+        out.writeByte(flags);
+        out.writeLong(osm.getUniqueId());
+        if (osm.isIncomplete())
+            return;
+        out.writeInt(osm.getVersion());
+        out.writeInt(osm.isTimestampEmpty() ? 0 : (int) (osm.getTimestamp().getTime() / 1000));
+        out.writeInt(osm.getChangesetId());
+        out.writeInt(getUser(osm.getUser()));
+        tags.clear();
+        osm.visitKeys(tagCollector);
+        out.writeInt(getTagSet());
+
+        if (osm instanceof Node) {
+            LatLon coor = ((Node) osm).getCoor();
+            out.writeDouble(coor != null ? coor.lat() : Double.NaN);
+            out.writeDouble(coor != null ? coor.lon() : Double.NaN);
+        } else if (osm instanceof Way) {
+            List<Node> wayNodes = ((Way) osm).getNodes();
+            out.writeInt(wayNodes.size());
+            for (Node n : wayNodes) {
+                writeReference(n, external);
+            }
+        } else {
+            List<RelationMember> members = ((Relation) osm).getMembers();
+            out.writeInt(members.size());
+            for (RelationMember m : members) {
+                out.writeByte(getTypeCode(m.getType()));
+                writeReference(m.getMember(), external);
+                out.writeInt(getString(m.getRole()));
+            }
+        }
+    }
+
+    private void writeReference(OsmPrimitive osm, boolean external) throws IOException {
+        if (external) {
+            out.writeLong(osm.getUniqueId());
+        } else {
+            out.writeInt(getIndex(osm));
+        }
+    }
+
+    private int getIndex(OsmPrimitive osm) throws IOException {
+        long[] ids;
+        switch (osm.getType()) {
+        case NODE: ids = nodeIds; break;
+        case WAY: ids = wayIds; break;
+        default: ids = relationIds;
+        }
+        int index = Arrays.binarySearch(ids, osm.getUniqueId());
+        if (index < 0)
+            throw new IOException(tr("Primitive {0} is referred to, but not part of the dataset.", osm.getPrimitiveId()));
+        return index;
+    }
+
+    static int getTypeCode(OsmPrimitiveType type) {
+        switch (type) {
+        case NODE: return 0;
+        case WAY: return 1;
+        default: return 2;
+        }
+    }
+
+    private void writeConflicts(DataSet ds, ConflictCollection conflicts, boolean external) throws IOException {
+        List<Conflict<? extends OsmPrimitive>> written = new ArrayList<>();
+        if (conflicts != null) {
+            for (Conflict<? extends OsmPrimitive> c : conflicts) {
+                if (c.getMy().getDataSet() == ds) {
+                    written.add(c);
+                }
+            }
+        }
+        out.writeInt(written.size());
+        for (Conflict<? extends OsmPrimitive> c : written) {
+            out.writeByte(getTypeCode(c.getMy().getType()));
+            writeReference(c.getMy(), external);
+            out.writeBoolean(c.isMyDeleted());
+            writePrimitive(c.getTheir(), true);
+        }
+    }
+
+    private int getString(String s) {
+        if (s == null)
+            return -1;
+        Integer index = strings.get(s);
+        if (index == null) {
+            index = stringTable.size();
+            strings.put(s, index);
+            stringTable.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * Replies the index of the tag set collected in {@link #tags}.
+     */
+    private int getTagSet() {
+        if (tags.isEmpty())
+            return -1;
+        Integer index = tagSets.get(tags);
+        if (index == null) {
+            index = tagSetTable.size();
+            List<String> tagSet = new ArrayList<>(tags);
+            tagSets.put(tagSet, index);
+            tagSetTable.add(tagSet);
+        }
+        return index;
+    }
+
+    private int getUser(User user) {
+        if (user == null)
+            return -1;
+        Integer index = users.get(user);
+        if (index == null) {
+            index = userTable.size();
+            users.put(user, index);
+            userTable.add(user);
+        }
+        return index;
+    }
+
+    private void writeUsers() throws IOException {
+        out.writeInt(userTable.size());
+        for (User user : userTable) {
+            out.writeLong(user.getId());
+            out.writeInt(getString(user.getName()));
+            out.writeBoolean(user.isOsmUser());
+        }
+    }
+
+    /**
+     * Writes the tag sets as a table of offsets followed by the string indexes of the keys and values, such that
+     * a tag set can be found without reading the ones before.
+     */
+    private void writeTagSets() throws IOException {
+        // the strings are added to the string table in advance, which is written afterwards
+        int[][] indexes = new int[tagSetTable.size()][];
+        for (int i = 0; i < indexes.length; i++) {
+            List<String> tagSet = tagSetTable.get(i);
+            indexes[i] = new int[tagSet.size()];
+            for (int j = 0; j < indexes[i].length; j++) {
+                indexes[i][j] = getString(tagSet.get(j));
+            }
+        }
+        out.writeInt(indexes.length);
+        int offset = 0;
+        for (int[] tagSet : indexes) {
+            out.writeInt(offset);
+            offset += tagSet.length;
+        }
+        out.writeInt(offset);
+        for (int[] tagSet : indexes) {
+            for (int index : tagSet) {
+                out.writeInt(index);
+            }
+        }
+    }
+
+    /**
+     * Writes the strings as a table of offsets followed by the UTF-8 encoded strings, such that a string can be
+     * decoded without decoding the ones before.
+     */
+    private void writeStrings() throws IOException {
+        byte[][] encoded = new byte[stringTable.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = stringTable.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        out.writeInt(encoded.length);
+        int offset = 0;
+        for (byte[] s : encoded) {
+            out.writeInt(offset);
+            offset += s.length;
+        }
+        out.writeInt(offset);
+        for (byte[] s : encoded) {
+            out.write(s);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
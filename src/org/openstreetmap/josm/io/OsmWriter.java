@@ -161,7 +161,15 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
     }
 
     public void writeDataSources(DataSet ds) {
-        for (DataSource s : ds.dataSources) {
+        writeDataSources(ds.dataSources);
+    }
+
+    /**
+     * Writes the given data sources as bounds.
+     * @param dataSources The data sources to write
+     */
+    public void writeDataSources(Collection<DataSource> dataSources) {
+        for (DataSource s : dataSources) {
             out.println("  <bounds minlat='"
                     + s.bounds.getMin().latToString(CoordinateFormat.DECIMAL_DEGREES)
                     +"' minlon='"
@@ -0,0 +1,264 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.osm.CompactNodeStore;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+/**
+ * Writes a data layer in the OSM XML format like {@link OsmWriter#writeLayer(OsmDataLayer)}, but serializes ranges
+ * of primitives in parallel.
+ *
+ * The primitives are copied while the read lock of the dataset is held, the nodes to a {@link CompactNodeStore},
+ * the ways and relations to their {@link PrimitiveData}. The copy is serialized without the lock, so that the
+ * dataset can be edited while the file is written, see {@link #copyLayer} and {@link #write}.
+ * Each range is serialized to a buffer by an {@link OsmWriter} of its own, and compressed to a gzip member or bzip2
+ * stream of its own if requested. A file of concatenated members or streams is read like one
+ * compressed as a whole. The buffers are written to the channel in order, while the following ranges are serialized.
+ */
+public class ParallelOsmWriter {
+
+    /** Number of primitives serialized at once */
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Serializes the ranges of primitives, shared by all writers */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "OSM writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static final Comparator<IPrimitive> BY_ID = new Comparator<IPrimitive>() {
+        @Override
+        public int compare(IPrimitive o1, IPrimitive o2) {
+            return Long.compare(o1.getUniqueId(), o2.getUniqueId());
+        }
+    };
+
+    private final Compression compression;
+    private final int chunkSize;
+
+    private boolean upload;
+    private String version;
+    private Collection<DataSource> dataSources;
+    private CompactNodeStore nodes;
+    private List<WayData> ways;
+    private List<RelationData> relations;
+
+    /**
+     * Constructs a new {@code ParallelOsmWriter}.
+     * @param compression the compression of the output, {@link Compression#GZIP}, {@link Compression#BZIP2} or
+     * {@link Compression#NONE}
+     */
+    public ParallelOsmWriter(Compression compression) {
+        this(compression, CHUNK_SIZE);
+    }
+
+    ParallelOsmWriter(Compression compression, int chunkSize) {
+        if (compression == Compression.ZIP)
+            throw new IllegalArgumentException(compression.toString());
+        this.compression = compression;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Writes a data layer. The read lock of its dataset is held only while the layer is copied.
+     * @param layer the layer
+     * @param channel the channel to write to, which is not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeLayer(OsmDataLayer layer, WritableByteChannel channel) throws IOException {
+        copyLayer(layer);
+        write(channel);
+    }
+
+    /**
+     * Copies the data of a layer to be written by {@link #write}, under the read lock of its dataset.
+     * Incomplete primitives and new deleted ones are skipped, like {@link OsmWriter} does.
+     * @param layer the layer
+     */
+    public void copyLayer(OsmDataLayer layer) {
+        DataSet ds = layer.data;
+        ds.getReadLock().lock();
+        try {
+            upload = !layer.isUploadDiscouraged();
+            version = ds.getVersion();
+            dataSources = new ArrayList<>(ds.dataSources);
+            nodes = new CompactNodeStore(ds.getNodes().size());
+            for (Node n : ds.getNodes()) {
+                if (isWritten(n)) {
+                    nodes.add(n);
+                }
+            }
+            ways = new ArrayList<>();
+            for (Way w : ds.getWays()) {
+                if (isWritten(w)) {
+                    ways.add(w.save());
+                }
+            }
+            relations = new ArrayList<>();
+            for (Relation r : ds.getRelations()) {
+                if (isWritten(r)) {
+                    relations.add(r.save());
+                }
+            }
+        } finally {
+            ds.getReadLock().unlock();
+        }
+    }
+
+    private static boolean isWritten(OsmPrimitive osm) {
+        return !osm.isIncomplete() && (!osm.isNewOrUndeleted() || !osm.isDeleted());
+    }
+
+    /**
+     * Writes the data copied by {@link #copyLayer}. The dataset is not accessed, it may be changed meanwhile.
+     * @param channel the channel to write to, which is not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(WritableByteChannel channel) throws IOException {
+        if (nodes == null)
+            throw new IllegalStateException("no layer copied");
+        List<Callable<byte[]>> chunks = new ArrayList<>();
+        chunks.add(new Chunk(null, true, false));
+        List<INode> nodeList = new ArrayList<>(nodes.size());
+        for (INode n : nodes) {
+            nodeList.add(n);
+        }
+        addChunks(chunks, nodeList);
+        addChunks(chunks, ways);
+        addChunks(chunks, relations);
+        chunks.add(new Chunk(null, false, true));
+        write(chunks, channel);
+    }
+
+    /**
+     * Sorts the primitives by id, like {@link OsmWriter} does, and splits them into ranges.
+     */
+    private void addChunks(List<Callable<byte[]>> chunks, List<? extends IPrimitive> primitives) {
+        Collections.sort(primitives, BY_ID);
+        for (int i = 0; i < primitives.size(); i += chunkSize) {
+            chunks.add(new Chunk(primitives.subList(i, Math.min(i + chunkSize, primitives.size())), false, false));
+        }
+    }
+
+    /**
+     * Serializes the chunks in parallel and writes them in order. At most twice as many chunks as there are threads
+     * are kept in memory.
+     */
+    private static void write(List<Callable<byte[]>> chunks, WritableByteChannel channel) throws IOException {
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            for (Callable<byte[]> chunk : chunks) {
+                if (pending.size() >= 2 * THREADS) {
+                    writeFully(channel, pending.remove());
+                }
+                pending.add(EXECUTOR.submit(chunk));
+            }
+            while (!pending.isEmpty()) {
+                writeFully(channel, pending.remove());
+            }
+        } finally {
+            for (Future<byte[]> f : pending) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, Future<byte[]> chunk) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(chunk.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A range of copied primitives, or the header or footer of the file.
+     */
+    private class Chunk implements Callable<byte[]> {
+        private final List<? extends IPrimitive> primitives;
+        private final boolean header;
+        private final boolean footer;
+
+        Chunk(List<? extends IPrimitive> primitives, boolean header, boolean footer) {
+            this.primitives = primitives;
+            this.header = header;
+            this.footer = footer;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(primitives != null ? primitives.size() * 128 : 1024);
+            OutputStream out = compression.getCompressedOutputStream(buffer);
+            try (OsmWriter w = OsmWriterFactory.createOsmWriter(
+                    new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), false, version)) {
+                if (header) {
+                    w.header(upload);
+                    w.writeDataSources(dataSources);
+                }
+                if (primitives != null) {
+                    for (IPrimitive osm : primitives) {
+                        osm.accept(w);
+                    }
+                }
+                if (footer) {
+                    w.footer();
+                }
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
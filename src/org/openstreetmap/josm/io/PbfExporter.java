@@ -0,0 +1,88 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.gui.ConditionalOptionPaneUtil;
+import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+/**
+ * OSM data exporter for the binary PBF format, see {@link PbfWriter}.
+ *
+ * The format has no place for the modified or deleted state of primitives. If the layer contains modified or
+ * deleted primitives which are not new, the user is asked before the data is exported without them, and the
+ * layer is not marked as saved afterwards.
+ */
+public class PbfExporter extends OsmExporter {
+
+    /**
+     * Constructs a new {@code PbfExporter}.
+     */
+    public PbfExporter() {
+        super(PbfImporter.FILE_FILTER);
+    }
+
+    /**
+     * Determines if the changes of a dataset would be lost when it is written to a PBF file. New primitives keep
+     * their negative ids and are read back as new primitives.
+     * @param ds the dataset
+     * @return {@code true} if the dataset contains modified or deleted primitives which are not new
+     */
+    static boolean hasUnsavedChanges(DataSet ds) {
+        ds.getReadLock().lock();
+        try {
+            for (OsmPrimitive p : ds.allPrimitives()) {
+                if (!p.isNew() && (p.isModified() || p.isDeleted()))
+                    return true;
+            }
+            return false;
+        } finally {
+            ds.getReadLock().unlock();
+        }
+    }
+
+    @Override
+    public void exportData(File file, Layer layer, boolean noBackup) throws IllegalArgumentException {
+        checkOsmDataLayer(layer);
+        setCanceled(false);
+        if (hasUnsavedChanges(((OsmDataLayer) layer).data)) {
+            if (!ConditionalOptionPaneUtil.showConfirmationDialog("pbf_export_modified", Main.parent,
+                    tr("<html>The layer contains modified or deleted objects.<br>"
+                            + "The PBF format cannot store these changes, the file will contain the modified objects "
+                            + "as unmodified ones and no deleted objects.<br>"
+                            + "The layer will still need to be saved or uploaded.<br>Export anyway?</html>"),
+                    tr("Warning"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE, JOptionPane.OK_OPTION)) {
+                setCanceled(true);
+                return;
+            }
+            super.exportData(file, layer, noBackup);
+            // the changes have not been saved, so keep the layer from being marked as saved
+            setCanceled(true);
+            return;
+        }
+        super.exportData(file, layer, noBackup);
+    }
+
+    @Override
+    protected void doSave(File file, OsmDataLayer layer) throws IOException {
+        try (PbfWriter w = new PbfWriter(new BufferedOutputStream(new FileOutputStream(file)))) {
+            layer.data.getReadLock().lock();
+            try {
+                w.writeDataSet(layer.data);
+            } finally {
+                layer.data.getReadLock().unlock();
+            }
+        }
+    }
+}
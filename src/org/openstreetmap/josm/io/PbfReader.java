@@ -0,0 +1,790 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.LongKeyMap;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.TagSetPool;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Reader for the OSM PBF format, the binary format of OSM data based on Protocol Buffers, see
+ * <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>.
+ *
+ * A PBF file is a sequence of compressed blocks of up to some thousand primitives each. While the file is read,
+ * the blocks are inflated and decoded into primitives by several threads. The decoded blocks are then registered
+ * in the order of the file, such that the result is the same as for the equivalent {@link OsmReader XML file}.
+ *
+ * The format does not store the modified and deleted state of primitives, so all primitives are read unmodified.
+ * @see PbfWriter
+ */
+public class PbfReader extends AbstractReader {
+
+    /**
+     * The thread pool, created when a file is read for the first time. Without preferences, as in command line tools,
+     * the blocks are decoded by the reading thread.
+     */
+    private static final class ThreadPoolHolder {
+        private static final Pair<Integer, ExecutorService> THREAD_POOL = Main.pref == null
+                ? new Pair<Integer, ExecutorService>(1, null)
+                : Utils.newThreadPool("pbf.reader.numberOfThreads");
+    }
+
+    /** Maximum size of a blob header, as defined by the format */
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    /** Maximum size of a blob, compressed or not, as defined by the format */
+    static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    /** The features a file may require */
+    static final List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes", "HistoricalInformation");
+
+    private volatile boolean cancel;
+
+    /** the users read so far, by user id */
+    private final LongKeyMap<User> users = new LongKeyMap<>();
+
+    /**
+     * The primitives of a block, decoded but not registered yet.
+     */
+    private static final class Block {
+        private String[] strings = new String[0];
+        private int granularity = 100;
+        private long latOffset;
+        private long lonOffset;
+        private int dateGranularity = 1000;
+
+        private final List<OsmPrimitive> primitives = new ArrayList<>();
+        /** the ids of the primitives in the file, the ids of new primitives differ from the ids of the objects */
+        private long[] ids = new long[64];
+        private long[] uids = new long[64];
+        private int[] userSids = new int[64];
+        /** the node ids of ways and the members of relations, {@code null} for nodes */
+        private final List<Object> refs = new ArrayList<>();
+
+        /** the tags of the primitive being decoded */
+        private final Map<String, String> tags = new LinkedHashMap<>();
+
+        // the metadata of the primitive being decoded
+        private int version;
+        private long timestamp;
+        private long changeset;
+        private long uid;
+        private int userSid;
+        private boolean visible;
+
+        private void resetInfo() {
+            version = -1;
+            timestamp = 0;
+            changeset = 0;
+            uid = -1;
+            userSid = 0;
+            visible = true;
+        }
+
+        private void decode(byte[] data) throws IllegalDataException {
+            ProtobufReader block = new ProtobufReader(data);
+            // the groups can only be decoded with the string table and the granularity, which may come later
+            List<ProtobufReader> groups = new ArrayList<>();
+            while (block.hasNext()) {
+                switch (block.nextField()) {
+                case 1:
+                    decodeStringTable(block.readMessage());
+                    break;
+                case 2:
+                    groups.add(block.readMessage());
+                    break;
+                case 17:
+                    granularity = (int) block.readVarint();
+                    break;
+                case 18:
+                    dateGranularity = (int) block.readVarint();
+                    break;
+                case 19:
+                    latOffset = block.readVarint();
+                    break;
+                case 20:
+                    lonOffset = block.readVarint();
+                    break;
+                default:
+                    block.skip();
+                }
+            }
+            for (ProtobufReader group : groups) {
+                while (group.hasNext()) {
+                    switch (group.nextField()) {
+                    case 1:
+                        decodeNode(group.readMessage());
+                        break;
+                    case 2:
+                        decodeDenseNodes(group.readMessage());
+                        break;
+                    case 3:
+                        decodeWay(group.readMessage());
+                        break;
+                    case 4:
+                        decodeRelation(group.readMessage());
+                        break;
+                    default:
+                        // changesets are not supported
+                        group.skip();
+                    }
+                }
+            }
+        }
+
+        private void decodeStringTable(ProtobufReader table) throws IllegalDataException {
+            List<String> result = new ArrayList<>();
+            while (table.hasNext()) {
+                if (table.nextField() == 1) {
+                    result.add(TagSetPool.internString(table.readString()));
+                } else {
+                    table.skip();
+                }
+            }
+            strings = result.toArray(new String[result.size()]);
+        }
+
+        private String getString(long index) throws IllegalDataException {
+            if (index < 0 || index >= strings.length)
+                throw new IllegalDataException(tr("Invalid string table index {0}", index));
+            return strings[(int) index];
+        }
+
+        private void decodeInfo(ProtobufReader info) throws IllegalDataException {
+            while (info.hasNext()) {
+                switch (info.nextField()) {
+                case 1:
+                    version = (int) info.readVarint();
+                    break;
+                case 2:
+                    timestamp = info.readVarint();
+                    break;
+                case 3:
+                    changeset = info.readVarint();
+                    break;
+                case 4:
+                    uid = (int) info.readVarint();
+                    break;
+                case 5:
+                    userSid = (int) info.readVarint();
+                    break;
+                case 6:
+                    visible = info.readVarint() != 0;
+                    break;
+                default:
+                    info.skip();
+                }
+            }
+        }
+
+        private void putTags(long[] keys, long[] values) throws IllegalDataException {
+            int count = keys == null ? 0 : keys.length;
+            if (count != (values == null ? 0 : values.length))
+                throw new IllegalDataException(tr("Different number of keys and values"));
+            for (int i = 0; i < count; i++) {
+                tags.put(getString(keys[i]), getString(values[i]));
+            }
+        }
+
+        private void add(OsmPrimitive p, long id, Object primitiveRefs) {
+            if (!tags.isEmpty()) {
+                p.setKeys(tags);
+                tags.clear();
+            }
+            if (timestamp != 0) {
+                p.setTimestamp(new Date(timestamp * dateGranularity));
+            }
+            if (id > 0) {
+                if (changeset > 0 && changeset <= Integer.MAX_VALUE) {
+                    p.setChangesetId((int) changeset);
+                }
+                if (!visible) {
+                    p.setVisible(false);
+                }
+            }
+            int index = primitives.size();
+            if (index == ids.length) {
+                ids = Arrays.copyOf(ids, index * 2);
+                uids = Arrays.copyOf(uids, index * 2);
+                userSids = Arrays.copyOf(userSids, index * 2);
+            }
+            primitives.add(p);
+            ids[index] = id;
+            uids[index] = uid;
+            userSids[index] = userSid;
+            refs.add(primitiveRefs);
+        }
+
+        /**
+         * Replies the version of the primitive being decoded. Files without metadata have no versions, but the
+         * version of primitives known to the server must be positive.
+         */
+        private int getVersion(long id) {
+            return id <= 0 ? 0 : version > 0 ? version : 1;
+        }
+
+        private Node createNode(long id, long lat, long lon) {
+            Node n = new Node(id > 0 ? id : 0, getVersion(id));
+            n.setCoor(new LatLon(
+                    1e-9 * (latOffset + (long) granularity * lat),
+                    1e-9 * (lonOffset + (long) granularity * lon)));
+            return n;
+        }
+
+        private void decodeNode(ProtobufReader node) throws IllegalDataException {
+            resetInfo();
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            long[] keys = null;
+            long[] values = null;
+            while (node.hasNext()) {
+                switch (node.nextField()) {
+                case 1:
+                    id = node.readSignedVarint();
+                    break;
+                case 2:
+                    keys = node.readVarints(keys);
+                    break;
+                case 3:
+                    values = node.readVarints(values);
+                    break;
+                case 4:
+                    decodeInfo(node.readMessage());
+                    break;
+                case 8:
+                    lat = node.readSignedVarint();
+                    break;
+                case 9:
+                    lon = node.readSignedVarint();
+                    break;
+                default:
+                    node.skip();
+                }
+            }
+            checkId(id);
+            putTags(keys, values);
+            add(createNode(id, lat, lon), id, null);
+        }
+
+        private void decodeDenseNodes(ProtobufReader dense) throws IllegalDataException {
+            long[] ids = null;
+            long[] lats = null;
+            long[] lons = null;
+            long[] keysVals = null;
+            long[] versions = null;
+            long[] timestamps = null;
+            long[] changesets = null;
+            long[] uids = null;
+            long[] userSids = null;
+            long[] visibles = null;
+            while (dense.hasNext()) {
+                switch (dense.nextField()) {
+                case 1:
+                    ids = dense.readVarints(ids);
+                    break;
+                case 5:
+                    ProtobufReader info = dense.readMessage();
+                    while (info.hasNext()) {
+                        switch (info.nextField()) {
+                        case 1:
+                            versions = info.readVarints(versions);
+                            break;
+                        case 2:
+                            timestamps = info.readVarints(timestamps);
+                            break;
+                        case 3:
+                            changesets = info.readVarints(changesets);
+                            break;
+                        case 4:
+                            uids = info.readVarints(uids);
+                            break;
+                        case 5:
+                            userSids = info.readVarints(userSids);
+                            break;
+                        case 6:
+                            visibles = info.readVarints(visibles);
+                            break;
+                        default:
+                            info.skip();
+                        }
+                    }
+                    break;
+                case 8:
+                    lats = dense.readVarints(lats);
+                    break;
+                case 9:
+                    lons = dense.readVarints(lons);
+                    break;
+                case 10:
+                    keysVals = dense.readVarints(keysVals);
+                    break;
+                default:
+                    dense.skip();
+                }
+            }
+            if (ids == null)
+                return;
+            int count = ids.length;
+            if (!hasLength(lats, count) || !hasLength(lons, count) || versions != null && (!hasLength(versions, count)
+                    || !hasLength(timestamps, count) || !hasLength(changesets, count)
+                    || !hasLength(uids, count) || !hasLength(userSids, count))
+                    || visibles != null && !hasLength(visibles, count))
+                throw new IllegalDataException(tr("Different number of values in dense nodes"));
+            // all values but the versions, the tags and the visible flags are delta coded
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            int keyVal = 0;
+            resetInfo();
+            if (versions != null) {
+                // the metadata of the first node is delta coded from 0
+                uid = 0;
+            }
+            for (int i = 0; i < count; i++) {
+                id += ProtobufReader.decodeZigZag(ids[i]);
+                lat += ProtobufReader.decodeZigZag(lats[i]);
+                lon += ProtobufReader.decodeZigZag(lons[i]);
+                if (versions != null) {
+                    version = (int) versions[i];
+                    timestamp += ProtobufReader.decodeZigZag(timestamps[i]);
+                    changeset += ProtobufReader.decodeZigZag(changesets[i]);
+                    uid += ProtobufReader.decodeZigZag(uids[i]);
+                    userSid += (int) ProtobufReader.decodeZigZag(userSids[i]);
+                }
+                if (visibles != null) {
+                    visible = visibles[i] != 0;
+                }
+                // the tags of each node are terminated by the index 0
+                while (keysVals != null && keyVal < keysVals.length && keysVals[keyVal] != 0) {
+                    if (keyVal + 1 >= keysVals.length)
+                        throw new IllegalDataException(tr("Key without value in dense nodes"));
+                    tags.put(getString(keysVals[keyVal]), getString(keysVals[keyVal + 1]));
+                    keyVal += 2;
+                }
+                keyVal++;
+                checkId(id);
+                add(createNode(id, lat, lon), id, null);
+            }
+        }
+
+        private static boolean hasLength(long[] values, int count) {
+            return values != null && values.length == count;
+        }
+
+        private void decodeWay(ProtobufReader way) throws IllegalDataException {
+            resetInfo();
+            long id = 0;
+            long[] keys = null;
+            long[] values = null;
+            long[] nodeIds = null;
+            while (way.hasNext()) {
+                switch (way.nextField()) {
+                case 1:
+                    id = way.readVarint();
+                    break;
+                case 2:
+                    keys = way.readVarints(keys);
+                    break;
+                case 3:
+                    values = way.readVarints(values);
+                    break;
+                case 4:
+                    decodeInfo(way.readMessage());
+                    break;
+                case 8:
+                    nodeIds = way.readVarints(nodeIds);
+                    break;
+                default:
+                    way.skip();
+                }
+            }
+            checkId(id);
+            putTags(keys, values);
+            if (nodeIds == null) {
+                nodeIds = new long[0];
+            }
+            long nodeId = 0;
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeId += ProtobufReader.decodeZigZag(nodeIds[i]);
+                nodeIds[i] = nodeId;
+            }
+            add(new Way(id > 0 ? id : 0, getVersion(id)), id, nodeIds);
+        }
+
+        private void decodeRelation(ProtobufReader relation) throws IllegalDataException {
+            resetInfo();
+            long id = 0;
+            long[] keys = null;
+            long[] values = null;
+            long[] roles = null;
+            long[] memberIds = null;
+            long[] types = null;
+            while (relation.hasNext()) {
+                switch (relation.nextField()) {
+                case 1:
+                    id = relation.readVarint();
+                    break;
+                case 2:
+                    keys = relation.readVarints(keys);
+                    break;
+                case 3:
+                    values = relation.readVarints(values);
+                    break;
+                case 4:
+                    decodeInfo(relation.readMessage());
+                    break;
+                case 8:
+                    roles = relation.readVarints(roles);
+                    break;
+                case 9:
+                    memberIds = relation.readVarints(memberIds);
+                    break;
+                case 10:
+                    types = relation.readVarints(types);
+                    break;
+                default:
+                    relation.skip();
+                }
+            }
+            checkId(id);
+            putTags(keys, values);
+            int count = memberIds == null ? 0 : memberIds.length;
+            if (count != (roles == null ? 0 : roles.length) || count != (types == null ? 0 : types.length))
+                throw new IllegalDataException(tr("Different number of values in members of relation {0}", id));
+            Collection<RelationMemberData> members = new ArrayList<>(count);
+            long memberId = 0;
+            for (int i = 0; i < count; i++) {
+                memberId += ProtobufReader.decodeZigZag(memberIds[i]);
+                if (memberId == 0)
+                    throw new IllegalDataException(tr("Incomplete <member> specification with ref=0"));
+                OsmPrimitiveType type;
+                switch ((int) types[i]) {
+                case 0:
+                    type = OsmPrimitiveType.NODE;
+                    break;
+                case 1:
+                    type = OsmPrimitiveType.WAY;
+                    break;
+                case 2:
+                    type = OsmPrimitiveType.RELATION;
+                    break;
+                default:
+                    throw new IllegalDataException(tr("Illegal member type {0} in relation {1}", types[i], id));
+                }
+                members.add(new RelationMemberData(getString(roles[i]), type, memberId));
+            }
+            add(new Relation(id > 0 ? id : 0, getVersion(id)), id, members);
+        }
+
+        private static void checkId(long id) throws IllegalDataException {
+            if (id == 0)
+                throw new IllegalDataException(tr("Illegal object with ID=0."));
+        }
+    }
+
+    /**
+     * constructor (for private and subclasses use only)
+     *
+     * @see #parseDataSet(InputStream, ProgressMonitor)
+     */
+    protected PbfReader() {
+    }
+
+    private static byte[] readBlob(byte[] data, String type) throws IllegalDataException {
+        ProtobufReader blob = new ProtobufReader(data);
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = -1;
+        while (blob.hasNext()) {
+            switch (blob.nextField()) {
+            case 1:
+                raw = blob.readBytes();
+                break;
+            case 2:
+                rawSize = (int) blob.readVarint();
+                break;
+            case 3:
+                zlib = blob.readBytes();
+                break;
+            default:
+                blob.skip();
+            }
+        }
+        if (raw != null)
+            return raw;
+        if (zlib == null)
+            throw new IllegalDataException(tr("Unsupported compression of {0} block", type));
+        if (rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new IllegalDataException(tr("Invalid size of {0} block: {1}", type, rawSize));
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] result = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(result, length, rawSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += n;
+            }
+            if (length != rawSize)
+                throw new IllegalDataException(tr("Invalid size of {0} block: {1}", type, length));
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Block decodeBlock(byte[] data) throws IllegalDataException {
+        Block block = new Block();
+        block.decode(readBlob(data, "OSMData"));
+        return block;
+    }
+
+    private void parseHeader(byte[] data) throws IllegalDataException {
+        ProtobufReader header = new ProtobufReader(data);
+        long[] bbox = null;
+        String writingProgram = null;
+        String source = null;
+        while (header.hasNext()) {
+            switch (header.nextField()) {
+            case 1:
+                bbox = new long[4];
+                ProtobufReader box = header.readMessage();
+                while (box.hasNext()) {
+                    int field = box.nextField();
+                    if (field >= 1 && field <= 4) {
+                        bbox[field - 1] = box.readSignedVarint();
+                    } else {
+                        box.skip();
+                    }
+                }
+                break;
+            case 4:
+                String feature = header.readString();
+                if (!SUPPORTED_FEATURES.contains(feature))
+                    throw new IllegalDataException(tr("Unsupported feature: {0}", feature));
+                break;
+            case 16:
+                writingProgram = header.readString();
+                break;
+            case 17:
+                source = header.readString();
+                break;
+            default:
+                header.skip();
+            }
+        }
+        ds.setVersion("0.6");
+        if (bbox != null) {
+            // left, right, top, bottom in nanodegrees
+            Bounds bounds = new Bounds(bbox[3] * 1e-9, bbox[0] * 1e-9, bbox[2] * 1e-9, bbox[1] * 1e-9);
+            ds.dataSources.add(new DataSource(bounds, source != null ? source : writingProgram));
+        }
+    }
+
+    /**
+     * Registers the primitives of a decoded block, in the order of the file.
+     */
+    private void register(Block block) throws IllegalDataException {
+        for (int i = 0; i < block.primitives.size(); i++) {
+            OsmPrimitive p = block.primitives.get(i);
+            long id = block.ids[i];
+            if (block.uids[i] > 0 || block.userSids[i] > 0) {
+                p.setUser(getUser(block.uids[i], block.getString(block.userSids[i])));
+            }
+            OsmPrimitiveType type = p.getType();
+            if (externalIdMap.put(id, type, p) != null)
+                throw new IllegalDataException(tr("Duplicate {0} with ID={1}", type.getAPIName(), id));
+            if (type == OsmPrimitiveType.WAY) {
+                ways.put(id, (long[]) block.refs.get(i));
+            } else if (type == OsmPrimitiveType.RELATION) {
+                @SuppressWarnings("unchecked")
+                Collection<RelationMemberData> members = (Collection<RelationMemberData>) block.refs.get(i);
+                relations.put(id, members);
+            }
+        }
+    }
+
+    private User getUser(long uid, String name) {
+        if (uid <= 0)
+            return name.isEmpty() ? null : User.createLocalUser(name);
+        User user = users.get(uid);
+        if (user == null) {
+            user = User.createOsmUser(uid, name.isEmpty() ? null : name);
+            users.put(uid, user);
+        }
+        return user;
+    }
+
+    private void parse(InputStream source) throws IOException, IllegalDataException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+        // the blocks being decoded, in the order of the file
+        Queue<Future<Block>> pending = new ArrayDeque<>();
+        try {
+            while (true) {
+                if (cancel)
+                    throw new IllegalDataException(tr("Reading was canceled"), new PbfParsingCanceledException());
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE)
+                    throw new IllegalDataException(tr("Invalid size of blob header: {0}", headerSize));
+                byte[] header = new byte[headerSize];
+                in.readFully(header);
+                String type = null;
+                int dataSize = -1;
+                ProtobufReader blobHeader = new ProtobufReader(header);
+                while (blobHeader.hasNext()) {
+                    switch (blobHeader.nextField()) {
+                    case 1:
+                        type = blobHeader.readString();
+                        break;
+                    case 3:
+                        dataSize = (int) blobHeader.readVarint();
+                        break;
+                    default:
+                        blobHeader.skip();
+                    }
+                }
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+                    throw new IllegalDataException(tr("Invalid size of blob: {0}", dataSize));
+                final byte[] data = new byte[dataSize];
+                in.readFully(data);
+                if ("OSMHeader".equals(type)) {
+                    parseHeader(readBlob(data, type));
+                } else if (!"OSMData".equals(type)) {
+                    Main.info(tr("Skipping unknown blob type ''{0}''", type));
+                } else if (ThreadPoolHolder.THREAD_POOL.a <= 1) {
+                    register(decodeBlock(data));
+                } else {
+                    pending.add(ThreadPoolHolder.THREAD_POOL.b.submit(new Callable<Block>() {
+                        @Override
+                        public Block call() throws IllegalDataException {
+                            return decodeBlock(data);
+                        }
+                    }));
+                    // limit the number of blocks in memory
+                    if (pending.size() >= 2 * ThreadPoolHolder.THREAD_POOL.a) {
+                        register(get(pending.remove()));
+                    }
+                }
+            }
+            if (ds.getVersion() == null)
+                throw new IllegalDataException(tr("Missing OSMHeader block"));
+            while (!pending.isEmpty()) {
+                register(get(pending.remove()));
+            }
+        } finally {
+            for (Future<Block> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static Block get(Future<Block> future) throws IllegalDataException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalDataException)
+                throw (IllegalDataException) e.getCause();
+            throw new IllegalDataException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IllegalDataException(e);
+        }
+    }
+
+    /**
+     * Exception thrown after user cancelation.
+     */
+    private static final class PbfParsingCanceledException extends Exception implements ImportCancelException {
+        PbfParsingCanceledException() {
+            super(tr("Reading was canceled"));
+        }
+    }
+
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        ProgressMonitor.CancelListener cancelListener = new ProgressMonitor.CancelListener() {
+            @Override public void operationCanceled() {
+                cancel = true;
+            }
+        };
+        progressMonitor.addCancelListener(cancelListener);
+        CheckParameterUtil.ensureParameterNotNull(source, "source");
+        try {
+            progressMonitor.beginTask(tr("Prepare OSM data..."), 2);
+            progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
+            parse(source);
+            progressMonitor.worked(1);
+
+            progressMonitor.indeterminateSubTask(tr("Preparing data set..."));
+            prepareDataSet();
+            progressMonitor.worked(1);
+            return getDataSet();
+        } catch (IOException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            progressMonitor.finishTask();
+            progressMonitor.removeCancelListener(cancelListener);
+        }
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor  the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     *
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException thrown if the an error was found while parsing the data from the source
+     * @throws IllegalArgumentException thrown if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new PbfReader().doParseDataSet(source, progressMonitor);
+    }
+}
@@ -0,0 +1,481 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Writes a dataset in the OSM PBF format, see {@link PbfReader}.
+ *
+ * The primitives are written sorted by type and id, in blocks of {@link #BLOCK_SIZE} primitives, which are encoded
+ * and compressed by several threads. Incomplete and deleted primitives are not written, and the modified state
+ * of the primitives is lost, as the format has no means to store them.
+ */
+public class PbfWriter implements Closeable {
+
+    /**
+     * The thread pool, created when a file is written for the first time. Without preferences, as in command line
+     * tools, the blocks are encoded by the writing thread.
+     */
+    private static final class ThreadPoolHolder {
+        private static final Pair<Integer, ExecutorService> THREAD_POOL = Main.pref == null
+                ? new Pair<Integer, ExecutorService>(1, null)
+                : Utils.newThreadPool("pbf.writer.numberOfThreads");
+    }
+
+    /** Maximum number of primitives of a block */
+    static final int BLOCK_SIZE = 8000;
+    /** Coordinates are stored in units of 100 nanodegrees, the precision of OSM */
+    private static final double GRANULARITY = 1e-7;
+
+    private final DataOutputStream out;
+
+    /**
+     * Constructs a new {@code PbfWriter}.
+     * @param out the stream to write to
+     */
+    public PbfWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Writes the complete and not deleted primitives of a dataset. The caller has to hold the read lock of the dataset.
+     * @param ds the dataset
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeDataSet(DataSet ds) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        boolean historical = false;
+        for (Node n : sortById(ds.getNodes())) {
+            if (shouldWrite(n)) {
+                nodes.add(n);
+                historical |= !n.isVisible();
+            }
+        }
+        List<Way> ways = new ArrayList<>();
+        for (Way w : sortById(ds.getWays())) {
+            if (shouldWrite(w)) {
+                ways.add(w);
+                historical |= !w.isVisible();
+            }
+        }
+        List<Relation> relations = new ArrayList<>();
+        for (Relation r : sortById(ds.getRelations())) {
+            if (shouldWrite(r)) {
+                relations.add(r);
+                historical |= !r.isVisible();
+            }
+        }
+
+        writeHeader(ds.dataSources, historical);
+        List<BlockEncoder> tasks = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i += BLOCK_SIZE) {
+            tasks.add(new BlockEncoder(nodes.subList(i, Math.min(nodes.size(), i + BLOCK_SIZE)), historical));
+        }
+        for (int i = 0; i < ways.size(); i += BLOCK_SIZE) {
+            tasks.add(new BlockEncoder(ways.subList(i, Math.min(ways.size(), i + BLOCK_SIZE)), historical));
+        }
+        for (int i = 0; i < relations.size(); i += BLOCK_SIZE) {
+            tasks.add(new BlockEncoder(relations.subList(i, Math.min(relations.size(), i + BLOCK_SIZE)), historical));
+        }
+        writeBlocks(tasks);
+        out.flush();
+    }
+
+    private static <T extends OsmPrimitive> List<T> sortById(Collection<T> primitives) {
+        List<T> result = new ArrayList<>(primitives);
+        Collections.sort(result, OsmWriter.byIdComparator);
+        return result;
+    }
+
+    private static boolean shouldWrite(OsmPrimitive osm) {
+        return !osm.isIncomplete() && !osm.isDeleted();
+    }
+
+    private void writeHeader(Collection<DataSource> dataSources, boolean historical) throws IOException {
+        ProtobufWriter header = new ProtobufWriter(256);
+        Bounds bounds = null;
+        String source = null;
+        for (DataSource s : dataSources) {
+            if (bounds == null) {
+                bounds = new Bounds(s.bounds);
+                source = s.origin;
+            } else {
+                bounds.extend(s.bounds);
+            }
+        }
+        if (bounds != null) {
+            // left, right, top, bottom in nanodegrees
+            ProtobufWriter bbox = new ProtobufWriter(32);
+            bbox.writeSignedVarint(1, Math.round(bounds.getMinLon() * 1e9));
+            bbox.writeSignedVarint(2, Math.round(bounds.getMaxLon() * 1e9));
+            bbox.writeSignedVarint(3, Math.round(bounds.getMaxLat() * 1e9));
+            bbox.writeSignedVarint(4, Math.round(bounds.getMinLat() * 1e9));
+            header.writeMessage(1, bbox);
+        }
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+        if (historical) {
+            header.writeString(4, "HistoricalInformation");
+        }
+        header.writeString(5, "Sort.Type_then_ID");
+        header.writeString(16, "JOSM");
+        if (source != null) {
+            header.writeString(17, source);
+        }
+        writeBlob("OSMHeader", header);
+    }
+
+    private void writeBlocks(List<BlockEncoder> tasks) throws IOException {
+        if (ThreadPoolHolder.THREAD_POOL.a <= 1) {
+            for (BlockEncoder task : tasks) {
+                out.write(task.call());
+            }
+            return;
+        }
+        // the blocks being encoded, in the order of the file
+        Queue<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            for (BlockEncoder task : tasks) {
+                pending.add(ThreadPoolHolder.THREAD_POOL.b.submit(task));
+                // limit the number of blocks in memory
+                if (pending.size() >= 2 * ThreadPoolHolder.THREAD_POOL.a) {
+                    out.write(get(pending.remove()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(get(pending.remove()));
+            }
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeBlob(String type, ProtobufWriter data) throws IOException {
+        out.write(encodeBlob(type, data));
+    }
+
+    /**
+     * Compresses a block and frames it with its blob header.
+     * @param type the type of the block, {@code OSMHeader} or {@code OSMData}
+     * @param data the encoded block
+     * @return the bytes to write to the file
+     */
+    private static byte[] encodeBlob(String type, ProtobufWriter data) {
+        ProtobufWriter blob = new ProtobufWriter(data.size() / 2 + 64);
+        blob.writeVarint(2, data.size());
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data.getBuffer(), 0, data.size());
+            deflater.finish();
+            byte[] compressed = new byte[Math.max(64, data.size() / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            blob.writeBytes(3, compressed, length);
+        } finally {
+            deflater.end();
+        }
+        ProtobufWriter header = new ProtobufWriter(32);
+        header.writeString(1, type);
+        header.writeVarint(3, blob.size());
+        byte[] result = new byte[4 + header.size() + blob.size()];
+        int headerSize = header.size();
+        result[0] = (byte) (headerSize >>> 24);
+        result[1] = (byte) (headerSize >>> 16);
+        result[2] = (byte) (headerSize >>> 8);
+        result[3] = (byte) headerSize;
+        System.arraycopy(header.getBuffer(), 0, result, 4, headerSize);
+        System.arraycopy(blob.getBuffer(), 0, result, 4 + headerSize, blob.size());
+        return result;
+    }
+
+    /**
+     * Encodes and compresses a block of primitives of the same type.
+     */
+    private static final class BlockEncoder implements Callable<byte[]> {
+        private final List<? extends OsmPrimitive> primitives;
+        private final boolean historical;
+
+        private final Map<String, Integer> stringIndexes = new HashMap<>();
+        private final ProtobufWriter strings = new ProtobufWriter(1024);
+        private final ProtobufWriter scratch = new ProtobufWriter(1024);
+        private long[] values = new long[BLOCK_SIZE];
+
+        BlockEncoder(List<? extends OsmPrimitive> primitives, boolean historical) {
+            this.primitives = primitives;
+            this.historical = historical;
+            // index 0 is reserved as delimiter
+            getStringIndex("");
+        }
+
+        private int getStringIndex(String s) {
+            Integer index = stringIndexes.get(s);
+            if (index == null) {
+                index = stringIndexes.size();
+                stringIndexes.put(s, index);
+                strings.writeString(1, s);
+            }
+            return index;
+        }
+
+        private long[] getValues(int size) {
+            if (values.length < size) {
+                values = Arrays.copyOf(values, Math.max(size, values.length * 2));
+            }
+            return values;
+        }
+
+        private static long getUid(OsmPrimitive osm) {
+            User user = osm.getUser();
+            return user != null && user.isOsmUser() ? user.getId() : 0;
+        }
+
+        private int getUserSid(OsmPrimitive osm) {
+            User user = osm.getUser();
+            return user != null && (user.isOsmUser() || user.isLocalUser()) ? getStringIndex(user.getName()) : 0;
+        }
+
+        private static long getChangesetId(OsmPrimitive osm) {
+            return osm.isNew() ? 0 : osm.getChangesetId();
+        }
+
+        private static long getTimestamp(OsmPrimitive osm) {
+            return osm.isTimestampEmpty() ? 0 : osm.getTimestamp().getTime() / 1000;
+        }
+
+        @Override
+        public byte[] call() {
+            ProtobufWriter group = new ProtobufWriter(BLOCK_SIZE * 16);
+            if (primitives.get(0) instanceof Node) {
+                encodeDenseNodes(group);
+            } else {
+                for (OsmPrimitive osm : primitives) {
+                    if (osm instanceof Way) {
+                        group.writeMessage(3, encodeWay((Way) osm));
+                    } else {
+                        group.writeMessage(4, encodeRelation((Relation) osm));
+                    }
+                }
+            }
+            ProtobufWriter block = new ProtobufWriter(strings.size() + group.size() + 16);
+            block.writeMessage(1, strings);
+            block.writeMessage(2, group);
+            return encodeBlob("OSMData", block);
+        }
+
+        private void encodeDenseNodes(ProtobufWriter group) {
+            int count = primitives.size();
+            ProtobufWriter dense = new ProtobufWriter(count * 16);
+            long[] v = getValues(count);
+
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long id = primitives.get(i).getUniqueId();
+                v[i] = ProtobufWriter.encodeZigZag(id - last);
+                last = id;
+            }
+            dense.writePackedVarints(1, v, count, scratch);
+
+            ProtobufWriter info = new ProtobufWriter(count * 8);
+            for (int i = 0; i < count; i++) {
+                v[i] = primitives.get(i).getVersion();
+            }
+            info.writePackedVarints(1, v, count, scratch);
+            last = 0;
+            for (int i = 0; i < count; i++) {
+                long timestamp = getTimestamp(primitives.get(i));
+                v[i] = ProtobufWriter.encodeZigZag(timestamp - last);
+                last = timestamp;
+            }
+            info.writePackedVarints(2, v, count, scratch);
+            last = 0;
+            for (int i = 0; i < count; i++) {
+                long changeset = getChangesetId(primitives.get(i));
+                v[i] = ProtobufWriter.encodeZigZag(changeset - last);
+                last = changeset;
+            }
+            info.writePackedVarints(3, v, count, scratch);
+            last = 0;
+            for (int i = 0; i < count; i++) {
+                long uid = getUid(primitives.get(i));
+                v[i] = ProtobufWriter.encodeZigZag(uid - last);
+                last = uid;
+            }
+            info.writePackedVarints(4, v, count, scratch);
+            last = 0;
+            for (int i = 0; i < count; i++) {
+                long sid = getUserSid(primitives.get(i));
+                v[i] = ProtobufWriter.encodeZigZag(sid - last);
+                last = sid;
+            }
+            info.writePackedVarints(5, v, count, scratch);
+            if (historical) {
+                for (int i = 0; i < count; i++) {
+                    v[i] = primitives.get(i).isVisible() ? 1 : 0;
+                }
+                info.writePackedVarints(6, v, count, scratch);
+            }
+            dense.writeMessage(5, info);
+
+            long lastLat = 0;
+            long lastLon = 0;
+            long[] lons = new long[count];
+            for (int i = 0; i < count; i++) {
+                LatLon coor = ((Node) primitives.get(i)).getCoor();
+                long lat = Math.round(coor.lat() / GRANULARITY);
+                long lon = Math.round(coor.lon() / GRANULARITY);
+                v[i] = ProtobufWriter.encodeZigZag(lat - lastLat);
+                lons[i] = ProtobufWriter.encodeZigZag(lon - lastLon);
+                lastLat = lat;
+                lastLon = lon;
+            }
+            dense.writePackedVarints(8, v, count, scratch);
+            dense.writePackedVarints(9, lons, count, scratch);
+
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                OsmPrimitive n = primitives.get(i);
+                v = getValues(size + 2 * n.getNumKeys() + 1);
+                for (Map.Entry<String, String> tag : n.getKeys().entrySet()) {
+                    v[size++] = getStringIndex(tag.getKey());
+                    v[size++] = getStringIndex(tag.getValue());
+                }
+                v[size++] = 0;
+            }
+            if (size > count) {
+                dense.writePackedVarints(10, v, size, scratch);
+            }
+            group.writeMessage(2, dense);
+        }
+
+        private void encodeCommon(OsmPrimitive osm, ProtobufWriter message) {
+            message.writeVarint(1, osm.getUniqueId());
+            int count = osm.getNumKeys();
+            long[] v = getValues(count);
+            int i = 0;
+            Map<String, String> keys = osm.getKeys();
+            for (String key : keys.keySet()) {
+                v[i++] = getStringIndex(key);
+            }
+            message.writePackedVarints(2, v, count, scratch);
+            i = 0;
+            for (String value : keys.values()) {
+                v[i++] = getStringIndex(value);
+            }
+            message.writePackedVarints(3, v, count, scratch);
+
+            ProtobufWriter info = new ProtobufWriter(32);
+            info.writeVarint(1, osm.getVersion());
+            info.writeVarint(2, getTimestamp(osm));
+            info.writeVarint(3, getChangesetId(osm));
+            info.writeVarint(4, getUid(osm));
+            info.writeVarint(5, getUserSid(osm));
+            if (historical) {
+                info.writeVarint(6, osm.isVisible() ? 1 : 0);
+            }
+            message.writeMessage(4, info);
+        }
+
+        private ProtobufWriter encodeWay(Way w) {
+            ProtobufWriter way = new ProtobufWriter(64);
+            encodeCommon(w, way);
+            int count = w.getNodesCount();
+            long[] v = getValues(count);
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long id = w.getNodeId(i);
+                v[i] = ProtobufWriter.encodeZigZag(id - last);
+                last = id;
+            }
+            way.writePackedVarints(8, v, count, scratch);
+            return way;
+        }
+
+        private ProtobufWriter encodeRelation(Relation r) {
+            ProtobufWriter relation = new ProtobufWriter(64);
+            encodeCommon(r, relation);
+            List<RelationMember> members = r.getMembers();
+            int count = members.size();
+            long[] v = getValues(count);
+            for (int i = 0; i < count; i++) {
+                v[i] = getStringIndex(members.get(i).getRole());
+            }
+            relation.writePackedVarints(8, v, count, scratch);
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                long id = members.get(i).getUniqueId();
+                v[i] = ProtobufWriter.encodeZigZag(id - last);
+                last = id;
+            }
+            relation.writePackedVarints(9, v, count, scratch);
+            for (int i = 0; i < count; i++) {
+                switch (members.get(i).getType()) {
+                case NODE:
+                    v[i] = 0;
+                    break;
+                case WAY:
+                    v[i] = 1;
+                    break;
+                default:
+                    v[i] = 2;
+                }
+            }
+            relation.writePackedVarints(10, v, count, scratch);
+            return relation;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,211 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the fields of a Protocol Buffers message from a byte array, see
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding">the encoding</a>.
+ *
+ * Only the wire format is decoded: the caller knows the schema and asks for the value of each field in the
+ * expected type. Nested messages are read by a new reader on the same array, without copying.
+ * @see ProtobufWriter
+ */
+final class ProtobufReader {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private int pos;
+    private final int limit;
+    private int wireType;
+
+    /**
+     * Constructs a new {@code ProtobufReader} for a whole array.
+     * @param buf the encoded message
+     */
+    ProtobufReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    private ProtobufReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Determines if there are more fields to read.
+     * @return {@code true} if there are more fields to read
+     */
+    boolean hasNext() {
+        return pos < limit;
+    }
+
+    /**
+     * Reads the key of the next field.
+     * @return the field number
+     * @throws IllegalDataException if the message is malformed
+     */
+    int nextField() throws IllegalDataException {
+        int key = (int) readVarint();
+        wireType = key & 7;
+        return key >>> 3;
+    }
+
+    /**
+     * Replies the wire type of the field read last by {@link #nextField()}.
+     * @return the wire type
+     */
+    int getWireType() {
+        return wireType;
+    }
+
+    /**
+     * Reads a varint value, i.e. of type {@code int32}, {@code int64}, {@code uint32}, {@code uint64},
+     * {@code bool} or {@code enum}.
+     * @return the value
+     * @throws IllegalDataException if the message is malformed
+     */
+    long readVarint() throws IllegalDataException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit)
+                throw truncated();
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IllegalDataException(tr("Malformed varint in Protocol Buffers message"));
+    }
+
+    /**
+     * Reads a value of type {@code sint32} or {@code sint64}.
+     * @return the value
+     * @throws IllegalDataException if the message is malformed
+     */
+    long readSignedVarint() throws IllegalDataException {
+        return decodeZigZag(readVarint());
+    }
+
+    /**
+     * Decodes a ZigZag encoded value of type {@code sint32} or {@code sint64}.
+     * @param n the encoded value
+     * @return the value
+     */
+    static long decodeZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Reads a value of type {@code bytes}.
+     * @return the value
+     * @throws IllegalDataException if the message is malformed
+     */
+    byte[] readBytes() throws IllegalDataException {
+        int length = readLength();
+        byte[] result = Arrays.copyOfRange(buf, pos, pos + length);
+        pos += length;
+        return result;
+    }
+
+    /**
+     * Reads a value of type {@code string}.
+     * @return the value
+     * @throws IllegalDataException if the message is malformed
+     */
+    String readString() throws IllegalDataException {
+        int length = readLength();
+        String result = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return result;
+    }
+
+    /**
+     * Reads an embedded message, or a packed repeated field as a sequence of values.
+     * @return the reader of the embedded message
+     * @throws IllegalDataException if the message is malformed
+     */
+    ProtobufReader readMessage() throws IllegalDataException {
+        int length = readLength();
+        ProtobufReader result = new ProtobufReader(buf, pos, length);
+        pos += length;
+        return result;
+    }
+
+    /**
+     * Reads the values of a repeated varint field. Packed and not packed fields are supported.
+     * @param previous the values of previous occurrences of the same field, can be {@code null}
+     * @return the raw varint values, appended to {@code previous}
+     * @throws IllegalDataException if the message is malformed
+     */
+    long[] readVarints(long[] previous) throws IllegalDataException {
+        long[] result;
+        int offset = previous == null ? 0 : previous.length;
+        if (wireType == LENGTH_DELIMITED) {
+            ProtobufReader packed = readMessage();
+            // every value ends with a byte without the continuation bit
+            int count = 0;
+            for (int i = packed.pos; i < packed.limit; i++) {
+                if (buf[i] >= 0) {
+                    count++;
+                }
+            }
+            result = previous == null ? new long[count] : Arrays.copyOf(previous, offset + count);
+            for (int i = offset; i < result.length; i++) {
+                result[i] = packed.readVarint();
+            }
+        } else {
+            result = previous == null ? new long[1] : Arrays.copyOf(previous, offset + 1);
+            result[offset] = readVarint();
+        }
+        return result;
+    }
+
+    /**
+     * Skips the value of the field read last by {@link #nextField()}.
+     * @throws IllegalDataException if the message is malformed
+     */
+    void skip() throws IllegalDataException {
+        switch (wireType) {
+        case VARINT:
+            readVarint();
+            break;
+        case FIXED64:
+            advance(8);
+            break;
+        case LENGTH_DELIMITED:
+            advance(readLength());
+            break;
+        case FIXED32:
+            advance(4);
+            break;
+        default:
+            throw new IllegalDataException(tr("Unsupported wire type {0} in Protocol Buffers message", wireType));
+        }
+    }
+
+    private int readLength() throws IllegalDataException {
+        long length = readVarint();
+        if (length < 0 || length > limit - pos)
+            throw truncated();
+        return (int) length;
+    }
+
+    private void advance(int length) throws IllegalDataException {
+        if (length > limit - pos)
+            throw truncated();
+        pos += length;
+    }
+
+    private static IllegalDataException truncated() {
+        return new IllegalDataException(tr("Truncated Protocol Buffers message"));
+    }
+}
@@ -0,0 +1,156 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes a Protocol Buffers message into a growing byte array, see
+ * <a href="https://developers.google.com/protocol-buffers/docs/encoding">the encoding</a>.
+ * @see ProtobufReader
+ */
+final class ProtobufWriter {
+
+    private byte[] buf;
+    private int size;
+
+    /**
+     * Constructs a new {@code ProtobufWriter}.
+     * @param capacity the initial capacity in bytes
+     */
+    ProtobufWriter(int capacity) {
+        buf = new byte[Math.max(16, capacity)];
+    }
+
+    private void ensureCapacity(int more) {
+        if (size + more > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(size + more, buf.length * 2));
+        }
+    }
+
+    private void writeRawVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buf[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    private void writeKey(int field, int wireType) {
+        writeRawVarint((field << 3) | wireType);
+    }
+
+    /**
+     * Encodes a value of type {@code sint32} or {@code sint64} with ZigZag encoding.
+     * @param n the value
+     * @return the encoded value
+     */
+    static long encodeZigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * Writes a varint field, i.e. of type {@code int32}, {@code int64}, {@code uint32}, {@code uint64},
+     * {@code bool} or {@code enum}.
+     * @param field the field number
+     * @param value the value
+     */
+    void writeVarint(int field, long value) {
+        writeKey(field, ProtobufReader.VARINT);
+        writeRawVarint(value);
+    }
+
+    /**
+     * Writes a field of type {@code sint32} or {@code sint64}.
+     * @param field the field number
+     * @param value the value
+     */
+    void writeSignedVarint(int field, long value) {
+        writeVarint(field, encodeZigZag(value));
+    }
+
+    /**
+     * Writes a field of type {@code bytes}.
+     * @param field the field number
+     * @param value the value
+     * @param length the number of bytes of {@code value} to write
+     */
+    void writeBytes(int field, byte[] value, int length) {
+        writeKey(field, ProtobufReader.LENGTH_DELIMITED);
+        writeRawVarint(length);
+        ensureCapacity(length);
+        System.arraycopy(value, 0, buf, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a field of type {@code string}.
+     * @param field the field number
+     * @param value the value
+     */
+    void writeString(int field, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeBytes(field, bytes, bytes.length);
+    }
+
+    /**
+     * Writes an embedded message.
+     * @param field the field number
+     * @param message the encoded message
+     */
+    void writeMessage(int field, ProtobufWriter message) {
+        writeBytes(field, message.buf, message.size);
+    }
+
+    /**
+     * Writes a packed repeated varint field, unless there are no values.
+     * @param field the field number
+     * @param values the values, already ZigZag or delta encoded where required
+     * @param count the number of values to write
+     * @param scratch a writer to encode the values with, which is reset
+     */
+    void writePackedVarints(int field, long[] values, int count, ProtobufWriter scratch) {
+        if (count == 0)
+            return;
+        scratch.reset();
+        for (int i = 0; i < count; i++) {
+            scratch.writeRawVarint(values[i]);
+        }
+        writeMessage(field, scratch);
+    }
+
+    /**
+     * Replies the number of bytes written.
+     * @return the number of bytes written
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Replies the internal array, which holds the encoded message in the first {@link #size()} bytes.
+     * @return the internal array
+     */
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Writes the encoded message to a stream.
+     * @param out the stream
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, size);
+    }
+
+    /**
+     * Removes all bytes written, keeping the capacity.
+     */
+    void reset() {
+        size = 0;
+    }
+}
@@ -0,0 +1,143 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An input stream which reads another stream ahead in a background thread. The work to produce the data,
+ * e.g. decompressing it or waiting for the network, overlaps with the work of the thread consuming it.
+ *
+ * The data is passed in chunks through a bounded queue, so at most {@code CHUNK_SIZE * QUEUE_CAPACITY}
+ * bytes are read ahead.
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final class Chunk {
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /** marks the end of the stream in the queue */
+    private static final Chunk END = new Chunk(new byte[0], 0, null);
+
+    private final InputStream in;
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Future<?> reader;
+    private Chunk current;
+    private int pos;
+
+    /**
+     * Constructs a new {@code ReadAheadInputStream} and starts reading.
+     * @param in the stream to read ahead. Is closed when this stream is closed.
+     * @param executor the executor to run the background thread in
+     */
+    ReadAheadInputStream(InputStream in, ExecutorService executor) {
+        this.in = in;
+        this.reader = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        });
+    }
+
+    private void readAhead() {
+        try {
+            try {
+                boolean eof = false;
+                while (!eof) {
+                    byte[] buf = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    while (length < buf.length) {
+                        int n = in.read(buf, length, buf.length - length);
+                        if (n < 0) {
+                            eof = true;
+                            break;
+                        }
+                        length += n;
+                    }
+                    if (length > 0) {
+                        queue.put(new Chunk(buf, length, null));
+                    }
+                }
+                queue.put(END);
+            } catch (IOException e) {
+                queue.put(new Chunk(null, 0, e));
+            } catch (RuntimeException e) {
+                queue.put(new Chunk(null, 0, new IOException(e)));
+            }
+        } catch (InterruptedException e) {
+            // the stream has been closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes sure that there is data left in the current chunk.
+     * @return {@code false} at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (current != null && pos < current.length)
+            return true;
+        if (current == END)
+            return false;
+        if (current != null && current.error != null)
+            throw current.error;
+        try {
+            current = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        pos = 0;
+        if (current.error != null)
+            throw current.error;
+        return current != END;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return current.data[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current != null ? current.length - pos : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.cancel(true);
+        in.close();
+    }
+}
@@ -4,8 +4,6 @@ package org.openstreetmap.josm.io;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Helper class to use for xml outputting classes.
@@ -35,7 +33,8 @@ public class XmlWriter implements Closeable {
 
     /**
      * Encode the given string in XML1.0 format.
-     * Optimized to fast pass strings that don't need encoding (normal case).
+     * Optimized to fast pass strings that don't need encoding (normal case). The characters to encode are looked up
+     * in a table indexed by character.
      *
      * @param unencoded the unencoded input string
      * @param keepApos true if apostrophe sign should stay as it is (in order to work around
@@ -44,37 +43,46 @@ public class XmlWriter implements Closeable {
      * literally as 6 character string, see #7558)
      */
     public static String encode(String unencoded, boolean keepApos) {
-        StringBuilder buffer = null;
-        for (int i = 0; i < unencoded.length(); ++i) {
-            String encS = null;
-            if (!keepApos || unencoded.charAt(i) != '\'') {
-                encS = XmlWriter.encoding.get(unencoded.charAt(i));
-            }
+        int length = unencoded.length();
+        int i = 0;
+        while (i < length && getEncoding(unencoded.charAt(i), keepApos) == null) {
+            i++;
+        }
+        if (i == length)
+            return unencoded;
+        StringBuilder buffer = new StringBuilder(length + 16);
+        buffer.append(unencoded, 0, i);
+        for (; i < length; i++) {
+            char c = unencoded.charAt(i);
+            String encS = getEncoding(c, keepApos);
             if (encS != null) {
-                if (buffer == null) {
-                    buffer = new StringBuilder(unencoded.substring(0,i));
-                }
                 buffer.append(encS);
-            } else if (buffer != null) {
-                buffer.append(unencoded.charAt(i));
+            } else {
+                buffer.append(c);
             }
         }
-        return (buffer == null) ? unencoded : buffer.toString();
+        return buffer.toString();
+    }
+
+    private static String getEncoding(char c, boolean keepApos) {
+        if (c >= ENCODING.length || (keepApos && c == '\''))
+            return null;
+        return ENCODING[c];
     }
 
     /**
-     * The output writer to save the values to.
+     * The encoded form of the characters which have to be encoded, indexed by character.
      */
-    private static final Map<Character, String> encoding = new HashMap<>();
+    private static final String[] ENCODING = new String['>' + 1];
     static {
-        encoding.put('<', "&lt;");
-        encoding.put('>', "&gt;");
-        encoding.put('"', "&quot;");
-        encoding.put('\'', "&apos;");
-        encoding.put('&', "&amp;");
-        encoding.put('\n', "&#xA;");
-        encoding.put('\r', "&#xD;");
-        encoding.put('\t', "&#x9;");
+        ENCODING['<'] = "&lt;";
+        ENCODING['>'] = "&gt;";
+        ENCODING['"'] = "&quot;";
+        ENCODING['\''] = "&apos;";
+        ENCODING['&'] = "&amp;";
+        ENCODING['\n'] = "&#xA;";
+        ENCODING['\r'] = "&#xD;";
+        ENCODING['\t'] = "&#x9;";
     }
 
     @Override
@@ -12,6 +12,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -34,10 +35,12 @@ import javax.swing.JRadioButton;
 import javax.swing.SwingConstants;
 
 import org.openstreetmap.josm.actions.SaveAction;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.gui.widgets.JosmTextField;
+import org.openstreetmap.josm.io.OsmSnapshotWriter;
 import org.openstreetmap.josm.io.OsmWriter;
 import org.openstreetmap.josm.io.OsmWriterFactory;
 import org.openstreetmap.josm.io.session.SessionWriter.ExportSupport;
@@ -47,6 +50,12 @@ import org.w3c.dom.Element;
 
 public class OsmDataSessionExporter implements SessionLayerExporter {
 
+    /**
+     * Defines if a binary snapshot of the layer is included next to the OSM data, which is much faster to read.
+     * @see OsmSnapshotWriter
+     */
+    public static final BooleanProperty PROP_SNAPSHOT = new BooleanProperty("session.osm-data.snapshot", true);
+
     private OsmDataLayer layer;
     private JRadioButton link, include;
     private JCheckBox export;
@@ -192,9 +201,36 @@ public class OsmDataSessionExporter implements SessionLayerExporter {
         layerEl.appendChild(file);
 
         if (requiresZip()) {
-            String zipPath = "layers/" + String.format("%02d", support.getLayerIndex()) + "/data.osm";
+            String zipDir = "layers/" + String.format("%02d", support.getLayerIndex());
+            String zipPath = zipDir + "/data.osm";
             file.appendChild(support.createTextNode(zipPath));
-            addDataFile(support.getOutputStreamZip(zipPath));
+            File snapshot = null;
+            // hold the lock for both, so that the snapshot does not differ from the data
+            layer.data.getReadLock().lock();
+            try {
+                addDataFile(support.getOutputStreamZip(zipPath));
+                if (PROP_SNAPSHOT.get()) {
+                    snapshot = File.createTempFile("josm-session", ".snapshot");
+                    try (OsmSnapshotWriter writer = new OsmSnapshotWriter(new FileOutputStream(snapshot))) {
+                        writer.write(layer.data, layer.getConflicts());
+                    }
+                }
+            } finally {
+                layer.data.getReadLock().unlock();
+            }
+            if (snapshot != null) {
+                try {
+                    String snapshotPath = zipDir + "/data.snapshot";
+                    support.storeFileZip(snapshotPath, snapshot);
+                    Element snapshotEl = support.createElement("snapshot");
+                    snapshotEl.appendChild(support.createTextNode(snapshotPath));
+                    layerEl.appendChild(snapshotEl);
+                } finally {
+                    if (!snapshot.delete()) {
+                        snapshot.deleteOnExit();
+                    }
+                }
+            }
         } else {
             URI uri = layer.getAssociatedFile().toURI();
             URL url = null;
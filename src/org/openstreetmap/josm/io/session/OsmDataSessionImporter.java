@@ -12,10 +12,13 @@ import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.io.IllegalDataException;
 import org.openstreetmap.josm.io.OsmImporter;
+import org.openstreetmap.josm.io.OsmSnapshotReader;
 import org.openstreetmap.josm.io.session.SessionReader.ImportSupport;
 import org.w3c.dom.Element;
 
@@ -37,6 +40,22 @@ public class OsmDataSessionImporter implements SessionLayerImporter {
             }
 
             OsmImporter importer = new OsmImporter();
+            String snapshotStr = (String) xpath.compile("snapshot/text()").evaluate(elem, XPathConstants.STRING);
+            if (snapshotStr != null && !snapshotStr.isEmpty()) {
+                try {
+                    OsmSnapshotReader reader = new OsmSnapshotReader(support.getByteBuffer(snapshotStr));
+                    DataSet ds = reader.parse(progressMonitor);
+                    OsmImporter.OsmImporterData importData = importer.loadLayer(ds, support.getFile(fileStr), support.getLayerName());
+                    importData.getLayer().getConflicts().add(reader.getConflicts());
+
+                    support.addPostLayersTask(importData.getPostLayerTask());
+                    return importData.getLayer();
+                } catch (IOException | IllegalDataException e) {
+                    // the OSM data is always stored as well
+                    Main.warn(tr("Unable to read the snapshot of layer no. {0}, reading its OSM data instead: {1}",
+                            support.getLayerIndex(), e.getMessage()));
+                }
+            }
             try (InputStream in = support.getInputStream(fileStr)) {
                 OsmImporter.OsmImporterData importData = importer.loadLayer(in, support.getFile(fileStr), support.getLayerName(), progressMonitor);
 
@@ -5,6 +5,8 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.GraphicsEnvironment;
 import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -13,8 +15,13 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -189,6 +196,41 @@ public class SessionReader {
             throw new IOException(tr("Unable to locate file  ''{0}''.", uriStr));
         }
 
+        /**
+         * Return the contents of a file for a URI from a .jos/.joz file, see {@link #getInputStream(String)}.
+         *
+         * The file is mapped into memory if possible, which is the case for files outside the zip archive
+         * and for files stored uncompressed inside, see {@link SessionWriter.ExportSupport#storeFileZip}.
+         *
+         * @throws IOException Thrown when the file cannot be read, e.g. when the linked file has been deleted.
+         */
+        public ByteBuffer getByteBuffer(String uriStr) throws IOException {
+            File file = getFile(uriStr);
+            if (file != null) {
+                if (!file.isFile())
+                    throw new IOException(tr("File ''{0}'' does not exist.", file.getPath()));
+                return map(file, 0, file.length());
+            } else if (inZipPath != null) {
+                ZipEntry entry = zipFile.getEntry(inZipPath);
+                if (entry != null) {
+                    if (entry.getMethod() == ZipEntry.STORED) {
+                        File archive = new File(zipFile.getName());
+                        long offset = getStoredEntryOffset(archive, inZipPath);
+                        if (offset >= 0)
+                            return map(archive, offset, entry.getSize());
+                    }
+                    if (entry.getSize() < 0 || entry.getSize() > Integer.MAX_VALUE)
+                        throw new IOException(tr("File ''{0}'' is too large.", uriStr));
+                    byte[] data = new byte[(int) entry.getSize()];
+                    try (DataInputStream in = new DataInputStream(zipFile.getInputStream(entry))) {
+                        in.readFully(data);
+                    }
+                    return ByteBuffer.wrap(data);
+                }
+            }
+            throw new IOException(tr("Unable to locate file  ''{0}''.", uriStr));
+        }
+
         /**
          * Return a File for a URI from a .jos/.joz file.
          *
@@ -559,6 +601,76 @@ public class SessionReader {
         }
     }
 
+    private static ByteBuffer map(File file, long offset, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Finds the position of the data of an entry in a zip archive, by means of the central directory of the archive.
+     * @param archive the zip archive
+     * @param name the name of the entry
+     * @return the position of the data, or -1 if it cannot be determined, e.g. for archives in the zip64 format
+     * @throws IOException if an I/O error occurs
+     */
+    static long getStoredEntryOffset(File archive, String name) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            // the end of central directory record is at the end, followed by a comment of up to 64 KiB
+            long size = channel.size();
+            int tailSize = (int) Math.min(size, 22 + 0xffff);
+            ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tail, size - tailSize);
+            int end = tailSize - 22;
+            while (end >= 0 && tail.getInt(end) != 0x06054b50) {
+                end--;
+            }
+            if (end < 0)
+                return -1;
+            int entries = tail.getShort(end + 10) & 0xffff;
+            long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+            long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+            if (directoryOffset == 0xffffffffL || directorySize > Integer.MAX_VALUE)
+                return -1;
+            ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, directory, directoryOffset);
+
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            int pos = 0;
+            for (int i = 0; i < entries && pos + 46 <= directory.limit(); i++) {
+                if (directory.getInt(pos) != 0x02014b50)
+                    return -1;
+                int nameLength = directory.getShort(pos + 28) & 0xffff;
+                int extraLength = directory.getShort(pos + 30) & 0xffff;
+                int commentLength = directory.getShort(pos + 32) & 0xffff;
+                if (nameLength == nameBytes.length && pos + 46 + nameLength <= directory.limit()) {
+                    byte[] entryName = new byte[nameLength];
+                    directory.position(pos + 46);
+                    directory.get(entryName);
+                    if (Arrays.equals(nameBytes, entryName)) {
+                        long headerOffset = directory.getInt(pos + 42) & 0xffffffffL;
+                        if (headerOffset == 0xffffffffL)
+                            return -1;
+                        ByteBuffer header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+                        readFully(channel, header, headerOffset);
+                        if (header.getInt(0) != 0x04034b50)
+                            return -1;
+                        return headerOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+                    }
+                }
+                pos += 46 + nameLength + extraLength + commentLength;
+            }
+            return -1;
+        }
+    }
+
     private InputStream createInputStream(File sessionFile, boolean zip) throws IOException, IllegalDataException {
         if (zip) {
             try {
@@ -3,9 +3,11 @@ package org.openstreetmap.josm.io.session;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.Constructor;
@@ -15,6 +17,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -146,6 +149,39 @@ public class SessionWriter {
             return zipOut;
         }
 
+        /**
+         * Store a file uncompressed inside the zip archive. Unlike the compressed files, it can be mapped
+         * into memory when the session is read, see {@link SessionReader.ImportSupport#getByteBuffer(String)}.
+         *
+         * @param zipPath the path inside the zip archive, e.g. "layers/03/data.snapshot"
+         * @param file the file to store
+         */
+        public void storeFileZip(String zipPath, File file) throws IOException {
+            if (!isZip()) throw new RuntimeException();
+            // an uncompressed entry needs its size and checksum in advance
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            ZipEntry entry = new ZipEntry(zipPath);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(file.length());
+            entry.setCompressedSize(file.length());
+            entry.setCrc(crc.getValue());
+            zipOut.putNextEntry(entry);
+            try (InputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    zipOut.write(buffer, 0, n);
+                }
+            }
+            zipOut.closeEntry();
+        }
+
         /**
          * Check, if the session is exported as a zip archive.
          *
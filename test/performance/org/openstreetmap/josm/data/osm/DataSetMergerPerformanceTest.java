@@ -0,0 +1,76 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Measures merging a big download into a big existing layer.
+ */
+public class DataSetMergerPerformanceTest {
+
+    private static final int NODE_COUNT = 200000;
+    private static final int WAY_COUNT = 20000;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createPerformanceTestFixture().init();
+        // only effective if the merger has not been used yet in this JVM
+        Main.pref.putInteger("datasetmerger.numberOfThreads", 4);
+    }
+
+    /**
+     * Creates a dataset with nodes in a grid and ways of 10 nodes each.
+     * @param firstId the id of the first node and way
+     * @param version the version of the primitives
+     * @return the dataset
+     */
+    private static DataSet createDataSet(int firstId, int version) {
+        DataSet ds = new DataSet();
+        List<OsmPrimitive> primitives = new ArrayList<>(NODE_COUNT + WAY_COUNT);
+        List<Node> nodes = new ArrayList<>(NODE_COUNT);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Node n = new Node(firstId + i, version);
+            n.setCoor(new LatLon((firstId + i) / 1000 * 0.0001, (firstId + i) % 1000 * 0.0001));
+            nodes.add(n);
+            primitives.add(n);
+        }
+        for (int i = 0; i < WAY_COUNT; i++) {
+            Way w = new Way(firstId + i, version);
+            w.setNodes(nodes.subList(i * 10, i * 10 + 10));
+            w.put("highway", "residential");
+            primitives.add(w);
+        }
+        ds.addPrimitives(primitives);
+        return ds;
+    }
+
+    /**
+     * Merges a download which overlaps half of the existing layer.
+     */
+    @Test
+    public void testMerge() {
+        for (int run = 0; run < 3; run++) {
+            DataSet target = createDataSet(1, 1);
+            DataSet source = createDataSet(NODE_COUNT / 2 + 1, 2);
+            long start = System.currentTimeMillis();
+            DataSetMerger merger = new DataSetMerger(target, source);
+            merger.merge();
+            System.out.println("Merging " + NODE_COUNT + " nodes and " + WAY_COUNT + " ways: "
+                    + (System.currentTimeMillis() - start) + " ms");
+            assertEquals(0, merger.getConflicts().size());
+            assertEquals(NODE_COUNT * 3 / 2, target.getNodes().size());
+        }
+    }
+}
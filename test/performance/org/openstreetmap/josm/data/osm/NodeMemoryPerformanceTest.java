@@ -0,0 +1,74 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Compares the heap used per node by a {@link DataSet} with the one used by a {@link CompactNodeStore}.
+ */
+public class NodeMemoryPerformanceTest {
+
+    private static final int NODE_COUNT = 500000;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createPerformanceTestFixture().init();
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static Node createNode(int i) {
+        Node n = new Node(i + 1, 1);
+        n.setCoor(new LatLon((i % 1000) / 1000.0, i / 1000 / 1000.0));
+        if (i % 10 == 0) {
+            n.put("highway", "crossing");
+        }
+        return n;
+    }
+
+    /**
+     * Measures bytes per node of both layouts.
+     */
+    @Test
+    public void testBytesPerNode() {
+        long before = usedMemory();
+        DataSet ds = new DataSet();
+        ds.beginUpdate();
+        try {
+            for (int i = 0; i < NODE_COUNT; i++) {
+                ds.addPrimitive(createNode(i));
+            }
+        } finally {
+            ds.endUpdate();
+        }
+        long dataSetBytes = usedMemory() - before;
+
+        before = usedMemory();
+        CompactNodeStore store = new CompactNodeStore(NODE_COUNT);
+        for (Node n : ds.getNodes()) {
+            store.add(n);
+        }
+        long storeBytes = usedMemory() - before;
+
+        System.out.println("DataSet:          " + dataSetBytes / NODE_COUNT + " bytes per node");
+        System.out.println("CompactNodeStore: " + storeBytes / NODE_COUNT + " bytes per node (estimated "
+                + store.estimateMemoryUsage() / NODE_COUNT + ")");
+
+        assertTrue(ds.getNodes().size() == store.size());
+        assertTrue(storeBytes < dataSetBytes);
+    }
+}
@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Compares id lookups through {@link PrimitiveIdMap} and a {@code HashMap<PrimitiveId, ...>} and measures
+ * time and garbage collections while loading a file with 1M ways.
+ */
+public class PrimitiveIdMapPerformanceTest {
+
+    private static final int WAY_COUNT = 1000000;
+    private static final int NODE_COUNT = 500000;
+    private static final int LOOKUP_COUNT = 5000000;
+
+    private static File file;
+
+    /**
+     * Setup test: writes an OSM file with {@link #NODE_COUNT} nodes and {@link #WAY_COUNT} ways.
+     * @throws Exception if the file cannot be written
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init();
+        file = File.createTempFile("josm-ways", ".osm");
+        Random random = new Random(0);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8))) {
+            out.println("<?xml version='1.0' encoding='UTF-8'?>");
+            out.println("<osm version='0.6' generator='JOSM'>");
+            for (int i = 1; i <= NODE_COUNT; i++) {
+                out.println("  <node id='" + i + "' version='1' visible='true' lat='" + random.nextDouble()
+                        + "' lon='" + random.nextDouble() + "' />");
+            }
+            for (int i = 1; i <= WAY_COUNT; i++) {
+                out.println("  <way id='" + i + "' version='1' visible='true'>");
+                int first = 1 + random.nextInt(NODE_COUNT - 4);
+                for (int j = 0; j < 4; j++) {
+                    out.println("    <nd ref='" + (first + j) + "' />");
+                }
+                out.println("    <tag k='highway' v='residential' />");
+                out.println("  </way>");
+            }
+            out.println("</osm>");
+        }
+    }
+
+    /**
+     * Removes the generated file.
+     */
+    @AfterClass
+    public static void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    private static long[] gcCountAndTime() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(0, gc.getCollectionCount());
+            result[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+
+    private static void print(String name, long start, long[] gcBefore) {
+        long[] gc = gcCountAndTime();
+        System.out.println(name + ": " + (System.currentTimeMillis() - start) + " ms, "
+                + (gc[0] - gcBefore[0]) + " collections, " + (gc[1] - gcBefore[1]) + " ms in GC");
+    }
+
+    /**
+     * Measures id lookup throughput.
+     */
+    @Test
+    public void testLookup() {
+        PrimitiveIdMap<Object> idMap = new PrimitiveIdMap<>();
+        Map<PrimitiveId, Object> hashMap = new HashMap<>();
+        for (int i = 1; i <= WAY_COUNT; i++) {
+            idMap.put(i, OsmPrimitiveType.WAY, Boolean.TRUE);
+            hashMap.put(new SimplePrimitiveId(i, OsmPrimitiveType.WAY), Boolean.TRUE);
+        }
+        for (int run = 0; run < 2; run++) {
+            Random random = new Random(1);
+            long[] gc = gcCountAndTime();
+            long start = System.currentTimeMillis();
+            int found = 0;
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                if (hashMap.get(new SimplePrimitiveId(1 + random.nextInt(WAY_COUNT), OsmPrimitiveType.WAY)) != null) {
+                    found++;
+                }
+            }
+            print("HashMap lookup", start, gc);
+            assertEquals(LOOKUP_COUNT, found);
+
+            random = new Random(1);
+            gc = gcCountAndTime();
+            start = System.currentTimeMillis();
+            found = 0;
+            for (int i = 0; i < LOOKUP_COUNT; i++) {
+                if (idMap.get(1 + random.nextInt(WAY_COUNT), OsmPrimitiveType.WAY) != null) {
+                    found++;
+                }
+            }
+            print("PrimitiveIdMap lookup", start, gc);
+            assertEquals(LOOKUP_COUNT, found);
+        }
+    }
+
+    /**
+     * Measures loading of the generated file.
+     * @throws Exception if the file cannot be read
+     */
+    @Test
+    public void testLoad() throws Exception {
+        for (int run = 0; run < 2; run++) {
+            System.gc();
+            long[] gc = gcCountAndTime();
+            long start = System.currentTimeMillis();
+            DataSet ds;
+            try (InputStream in = new FileInputStream(file)) {
+                ds = OsmReader.parseDataSet(in, null);
+            }
+            print("Load " + WAY_COUNT + " ways", start, gc);
+            assertEquals(WAY_COUNT, ds.getWays().size());
+            assertEquals(NODE_COUNT, ds.getNodes().size());
+        }
+    }
+}
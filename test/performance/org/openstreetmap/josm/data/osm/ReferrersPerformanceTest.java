@@ -0,0 +1,104 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Measures adding and removing referrers of heavily shared primitives, like the members of big boundary relations.
+ */
+public class ReferrersPerformanceTest {
+
+    private static final int WAY_COUNT = 20000;
+    private static final int RELATION_COUNT = 2000;
+    private static final int MEMBER_COUNT = 2000;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createPerformanceTestFixture().init();
+    }
+
+    /**
+     * Connects many ways to one junction node and removes them again.
+     */
+    @Test
+    public void testJunctionNode() {
+        for (int run = 0; run < 2; run++) {
+            Node junction = new Node(new LatLon(0, 0));
+            List<Way> ways = new ArrayList<>(WAY_COUNT);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < WAY_COUNT; i++) {
+                Way w = new Way();
+                w.setNodes(Collections.singletonList(junction));
+                ways.add(w);
+            }
+            long added = System.currentTimeMillis();
+            for (Way w : ways) {
+                w.setNodes(null);
+            }
+            System.out.println(WAY_COUNT + " ways at one node: " + (added - start) + " ms to add, "
+                    + (System.currentTimeMillis() - added) + " ms to remove");
+        }
+    }
+
+    /**
+     * Connects many ways to one junction node at once, like the readers do.
+     */
+    @Test
+    public void testJunctionNodeBulk() {
+        for (int run = 0; run < 2; run++) {
+            Node junction = new Node(new LatLon(0, 0));
+            List<Way> ways = new ArrayList<>(WAY_COUNT);
+            List<List<Node>> nodes = new ArrayList<>(WAY_COUNT);
+            for (int i = 0; i < WAY_COUNT; i++) {
+                ways.add(new Way());
+                nodes.add(Collections.singletonList(junction));
+            }
+            long start = System.currentTimeMillis();
+            Way.setNodes(ways, nodes);
+            System.out.println(WAY_COUNT + " ways at one node at once: " + (System.currentTimeMillis() - start) + " ms to add");
+        }
+    }
+
+    /**
+     * Creates many relations with the same members, like overlapping boundary relations, and clears them again.
+     */
+    @Test
+    public void testSharedMembers() {
+        for (int run = 0; run < 2; run++) {
+            DataSet ds = new DataSet();
+            List<RelationMember> members = new ArrayList<>(MEMBER_COUNT);
+            for (int i = 0; i < MEMBER_COUNT; i++) {
+                Way w = new Way();
+                ds.addPrimitive(w);
+                members.add(new RelationMember("outer", w));
+            }
+            List<Relation> relations = new ArrayList<>(RELATION_COUNT);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < RELATION_COUNT; i++) {
+                Relation r = new Relation();
+                r.setMembers(members);
+                ds.addPrimitive(r);
+                relations.add(r);
+            }
+            long added = System.currentTimeMillis();
+            assertEquals(RELATION_COUNT, members.get(0).getMember().getReferrers().size());
+            for (Relation r : relations) {
+                r.setMembers(null);
+            }
+            System.out.println(RELATION_COUNT + " relations with " + MEMBER_COUNT + " shared members: "
+                    + (added - start) + " ms to add, " + (System.currentTimeMillis() - added) + " ms to remove");
+        }
+    }
+}
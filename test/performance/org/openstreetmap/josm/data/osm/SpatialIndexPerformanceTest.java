@@ -0,0 +1,123 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Compares build time, bbox query latency and memory of {@link QuadBuckets} and {@link RTree}.
+ */
+public class SpatialIndexPerformanceTest {
+
+    private static final int NODE_COUNT = 500000;
+    private static final int QUERY_COUNT = 20000;
+
+    private static List<Node> nodes;
+    private static List<BBox> queries;
+
+    /**
+     * Setup test: creates clustered nodes, similar to dense urban areas, and query boxes of typical map view size.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createPerformanceTestFixture().init();
+        Random random = new Random(0);
+        nodes = new ArrayList<>(NODE_COUNT);
+        for (int i = 0; i < NODE_COUNT; i++) {
+            double centerLat = 48 + (i % 10) * 0.1;
+            double centerLon = 11 + (i % 7) * 0.1;
+            Node n = new Node(i + 1, 1);
+            n.setCoor(new LatLon(centerLat + random.nextGaussian() * 0.01, centerLon + random.nextGaussian() * 0.01));
+            nodes.add(n);
+        }
+        queries = new ArrayList<>(QUERY_COUNT);
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            double lat = 48 + random.nextDouble();
+            double lon = 11 + random.nextDouble() * 0.7;
+            queries.add(new BBox(lon, lat, lon + 0.005, lat + 0.005));
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long query(SpatialIndex<Node> index, String name) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (BBox bbox : queries) {
+            found += index.search(bbox).size();
+        }
+        long duration = System.nanoTime() - start;
+        System.out.println(name + ": " + duration / 1000 / QUERY_COUNT + " us per query");
+        return found;
+    }
+
+    private static QuadBuckets<Node> buildQuadBuckets() {
+        QuadBuckets<Node> result = new QuadBuckets<>();
+        for (Node n : nodes) {
+            result.add(n);
+        }
+        return result;
+    }
+
+    private static RTree<Node> buildRTreeIncrementally() {
+        RTree<Node> result = new RTree<>();
+        for (Node n : nodes) {
+            result.add(n);
+        }
+        return result;
+    }
+
+    private static RTree<Node> buildRTreeBulk() {
+        return new RTree<>(nodes);
+    }
+
+    private static void printBuild(String name, long start, long before) {
+        System.out.println(name + ": " + (System.currentTimeMillis() - start) + " ms, "
+                + (usedMemory() - before) / NODE_COUNT + " bytes per node");
+    }
+
+    /**
+     * Measures QuadBuckets, incrementally built and bulk-loaded RTree. Each build is run once for warm up.
+     */
+    @Test
+    public void testBuildQueryMemory() {
+        buildQuadBuckets();
+        long before = usedMemory();
+        long start = System.currentTimeMillis();
+        QuadBuckets<Node> quadBuckets = buildQuadBuckets();
+        printBuild("QuadBuckets build", start, before);
+
+        buildRTreeIncrementally();
+        before = usedMemory();
+        start = System.currentTimeMillis();
+        RTree<Node> incremental = buildRTreeIncrementally();
+        printBuild("RTree incremental build (height " + incremental.getHeight() + ")", start, before);
+
+        buildRTreeBulk();
+        before = usedMemory();
+        start = System.currentTimeMillis();
+        RTree<Node> bulk = buildRTreeBulk();
+        printBuild("RTree bulk load (height " + bulk.getHeight() + ")", start, before);
+
+        query(quadBuckets, "QuadBuckets (warm up)");
+        query(bulk, "RTree (warm up)");
+
+        long expected = query(quadBuckets, "QuadBuckets query");
+        assertEquals(expected, query(incremental, "RTree incremental query"));
+        assertEquals(expected, query(bulk, "RTree bulk query"));
+    }
+}
@@ -6,6 +6,8 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -60,6 +62,42 @@ public class StyledMapRendererPerformanceTest {
         }
     }
 
+    private static long measure(StyledMapRenderer renderer, int iterations, DataSet ds, Bounds bounds, String name) {
+        // warm up
+        for (int i=0; i<3; i++) {
+            renderer.render(ds, true, bounds);
+        }
+        long start = System.currentTimeMillis();
+        for (int i=0; i<iterations; i++) {
+            renderer.render(ds, true, bounds);
+        }
+        long duration = (System.currentTimeMillis() - start) / iterations;
+        System.out.println(name + ": " + duration + " ms per frame");
+        return duration;
+    }
+
+    /**
+     * Compares painting the map at once and in parallel bands, using one thread per processor.
+     */
+    private static void testParallel(int iterations, DataSet ds, Bounds bounds, String name) throws Exception {
+        BufferedImage image = new BufferedImage(IMG_WIDTH, IMG_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D clipped = image.createGraphics();
+        // like the graphics of the map view, ways are only painted within the clip
+        clipped.setClip(0, 0, IMG_WIDTH, IMG_HEIGHT);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            nc.zoomTo(bounds);
+            measure(new StyledMapRenderer(clipped, nc, false), iterations, ds, bounds, name + ", sequential");
+            StyledMapRenderer parallel = new StyledMapRenderer(clipped, nc, false);
+            parallel.setParallelPainting(executor, threads);
+            measure(parallel, iterations, ds, bounds, name + ", " + threads + " bands in parallel");
+        } finally {
+            executor.shutdown();
+            clipped.dispose();
+        }
+    }
+
     @Test
     public void testRestriction() throws Exception {
         test(700, dsRestriction, new Bounds(51.12, 14.147472381591795, 51.128, 14.162492752075195));
@@ -85,6 +123,21 @@ public class StyledMapRendererPerformanceTest {
         test(50, dsCity, new Bounds(53.51, 13.20, 53.59, 13.34));
     }
 
+    @Test
+    public void testCityParallel() throws Exception {
+        testParallel(20, dsCity, new Bounds(53.51, 13.20, 53.59, 13.34), "city");
+    }
+
+    @Test
+    public void testCityPart2Parallel() throws Exception {
+        testParallel(50, dsCity, new Bounds(53.55, 13.29, 53.57, 13.30), "city part 2");
+    }
+
+    @Test
+    public void testMultipolygonParallel() throws Exception {
+        testParallel(100, dsMultipolygon, new Bounds(60, -180, 85, -122), "multipolygon");
+    }
+
     @Test
     public void testCitySmall() throws Exception {
         test(70, dsCity, new Bounds(52, 11, 55, 14));
@@ -0,0 +1,110 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Measures the throughput of {@link RenderingHelper} in tiles per second, rendering the tiles of a city with
+ * several threads at once.
+ */
+public class RenderingHelperPerformanceTest {
+
+    private static final int TILE_SIZE = 256;
+    /** the scale of zoom level 16 of slippy map tiles, in meters per pixel at the equator */
+    private static final double SCALE = 2.388657133911758;
+    private static final int TILES = 8;
+
+    private static RenderingHelper helper;
+    private static List<Bounds> tiles;
+
+    /**
+     * Setup test.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init();
+        DataSet ds;
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File("data_nodist/neubrandenburg.osm.bz2"))) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        String url = "styles/standard/elemstyles.mapcss";
+        MapCSSStyleSource source = new MapCSSStyleSource(new SourceEntry(url, url, url, true));
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        helper = new RenderingHelper(ds, Collections.singletonList(source));
+
+        // a square of tiles around the center of the city
+        EastNorth center = Main.getProjection().latlon2eastNorth(new LatLon(53.5575, 13.2610));
+        double size = TILE_SIZE * SCALE;
+        tiles = new ArrayList<>();
+        for (int y = 0; y < TILES; y++) {
+            for (int x = 0; x < TILES; x++) {
+                EastNorth min = new EastNorth(center.east() + (x - TILES / 2) * size, center.north() + (y - TILES / 2) * size);
+                EastNorth max = new EastNorth(min.east() + size, min.north() + size);
+                tiles.add(new Bounds(Main.getProjection().eastNorth2latlon(min), Main.getProjection().eastNorth2latlon(max)));
+            }
+        }
+    }
+
+    private static double renderTiles(int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<BufferedImage>> tasks = new ArrayList<>();
+            for (final Bounds tile : tiles) {
+                tasks.add(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() {
+                        return helper.render(tile, SCALE);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<BufferedImage> future : executor.invokeAll(tasks)) {
+                assertEquals(TILE_SIZE, future.get().getWidth(), 1);
+            }
+            return tiles.size() / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Renders the tiles with 1, 2 and 4 threads and prints the number of tiles rendered per second.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testThroughput() throws Exception {
+        // compute the styles of the primitives once
+        renderTiles(1);
+        for (int threads : new int[] {1, 2, 4}) {
+            System.out.printf("%d threads: %.1f tiles per second%n", threads, renderTiles(threads));
+        }
+    }
+}
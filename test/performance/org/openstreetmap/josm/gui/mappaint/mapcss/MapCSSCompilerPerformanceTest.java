@@ -0,0 +1,119 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+
+/**
+ * Measures the time to evaluate the default MapCSS style for 100k primitives, interpreted and compiled.
+ */
+public class MapCSSCompilerPerformanceTest {
+
+    private static final String STYLE_FILE = "styles/standard/elemstyles.mapcss";
+    private static final int PRIMITIVE_COUNT = 100000;
+    private static final double[] SCALES = {0.5, 5, 50};
+
+    private static final String[][] NODE_TAGS = {
+        {}, {}, {}, {}, {"amenity", "restaurant", "name", "Zum Löwen"}, {"highway", "traffic_signals"},
+        {"shop", "bakery"}, {"barrier", "gate"}, {"natural", "tree"}, {"entrance", "yes"},
+        {"highway", "crossing", "crossing", "zebra"}, {"addr:housenumber", "12"}, {"power", "tower"}
+    };
+    private static final String[][] WAY_TAGS = {
+        {"building", "yes"}, {"building", "house", "addr:housenumber", "5"},
+        {"highway", "residential", "name", "Hauptstraße", "maxspeed", "30"},
+        {"highway", "primary", "ref", "B 96", "lanes", "2", "oneway", "yes"}, {"highway", "footway"},
+        {"highway", "service", "service", "driveway"}, {"landuse", "grass"}, {"natural", "water"},
+        {"waterway", "stream"}, {"railway", "rail"}, {"barrier", "fence"}, {"power", "line"}, {}
+    };
+
+    private static List<OsmPrimitive> primitives;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createPerformanceTestFixture().init();
+        DataSet ds = new DataSet();
+        Random random = new Random(42);
+        primitives = new ArrayList<>(PRIMITIVE_COUNT);
+        List<Node> nodes = new ArrayList<>();
+        while (primitives.size() < PRIMITIVE_COUNT) {
+            Node n = new Node(new LatLon(random.nextDouble(), random.nextDouble()));
+            put(n, NODE_TAGS[random.nextInt(NODE_TAGS.length)]);
+            ds.addPrimitive(n);
+            nodes.add(n);
+            primitives.add(n);
+            if (nodes.size() == 4) {
+                Way w = new Way();
+                put(w, WAY_TAGS[random.nextInt(WAY_TAGS.length)]);
+                ds.addPrimitive(w);
+                w.setNodes(nodes);
+                primitives.add(w);
+                nodes = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Resets the preference.
+     */
+    @AfterClass
+    public static void tearDown() {
+        MapCSSStyleSource.COMPILE.put(false);
+    }
+
+    private static void put(OsmPrimitive p, String[] tags) {
+        for (int i = 0; i < tags.length; i += 2) {
+            p.put(tags[i], tags[i + 1]);
+        }
+    }
+
+    private static MapCSSStyleSource load(boolean compile) {
+        MapCSSStyleSource.COMPILE.put(compile);
+        MapCSSStyleSource source = new MapCSSStyleSource(new SourceEntry(STYLE_FILE, "standard", "standard", true));
+        long start = System.currentTimeMillis();
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        System.out.println((compile ? "compiled" : "interpreted") + ": style loaded in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return source;
+    }
+
+    /**
+     * Evaluates the style for all primitives at several scales, interpreted and compiled.
+     */
+    @Test
+    public void testStyleCreation() {
+        MapCSSStyleSource interpreted = load(false);
+        MapCSSStyleSource compiled = load(true);
+        for (int run = 0; run < 5; run++) {
+            for (MapCSSStyleSource source : new MapCSSStyleSource[] {interpreted, compiled}) {
+                long start = System.nanoTime();
+                for (double scale : SCALES) {
+                    for (OsmPrimitive p : primitives) {
+                        source.apply(new MultiCascade(), p, scale, false);
+                    }
+                }
+                long time = (System.nanoTime() - start) / 1000000 / SCALES.length;
+                System.out.println((source == compiled ? "compiled" : "interpreted") + ": " + time
+                        + " ms per " + PRIMITIVE_COUNT + " primitives");
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource.MapCSSRuleIndex;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Measures the selection of the rule candidates of the default style and the validator rules for the primitives
+ * of a city, with the bitsets of {@link MapCSSRuleIndex} and without an index.
+ */
+public class MapCSSRuleIndexPerformanceTest {
+
+    private static final String[] STYLE_FILES = {
+        "styles/standard/elemstyles.mapcss",
+        "data/validator/combinations.mapcss",
+        "data/validator/deprecated.mapcss",
+        "data/validator/geometry.mapcss",
+        "data/validator/highway.mapcss",
+        "data/validator/numeric.mapcss",
+        "data/validator/unnecessary.mapcss"
+    };
+
+    private enum Mode {
+        BITSETS, ALL
+    }
+
+    private static List<MapCSSStyleSource> sources;
+    private static List<OsmPrimitive> primitives;
+
+    /**
+     * Setup test.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init();
+        sources = new ArrayList<>();
+        for (String file : STYLE_FILES) {
+            MapCSSStyleSource source = new MapCSSStyleSource(new SourceEntry(file, file, file, true));
+            source.loadStyleSource();
+            assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+            sources.add(source);
+        }
+        DataSet ds;
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File("data_nodist/neubrandenburg.osm.bz2"))) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        primitives = new ArrayList<>();
+        for (OsmPrimitive p : ds.allPrimitives()) {
+            // like the renderer and the validator, skip incomplete primitives
+            if (p.isUsable() && !p.isIncomplete()) {
+                primitives.add(p);
+            }
+        }
+    }
+
+    private static Iterator<MapCSSRule> getCandidates(MapCSSRuleIndex index, OsmPrimitive p, Mode mode) {
+        switch (mode) {
+        case BITSETS:
+            return index.getRuleCandidates(p);
+        default:
+            return index.rules.iterator();
+        }
+    }
+
+    /**
+     * Replies the number of matching selectors, evaluating the selectors of all candidates.
+     */
+    private static long match(Mode mode) {
+        long matches = 0;
+        for (MapCSSStyleSource source : sources) {
+            for (OsmPrimitive p : primitives) {
+                Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, source);
+                for (Iterator<MapCSSRule> it = getCandidates(source.getRuleIndex(p), p, mode); it.hasNext();) {
+                    env.clearSelectorMatchingInformation();
+                    if (it.next().selector.matches(env)) {
+                        matches++;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Replies the number of candidates, without evaluating them.
+     */
+    private static long count(Mode mode) {
+        long candidates = 0;
+        for (MapCSSStyleSource source : sources) {
+            for (OsmPrimitive p : primitives) {
+                for (Iterator<MapCSSRule> it = getCandidates(source.getRuleIndex(p), p, mode); it.hasNext();) {
+                    it.next();
+                    candidates++;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Compares the selection of the candidates with the different indexes.
+     */
+    @Test
+    public void testRuleCandidates() {
+        MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().lock();
+        try {
+            long expectedMatches = match(Mode.ALL);
+            for (int run = 0; run < 5; run++) {
+                for (Mode mode : Mode.values()) {
+                    long start = System.nanoTime();
+                    long candidates = count(mode);
+                    long selection = (System.nanoTime() - start) / 1000000;
+                    start = System.nanoTime();
+                    assertEquals(expectedMatches, match(mode));
+                    long matching = (System.nanoTime() - start) / 1000000;
+                    System.out.println(mode + ": " + candidates + " candidates selected in " + selection
+                            + " ms, matched in " + matching + " ms for " + primitives.size() + " primitives");
+                }
+            }
+        } finally {
+            MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Compares the time to read a city from the PBF format with the time to read it from the XML format.
+ */
+public class PbfReaderPerformanceTest {
+
+    private static byte[] xml;
+    private static byte[] pbf;
+    private static int primitives;
+
+    /**
+     * Setup test.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createPerformanceTestFixture().init();
+        DataSet ds;
+        try (InputStream in = Compression.getUncompressedFileInputStream(new File("data_nodist/neubrandenburg.osm.bz2"))) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        primitives = ds.allPrimitives().size();
+        // both formats are read from memory, so only the parsing is measured
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmWriter w = OsmWriterFactory.createOsmWriter(
+                new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), false, ds.getVersion())) {
+            w.header();
+            w.writeDataSources(ds);
+            w.writeContent(ds);
+            w.footer();
+        }
+        xml = out.toByteArray();
+        out = new ByteArrayOutputStream();
+        try (PbfWriter w = new PbfWriter(out)) {
+            w.writeDataSet(ds);
+        }
+        pbf = out.toByteArray();
+    }
+
+    /**
+     * Reads the city several times in both formats and prints the times.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRead() throws Exception {
+        System.out.printf("%d primitives, XML: %d bytes, PBF: %d bytes%n", primitives, xml.length, pbf.length);
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            DataSet ds = OsmReader.parseDataSet(new ByteArrayInputStream(xml), NullProgressMonitor.INSTANCE);
+            long xmlTime = System.nanoTime() - start;
+            assertEquals(primitives, ds.allPrimitives().size());
+
+            start = System.nanoTime();
+            ds = PbfReader.parseDataSet(new ByteArrayInputStream(pbf), NullProgressMonitor.INSTANCE);
+            long pbfTime = System.nanoTime() - start;
+            assertEquals(primitives, ds.allPrimitives().size());
+            System.out.printf("XML: %d ms, PBF: %d ms%n", xmlTime / 1000000, pbfTime / 1000000);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+/**
+ * Unit tests of {@link UndoRedoHandler}.
+ */
+public class UndoRedoHandlerTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    /**
+     * Checks that the events of a command are fired together after it has finished, and that the dataset can be
+     * read by other threads while the command runs.
+     * @throws Exception if the reading thread fails
+     */
+    @Test
+    public void testEventsOfCommand() throws Exception {
+        final DataSet ds = new DataSet();
+        final List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Node n = new Node(new LatLon(0, 0));
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        final List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                events.add(event);
+            }
+        }));
+
+        final boolean[] readable = new boolean[1];
+        final int[] eventsWhileRunning = new int[1];
+        Command move = new Command(new OsmDataLayer(ds, "test", null)) {
+            @Override
+            public boolean executeCommand() {
+                super.executeCommand();
+                for (Node n : nodes) {
+                    n.setCoor(new LatLon(1, 1));
+                }
+                // like a dialog which waits for the user, another thread must be able to read the dataset meanwhile
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (ds.getReadLock().tryLock()) {
+                            readable[0] = true;
+                            ds.getReadLock().unlock();
+                        }
+                    }
+                });
+                reader.start();
+                try {
+                    reader.join();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                eventsWhileRunning[0] = events.size();
+                return true;
+            }
+
+            @Override
+            public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted,
+                    Collection<OsmPrimitive> added) {
+                modified.addAll(nodes);
+            }
+
+            @Override
+            public String getDescriptionText() {
+                return "move";
+            }
+
+            @Override
+            public Collection<? extends OsmPrimitive> getParticipatingPrimitives() {
+                return nodes;
+            }
+        };
+
+        new UndoRedoHandler().addNoRedraw(move);
+        assertTrue(readable[0]);
+        assertEquals(0, eventsWhileRunning[0]);
+        assertEquals(1, events.size());
+        assertEquals(100, ((CoalescedDataChangedEvent) events.get(0)).getMovedNodes().size());
+    }
+}
@@ -0,0 +1,124 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Unit tests of {@link CompactNodeStore}.
+ */
+public class CompactNodeStoreTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static Node createNode(long id, int version, double lat, double lon) {
+        Node n = new Node(id, version);
+        n.setCoor(new LatLon(lat, lon));
+        n.put("amenity", "bench");
+        n.setChangesetId(42);
+        return n;
+    }
+
+    /**
+     * Checks that nodes survive a round trip through the store.
+     */
+    @Test
+    public void testRoundTrip() {
+        CompactNodeStore store = new CompactNodeStore(1);
+        Node n1 = createNode(1, 2, 48.1, 11.5);
+        Node n2 = createNode(2, 1, -33.9, 151.2);
+        n2.setModified(true);
+        Node n3 = new Node(new LatLon(0, 0));
+        store.add(n1);
+        store.add(n2);
+        store.add(n3);
+        assertEquals(3, store.size());
+
+        Node c1 = store.toNode(0);
+        assertTrue(n1.hasEqualSemanticAttributes(c1));
+        assertEquals(1, c1.getUniqueId());
+        assertEquals(2, c1.getVersion());
+        assertEquals(42, c1.getChangesetId());
+        assertTrue(c1.isTagged());
+
+        Node c2 = store.toNode(1);
+        assertTrue(n2.hasEqualSemanticAttributes(c2));
+        assertTrue(c2.isModified());
+
+        Node c3 = store.toNode(2);
+        assertTrue(c3.isNew());
+        assertEquals(new LatLon(0, 0), c3.getCoor());
+    }
+
+    /**
+     * Checks that views read and write through to the store.
+     */
+    @Test
+    public void testView() {
+        CompactNodeStore store = new CompactNodeStore();
+        Node node = createNode(7, 3, 1.0, 2.0);
+        store.add(node);
+        INode view = store.get(0);
+        assertEquals(7, view.getUniqueId());
+        assertEquals(OsmPrimitiveType.NODE, view.getType());
+        assertEquals("bench", view.get("amenity"));
+        assertEquals(new LatLon(1.0, 2.0), view.getCoor());
+        assertFalse(view.isModified());
+
+        view.put("amenity", "waste_basket");
+        // the tags are shared with the node until they are changed
+        assertEquals("bench", node.get("amenity"));
+        view.put("name", "Foo");
+        view.remove("amenity");
+        view.setCoor(new LatLon(3.0, 4.0));
+        view.setDeleted(true);
+
+        INode other = store.get(0);
+        assertEquals("Foo", other.getName());
+        assertNull(other.get("amenity"));
+        assertEquals(3.0, store.getLat(0), 0);
+        assertEquals(4.0, store.getLon(0), 0);
+        assertTrue(other.isDeleted());
+        assertTrue(other.isModified());
+        assertTrue(store.toNode(0).isDeleted());
+    }
+
+    /**
+     * Checks that stored nodes are added to a dataset.
+     */
+    @Test
+    public void testAddTo() {
+        CompactNodeStore store = new CompactNodeStore();
+        for (int i = 1; i <= 100; i++) {
+            store.add(createNode(i, 1, i / 10.0, i / 20.0));
+        }
+        store.trimToSize();
+        DataSet ds = new DataSet();
+        Node[] nodes = store.addTo(ds);
+        assertEquals(100, nodes.length);
+        assertEquals(100, ds.getNodes().size());
+        assertTrue(ds.getPrimitiveById(50, OsmPrimitiveType.NODE) == nodes[49]);
+
+        Iterator<INode> it = store.iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            assertEquals(++count, it.next().getUniqueId());
+        }
+        assertEquals(100, count);
+    }
+}
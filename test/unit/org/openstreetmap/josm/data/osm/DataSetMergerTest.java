@@ -996,4 +996,60 @@ public class DataSetMergerTest {
         assertEquals(1, w.getNode(0).getId());
         assertEquals(2, w.getNode(1).getId());
     }
+
+    /**
+     * Merges a bigger generated corpus, so that nodes and ways are merged in bulk.
+     */
+    @Test
+    public void bigCorpus() {
+        final int count = 10000;
+        for (int i = 1; i <= count; i++) {
+            Node n = new Node(new LatLon(0, i * 0.0001));
+            n.setOsmId(i, 1);
+            n.setModified(false);
+            if (i % 10 == 1) {
+                // modified locally, conflicts with the changed tag in their dataset
+                n.put("name", "my");
+                n.setModified(true);
+            }
+            my.addPrimitive(n);
+        }
+        for (int i = 1; i <= count * 3 / 2; i++) {
+            Node n = new Node(new LatLon(1, i * 0.0001));
+            n.setOsmId(i, 2);
+            n.setModified(false);
+            if (i % 10 == 1) {
+                n.put("name", "their");
+            }
+            their.addPrimitive(n);
+        }
+        for (int i = 1; i < count; i += 10) {
+            Way w = new Way(i, 1);
+            w.setNodes(Arrays.asList((Node) their.getPrimitiveById(i + 2, OsmPrimitiveType.NODE),
+                    (Node) their.getPrimitiveById(i + count / 2 + 3, OsmPrimitiveType.NODE)));
+            their.addPrimitive(w);
+        }
+
+        DataSetMerger merger = new DataSetMerger(my, their);
+        merger.merge();
+
+        assertEquals(count / 10, merger.getConflicts().size());
+        assertEquals(count * 3 / 2, my.getNodes().size());
+        assertEquals(count / 10, my.getWays().size());
+        for (int i = 1; i <= count * 3 / 2; i++) {
+            Node n = (Node) my.getPrimitiveById(i, OsmPrimitiveType.NODE);
+            if (i % 10 == 1 && i <= count) {
+                assertEquals("my", n.get("name"));
+                assertEquals(0, n.getCoor().lat(), 1e-9);
+            } else {
+                assertEquals(1, n.getCoor().lat(), 1e-9);
+                assertEquals(2, n.getVersion());
+            }
+        }
+        for (Way w : my.getWays()) {
+            for (Node n : w.getNodes()) {
+                assertTrue(n.getDataSet() == my);
+            }
+        }
+    }
 }
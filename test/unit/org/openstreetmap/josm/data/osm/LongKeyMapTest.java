@@ -0,0 +1,87 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link LongKeyMap} and {@link PrimitiveIdMap}.
+ */
+public class LongKeyMapTest {
+
+    /**
+     * Compares random puts and removes with a {@link HashMap}.
+     */
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(0);
+        LongKeyMap<Long> map = new LongKeyMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // small key range, so that removes and overwrites happen frequently
+            long key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -2600; key < 2600; key++) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+
+        HashSet<Long> keys = new HashSet<>();
+        LongKeyMap.Cursor<Long> cursor = map.cursor();
+        while (cursor.next()) {
+            assertTrue(keys.add(cursor.key()));
+            assertEquals(expected.get(cursor.key()), cursor.value());
+        }
+        assertEquals(expected.keySet(), keys);
+        assertEquals(expected.size(), map.keys().length);
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.cursor().next());
+        assertEquals(0, map.keys().length);
+    }
+
+    /**
+     * Checks that keys of different primitive types are kept apart.
+     */
+    @Test
+    public void testPrimitiveIdMap() {
+        PrimitiveIdMap<String> map = new PrimitiveIdMap<>();
+        map.put(new SimplePrimitiveId(1, OsmPrimitiveType.NODE), "n1");
+        map.put(1, OsmPrimitiveType.WAY, "w1");
+        map.put(-1, OsmPrimitiveType.RELATION, "r-1");
+        assertEquals(3, map.size());
+        assertEquals("n1", map.get(1, OsmPrimitiveType.NODE));
+        assertEquals("w1", map.get(new SimplePrimitiveId(1, OsmPrimitiveType.WAY)));
+        assertNull(map.get(1, OsmPrimitiveType.RELATION));
+        assertNull(map.get("foo"));
+        assertEquals(new HashSet<>(Arrays.asList("n1", "w1", "r-1")), new HashSet<>(map.values()));
+        Map<PrimitiveId, String> expected = new HashMap<>();
+        expected.put(new SimplePrimitiveId(1, OsmPrimitiveType.NODE), "n1");
+        expected.put(new SimplePrimitiveId(1, OsmPrimitiveType.WAY), "w1");
+        expected.put(new SimplePrimitiveId(-1, OsmPrimitiveType.RELATION), "r-1");
+        assertEquals(expected, new HashMap<>(map));
+        assertSame("n1", map.remove(new SimplePrimitiveId(1, OsmPrimitiveType.NODE)));
+        assertFalse(map.containsKey(new SimplePrimitiveId(1, OsmPrimitiveType.NODE)));
+        assertEquals(2, map.size());
+    }
+}
@@ -1,8 +1,11 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.osm;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -142,6 +145,83 @@ public class OsmPrimitiveTest {
         Assert.assertEquals(n.getReferrers().get(0), w1);
     }
 
+    /**
+     * Checks referrers of a node shared by many ways, which are kept in a hash set above a threshold.
+     */
+    @Test
+    public void manyReferrers() {
+        Node n = new Node(new LatLon(0.0, 0.0));
+        dataSet.addPrimitive(n);
+        Way[] ways = new Way[1000];
+        for (int i = 0; i < ways.length; i++) {
+            ways[i] = new Way();
+            ways[i].addNode(n);
+            ways[i].addNode(n);
+            dataSet.addPrimitive(ways[i]);
+        }
+        compareReferrers(n, ways);
+        Assert.assertTrue(n.isReferredByWays(1000));
+        Assert.assertFalse(n.isReferredByWays(1001));
+
+        for (int i = 0; i < ways.length - 3; i++) {
+            ways[i].setNodes(null);
+        }
+        compareReferrers(n, Arrays.copyOfRange(ways, ways.length - 3, ways.length));
+        ways[ways.length - 1].setNodes(null);
+        compareReferrers(n, ways[ways.length - 3], ways[ways.length - 2]);
+    }
+
+    /**
+     * Checks that the referrers of the nodes of many ways are registered at once by {@link Way#setNodes(List, List)}.
+     */
+    @Test
+    public void bulkReferrers() {
+        Node junction = new Node(new LatLon(0.0, 0.0));
+        Node n1 = new Node(new LatLon(1.0, 1.0));
+        dataSet.addPrimitive(junction);
+        dataSet.addPrimitive(n1);
+        Way existing = new Way();
+        existing.setNodes(Arrays.asList(junction, n1));
+        dataSet.addPrimitive(existing);
+
+        List<Way> ways = new ArrayList<>();
+        List<List<Node>> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ways.add(new Way());
+            nodes.add(i == 0 ? Arrays.asList(junction, n1, junction) : Arrays.asList(n1, junction));
+        }
+        Way.setNodes(ways, nodes);
+        dataSet.addPrimitives(ways);
+
+        List<Way> all = new ArrayList<>(ways);
+        all.add(existing);
+        compareReferrers(junction, all.toArray(new Way[all.size()]));
+        compareReferrers(n1, all.toArray(new Way[all.size()]));
+        Assert.assertEquals(Arrays.asList(junction, n1, junction), ways.get(0).getNodes());
+        Assert.assertTrue(junction.isReferredByWays(101));
+        Assert.assertFalse(junction.isReferredByWays(102));
+
+        // few referrers stay in an array
+        Node n2 = new Node(new LatLon(2.0, 2.0));
+        dataSet.addPrimitive(n2);
+        Way w = new Way();
+        Way.setNodes(Collections.singletonList(w), Collections.singletonList(Arrays.asList(n2, n1)));
+        dataSet.addPrimitive(w);
+        compareReferrers(n2, w);
+    }
+
+    /**
+     * Ways which are part of a dataset must be changed with {@link Way#setNodes(List)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkReferrersInDataSet() {
+        Node n = new Node(new LatLon(0.0, 0.0));
+        Way w = new Way();
+        dataSet.addPrimitive(n);
+        dataSet.addPrimitive(w);
+        Way.setNodes(Collections.singletonList(w), Collections.singletonList(Collections.singletonList(n)));
+    }
+
     @Test(expected=DataIntegrityProblemException.class)
     public void checkMustBeInDatasate() {
         Node n = new Node();
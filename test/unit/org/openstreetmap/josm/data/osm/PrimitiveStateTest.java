@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.command.ChangeCommand;
+import org.openstreetmap.josm.command.DeleteCommand;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+
+/**
+ * Unit tests of {@link PrimitiveState}.
+ */
+public class PrimitiveStateTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    /**
+     * Restores nodes, ways and relations and checks that unchanged arrays are shared.
+     */
+    @Test
+    public void testRestore() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        Node n3 = new Node(new LatLon(3, 3));
+        Way w = new Way();
+        Relation r = new Relation();
+        for (OsmPrimitive p : Arrays.asList(n1, n2, n3, w, r)) {
+            ds.addPrimitive(p);
+        }
+        w.setNodes(Arrays.asList(n1, n2));
+        w.put("highway", "residential");
+        r.setMembers(Collections.singletonList(new RelationMember("outer", w)));
+
+        PrimitiveState nodeState = new PrimitiveState(n1);
+        PrimitiveState wayState = new PrimitiveState(w);
+        PrimitiveState relationState = new PrimitiveState(r);
+        long unchangedSize = wayState.getEstimatedSize(w);
+
+        n1.setCoor(new LatLon(5, 5));
+        w.addNode(n3);
+        w.put("name", "Foo");
+        r.setMember(0, new RelationMember("inner", w));
+        assertTrue(wayState.getEstimatedSize(w) > unchangedSize);
+        assertEquals(Arrays.asList(n1.getUniqueId(), n2.getUniqueId()), ((WayData) wayState.toData(w)).getNodes());
+
+        nodeState.restore(n1);
+        wayState.restore(w);
+        relationState.restore(r);
+        assertEquals(new LatLon(1, 1), n1.getCoor());
+        assertEquals(Arrays.asList(n1, n2), w.getNodes());
+        assertEquals(Collections.singletonMap("highway", "residential"), w.getKeys());
+        assertEquals("outer", r.getMember(0).getRole());
+        assertFalse(n3.getReferrers().contains(w));
+    }
+
+    /**
+     * Checks that only changed fields fire events when a command is undone.
+     */
+    @Test
+    public void testUndoCommands() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        Way w = new Way();
+        for (OsmPrimitive p : Arrays.asList(n1, n2, w)) {
+            ds.addPrimitive(p);
+        }
+        w.setNodes(Arrays.asList(n1, n2));
+        w.put("highway", "residential");
+
+        final int[] tagEvents = new int[1];
+        final int[] nodeEvents = new int[1];
+        DataSetListenerAdapter.Listener listener = new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                if (event instanceof TagsChangedEvent) {
+                    tagEvents[0]++;
+                } else if (event instanceof WayNodesChangedEvent) {
+                    nodeEvents[0]++;
+                }
+            }
+        };
+        ds.addDataSetListener(new DataSetListenerAdapter(listener));
+
+        Way changed = new Way(w);
+        changed.put("name", "Foo");
+        ChangeCommand change = new ChangeCommand(w, changed);
+        change.executeCommand();
+        tagEvents[0] = 0;
+        nodeEvents[0] = 0;
+        change.undoCommand();
+        assertEquals(1, tagEvents[0]);
+        assertEquals(1, nodeEvents[0]);
+        assertEquals(Collections.singletonMap("highway", "residential"), w.getKeys());
+
+        DeleteCommand delete = new DeleteCommand(w);
+        delete.executeCommand();
+        assertTrue(w.isDeleted());
+        assertEquals(0, w.getNodesCount());
+        assertTrue(delete.getEstimatedMemory() > 0);
+        delete.undoCommand();
+        assertFalse(w.isDeleted());
+        assertEquals(Arrays.asList(n1, n2), w.getNodes());
+    }
+
+    /**
+     * Checks that undoing a command restores the visibility of a primitive.
+     */
+    @Test
+    public void testUndoVisible() {
+        DataSet ds = new DataSet();
+        Node n = new Node(1, 1);
+        n.setCoor(new LatLon(1, 1));
+        ds.addPrimitive(n);
+
+        Node changed = new Node(n);
+        changed.setVisible(false);
+        ChangeCommand change = new ChangeCommand(n, changed);
+        change.executeCommand();
+        assertFalse(n.isVisible());
+        assertFalse(new PrimitiveState(n).toData(n).isVisible());
+        change.undoCommand();
+        assertTrue(n.isVisible());
+
+        PrimitiveState state = new PrimitiveState(n);
+        n.setVisible(false);
+        assertTrue(state.toData(n).isVisible());
+        state.restore(n);
+        assertTrue(n.isVisible());
+    }
+}
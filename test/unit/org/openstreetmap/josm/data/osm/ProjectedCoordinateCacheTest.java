@@ -0,0 +1,123 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.Projections;
+
+/**
+ * Unit tests of {@link ProjectedCoordinateCache}.
+ */
+public class ProjectedCoordinateCacheTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static void assertProjected(DataSet ds, Projection p) {
+        for (Node n : ds.getNodes()) {
+            if (!n.isLatLonKnown()) {
+                continue;
+            }
+            EastNorth expected = p.latlon2eastNorth(n.getCoor());
+            assertEquals(expected.east(), n.getEastNorth().east(), 1e-9);
+            assertEquals(expected.north(), n.getEastNorth().north(), 1e-9);
+        }
+    }
+
+    /**
+     * Checks that all nodes are projected when the projection changes, and that switching back to the previous
+     * projection only projects the nodes which have been moved or added in the meantime.
+     */
+    @Test
+    public void testProjectionChanged() {
+        Projection mercator = Projections.getProjectionByCode("EPSG:3857");
+        Projection wgs84 = Projections.getProjectionByCode("EPSG:4326");
+        DataSet ds = new DataSet();
+        Node moved = new Node(new LatLon(0, 0));
+        ds.addPrimitive(moved);
+        Node readded = new Node(new LatLon(49, 9));
+        ds.addPrimitive(readded);
+        for (int i = 0; i < 9998; i++) {
+            ds.addPrimitive(new Node(new LatLon(50 + i * 1e-4, 10 + i * 1e-4)));
+        }
+        ds.addPrimitive(new Node(42));
+        ProjectedCoordinateCache cache = new ProjectedCoordinateCache(ds);
+
+        assertEquals(10000, cache.projectionChanged(null, mercator));
+        assertProjected(ds, mercator);
+        assertEquals(10000, cache.projectionChanged(mercator, wgs84));
+        assertProjected(ds, wgs84);
+
+        moved.setCoor(new LatLon(-10, -20));
+        ds.addPrimitive(new Node(new LatLon(1, 2)));
+        // a node moved while it was removed from the dataset is projected again as well
+        ds.removePrimitive(readded);
+        readded.setCoor(new LatLon(30, 40));
+        ds.addPrimitive(readded);
+        assertEquals(3, cache.projectionChanged(wgs84, mercator));
+        assertProjected(ds, mercator);
+
+        cache.clear();
+        assertEquals(10001, cache.projectionChanged(mercator, wgs84));
+        assertProjected(ds, wgs84);
+    }
+
+    /**
+     * Checks that the dataset is not locked while the nodes are projected, and that the coordinates of a node moved
+     * in the meantime are not overwritten.
+     */
+    @Test
+    public void testProjectWithoutLock() {
+        final Projection mercator = Projections.getProjectionByCode("EPSG:3857");
+        final DataSet ds = new DataSet();
+        final Node moved = new Node(new LatLon(0, 0));
+        ds.addPrimitive(moved);
+        ds.addPrimitive(new Node(new LatLon(1, 1)));
+        final boolean[] readable = new boolean[1];
+        Projection projection = (Projection) Proxy.newProxyInstance(Projection.class.getClassLoader(),
+                new Class<?>[] {Projection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("latlon2eastNorth".equals(method.getName()) && !readable[0]) {
+                    Thread reader = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (ds.getReadLock().tryLock()) {
+                                readable[0] = true;
+                                ds.getReadLock().unlock();
+                            }
+                        }
+                    });
+                    reader.start();
+                    reader.join();
+                    // the node is moved and projected on demand with the global projection
+                    moved.setCoor(new LatLon(-10, -20));
+                }
+                return method.invoke(mercator, args);
+            }
+        });
+        ProjectedCoordinateCache cache = new ProjectedCoordinateCache(ds);
+        assertEquals(2, cache.projectionChanged(null, projection));
+        assertTrue(readable[0]);
+        EastNorth expected = Main.getProjection().latlon2eastNorth(new LatLon(-10, -20));
+        assertEquals(expected.east(), moved.getEastNorth().east(), 1e-9);
+        assertEquals(expected.north(), moved.getEastNorth().north(), 1e-9);
+    }
+}
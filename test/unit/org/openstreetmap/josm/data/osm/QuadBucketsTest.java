@@ -10,6 +10,7 @@ import java.util.List;
 
 import org.fest.reflect.core.Reflection;
 import org.fest.reflect.reference.TypeRef;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -27,13 +28,39 @@ public class QuadBucketsTest {
         JOSMFixture.createUnitTestFixture().init();
     }
 
+    /**
+     * Restores the default spatial index.
+     */
+    @After
+    public void tearDown() {
+        Main.pref.put("data.spatial-index", null);
+    }
+
+    /**
+     * Reads the test data into datasets indexed by {@link QuadBuckets} and {@link RTree}, so that both
+     * implementations are checked regardless of the default one.
+     */
+    private static List<DataSet> parseDataSets() throws Exception {
+        List<DataSet> result = new ArrayList<>();
+        for (String index : new String[] {"quadbuckets", "rtree"}) {
+            Main.pref.put("data.spatial-index", index);
+            try (InputStream fis = new FileInputStream("data_nodist/restriction.osm")) {
+                DataSet ds = OsmReader.parseDataSet(fis, NullProgressMonitor.INSTANCE);
+                Object nodes = Reflection.field("nodes").ofType(new TypeRef<SpatialIndex<Node>>() {}).in(ds).get();
+                Assert.assertEquals(index, "quadbuckets".equals(index) ? QuadBuckets.class : RTree.class, nodes.getClass());
+                result.add(ds);
+            }
+        }
+        return result;
+    }
+
     private void removeAllTest(DataSet ds) {
         List<Node> allNodes = new ArrayList<>(ds.getNodes());
         List<Way> allWays = new ArrayList<>(ds.getWays());
         List<Relation> allRelations = new ArrayList<>(ds.getRelations());
 
-        QuadBuckets<Node> nodes = Reflection.field("nodes").ofType(new TypeRef<QuadBuckets<Node>>() {}).in(ds).get();
-        QuadBuckets<Way> ways = Reflection.field("ways").ofType(new TypeRef<QuadBuckets<Way>>() {}).in(ds).get();
+        SpatialIndex<Node> nodes = Reflection.field("nodes").ofType(new TypeRef<SpatialIndex<Node>>() {}).in(ds).get();
+        SpatialIndex<Way> ways = Reflection.field("ways").ofType(new TypeRef<SpatialIndex<Way>>() {}).in(ds).get();
         Collection<Relation> relations = Reflection.field("relations").ofType(new TypeRef<Collection<Relation>>() {}).in(ds).get();
 
         int expectedCount = allNodes.size();
@@ -67,8 +94,7 @@ public class QuadBucketsTest {
     @Test
     public void testRemove() throws Exception {
         Main.setProjection(Projections.getProjectionByCode("EPSG:3857")); // Mercator
-        try (InputStream fis = new FileInputStream("data_nodist/restriction.osm")) {
-            DataSet ds = OsmReader.parseDataSet(fis, NullProgressMonitor.INSTANCE);
+        for (DataSet ds : parseDataSets()) {
             removeAllTest(ds);
         }
     }
@@ -76,9 +102,7 @@ public class QuadBucketsTest {
     @Test
     public void testMove() throws Exception {
         Main.setProjection(Projections.getProjectionByCode("EPSG:3857")); // Mercator
-        try (InputStream fis = new FileInputStream("data_nodist/restriction.osm")) {
-            DataSet ds = OsmReader.parseDataSet(fis, NullProgressMonitor.INSTANCE);
-
+        for (DataSet ds : parseDataSets()) {
             for (Node n: ds.getNodes()) {
                 n.setCoor(new LatLon(10, 10));
             }
@@ -0,0 +1,204 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Unit tests of {@link RTree}.
+ */
+public class RTreeTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static List<Node> createNodes(int count, Random random) {
+        List<Node> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Node n = new Node(i + 1, 1);
+            n.setCoor(new LatLon(random.nextDouble() * 2, random.nextDouble() * 2));
+            result.add(n);
+        }
+        return result;
+    }
+
+    private static void assertSearchResults(RTree<Node> tree, List<Node> nodes, Random random) {
+        for (int i = 0; i < 50; i++) {
+            double x = random.nextDouble() * 2;
+            double y = random.nextDouble() * 2;
+            BBox bbox = new BBox(x, y, x + random.nextDouble() * 0.3, y + random.nextDouble() * 0.3);
+            HashSet<Node> expected = new HashSet<>();
+            for (Node n : nodes) {
+                if (bbox.bounds(n.getCoor())) {
+                    expected.add(n);
+                }
+            }
+            List<Node> found = tree.search(bbox);
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, new HashSet<>(found));
+        }
+    }
+
+    /**
+     * Checks search results of bulk-loaded and incrementally built trees.
+     */
+    @Test
+    public void testSearch() {
+        Random random = new Random(42);
+        List<Node> nodes = createNodes(5000, random);
+
+        RTree<Node> bulk = new RTree<>(nodes);
+        assertEquals(nodes.size(), bulk.size());
+        assertSearchResults(bulk, nodes, random);
+
+        RTree<Node> incremental = new RTree<>();
+        for (Node n : nodes) {
+            incremental.add(n);
+        }
+        assertEquals(nodes.size(), incremental.size());
+        assertSearchResults(incremental, nodes, random);
+        assertTrue(bulk.getHeight() <= incremental.getHeight());
+
+        // mixed: small batch is inserted incrementally
+        List<Node> more = createNodes(100, random);
+        bulk.addAll(more);
+        nodes.addAll(more);
+        assertSearchResults(bulk, nodes, random);
+    }
+
+    /**
+     * Checks removal through {@link RTree#remove(Object)} and the iterator.
+     */
+    @Test
+    public void testRemove() {
+        Random random = new Random(7);
+        List<Node> nodes = createNodes(2000, random);
+        RTree<Node> tree = new RTree<>(nodes);
+
+        for (Node n : nodes.subList(0, 1000)) {
+            assertTrue(tree.contains(n));
+            assertTrue(tree.remove(n));
+            assertFalse(tree.contains(n));
+        }
+        assertFalse(tree.remove(nodes.get(0)));
+        List<Node> remaining = new ArrayList<>(nodes.subList(1000, 2000));
+        assertEquals(remaining.size(), tree.size());
+        assertSearchResults(tree, remaining, random);
+
+        Iterator<Node> it = tree.iterator();
+        while (it.hasNext()) {
+            Node n = it.next();
+            if (n.getUniqueId() % 2 == 0) {
+                it.remove();
+                remaining.remove(n);
+            }
+        }
+        assertEquals(remaining.size(), tree.size());
+        assertEquals(new HashSet<>(remaining), new HashSet<>(tree));
+        assertSearchResults(tree, remaining, random);
+
+        for (Node n : remaining) {
+            assertTrue(tree.remove(n));
+        }
+        assertTrue(tree.isEmpty());
+        assertEquals(1, tree.getHeight());
+    }
+
+    /**
+     * Checks that primitives added to a dataset in bulk can be found and reindexed.
+     */
+    @Test
+    public void testDataSetBulkAdd() {
+        Random random = new Random(3);
+        List<Node> nodes = createNodes(1000, random);
+        DataSet ds = new DataSet();
+        ds.addPrimitives(nodes);
+        Way w = new Way(1, 1);
+        w.setNodes(nodes.subList(0, 10));
+        ds.addPrimitives(Collections.singletonList(w));
+        assertEquals(1000, ds.getNodes().size());
+        assertEquals(1000, ds.searchNodes(new BBox(-1, -1, 3, 3)).size());
+        assertEquals(1, ds.searchWays(w.getBBox()).size());
+
+        Node moved = nodes.get(0);
+        moved.setCoor(new LatLon(10, 10));
+        assertTrue(ds.searchNodes(new BBox(9.9, 9.9, 10.1, 10.1)).contains(moved));
+        assertTrue(ds.searchWays(new BBox(9.9, 9.9, 10.1, 10.1)).contains(w));
+    }
+
+    /**
+     * Checks that a batch containing the same primitive twice is rejected without changing the dataset.
+     */
+    @Test
+    public void testDataSetBulkAddDuplicate() {
+        List<Node> nodes = createNodes(10, new Random(5));
+        nodes.add(new Node(nodes.get(3)));
+        DataSet ds = new DataSet();
+        try {
+            ds.addPrimitives(nodes);
+            fail("duplicate accepted");
+        } catch (DataIntegrityProblemException e) {
+            assertTrue(ds.allPrimitives().isEmpty());
+            assertTrue(ds.searchNodes(new BBox(-1, -1, 3, 3)).isEmpty());
+            assertNull(nodes.get(3).getDataSet());
+        }
+    }
+
+    /**
+     * Checks that snapshots are not affected by later modifications.
+     */
+    @Test
+    public void testSnapshot() {
+        Random random = new Random(11);
+        List<Node> nodes = createNodes(3000, random);
+        RTree<Node> tree = new RTree<>(nodes);
+        RTree<Node> snapshot = tree.snapshot();
+
+        List<Node> remaining = new ArrayList<>(nodes);
+        for (Node n : nodes.subList(0, 500)) {
+            assertTrue(tree.remove(n));
+            remaining.remove(n);
+        }
+        List<Node> more = createNodes(200, random);
+        for (Node n : more) {
+            n.setCoor(new LatLon(random.nextDouble() * 2, random.nextDouble() * 2));
+            tree.add(n);
+        }
+        Iterator<Node> it = tree.iterator();
+        while (it.hasNext()) {
+            if (it.next().getUniqueId() % 3 == 0) {
+                it.remove();
+            }
+        }
+
+        assertEquals(nodes.size(), snapshot.size());
+        assertEquals(new HashSet<>(nodes), new HashSet<>(snapshot));
+        assertSearchResults(snapshot, nodes, random);
+        try {
+            snapshot.add(more.get(0));
+            fail("snapshot must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,87 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+
+/**
+ * Unit tests of {@link TagSetPool}.
+ */
+public class TagSetPoolTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    /**
+     * Checks that equal arrays and strings are shared.
+     */
+    @Test
+    public void testIntern() {
+        String[] a = new String[] {"note", "TagSetPoolTest.testIntern"};
+        String[] b = new String[] {new String("note"), new String("TagSetPoolTest.testIntern")};
+        assertSame(a, TagSetPool.intern(a));
+        assertSame(a, TagSetPool.intern(b));
+        assertNull(TagSetPool.intern(null));
+
+        String s = new String("TagSetPoolTest");
+        assertSame(s, TagSetPool.internString(s));
+        assertSame(s, TagSetPool.internString(new String("TagSetPoolTest")));
+        assertNull(TagSetPool.internString(null));
+
+        assertTrue(TagSetPool.getTagSetCount() > 0);
+        assertTrue(TagSetPool.getTagSetDeduplicationRatio() > 0);
+        assertTrue(TagSetPool.getEstimatedSavedBytes() > 0);
+    }
+
+    /**
+     * Checks that arrays with the same key/value pairs in another order are shared.
+     */
+    @Test
+    public void testInternOrderInsensitive() {
+        String[] a = new String[] {"note", "TagSetPoolTest.testInternOrderInsensitive", "fixme", "yes"};
+        String[] b = new String[] {"fixme", "yes", "note", "TagSetPoolTest.testInternOrderInsensitive"};
+        String[] c = new String[] {"fixme", "no", "note", "TagSetPoolTest.testInternOrderInsensitive"};
+        assertSame(a, TagSetPool.intern(a));
+        assertSame(a, TagSetPool.intern(b));
+        assertSame(c, TagSetPool.intern(c));
+    }
+
+    /**
+     * Checks that primitives with the same tags share their key array and that
+     * changing the tags of one primitive does not affect the other one.
+     */
+    @Test
+    public void testSharedKeys() {
+        Node n1 = new Node();
+        Node n2 = new Node();
+        Map<String, String> tags = new HashMap<>();
+        tags.put("amenity", "bench");
+        tags.put("backrest", "no");
+        n1.setKeys(tags);
+        n2.setKeys(new HashMap<>(tags));
+        assertSame(n1.keys, n2.keys);
+        assertTrue(n1.hasSameInterestingTags(n2));
+
+        n1.put("backrest", "yes");
+        assertEquals("no", n2.get("backrest"));
+        assertEquals("yes", n1.get("backrest"));
+
+        n2.remove("amenity");
+        assertEquals("bench", n1.get("amenity"));
+        assertNull(n2.get("amenity"));
+    }
+}
@@ -0,0 +1,138 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.fest.reflect.core.Reflection;
+import org.fest.reflect.reference.TypeRef;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.validation.tests.CrossingWays;
+
+/**
+ * Unit tests of {@link WaySegmentIndex}.
+ */
+public class WaySegmentIndexTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static Node node(DataSet ds, double lat, double lon) {
+        Node n = new Node(new LatLon(lat, lon));
+        ds.addPrimitive(n);
+        return n;
+    }
+
+    private static Way way(DataSet ds, Node... nodes) {
+        Way w = new Way();
+        w.setNodes(Arrays.asList(nodes));
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    private static void assertSearchResults(DataSet ds, BBox bbox) {
+        HashSet<WaySegment> expected = new HashSet<>();
+        for (Way w : ds.getWays()) {
+            if (w.isDeleted()) {
+                continue;
+            }
+            for (int i = 0; i < w.getNodesCount() - 1; i++) {
+                if (bbox.intersects(new BBox(w.getNode(i).getCoor(), w.getNode(i + 1).getCoor()))) {
+                    expected.add(new WaySegment(w, i));
+                }
+            }
+        }
+        assertEquals(expected, new HashSet<>(ds.getSegmentIndex().search(bbox)));
+    }
+
+    /**
+     * Compares search results with a linear scan, also after modifications of the dataset.
+     */
+    @Test
+    public void testSearch() {
+        Random random = new Random(1);
+        DataSet ds = new DataSet();
+        List<Way> ways = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double lat = 50 + random.nextDouble() * 0.1;
+            double lon = 8 + random.nextDouble() * 0.1;
+            // mostly short segments, some very long ones
+            double length = i % 20 == 0 ? 2 : 0.003;
+            Node[] nodes = new Node[2 + random.nextInt(4)];
+            for (int j = 0; j < nodes.length; j++) {
+                nodes[j] = node(ds, lat + random.nextDouble() * length, lon + random.nextDouble() * length);
+            }
+            ways.add(way(ds, nodes));
+        }
+        List<BBox> queries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            double lat = 50 + random.nextDouble() * 0.1;
+            double lon = 8 + random.nextDouble() * 0.1;
+            queries.add(new BBox(lon, lat, lon + random.nextDouble() * 0.01, lat + random.nextDouble() * 0.01));
+        }
+        for (BBox bbox : queries) {
+            assertSearchResults(ds, bbox);
+        }
+
+        // the index is updated through dataset events
+        ways.get(1).firstNode().setCoor(new LatLon(50.05, 8.05));
+        ways.get(2).addNode(ways.get(3).firstNode());
+        ds.removePrimitive(ways.get(4));
+        ways.get(5).setDeleted(true);
+        way(ds, node(ds, 50.04, 8.04), node(ds, 50.06, 8.06));
+        queries.add(new BBox(8.049, 50.049, 8.051, 50.051));
+        for (BBox bbox : queries) {
+            assertSearchResults(ds, bbox);
+        }
+    }
+
+    /**
+     * Checks that crossing ways found through the shared index are reported once.
+     */
+    @Test
+    public void testCrossingWays() {
+        DataSet ds = new DataSet();
+        Way w1 = way(ds, node(ds, 50.0, 8.0), node(ds, 50.01, 8.01));
+        Way w2 = way(ds, node(ds, 50.01, 8.0), node(ds, 50.0, 8.01));
+        way(ds, node(ds, 50.02, 8.0), node(ds, 50.03, 8.01));
+        for (Way w : ds.getWays()) {
+            w.put("highway", "residential");
+        }
+        CrossingWays test = new CrossingWays.Ways();
+        test.startTest(null);
+        test.visit(ds.allPrimitives());
+        WaySegmentIndex index = ds.getSegmentIndex();
+        test.endTest();
+        assertEquals(1, test.getErrors().size());
+        // the index is released at the end of the test
+        List<DataSetListener> listeners = Reflection.field("listeners").ofType(
+                new TypeRef<CopyOnWriteArrayList<DataSetListener>>() {}).in(ds).get();
+        assertFalse(listeners.contains(index));
+        assertNotSame(index, ds.getSegmentIndex());
+        assertTrue(test.getErrors().get(0).getPrimitives().containsAll(Arrays.asList(w1, w2)));
+
+        w2.put("layer", "1");
+        test.startTest(null);
+        test.visit(ds.allPrimitives());
+        test.endTest();
+        assertTrue(test.getErrors().isEmpty());
+    }
+}
@@ -0,0 +1,194 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.fest.reflect.core.Reflection;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Unit tests of {@link CoalescedDataChangedEvent}.
+ */
+public class CoalescedDataChangedEventTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static List<AbstractDatasetChangedEvent> listen(DataSet ds) {
+        final List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                events.add(event);
+            }
+        }));
+        return events;
+    }
+
+    private static List<Node> nodes(DataSet ds, int count) {
+        List<Node> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Node n = new Node(new LatLon(0, 0));
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        return nodes;
+    }
+
+    /**
+     * Checks that repeated changes of the same primitives within one update are merged.
+     */
+    @Test
+    public void testMergeWithinUpdate() {
+        DataSet ds = new DataSet();
+        List<Node> nodes = nodes(ds, 100);
+        nodes.get(0).put("name", "A");
+        List<AbstractDatasetChangedEvent> events = listen(ds);
+
+        ds.beginUpdate();
+        try {
+            for (int run = 1; run <= 3; run++) {
+                for (Node n : nodes) {
+                    n.setCoor(new LatLon(run, run));
+                }
+                nodes.get(0).put("name", "B" + run);
+            }
+        } finally {
+            ds.endUpdate();
+        }
+
+        assertEquals(1, events.size());
+        CoalescedDataChangedEvent event = (CoalescedDataChangedEvent) events.get(0);
+        assertEquals(101, event.size());
+        assertEquals(101, event.getEvents().size());
+        assertEquals(100, event.getMovedNodes().size());
+        assertEquals(Collections.singletonMap("name", "A"), event.getOriginalKeys().get(nodes.get(0)));
+        assertTrue(event.getChangedWays().isEmpty());
+        // the merged move keeps the position before the first move
+        for (AbstractDatasetChangedEvent e : event.getEvents()) {
+            if (e instanceof NodeMovedEvent) {
+                assertEquals(new LatLon(0, 0), ((NodeMovedEvent) e).getOldCoor());
+            }
+        }
+    }
+
+    /**
+     * Checks that {@link CoalescedDataChangedEvent#getEvents()} stays compatible for big changes.
+     */
+    @Test
+    public void testBigChanges() {
+        DataSet ds = new DataSet();
+        List<Node> nodes = nodes(ds, CoalescedDataChangedEvent.MAX_LISTED_EVENTS + 1);
+        CoalescedDataChangedEvent event = new CoalescedDataChangedEvent(ds);
+        for (Node n : nodes) {
+            event.add(new NodeMovedEvent(ds, n));
+        }
+        assertNull(event.getEvents());
+        assertEquals(nodes.size(), event.getCoalescedEvents().size());
+
+        event.add(new DataChangedEvent(ds));
+        assertTrue(event.isEverythingChanged());
+        assertNull(event.getCoalescedEvents());
+        assertTrue(event.getMovedNodes().isEmpty());
+    }
+
+    /**
+     * Checks that a merged event is kept at the position of its last occurrence, after the events it depends on.
+     */
+    @Test
+    public void testLastOccurrence() {
+        DataSet ds = new DataSet();
+        Way w = new Way();
+        Node n = new Node(new LatLon(0, 0));
+        CoalescedDataChangedEvent event = new CoalescedDataChangedEvent(ds);
+        event.add(new WayNodesChangedEvent(ds, w));
+        event.add(new PrimitivesAddedEvent(ds, Collections.singleton(n), false));
+        event.add(new WayNodesChangedEvent(ds, w));
+        List<AbstractDatasetChangedEvent> events = event.getCoalescedEvents();
+        assertEquals(2, events.size());
+        assertTrue(events.get(0) instanceof PrimitivesAddedEvent);
+        assertTrue(events.get(1) instanceof WayNodesChangedEvent);
+    }
+
+    /**
+     * Checks that a plain {@link DataChangedEvent} is fired when too many events remain after merging.
+     */
+    @Test
+    public void testMaxEvents() {
+        int maxEvents = Reflection.staticField("MAX_EVENTS").ofType(int.class).in(DataSet.class).get();
+        DataSet ds = new DataSet();
+        List<AbstractDatasetChangedEvent> events = listen(ds);
+        ds.beginUpdate();
+        try {
+            nodes(ds, maxEvents + 1);
+        } finally {
+            ds.endUpdate();
+        }
+        assertEquals(1, events.size());
+        assertEquals(DataChangedEvent.class, events.get(0).getClass());
+        assertNull(((DataChangedEvent) events.get(0)).getEvents());
+    }
+
+    /**
+     * Checks that the events of an event batch are fired at its end, also when it ends within an update.
+     */
+    @Test
+    public void testEventBatch() {
+        DataSet ds = new DataSet();
+        List<Node> nodes = nodes(ds, 50);
+        List<AbstractDatasetChangedEvent> events = listen(ds);
+
+        ds.beginEventBatch();
+        try {
+            ds.beginEventBatch();
+            try {
+                for (Node n : nodes) {
+                    n.setCoor(new LatLon(1, 1));
+                }
+            } finally {
+                ds.endEventBatch();
+            }
+            nodes.get(0).put("name", "A");
+            assertTrue(events.isEmpty());
+        } finally {
+            ds.endEventBatch();
+        }
+        assertEquals(1, events.size());
+        CoalescedDataChangedEvent event = (CoalescedDataChangedEvent) events.get(0);
+        assertEquals(50, event.getMovedNodes().size());
+        assertEquals(1, event.getOriginalKeys().size());
+
+        events.clear();
+        ds.beginUpdate();
+        try {
+            ds.beginEventBatch();
+            try {
+                nodes.get(1).put("name", "B");
+            } finally {
+                ds.endEventBatch();
+            }
+            assertTrue(events.isEmpty());
+        } finally {
+            ds.endUpdate();
+        }
+        assertEquals(1, events.size());
+        assertTrue(events.get(0) instanceof TagsChangedEvent);
+    }
+}
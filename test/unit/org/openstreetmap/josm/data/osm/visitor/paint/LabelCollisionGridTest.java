@@ -0,0 +1,77 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openstreetmap.josm.data.osm.visitor.paint.GlyphVectorCache.ShapedText;
+
+/**
+ * Unit tests of {@link LabelCollisionGrid} and {@link GlyphVectorCache}.
+ */
+public class LabelCollisionGridTest {
+
+    /**
+     * Checks that overlapping rectangles are detected, also across cells and at negative coordinates.
+     */
+    @Test
+    public void testCollision() {
+        LabelCollisionGrid grid = new LabelCollisionGrid();
+        Rectangle2D label = new Rectangle2D.Double(50, 50, 100, 20);
+        assertTrue(grid.isFree(label));
+        grid.add(label);
+        assertEquals(1, grid.size());
+
+        assertFalse(grid.isFree(new Rectangle2D.Double(140, 60, 10, 10)));
+        assertFalse(grid.isFree(new Rectangle2D.Double(0, 0, 300, 300)));
+        assertTrue(grid.isFree(new Rectangle2D.Double(151, 50, 10, 10)));
+        assertTrue(grid.isFree(new Rectangle2D.Double(50, 71, 100, 20)));
+
+        grid.add(new Rectangle2D.Double(-200, -10, 150, 5));
+        assertFalse(grid.isFree(new Rectangle2D.Double(-60, -8, 5, 5)));
+        assertTrue(grid.isFree(new Rectangle2D.Double(-60, -4, 5, 5)));
+        assertFalse(grid.isFree(Arrays.asList(new Rectangle2D.Double(500, 500, 5, 5), new Rectangle2D.Double(60, 60, 1, 1))));
+        assertTrue(grid.isFree(Arrays.asList(new Rectangle2D.Double(500, 500, 5, 5), new Rectangle2D.Double(0, 0, 1, 1))));
+
+        grid.clear();
+        assertEquals(0, grid.size());
+        assertTrue(grid.isFree(label));
+    }
+
+    /**
+     * Checks that shaped texts are cached by text, font and font render context.
+     */
+    @Test
+    public void testGlyphVectorCache() {
+        Font font = new Font("SansSerif", Font.PLAIN, 12);
+        FontRenderContext frc = new FontRenderContext(null, true, false);
+        GlyphVectorCache.clear();
+        long hits = GlyphVectorCache.getHits();
+        long misses = GlyphVectorCache.getMisses();
+
+        ShapedText shaped = GlyphVectorCache.get("Main Street", font, frc);
+        assertEquals(misses + 1, GlyphVectorCache.getMisses());
+        assertSame(shaped, GlyphVectorCache.get("Main " + "Street", font, new FontRenderContext(null, true, false)));
+        assertEquals(hits + 1, GlyphVectorCache.getHits());
+        assertNotSame(shaped, GlyphVectorCache.get("Main Street", font.deriveFont(Font.BOLD), frc));
+        assertNotSame(shaped, GlyphVectorCache.get("Main Street", font, new FontRenderContext(null, false, false)));
+        assertEquals(misses + 3, GlyphVectorCache.getMisses());
+
+        assertFalse(shaped.isBidi());
+        assertTrue(GlyphVectorCache.get("רחוב", font, frc).isBidi());
+        assertEquals(11, shaped.getGlyphs().getNumGlyphs());
+        assertEquals(font.getStringBounds("Main Street", frc).getWidth(), shaped.getBounds().getWidth(), 1e-6);
+
+        GlyphVectorCache.clear();
+        assertNotSame(shaped, GlyphVectorCache.get("Main Street", font, frc));
+    }
+}
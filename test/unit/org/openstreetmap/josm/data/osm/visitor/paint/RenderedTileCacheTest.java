@@ -0,0 +1,159 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.fest.reflect.core.Reflection;
+import org.fest.reflect.reference.TypeRef;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Unit tests of {@link RenderedTileCache}.
+ */
+public class RenderedTileCacheTest {
+
+    private static final double SCALE = 0.5;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static NavigatableComponent createView(EastNorth center) {
+        NavigatableComponent nc = new NavigatableComponent();
+        nc.setSize(600, 400);
+        // align the view to the pixel grid of the tiles
+        nc.zoomTo(new EastNorth(Math.round(center.east() / SCALE) * SCALE, Math.round(center.north() / SCALE) * SCALE),
+                SCALE, true);
+        return nc;
+    }
+
+    private static BufferedImage paint(DataSet ds, NavigatableComponent nc, RenderedTileCache cache) {
+        BufferedImage image = new BufferedImage(nc.getWidth(), nc.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (cache == null) {
+                MapRendererFactory.getInstance().createActiveRenderer(g, nc, false)
+                        .render(ds, false, nc.getLatLonBounds(new Rectangle(0, 0, nc.getWidth(), nc.getHeight())));
+            } else {
+                assertTrue(cache.paint(g, nc, false, false));
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        int painted = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+                if (expected.getRGB(x, y) != 0) {
+                    painted++;
+                }
+            }
+        }
+        assertTrue(painted > 0);
+    }
+
+    /**
+     * Checks that tiles are composed to the same image as direct rendering, also after changes of the dataset.
+     */
+    @Test
+    public void testPaint() {
+        DataSet ds = new DataSet();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Node n = new Node(new LatLon(53.55 + 0.0001 * (i % 5), 13.26 + 0.0002 * i));
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        Way w = new Way();
+        ds.addPrimitive(w);
+        w.setNodes(nodes.subList(0, 10));
+        Way w2 = new Way();
+        ds.addPrimitive(w2);
+        w2.setNodes(nodes.subList(10, 20));
+
+        NavigatableComponent nc = createView(Main.getProjection().latlon2eastNorth(nodes.get(10).getCoor()));
+        final RenderedTileCache cache = new RenderedTileCache(ds);
+        ds.addDataSetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                cache.invalidate(event);
+            }
+        }));
+        assertSameImage(paint(ds, nc, null), paint(ds, nc, cache));
+
+        // move a node: the tiles at the old and the new position have to be rendered again
+        nodes.get(10).setCoor(new LatLon(53.5504, 13.2615));
+        w.removeNode(nodes.get(9));
+        w2.put("highway", "primary");
+        assertSameImage(paint(ds, nc, null), paint(ds, nc, cache));
+
+        // selection
+        ds.setSelected(Arrays.asList(w));
+        assertSameImage(paint(ds, nc, null), paint(ds, nc, cache));
+        ds.clearSelection();
+        assertSameImage(paint(ds, nc, null), paint(ds, nc, cache));
+    }
+
+    /**
+     * Checks that moving a node invalidates the regions covered by its ways before the move.
+     */
+    @Test
+    public void testMoveEndNode() {
+        EastNorth center = Main.getProjection().latlon2eastNorth(new LatLon(53.55, 13.26));
+        DataSet ds = new DataSet();
+        Node n1 = new Node(center.add(-100, 0));
+        Node n2 = new Node(center.add(100, 0));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        Way w = new Way();
+        ds.addPrimitive(w);
+        w.setNodes(Arrays.asList(n1, n2));
+
+        final RenderedTileCache cache = new RenderedTileCache(ds);
+        ds.addDataSetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                cache.invalidate(event);
+            }
+        }));
+        // the middle of the old segment is neither at the old nor at the new position of the node nor in the new bbox
+        n2.setEastNorth(center.add(-100, -100));
+
+        List<ProjectionBounds> dirtyRegions = Reflection.field("dirtyRegions")
+                .ofType(new TypeRef<List<ProjectionBounds>>() {}).in(cache).get();
+        boolean dirty = false;
+        for (ProjectionBounds region : dirtyRegions) {
+            dirty |= region.minEast <= center.east() && center.east() <= region.maxEast
+                    && region.minNorth <= center.north() && center.north() <= region.maxNorth;
+        }
+        assertTrue(dirty);
+    }
+}
@@ -0,0 +1,105 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Unit tests of {@link StyledMapRenderer}.
+ */
+public class StyledMapRendererTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+        MapPaintStyles.readFromPreferences();
+    }
+
+    private static BufferedImage paint(DataSet ds, NavigatableComponent nc, Bounds bounds, ExecutorService executor,
+            int bands) {
+        BufferedImage image = new BufferedImage(nc.getWidth(), nc.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        // like the graphics of a component, ways are only painted within the clip
+        g.setClip(0, 0, nc.getWidth(), nc.getHeight());
+        try {
+            StyledMapRenderer renderer = new StyledMapRenderer(g, nc, false);
+            renderer.setParallelPainting(executor, bands);
+            renderer.render(ds, true, bounds);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static void testParallelPainting(String file, Bounds bounds) throws Exception {
+        DataSet ds;
+        try (InputStream in = new FileInputStream(file)) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        NavigatableComponent nc = new NavigatableComponent();
+        nc.setSize(800, 600);
+        nc.zoomTo(bounds);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BufferedImage expected = paint(ds, nc, bounds, null, 0);
+            BufferedImage actual = paint(ds, nc, bounds, executor, 7);
+            int painted = 0;
+            for (int y = 0; y < expected.getHeight(); y++) {
+                for (int x = 0; x < expected.getWidth(); x++) {
+                    assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+                    if (expected.getRGB(x, y) != 0) {
+                        painted++;
+                    }
+                }
+            }
+            assertTrue(painted > 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the map painted in parallel bands looks exactly like the map painted at once.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testParallelPainting() throws Exception {
+        testParallelPainting("data_nodist/restriction.osm", new Bounds(51.12, 14.147472381591795, 51.128, 14.162492752075195));
+        testParallelPainting("data_nodist/multipolygon.osm", new Bounds(60, -180, 85, -122));
+    }
+
+    /**
+     * Checks that labels placed without overlaps are the same if the map is painted in parallel bands.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testLabelCollision() throws Exception {
+        StyledMapRenderer.PROP_LABEL_COLLISION.put(true);
+        try {
+            testParallelPainting("data_nodist/restriction.osm", new Bounds(51.12, 14.147472381591795, 51.128, 14.162492752075195));
+            testParallelPainting("data_nodist/multipolygon.osm", new Bounds(60, -180, 85, -122));
+        } finally {
+            StyledMapRenderer.PROP_LABEL_COLLISION.put(false);
+        }
+    }
+}
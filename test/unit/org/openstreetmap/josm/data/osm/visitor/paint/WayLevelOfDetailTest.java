@@ -0,0 +1,89 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Unit tests of {@link WayLevelOfDetail}.
+ */
+public class WayLevelOfDetailTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static Node node(DataSet ds, double east, double north) {
+        Node n = new Node(new EastNorth(east, north));
+        ds.addPrimitive(n);
+        return n;
+    }
+
+    /**
+     * Unit test of the Douglas-Peucker simplification.
+     */
+    @Test
+    public void testSimplify() {
+        DataSet ds = new DataSet();
+        Node a = node(ds, 0, 0);
+        Node b = node(ds, 10, 2);
+        Node c = node(ds, 20, 5);
+        Node d = node(ds, 30, 4.5);
+        Node e = node(ds, 40, 0);
+        Node[] nodes = {a, b, c, d, e};
+        assertEquals(Arrays.asList(nodes), Arrays.asList(WayLevelOfDetail.simplify(nodes, 0.1)));
+        assertEquals(Arrays.asList(a, c, d, e), Arrays.asList(WayLevelOfDetail.simplify(nodes, 1)));
+        assertEquals(Arrays.asList(a, c, e), Arrays.asList(WayLevelOfDetail.simplify(nodes, 2)));
+        assertEquals(Arrays.asList(a, e), Arrays.asList(WayLevelOfDetail.simplify(nodes, 10)));
+        // closed ways keep their extent
+        Node[] ring = {a, c, e, node(ds, 20, -5), a};
+        assertEquals(Arrays.asList(a, c, e, ring[3], a), Arrays.asList(WayLevelOfDetail.simplify(ring, 2)));
+    }
+
+    /**
+     * Checks that the simplified nodes are cached and dropped when the way changes.
+     */
+    @Test
+    public void testInvalidation() {
+        DataSet ds = new DataSet();
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            nodes.add(node(ds, i, i % 2 == 0 ? 0 : 0.01));
+        }
+        Way w = new Way();
+        ds.addPrimitive(w);
+        w.setNodes(nodes);
+
+        // half a pixel at scale 0.01 is less than the zigzag
+        assertEquals(101, WayLevelOfDetail.getNodes(w, 0.01).size());
+        assertEquals(2, WayLevelOfDetail.getNodes(w, 1).size());
+        assertNotNull(w.getRenderingCache());
+        assertEquals(2, WayLevelOfDetail.getNodes(w, 1).size());
+
+        nodes.get(50).setEastNorth(new EastNorth(50, 30));
+        assertNull(w.getRenderingCache());
+        assertTrue(WayLevelOfDetail.getNodes(w, 1).contains(nodes.get(50)));
+
+        w.removeNode(nodes.get(50));
+        assertNull(w.getRenderingCache());
+        assertEquals(2, WayLevelOfDetail.getNodes(w, 1).size());
+    }
+}
@@ -0,0 +1,120 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint.relations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.CoalescedDataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.relations.Multipolygon.PolyData;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Unit tests of {@link MultipolygonCache}.
+ */
+public class MultipolygonCacheTest {
+
+    private static DataSet ds;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+        ds = new DataSet();
+    }
+
+    private static Way square(double lat, double lon, double size) {
+        Node a = new Node(new LatLon(lat, lon));
+        Node b = new Node(new LatLon(lat, lon + size));
+        Node c = new Node(new LatLon(lat + size, lon + size));
+        Node d = new Node(new LatLon(lat + size, lon));
+        Way w = new Way();
+        for (Node n : Arrays.asList(a, b, c, d)) {
+            ds.addPrimitive(n);
+        }
+        ds.addPrimitive(w);
+        w.setNodes(Arrays.asList(a, b, c, d, a));
+        return w;
+    }
+
+    private static boolean contains(Rectangle2D bounds, LatLon ll) {
+        EastNorth en = Main.getProjection().latlon2eastNorth(ll);
+        return bounds.contains(en.getX(), en.getY());
+    }
+
+    /**
+     * Checks that a change of an inner ring only rebuilds this ring.
+     */
+    @Test
+    public void testRingsRebuilt() {
+        Way outer = square(0, 0, 1);
+        Way inner = square(0.4, 0.4, 0.2);
+        Relation r = new Relation();
+        r.put("type", "multipolygon");
+        r.addMember(new RelationMember("outer", outer));
+        r.addMember(new RelationMember("inner", inner));
+        ds.addPrimitive(r);
+
+        MultipolygonCache cache = MultipolygonCache.getInstance();
+        NavigatableComponent nc = new NavigatableComponent();
+        long built = cache.getMultipolygonsBuilt();
+        Multipolygon mp = cache.get(nc, r);
+        assertEquals(built + 1, cache.getMultipolygonsBuilt());
+        assertEquals(1, mp.getCombinedPolygons().size());
+        PolyData pd = mp.getCombinedPolygons().get(0);
+        assertTrue(contains(pd.getBounds(), new LatLon(0.5, 0.5)));
+        // the hole is not part of the area
+        EastNorth hole = Main.getProjection().latlon2eastNorth(new LatLon(0.5, 0.5));
+        assertFalse(pd.get().contains(hole.getX(), hole.getY()));
+
+        // move an inner node outside of the outer ring, only the inner ring is rebuilt
+        long rebuilt = cache.getRingsRebuilt();
+        Node moved = inner.getNode(2);
+        moved.setCoor(new LatLon(2, 2));
+        cache.nodeMoved(new NodeMovedEvent(ds, moved));
+        assertEquals(rebuilt + 1, cache.getRingsRebuilt());
+        assertSame(mp, cache.get(nc, r));
+        assertEquals(built + 1, cache.getMultipolygonsBuilt());
+        assertTrue(contains(pd.getBounds(), new LatLon(1.9, 1.9)));
+
+        // a node of the outer ring rebuilds the outer ring
+        rebuilt = cache.getRingsRebuilt();
+        moved = outer.getNode(0);
+        moved.setCoor(new LatLon(-1, -1));
+        cache.nodeMoved(new NodeMovedEvent(ds, moved));
+        assertEquals(rebuilt + 1, cache.getRingsRebuilt());
+        assertTrue(contains(pd.getBounds(), new LatLon(-0.9, -0.9)));
+
+        // changed way nodes rejoin the affected ring, also when coalesced
+        rebuilt = cache.getRingsRebuilt();
+        inner.removeNode(inner.getNode(2));
+        CoalescedDataChangedEvent event = new CoalescedDataChangedEvent(ds);
+        event.add(new WayNodesChangedEvent(ds, inner));
+        cache.dataChanged(event);
+        assertEquals(rebuilt + 1, cache.getRingsRebuilt());
+        assertSame(mp, cache.get(nc, r));
+        assertFalse(contains(pd.getBounds(), new LatLon(1.9, 1.9)));
+        assertEquals(built + 1, cache.getMultipolygonsBuilt());
+
+        cache.clear(nc);
+    }
+}
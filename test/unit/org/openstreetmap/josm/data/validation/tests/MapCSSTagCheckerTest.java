@@ -2,11 +2,17 @@ package org.openstreetmap.josm.data.validation.tests;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -16,10 +22,15 @@ import org.junit.Test;
 import org.openstreetmap.josm.JOSMFixture;
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Tag;
 import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.data.validation.tests.MapCSSTagChecker.TagCheck;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
 
 /**
  * JUnit Test of MapCSS TagChecker.
@@ -80,4 +91,36 @@ public class MapCSSTagCheckerTest {
         }
         assertTrue("not all assertions included in the tests are met", assertionErrors.isEmpty());
     }
+
+    private static List<String> toStrings(Collection<TestError> errors) {
+        List<String> result = new ArrayList<>();
+        for (TestError e : errors) {
+            result.add(e.getSeverity() + " " + e.getMessage() + " " + e.getPrimitives());
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the checks found by the index report the same errors as all checks.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testIndex() throws Exception {
+        MapCSSTagChecker c = new MapCSSTagChecker();
+        c.initialize();
+        int errors = 0;
+        for (String file : Arrays.asList("data_nodist/restriction.osm", "data_nodist/multipolygon.osm",
+                "data_nodist/filterTests.osm")) {
+            DataSet ds;
+            try (InputStream in = new FileInputStream(file)) {
+                ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+            }
+            for (OsmPrimitive p : ds.allPrimitives()) {
+                List<String> expected = toStrings(MapCSSTagChecker.getErrorsForPrimitive(p, true, c.checks.values()));
+                assertEquals(expected, toStrings(c.getErrorsForPrimitive(p, true)));
+                errors += expected.size();
+            }
+        }
+        assertTrue(errors > 0);
+    }
 }
@@ -0,0 +1,141 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Unit tests of {@link RenderingHelper}.
+ */
+public class RenderingHelperTest {
+
+    private static final Bounds BOUNDS = new Bounds(51.12, 14.147472381591795, 51.128, 14.162492752075195);
+    private static final double SCALE = 1.5;
+
+    private static DataSet ds;
+    private static List<StyleSource> sources;
+    private static RenderingHelper helper;
+
+    /**
+     * Setup test.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createUnitTestFixture().init();
+        try (InputStream in = new FileInputStream("data_nodist/restriction.osm")) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        String url = "styles/standard/elemstyles.mapcss";
+        MapCSSStyleSource source = new MapCSSStyleSource(new SourceEntry(url, url, url, true));
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        sources = Collections.<StyleSource>singletonList(source);
+        helper = new RenderingHelper(ds, sources);
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Checks that the area is rendered into an image of the expected size, also as PNG.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRender() throws Exception {
+        Dimension size = RenderingHelper.getImageSize(BOUNDS, SCALE);
+        BufferedImage image = helper.render(BOUNDS, SCALE);
+        assertEquals(size.width, image.getWidth());
+        assertEquals(size.height, image.getHeight());
+        int painted = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) != 0) {
+                    painted++;
+                }
+            }
+        }
+        assertTrue(painted > 0);
+
+        helper.setBackgroundColor(Color.WHITE);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            helper.renderPng(BOUNDS, SCALE, out);
+            BufferedImage png = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(size.width, png.getWidth());
+            assertEquals(Color.WHITE.getRGB(), png.getRGB(0, 0));
+        } finally {
+            helper.setBackgroundColor(null);
+        }
+    }
+
+    /**
+     * Checks that a scale which the map view would change is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testScaleOutOfRange() {
+        helper.render(new Bounds(51.12, 14.15, 51.1200001, 14.1500001), 1e-4);
+    }
+
+    /**
+     * Checks that images rendered at the same time by several threads equal the image rendered alone.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testConcurrentRendering() throws Exception {
+        BufferedImage expected = helper.render(BOUNDS, SCALE);
+        // the styles of the primitives are not cached for new styles, so all threads compute them at once
+        final RenderingHelper concurrent = new RenderingHelper(ds, sources);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<BufferedImage>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() {
+                        return concurrent.render(BOUNDS, SCALE);
+                    }
+                });
+            }
+            for (Future<BufferedImage> future : executor.invokeAll(tasks)) {
+                assertSameImage(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
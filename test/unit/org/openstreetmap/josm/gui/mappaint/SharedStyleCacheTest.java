@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.StyleCache.StyleList;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+
+/**
+ * Unit tests of {@link SharedStyleCache}.
+ */
+public class SharedStyleCacheTest {
+
+    private static final String CSS =
+            "way[highway] { width: 2; color: blue; }\n" +
+            "way|z17-[highway] { width: 4; }\n" +
+            "way[name] { text: name; }\n" +
+            "relation[type=route] > way[highway] { color: green; }\n" +
+            "way[highway=service]:closed { fill-color: red; }\n";
+
+    private static DataSet ds;
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+        ds = new DataSet();
+    }
+
+    private static ElemStyles load() {
+        MapCSSStyleSource source = new MapCSSStyleSource(CSS);
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        assertEquals(3, source.getContextFreeRuleCount());
+        ElemStyles styles = new ElemStyles();
+        styles.add(source);
+        return styles;
+    }
+
+    private static Way way(String... tags) {
+        Node a = new Node(new LatLon(0, 0));
+        Node b = new Node(new LatLon(0.001, 0.001));
+        Way w = new Way();
+        for (int i = 0; i < tags.length; i += 2) {
+            w.put(tags[i], tags[i + 1]);
+        }
+        ds.addPrimitive(a);
+        ds.addPrimitive(b);
+        ds.addPrimitive(w);
+        w.setNodes(Arrays.asList(a, b));
+        return w;
+    }
+
+    /**
+     * Checks that identically tagged ways share their styles, but not with ways in a context matched by a rule.
+     */
+    @Test
+    public void testShared() {
+        ElemStyles styles = load();
+        SharedStyleCache cache = styles.getSharedStyleCache();
+        StyleList residential = styles.generateStyles(way("highway", "residential", "name", "Main"), 1, false).a;
+        assertEquals(0, cache.getHits());
+        // the order of the tags does not matter
+        assertSame(residential, styles.generateStyles(way("name", "Main", "highway", "residential"), 1, false).a);
+        assertEquals(1, cache.getHits());
+        assertNotEquals(residential, styles.generateStyles(way("highway", "primary"), 1, false).a);
+        assertEquals(1, cache.getHits());
+        // the scale range of the shared styles is respected
+        StyleList zoomedOut = styles.generateStyles(way("highway", "residential", "name", "Main"), 1000, false).a;
+        assertNotEquals(residential, zoomedOut);
+        assertSame(residential, styles.generateStyles(way("highway", "residential", "name", "Main"), 1, false).a);
+        assertEquals(2, cache.getHits());
+
+        // a route member matches a rule which depends on the parent relation
+        Way member = way("highway", "residential", "name", "Main");
+        Relation route = new Relation();
+        route.put("type", "route");
+        route.addMember(new RelationMember("", member));
+        ds.addPrimitive(route);
+        StyleList routeStyles = styles.generateStyles(member, 1, false).a;
+        assertNotEquals(residential, routeStyles);
+        assertEquals(1, cache.getContextDependent());
+        assertSame(residential, styles.generateStyles(way("highway", "residential", "name", "Main"), 1, false).a);
+
+        // the styles of a closed way depend on its geometry
+        Way closed = way("highway", "service");
+        closed.addNode(closed.firstNode());
+        Way open = way("highway", "service");
+        assertNotEquals(styles.generateStyles(closed, 1, false).a, styles.generateStyles(open, 1, false).a);
+        assertEquals(2, cache.getContextDependent());
+
+        cache.clear();
+        assertEquals(residential, styles.generateStyles(way("highway", "residential", "name", "Main"), 1, false).a);
+    }
+}
@@ -0,0 +1,161 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.Cascade;
+import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Op;
+
+/**
+ * Unit tests of {@link MapCSSCompiler}.
+ */
+public class MapCSSCompilerTest {
+
+    private static final String CSS =
+            "setting::hide_icons { type: boolean; label: \"Hide icons\"; default: true; }\n" +
+            "setting::show_refs { type: boolean; label: \"Show refs\"; default: false; }\n" +
+            "node[amenity] { symbol-shape: circle; symbol-size: plus(2, times(2, 3)); }\n" +
+            "node[amenity][!setting(\"hide_icons\")] { icon-image: \"presets/food.png\"; }\n" +
+            "node[amenity][setting(\"show_refs\")] { text: ref; }\n" +
+            "way[highway][lanes>=2] { width: max(2, tag(\"lanes\")); }\n" +
+            "way[highway][lanes<2] { width: 1; }\n" +
+            "way[ref~=A1] { color: red; }\n" +
+            "way[name^=Main] { font-size: cond(has_tag_key(\"ref\"), 12, 10); }\n" +
+            "way[highway] > node[amenity] { major-z-index: 5; }\n" +
+            "way[eval(concat(\"a\", \"b\") == \"ab\")] { z-index: 2; }\n";
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    /**
+     * Resets the preference.
+     */
+    @After
+    public void tearDown() {
+        MapCSSStyleSource.COMPILE.put(false);
+    }
+
+    private static MapCSSStyleSource load(boolean compile) {
+        MapCSSStyleSource.COMPILE.put(compile);
+        MapCSSStyleSource source = new MapCSSStyleSource(CSS);
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        return source;
+    }
+
+    private static String apply(MapCSSStyleSource source, OsmPrimitive osm) {
+        MultiCascade mc = new MultiCascade();
+        source.apply(mc, osm, 1.0, false);
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, Cascade> e : mc.getLayers()) {
+            sb.append(e.getKey()).append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks that compiled rules produce the same styles as interpreted rules.
+     */
+    @Test
+    public void testSameStyles() {
+        MapCSSStyleSource interpreted = load(false);
+        MapCSSStyleSource compiled = load(true);
+
+        DataSet ds = new DataSet();
+        Node cafe = new Node(new LatLon(0, 0));
+        cafe.put("amenity", "cafe");
+        cafe.put("ref", "12");
+        Node plain = new Node(new LatLon(0, 1));
+        Way w1 = new Way();
+        w1.put("highway", "primary");
+        w1.put("lanes", "3");
+        w1.put("ref", "A1;B2");
+        w1.put("name", "Main Street");
+        Way w2 = new Way();
+        w2.put("highway", "residential");
+        w2.put("lanes", "1");
+        w2.put("name", "Mainz");
+        Way w3 = new Way();
+        w3.put("highway", "track");
+        w3.put("lanes", "many");
+        w3.put("ref", "A10");
+        for (OsmPrimitive p : Arrays.asList(cafe, plain, w1, w2, w3)) {
+            ds.addPrimitive(p);
+        }
+        w1.setNodes(Arrays.asList(cafe, plain));
+
+        for (OsmPrimitive p : Arrays.asList(cafe, plain, w1, w2, w3)) {
+            assertEquals(p.toString(), apply(interpreted, p), apply(compiled, p));
+        }
+        assertTrue(apply(compiled, w1).contains("width:3.0"));
+        assertTrue(apply(compiled, w1).contains("font-size:12.0"));
+        assertFalse(apply(compiled, w3).contains("width"));
+    }
+
+    /**
+     * Checks that constant conditions are removed and that rules which never match are dropped.
+     */
+    @Test
+    public void testConstantConditions() {
+        MapCSSStyleSource interpreted = load(false);
+        MapCSSStyleSource compiled = load(true);
+        assertEquals(interpreted.nodeRules.rules.size() - 2, compiled.nodeRules.rules.size());
+        assertEquals(interpreted.wayRules.rules.size(), compiled.wayRules.rules.size());
+        assertEquals(0, countUnconditional(interpreted.wayRules));
+        assertEquals(1, countUnconditional(compiled.wayRules));
+    }
+
+    private static int countUnconditional(MapCSSStyleSource.MapCSSRuleIndex index) {
+        int count = 0;
+        for (MapCSSRule r : index.rules) {
+            if (r.selector instanceof Selector.AbstractSelector
+                    && ((Selector.AbstractSelector) r.selector).getConditions().isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Unit test of the compiled key/value conditions.
+     */
+    @Test
+    public void testKeyValueConditions() {
+        MapCSSCompiler compiler = new MapCSSCompiler(null);
+        Condition c = new Condition.KeyValueCondition("lanes", "2", Op.GREATER, false);
+        Condition compiled = compiler.compile(c);
+        assertFalse(c == compiled);
+        Node n = new Node();
+        Environment env = new Environment(n, null, null, null);
+        assertFalse(compiled.applies(env));
+        n.put("lanes", "3");
+        assertTrue(compiled.applies(env));
+        n.put("lanes", "many");
+        assertFalse(compiled.applies(env));
+        c = new Condition.KeyValueCondition("a", "x", Op.GREATER, false);
+        assertTrue(c == compiler.compile(c));
+        c = new Condition.KeyValueCondition("a", "b", Op.EQ, true);
+        assertTrue(c == compiler.compile(c));
+    }
+}
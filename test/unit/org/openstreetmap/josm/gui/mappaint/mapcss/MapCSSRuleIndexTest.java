@@ -0,0 +1,152 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource.MapCSSRuleIndex;
+import org.openstreetmap.josm.gui.preferences.SourceEntry;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
+
+/**
+ * Unit tests of {@link MapCSSRuleIndex}.
+ */
+public class MapCSSRuleIndexTest {
+
+    private static final String CSS =
+            "node[amenity=cafe] { symbol-shape: circle; }\n" +
+            "*[name] { text: name; }\n" +
+            "way[highway][name!=Main] { width: 2; }\n" +
+            "way[oneway?] { color: red; }\n" +
+            "way[!highway] { color: blue; }\n" +
+            "way[surface!=paved] { width: 3; }\n" +
+            "way[highway=residential] { width: 4; }\n" +
+            "way[highway=~/ary$/] { width: 5; }\n" +
+            "way:closed { fill-color: green; }\n" +
+            "way[highway=residential][name] { font-size: 12; }\n" +
+            "way { z-index: 1; }\n";
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static List<MapCSSRule> toList(Iterator<MapCSSRule> it) {
+        List<MapCSSRule> result = new ArrayList<>();
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the candidates of each primitive contain all matching rules in the order of their declarations.
+     */
+    private static void checkCandidates(MapCSSStyleSource source, OsmPrimitive p) {
+        for (MapCSSRuleIndex index : new MapCSSRuleIndex[] {source.nodeRules, source.wayRules, source.wayNoAreaRules,
+                source.relationRules, source.multipolygonRules}) {
+            List<MapCSSRule> candidates = toList(index.getRuleCandidates(p));
+            for (int i = 0; i < candidates.size() - 1; i++) {
+                assertTrue(candidates.get(i).compareTo(candidates.get(i + 1)) <= 0);
+            }
+            Environment env = new Environment(p, new MultiCascade(), Environment.DEFAULT_LAYER, source);
+            for (MapCSSRule r : index.rules) {
+                env.clearSelectorMatchingInformation();
+                if (r.selector.matches(env)) {
+                    assertTrue(r + " matches " + p.getKeys(), candidates.contains(r));
+                }
+            }
+        }
+    }
+
+    private static Way way(String... tags) {
+        Way w = new Way();
+        for (int i = 0; i < tags.length; i += 2) {
+            w.put(tags[i], tags[i + 1]);
+        }
+        DataSet ds = new DataSet();
+        Node a = new Node(new LatLon(0, 0));
+        Node b = new Node(new LatLon(1, 1));
+        ds.addPrimitive(a);
+        ds.addPrimitive(b);
+        ds.addPrimitive(w);
+        w.setNodes(Arrays.asList(a, b));
+        return w;
+    }
+
+    /**
+     * Unit test of the candidates for a small style.
+     */
+    @Test
+    public void testCandidates() {
+        MapCSSStyleSource source = new MapCSSStyleSource(CSS);
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        Way residential = way("highway", "residential", "name", "Main", "oneway", "yes");
+        Way untagged = way();
+        for (Way w : Arrays.asList(residential, untagged, way("highway", "primary", "surface", "paved"),
+                way("surface", "gravel", "name", "Track"))) {
+            checkCandidates(source, w);
+            checkCandidates(source, w.firstNode());
+        }
+        // [surface!=paved] matches ways without surface, so it must not be indexed by the key
+        assertEquals(4, toList(source.wayRules.getRuleCandidates(untagged)).size());
+        assertEquals(10, toList(source.wayRules.getRuleCandidates(residential)).size());
+
+        // candidates of another primitive may be iterated while the first ones are in use
+        Iterator<MapCSSRule> first = source.wayRules.getRuleCandidates(residential);
+        first.next();
+        assertEquals(4, toList(source.wayRules.getRuleCandidates(untagged)).size());
+        assertEquals(9, toList(first).size());
+        assertFalse(first.hasNext());
+
+        // candidates which are not iterated to the end do not change the following ones
+        Iterator<MapCSSRule> abandoned = source.wayRules.getRuleCandidates(residential);
+        abandoned.next();
+        assertEquals(10, toList(source.wayRules.getRuleCandidates(residential)).size());
+        assertEquals(4, toList(source.wayRules.getRuleCandidates(untagged)).size());
+    }
+
+    /**
+     * Unit test of the candidates of the default style for the primitives of some sample files.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testDefaultStyle() throws Exception {
+        MapCSSStyleSource source = new MapCSSStyleSource(
+                new SourceEntry("styles/standard/elemstyles.mapcss", "standard", "standard", true));
+        source.loadStyleSource();
+        assertTrue(source.getErrors().toString(), source.getErrors().isEmpty());
+        for (String file : Arrays.asList("data_nodist/restriction.osm", "data_nodist/multipolygon.osm")) {
+            DataSet ds;
+            try (InputStream in = new FileInputStream(file)) {
+                ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+            }
+            for (OsmPrimitive p : ds.allPrimitives()) {
+                checkCandidates(source, p);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Unit tests of {@link OsmReader} class.
+ */
+public class OsmReaderTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    /**
+     * Restores the default reading mode.
+     */
+    @After
+    public void tearDown() {
+        Main.pref.put("osm.reader.pipelined", null);
+    }
+
+    private static DataSet parse(String file, boolean pipelined) throws Exception {
+        Main.pref.put("osm.reader.pipelined", pipelined);
+        try (InputStream in = new FileInputStream(file)) {
+            return OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    private static String parseError(byte[] xml, boolean pipelined) {
+        Main.pref.put("osm.reader.pipelined", pipelined);
+        try {
+            OsmReader.parseDataSet(new ByteArrayInputStream(xml), NullProgressMonitor.INSTANCE);
+        } catch (IllegalDataException e) {
+            return e.getMessage();
+        }
+        fail("invalid data accepted");
+        return null;
+    }
+
+    /**
+     * Replies the id of a primitive, or its type for new primitives, whose ids differ for each reading.
+     */
+    private static String id(OsmPrimitive osm) {
+        return osm.isNew() ? osm.getType().getAPIName() : osm.getPrimitiveId().toString();
+    }
+
+    private static List<String> signatures(DataSet ds) {
+        List<String> result = new ArrayList<>();
+        for (OsmPrimitive osm : ds.allPrimitives()) {
+            StringBuilder sb = new StringBuilder(id(osm));
+            sb.append(new TreeMap<>(osm.getKeys())).append(osm.getVersion()).append(osm.getUser())
+              .append(osm.isModified()).append(osm.isDeleted()).append(osm.isIncomplete());
+            if (osm instanceof Node) {
+                sb.append(((Node) osm).getCoor());
+            } else if (osm instanceof Way) {
+                for (Node n : ((Way) osm).getNodes()) {
+                    sb.append(id(n)).append(n.getCoor());
+                }
+            } else {
+                for (RelationMember m : ((Relation) osm).getMembers()) {
+                    sb.append(m.getRole()).append(id(m.getMember())).append(new TreeMap<>(m.getMember().getKeys()));
+                }
+            }
+            result.add(sb.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Checks that reading in stages results in the same data as reading in one thread.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testPipelined() throws Exception {
+        for (String file : new String[] {"data_nodist/restriction.osm", "data_nodist/multipolygon.osm"}) {
+            DataSet serial = parse(file, false);
+            DataSet pipelined = parse(file, true);
+            assertTrue(!serial.allPrimitives().isEmpty());
+            assertEquals(file, signatures(serial), signatures(pipelined));
+            assertEquals(file, serial.dataSources.size(), pipelined.dataSources.size());
+        }
+    }
+
+    /**
+     * Checks that an error found when building a primitive is reported with the position of the primitive,
+     * also if the parser already read ahead.
+     */
+    @Test
+    public void testErrorPosition() {
+        StringBuilder sb = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<osm version='0.6'>\n");
+        for (int i = 1; i <= 20000; i++) {
+            String version = i == 5000 ? "x" : "1";
+            sb.append("<node id='").append(i).append("' version='").append(version)
+              .append("' changeset='1' lat='1.0' lon='2.0'><tag k='a' v='b'/></node>\n");
+        }
+        sb.append("</osm>\n");
+        byte[] xml = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String serial = parseError(xml, false);
+        assertTrue(serial, serial.startsWith(tr("Illegal value for attribute ''version'' on OSM primitive with ID {0}. Got {1}.",
+                "5000", "x") + " " + tr("(at line {0}, column {1})", 5002, 63)));
+        assertEquals(serial, parseError(xml, true));
+    }
+
+    /**
+     * Checks that a reader overriding the methods which parse primitives is not pipelined, so that they are called.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testOverriddenParseMethods() throws Exception {
+        Main.pref.put("osm.reader.pipelined", true);
+        final List<Node> parsed = new ArrayList<>();
+        OsmReader reader = new OsmReader() {
+            @Override
+            protected Node parseNode() throws XMLStreamException {
+                Node n = super.parseNode();
+                parsed.add(n);
+                return n;
+            }
+        };
+        try (InputStream in = new FileInputStream("data_nodist/restriction.osm")) {
+            DataSet ds = reader.doParseDataSet(in, NullProgressMonitor.INSTANCE);
+            assertEquals(ds.getNodes().size(), parsed.size());
+            assertTrue(!parsed.isEmpty());
+        }
+    }
+}
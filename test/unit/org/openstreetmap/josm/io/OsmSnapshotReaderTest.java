@@ -0,0 +1,290 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.conflict.Conflict;
+import org.openstreetmap.josm.data.conflict.ConflictCollection;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Unit tests of {@link OsmSnapshotReader} and {@link OsmSnapshotWriter}.
+ */
+public class OsmSnapshotReaderTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static byte[] write(DataSet ds, ConflictCollection conflicts) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmSnapshotWriter writer = new OsmSnapshotWriter(out)) {
+            writer.write(ds, conflicts);
+        }
+        return out.toByteArray();
+    }
+
+    private static String id(OsmPrimitive osm) {
+        return osm.isNew() ? osm.getType().getAPIName() : osm.getPrimitiveId().toString();
+    }
+
+    private static List<String> signatures(DataSet ds) {
+        List<String> result = new ArrayList<>();
+        for (OsmPrimitive osm : ds.allPrimitives()) {
+            StringBuilder sb = new StringBuilder(id(osm));
+            sb.append(new TreeMap<>(osm.getKeys())).append(osm.getVersion()).append(osm.getUser())
+              .append(osm.getTimestamp()).append(osm.getChangesetId()).append(osm.isModified())
+              .append(osm.isDeleted()).append(osm.isVisible()).append(osm.isIncomplete());
+            if (osm instanceof Node) {
+                sb.append(((Node) osm).getCoor());
+            } else if (osm instanceof Way) {
+                for (Node n : ((Way) osm).getNodes()) {
+                    sb.append(id(n)).append(n.getCoor());
+                }
+            } else {
+                for (RelationMember m : ((Relation) osm).getMembers()) {
+                    sb.append(m.getRole()).append(id(m.getMember())).append(new TreeMap<>(m.getMember().getKeys()));
+                }
+            }
+            result.add(sb.toString());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Checks that the data of a file survives a round trip through a mapped snapshot file.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataSet ds;
+        try (InputStream in = new FileInputStream("data_nodist/multipolygon.osm")) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        File file = File.createTempFile("josm", ".snapshot");
+        try {
+            try (OsmSnapshotWriter writer = new OsmSnapshotWriter(new FileOutputStream(file))) {
+                writer.write(ds, null);
+            }
+            DataSet result = OsmSnapshotReader.open(file).parse(NullProgressMonitor.INSTANCE);
+            assertEquals(signatures(ds), signatures(result));
+            assertEquals(ds.dataSources.size(), result.dataSources.size());
+            assertEquals(ds.getVersion(), result.getVersion());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that the state only kept by JOSM survives a round trip: modified, deleted, new and incomplete
+     * primitives, local users and conflicts.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testEditingState() throws Exception {
+        DataSet ds = new DataSet();
+        ds.setUploadDiscouraged(true);
+        ds.addChangeSetTag("comment", "snapshot");
+        Node n1 = new Node(1, 2);
+        n1.setCoor(new LatLon(53.5, 13.2));
+        n1.setUser(User.createOsmUser(4711, "snapshot"));
+        n1.setTimestamp(new Date(1400000000000L));
+        n1.setChangesetId(12);
+        n1.put("name", "Nü 1");
+        n1.setModified(true);
+        Node n2 = new Node(2, 1);
+        n2.setCoor(new LatLon(53.6, 13.3));
+        n2.setDeleted(true);
+        n2.setModified(true);
+        Node n3 = new Node(new LatLon(53.7, 13.4));
+        n3.setUser(User.createLocalUser("local"));
+        n3.put("name", "Nü 1");
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.addPrimitive(n3);
+        Way w = new Way(3, 5);
+        w.setNodes(Arrays.asList(n1, n3));
+        w.put("highway", "path");
+        ds.addPrimitive(w);
+        Way incomplete = new Way(4);
+        ds.addPrimitive(incomplete);
+        Relation r = new Relation();
+        r.addMember(new RelationMember("outer", w));
+        r.addMember(new RelationMember("", incomplete));
+        ds.addPrimitive(r);
+
+        Node their = new Node(1, 3);
+        their.setCoor(new LatLon(53.51, 13.21));
+        their.put("name", "their");
+        Way theirWay = new Way(3, 6);
+        theirWay.setNodes(Arrays.asList(their, new Node(99)));
+        ConflictCollection conflicts = new ConflictCollection();
+        conflicts.add(n1, their);
+        conflicts.add(new Conflict<OsmPrimitive>(w, theirWay, true));
+
+        byte[] snapshot = write(ds, conflicts);
+        assertTrue(OsmSnapshotReader.isSnapshot(ByteBuffer.wrap(snapshot)));
+        OsmSnapshotReader reader = new OsmSnapshotReader(ByteBuffer.wrap(snapshot));
+        DataSet result = reader.parse(NullProgressMonitor.INSTANCE);
+
+        assertEquals(signatures(ds), signatures(result));
+        assertTrue(result.isUploadDiscouraged());
+        assertEquals("snapshot", result.getChangeSetTags().get("comment"));
+        Node n1Copy = (Node) result.getPrimitiveById(n1);
+        assertEquals(n1.getUser(), n1Copy.getUser());
+        assertTrue(result.getPrimitiveById(n2).isDeleted());
+        Way wayCopy = (Way) result.getPrimitiveById(w);
+        assertEquals(2, wayCopy.getNodesCount());
+        Node n3Copy = wayCopy.getNode(1);
+        assertTrue(n3Copy.isNew());
+        assertEquals("local", n3Copy.getUser().getName());
+        assertFalse(n3Copy.getUser().isOsmUser());
+        assertTrue(result.getPrimitiveById(incomplete).isIncomplete());
+
+        ConflictCollection conflictsCopy = reader.getConflicts();
+        assertEquals(2, conflictsCopy.size());
+        Conflict<?> c1 = conflictsCopy.getConflictForMy(n1Copy);
+        assertEquals(3, c1.getTheir().getVersion());
+        assertEquals("their", c1.getTheir().get("name"));
+        assertNull(c1.getTheir().getDataSet());
+        assertFalse(c1.isMyDeleted());
+        Conflict<?> c2 = conflictsCopy.getConflictForMy(wayCopy);
+        assertTrue(c2.isMyDeleted());
+        Way theirWayCopy = (Way) c2.getTheir();
+        assertSame(n1Copy, theirWayCopy.getNode(0));
+        assertTrue(theirWayCopy.getNode(1).isIncomplete());
+        assertEquals(99, theirWayCopy.getNode(1).getId());
+        assertEquals(OsmPrimitiveType.NODE, theirWayCopy.getNode(1).getType());
+    }
+
+    private static byte[] writeChanges(DataSet ds, OsmPrimitive... primitives) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmSnapshotWriter writer = new OsmSnapshotWriter(out)) {
+            writer.writeChanges(ds, Arrays.asList(primitives), null);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks that changes appended to a journal after a snapshot result in the changed dataset, also if they
+     * refer to new primitives of the snapshot or of earlier changes, and that a damaged entry is ignored.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testJournal() throws Exception {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(1, 1);
+        n1.setCoor(new LatLon(53.5, 13.2));
+        Node n2 = new Node(2, 1);
+        n2.setCoor(new LatLon(53.6, 13.3));
+        Node n3 = new Node(new LatLon(53.7, 13.4));
+        Way w = new Way(3, 1);
+        w.setNodes(Arrays.asList(n1, n2));
+        for (OsmPrimitive osm : new OsmPrimitive[] {n1, n2, n3, w}) {
+            ds.addPrimitive(osm);
+        }
+        byte[] snapshot = write(ds, null);
+
+        File file = File.createTempFile("josm", ".journal");
+        file.delete();
+        OsmSnapshotJournal journal = new OsmSnapshotJournal(file);
+        try {
+            n1.setCoor(new LatLon(53.51, 13.21));
+            Node n4 = new Node(new LatLon(53.8, 13.5));
+            ds.addPrimitive(n4);
+            Way w2 = new Way();
+            w2.setNodes(Arrays.asList(n3, n4));
+            w2.put("highway", "path");
+            ds.addPrimitive(w2);
+            w.setNodes(Arrays.asList(n1, n3));
+            ds.removePrimitive(n2);
+            journal.append(writeChanges(ds, n1, n2, n4, w2, w));
+
+            n4.put("name", "Nü 4");
+            w.setDeleted(true);
+            journal.append(writeChanges(ds, n4, w));
+            assertEquals(2, journal.getEntryCount());
+
+            OsmSnapshotReader reader = new OsmSnapshotReader(ByteBuffer.wrap(snapshot));
+            DataSet result = reader.parse(NullProgressMonitor.INSTANCE);
+            List<ByteBuffer> entries = journal.read();
+            assertEquals(2, entries.size());
+            for (ByteBuffer changes : entries) {
+                reader.applyChanges(changes);
+            }
+            assertEquals(signatures(ds), signatures(result));
+
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+            }
+            assertEquals(2, journal.read().size());
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Checks that a journal of another format is rejected rather than read as empty.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = IOException.class)
+    public void testJournalOfOtherFormat() throws Exception {
+        File file = File.createTempFile("josm", ".journal");
+        OsmSnapshotJournal journal = new OsmSnapshotJournal(file);
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(OsmSnapshotJournal.MAGIC);
+                out.write(new byte[] {0, 0, 0, 99, 0, 0, 0, 0, 0, 0, 0, 0});
+            }
+            journal.read();
+        } finally {
+            journal.delete();
+        }
+    }
+
+    /**
+     * Checks that a truncated snapshot is rejected.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testTruncated() throws Exception {
+        byte[] snapshot = write(new DataSet(), null);
+        new OsmSnapshotReader(ByteBuffer.wrap(Arrays.copyOf(snapshot, snapshot.length - 1)))
+                .parse(NullProgressMonitor.INSTANCE);
+    }
+}
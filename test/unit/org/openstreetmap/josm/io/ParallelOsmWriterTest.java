@@ -0,0 +1,186 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Unit tests of {@link ParallelOsmWriter} class.
+ */
+public class ParallelOsmWriterTest {
+
+    private static OsmDataLayer layer;
+
+    /**
+     * Setup test.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUp() throws Exception {
+        JOSMFixture.createUnitTestFixture().init();
+        try (InputStream in = new FileInputStream("data_nodist/multipolygon.osm")) {
+            DataSet ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+            ds.getNodes().iterator().next().put("name", "<\"Nü\" & 'x'>\n");
+            layer = new OsmDataLayer(ds, "test", null);
+        }
+    }
+
+    private static byte[] writeSerial() throws Exception {
+        return writeSerial(layer);
+    }
+
+    private static byte[] writeSerial(OsmDataLayer layer) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmWriter w = OsmWriterFactory.createOsmWriter(
+                new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), false, layer.data.getVersion())) {
+            w.writeLayer(layer);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] read(File file) throws Exception {
+        try (InputStream in = new FileInputStream(file)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    /**
+     * Checks that the output is the same as the one of {@link OsmWriter}, regardless of the ranges.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testSameAsOsmWriter() throws Exception {
+        byte[] expected = writeSerial();
+        for (int chunkSize : new int[] {1, 100, 100000}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ParallelOsmWriter(Compression.NONE, chunkSize).writeLayer(layer, Channels.newChannel(out));
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    /**
+     * Checks that files compressed in ranges are read like files compressed as a whole.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testCompressed() throws Exception {
+        byte[] expected = writeSerial();
+        for (String extension : new String[] {".osm.gz", ".osm.bz2"}) {
+            File file = File.createTempFile("josm", extension);
+            try {
+                try (FileOutputStream out = new FileOutputStream(file)) {
+                    new ParallelOsmWriter(Compression.byExtension(file.getName()), 100).writeLayer(layer, out.getChannel());
+                }
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+                    byte[] buffer = new byte[8192];
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                        result.write(buffer, 0, n);
+                    }
+                }
+                assertArrayEquals(extension, expected, result.toByteArray());
+                try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+                    DataSet ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+                    assertEquals(extension, layer.data.allPrimitives().size(), ds.allPrimitives().size());
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Checks that {@link OsmExporter} replaces an existing file by the written one and leaves no other file behind.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExportReplacesFile() throws Exception {
+        Main.pref.put("osm.writer.parallel", true);
+        File file = File.createTempFile("josm", ".osm");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[1 << 20]);
+            }
+            new OsmExporter().exportData(file, layer, true);
+            assertArrayEquals(writeSerial(), read(file));
+            assertFalse(new File(file.getPath() + ".part").exists());
+            assertFalse(new File(file.getPath() + "~").exists());
+        } finally {
+            file.delete();
+            Main.pref.put("osm.writer.parallel", null);
+        }
+    }
+
+    /**
+     * Checks that the data of the layer at the time it is copied is written, regardless of later changes.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testWriteCopy() throws Exception {
+        try (InputStream in = new FileInputStream("data_nodist/restriction.osm")) {
+            OsmDataLayer copied = new OsmDataLayer(OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE), "copy", null);
+            byte[] expected = writeSerial(copied);
+            ParallelOsmWriter writer = new ParallelOsmWriter(Compression.NONE, 100);
+            writer.copyLayer(copied);
+            Node n = copied.data.getNodes().iterator().next();
+            n.put("name", "changed");
+            n.setCoor(new LatLon(1, 2));
+            copied.data.removePrimitive(copied.data.getRelations().iterator().next());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(Channels.newChannel(out));
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    /**
+     * Checks that a layer saved from the event dispatch thread is written in the background.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testExportInBackground() throws Exception {
+        Main.pref.put("osm.writer.parallel", true);
+        final File file = File.createTempFile("josm", ".osm");
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    new OsmExporter().exportData(file, layer, true);
+                }
+            });
+            OsmExporter.waitForBackgroundSaves();
+            assertArrayEquals(writeSerial(), read(file));
+            assertFalse(new File(file.getPath() + ".part").exists());
+        } finally {
+            file.delete();
+            Main.pref.put("osm.writer.parallel", null);
+        }
+    }
+}
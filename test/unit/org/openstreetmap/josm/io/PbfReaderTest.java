@@ -0,0 +1,226 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.JOSMFixture;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.DefaultNameFormatter;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Unit tests of {@link PbfReader} and {@link PbfWriter}.
+ */
+public class PbfReaderTest {
+
+    /**
+     * Setup test.
+     */
+    @BeforeClass
+    public static void setUp() {
+        JOSMFixture.createUnitTestFixture().init();
+    }
+
+    private static DataSet roundTrip(DataSet ds) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PbfWriter writer = new PbfWriter(out)) {
+            writer.writeDataSet(ds);
+        }
+        return PbfReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), NullProgressMonitor.INSTANCE);
+    }
+
+    private static void assertSamePrimitive(OsmPrimitive expected, OsmPrimitive actual) {
+        String id = expected.getDisplayName(DefaultNameFormatter.getInstance());
+        assertNotNull(id, actual);
+        assertEquals(id, expected.getKeys(), actual.getKeys());
+        assertEquals(id, expected.getVersion(), actual.getVersion());
+        assertEquals(id, expected.getChangesetId(), actual.getChangesetId());
+        assertEquals(id, expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(id, expected.getUser(), actual.getUser());
+        assertEquals(id, expected.isIncomplete(), actual.isIncomplete());
+    }
+
+    private static String signature(OsmPrimitive osm) {
+        StringBuilder sb = new StringBuilder(osm.getType().getAPIName());
+        sb.append(new TreeMap<>(osm.getKeys())).append(osm.getVersion()).append(osm.getTimestamp());
+        if (osm instanceof Node) {
+            sb.append(((Node) osm).getCoor().getRoundedToOsmPrecision());
+        } else if (osm instanceof Way) {
+            for (Node n : ((Way) osm).getNodes()) {
+                sb.append(n.getCoor().getRoundedToOsmPrecision());
+            }
+        } else {
+            for (RelationMember m : ((Relation) osm).getMembers()) {
+                sb.append(m.getRole()).append(m.getType()).append(new TreeMap<>(m.getMember().getKeys()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> signatures(DataSet ds) {
+        List<String> result = new ArrayList<>();
+        for (OsmPrimitive osm : ds.allPrimitives()) {
+            result.add(signature(osm));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Checks that the primitives of a file survive a round trip through the PBF format.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataSet ds;
+        try (InputStream in = new FileInputStream("data_nodist/restriction.osm")) {
+            ds = OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+        DataSet result = roundTrip(ds);
+
+        assertEquals(ds.getNodes().size(), result.getNodes().size());
+        assertEquals(ds.getWays().size(), result.getWays().size());
+        assertEquals(ds.getRelations().size(), result.getRelations().size());
+        assertEquals(signatures(ds), signatures(result));
+        assertEquals(1, result.dataSources.size());
+        DataSource source = result.dataSources.iterator().next();
+        assertEquals("OpenStreetMap server", source.origin);
+        assertEquals(new Bounds(51.12, 14.147472381591795, 51.128, 14.162492752075195), source.bounds);
+    }
+
+    /**
+     * Checks that new primitives, incomplete members and users survive a round trip, also for more primitives than
+     * fit into one block.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void testNewAndIncompletePrimitives() throws Exception {
+        DataSet ds = new DataSet();
+        User user = User.createOsmUser(4711, "pbf");
+        Node[] nodes = new Node[PbfWriter.BLOCK_SIZE + 10];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(i + 1, 3);
+            nodes[i].setCoor(new LatLon(-33.9 + i * 1e-7, 151.2 - i * 1e-6));
+            nodes[i].setTimestamp(new Date(1400000000000L + i * 1000L));
+            nodes[i].setChangesetId(100 + i % 7);
+            nodes[i].setUser(i % 2 == 0 ? user : null);
+            if (i % 3 == 0) {
+                nodes[i].put("name", "node " + i % 5);
+            }
+            ds.addPrimitive(nodes[i]);
+        }
+        Node newNode = new Node(new LatLon(0, 0));
+        newNode.put("amenity", "bench");
+        ds.addPrimitive(newNode);
+        Way way = new Way();
+        way.setNodes(Arrays.asList(newNode, nodes[0], nodes[nodes.length - 1]));
+        way.put("highway", "residential");
+        ds.addPrimitive(way);
+        Node incomplete = new Node(123456789);
+        ds.addPrimitive(incomplete);
+        Relation relation = new Relation();
+        relation.addMember(new RelationMember("outer", way));
+        relation.addMember(new RelationMember("", incomplete));
+        ds.addPrimitive(relation);
+
+        DataSet result = roundTrip(ds);
+        assertEquals(ds.allPrimitives().size(), result.allPrimitives().size());
+        for (Node n : nodes) {
+            Node copy = (Node) result.getPrimitiveById(n);
+            assertSamePrimitive(n, copy);
+            assertEquals(n.getCoor().lat(), copy.getCoor().lat(), 1e-9);
+            assertEquals(n.getCoor().lon(), copy.getCoor().lon(), 1e-9);
+        }
+        assertEquals(1, result.getWays().size());
+        Way wayCopy = result.getWays().iterator().next();
+        assertTrue(wayCopy.isNew());
+        assertEquals("residential", wayCopy.get("highway"));
+        Node newNodeCopy = wayCopy.getNode(0);
+        assertTrue(newNodeCopy.isNew());
+        assertEquals("bench", newNodeCopy.get("amenity"));
+        assertEquals(nodes[0].getPrimitiveId(), wayCopy.getNode(1).getPrimitiveId());
+
+        Relation relationCopy = result.getRelations().iterator().next();
+        assertTrue(relationCopy.isNew());
+        assertEquals(wayCopy, relationCopy.getMember(0).getMember());
+        assertEquals("outer", relationCopy.getMember(0).getRole());
+        OsmPrimitive incompleteCopy = relationCopy.getMember(1).getMember();
+        assertTrue(incompleteCopy.isIncomplete());
+        assertEquals(123456789, incompleteCopy.getId());
+        assertEquals(OsmPrimitiveType.NODE, incompleteCopy.getType());
+        assertNull(result.getPrimitiveById(nodes[1]).getUser());
+        assertFalse(result.getPrimitiveById(nodes[0]).isModified());
+    }
+
+    /**
+     * Checks that invalid data is rejected.
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testInvalidData() throws Exception {
+        PbfReader.parseDataSet(new ByteArrayInputStream(new byte[] {0, 0, 0, 5, 10, 3, 'a', 'b', 'c'}),
+                NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Checks that a primitive which occurs twice is rejected.
+     * @throws Exception if an error occurs
+     */
+    @Test(expected = IllegalDataException.class)
+    public void testDuplicateId() throws Exception {
+        DataSet ds = new DataSet();
+        ds.addPrimitive(new Node(new LatLon(1, 2)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // a file followed by itself contains every primitive twice
+        for (int i = 0; i < 2; i++) {
+            try (PbfWriter writer = new PbfWriter(out)) {
+                writer.writeDataSet(ds);
+            }
+        }
+        PbfReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Checks that only the changes of primitives which are not new are reported as lost by the exporter.
+     */
+    @Test
+    public void testHasUnsavedChanges() {
+        DataSet ds = new DataSet();
+        Node existing = new Node(1, 1);
+        existing.setCoor(new LatLon(1, 2));
+        ds.addPrimitive(existing);
+        ds.addPrimitive(new Node(new LatLon(3, 4)));
+        assertFalse(PbfExporter.hasUnsavedChanges(ds));
+        existing.setModified(true);
+        assertTrue(PbfExporter.hasUnsavedChanges(ds));
+        existing.setModified(false);
+        existing.setDeleted(true);
+        assertTrue(PbfExporter.hasUnsavedChanges(ds));
+    }
+}